@@ -21,12 +21,15 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import buildingsmart.io.Entity;
+import buildingsmart.util.GlobalIdRegistry;
 import buildingsmart.util.Pair;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 import lombok.ToString;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -71,32 +74,66 @@ public class IfcApplication extends Entity {
      *                                  where the combination of fields
      *                                  applicationFullName and version is the
      *                                  same as the one passed as parameter.
+     *                                  Instances are checked within the model
+     *                                  of the {@link GlobalIdRegistry} bound
+     *                                  to the current thread, if any; within
+     *                                  the whole JVM if the registry is the
+     *                                  global one (see {@link
+     *                                  GlobalIdRegistry#current()}); not at
+     *                                  all otherwise.
      */
     public IfcApplication(@NonNull IfcOrganization applicationDeveloper,
                           @NonNull IfcLabel version,
                           @NonNull IfcLabel applicationFullName,
                           @NonNull IfcIdentifier applicationIdentifier) {
-        if (uniqueAppIdentifiers.contains(applicationIdentifier)) {
-            throw new IllegalArgumentException(
-                    "applicationIdentifier must be unique, and this one was " +
-                            "already used in another instance of this class");
-        }
         Pair<IfcLabel, IfcLabel> appFullNameAndVersion =
                 new Pair<>(applicationFullName, version);
-        if (uniqueAppFullNameAndVersions.contains(appFullNameAndVersion)) {
-            throw new IllegalArgumentException(
-                    "the combination of applicationFullName and version must " +
-                            "be unique, and this one was already used in " +
-                            "another instance of this class");
+        GlobalIdRegistry registry = GlobalIdRegistry.current();
+        if (registry == GlobalIdRegistry.getGlobal()) {
+            // the sets shared by the whole JVM are used only for compatibility
+            synchronized (uniqueAppIdentifiers) {
+                checkUnique(uniqueAppIdentifiers.contains(applicationIdentifier),
+                            uniqueAppFullNameAndVersions.contains(appFullNameAndVersion));
+                uniqueAppIdentifiers.add(applicationIdentifier);
+                uniqueAppFullNameAndVersions.add(appFullNameAndVersion);
+            }
+        } else if (registry != null) {
+            List<Object> identifierKey =
+                    Arrays.asList("applicationIdentifier", applicationIdentifier);
+            List<Object> fullNameKey =
+                    Arrays.asList("applicationFullName", appFullNameAndVersion);
+            // adding is the uniqueness test, since applications can be
+            // created by many threads at once
+            boolean identifierUsed = !registry.addUnique(identifierKey);
+            boolean fullNameAndVersionUsed =
+                    !identifierUsed && !registry.addUnique(fullNameKey);
+            if (fullNameAndVersionUsed) {
+                registry.removeUnique(identifierKey);
+            }
+            checkUnique(identifierUsed, fullNameAndVersionUsed);
         }
         this.applicationDeveloper = applicationDeveloper;
-        uniqueAppFullNameAndVersions.add(appFullNameAndVersion);
         this.version = version;
         this.applicationFullName = applicationFullName;
-        uniqueAppIdentifiers.add(applicationIdentifier);
         this.applicationIdentifier = applicationIdentifier;
     }
 
+    private static void checkUnique(boolean identifierUsed,
+                                    boolean fullNameAndVersionUsed) {
+        if (identifierUsed) {
+            throw new IllegalArgumentException(
+                    "applicationIdentifier must be unique, and this one " +
+                            "was already used in another instance of " +
+                            "this class");
+        }
+        if (fullNameAndVersionUsed) {
+            throw new IllegalArgumentException(
+                    "the combination of applicationFullName and version " +
+                            "must be unique, and this one was already " +
+                            "used in another instance of this class");
+        }
+    }
+
     /**
      * Clears the Sets used to keep track of attributes that must be unique in
      * different instances of this class, thus allowing the creation of new
@@ -105,7 +142,9 @@ public class IfcApplication extends Entity {
      * calling this method. Use at your own risk.
      */
     public static void clearUniqueConstraint() {
-        uniqueAppFullNameAndVersions.clear();
-        uniqueAppIdentifiers.clear();
+        synchronized (uniqueAppIdentifiers) {
+            uniqueAppFullNameAndVersions.clear();
+            uniqueAppIdentifiers.clear();
+        }
     }
 }
@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -54,6 +55,7 @@ import lombok.ToString;
  * The <i>OuterCurve</i>
  * attribute defines a two dimensional closed bounded curve.</p>
  */
+@Getter
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class IfcArbitraryClosedProfileDef extends IfcProfileDef {
@@ -33,9 +33,10 @@ import lombok.*;
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class IfcAxis1Placement extends IfcPlacement {
+    @Getter
     @Attribute(1)
     private final IfcDirection axis;
-    @Getter(AccessLevel.PROTECTED)
+    @Getter
     private final IfcDirection z;
 
     /**
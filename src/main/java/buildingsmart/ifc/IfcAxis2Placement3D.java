@@ -109,9 +109,7 @@ public class IfcAxis2Placement3D extends IfcPlacement
                     "if refDirection is not null, it must have dimensionality" +
                             " equal to 3");
         }
-        if (axis != null &&
-                Functions.ifcCrossProduct(axis, refDirection).getMagnitude()
-                        .getValue() <= 0) {
+        if (axis != null && parallel(axis, refDirection)) {
             throw new IllegalArgumentException(
                     "axis and refDirection cannot be parallel or " +
                             "anti-parallel");
@@ -150,6 +148,24 @@ public class IfcAxis2Placement3D extends IfcPlacement
         this(new IfcCartesianPoint(locationCoordinates), null, null);
     }
 
+    /**
+     * @param axis         The axis of the placement.
+     * @param refDirection The reference direction of the placement.
+     * @return {@code true} if the directions are parallel or anti-parallel, or
+     * if one of them has components that are all zero.
+     */
+    private static boolean parallel(IfcDirection axis, IfcDirection refDirection) {
+        List<IfcReal> a = axis.getNormalisedDirectionRatios();
+        List<IfcReal> r = refDirection.getNormalisedDirectionRatios();
+        if (a == null || r == null) {
+            return true;
+        }
+        double x = a.get(1).getValue() * r.get(2).getValue() - a.get(2).getValue() * r.get(1).getValue();
+        double y = a.get(2).getValue() * r.get(0).getValue() - a.get(0).getValue() * r.get(2).getValue();
+        double z = a.get(0).getValue() * r.get(1).getValue() - a.get(1).getValue() * r.get(0).getValue();
+        return x == 0 && y == 0 && z == 0;
+    }
+
     @Override
     public String toString() {
         double[] location = getLocation().getCoordinates().stream().mapToDouble(IfcLengthMeasure::getValue).toArray();
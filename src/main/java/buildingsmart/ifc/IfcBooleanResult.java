@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -45,6 +46,7 @@ import lombok.ToString;
  * not in the second operand. </LI>
  * </UL>
  */
+@Getter
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public class IfcBooleanResult extends IfcGeometricRepresentationItem
@@ -1,6 +1,7 @@
 /*
  * Copyright (C) 2019 Pieter Pauwels, Ghent University
  * Modifications Copyright (C) 2020 Giovanni Velludo
+ * Modifications Copyright (C) 2022 Antea S.r.l.
  *
  * This file is part of ifc-java.
  *
@@ -19,12 +20,76 @@
 
 package buildingsmart.ifc;
 
+import buildingsmart.io.Attribute;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * A Cartesian transformation operator defines a geometric transformation
+ * composed of translation, rotation, mirroring and uniform scaling. The list of
+ * normalised vectors u defines the columns of an orthogonal matrix T. These
+ * vectors are computed, by the base axis function, from the direction
+ * attributes axis1, axis2 and, in Cartesian transformation operator 3d, axis3.
+ * If |T| = -1, the transformation includes mirroring. The local origin point
+ * A, the scale value S and the matrix T together define a transformation.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = false)
+@ToString
 public abstract class IfcCartesianTransformationOperator
         extends IfcGeometricRepresentationItem {
-    private IfcDirection Axis1;
-    private IfcDirection Axis2;
-    private IfcCartesianPoint LocalOrigin;
-    private double Scale;
-    private double Scl;
-    private int Dim;
+    @Attribute(0)
+    private final IfcDirection axis1;
+    @Attribute(1)
+    private final IfcDirection axis2;
+    @Attribute(2)
+    private final IfcCartesianPoint localOrigin;
+    @Attribute(3)
+    private final IfcReal scale;
+    /**
+     * The derived scale S of the transformation, equal to scale if that
+     * exists, or 1.0 otherwise.
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final double scl; // derived attribute
+    /**
+     * The space dimensionality of this class, determined by the space
+     * dimensionality of the local origin.
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final IfcDimensionCount dim; // derived attribute
+
+    /**
+     * @param axis1       The direction used to determine U[1], the derived X
+     *                    axis direction.
+     * @param axis2       The direction used to determine U[2], the derived Y
+     *                    axis direction.
+     * @param localOrigin The required translation, specified as a Cartesian
+     *                    point. The actual translation included in the
+     *                    transformation is from the geometric origin to the
+     *                    local origin.
+     * @param scale       The scaling value specified for the transformation.
+     *                    If omitted, 1.0 is used.
+     * @throws NullPointerException     If localOrigin is null.
+     * @throws IllegalArgumentException If the derived scaling Scl is not
+     *                                  greater than zero.
+     */
+    protected IfcCartesianTransformationOperator(IfcDirection axis1,
+                                                 IfcDirection axis2,
+                                                 @NonNull IfcCartesianPoint localOrigin,
+                                                 IfcReal scale) {
+        this.scl = scale == null ? 1 : scale.getValue();
+        if (!(scl > 0)) {
+            throw new IllegalArgumentException("scale must be greater than zero");
+        }
+        this.axis1 = axis1;
+        this.axis2 = axis2;
+        this.localOrigin = localOrigin;
+        this.scale = scale;
+        this.dim = localOrigin.getDim();
+    }
 }
@@ -1,6 +1,7 @@
 /*
  * Copyright (C) 2019 Pieter Pauwels, Ghent University
  * Modifications Copyright (C) 2020 Giovanni Velludo
+ * Modifications Copyright (C) 2022 Antea S.r.l.
  *
  * This file is part of ifc-java.
  *
@@ -19,7 +20,66 @@
 
 package buildingsmart.ifc;
 
-public abstract class IfcCartesianTransformationOperator2D
+import buildingsmart.util.Functions;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Cartesian transformation operator 2d defines a geometric transformation in
+ * two-dimensional space composed of translation, rotation, mirroring and
+ * uniform scaling.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class IfcCartesianTransformationOperator2D
         extends IfcCartesianTransformationOperator {
-    private IfcDirection[] U;
+    /**
+     * The list of mutually orthogonal, normalised vectors defining the
+     * transformation matrix T. They are derived from the explicit attributes
+     * axis1 and axis2 in that order. The list is unmodifiable.
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final List<IfcDirection> u; // derived attribute
+
+    /**
+     * @param axis1       The exact direction of U[1], the derived X axis.
+     * @param axis2       The direction used to determine U[2], the derived Y
+     *                    axis.
+     * @param localOrigin The required translation, specified as a Cartesian
+     *                    point.
+     * @param scale       The scaling value specified for the transformation.
+     *                    If omitted, 1.0 is used.
+     * @throws NullPointerException     If localOrigin is null.
+     * @throws IllegalArgumentException If any of the following conditions is
+     *                                  not met:
+     *                                  <ul>
+     *                                  <li>the derived scaling Scl shall be
+     *                                  greater than zero;</li>
+     *                                  <li>the dimensionality of localOrigin
+     *                                  shall be 2;</li>
+     *                                  <li>axis1 and axis2 (when given) shall
+     *                                  be two-dimensional.</li>
+     *                                  </ul>
+     */
+    public IfcCartesianTransformationOperator2D(IfcDirection axis1,
+                                                IfcDirection axis2,
+                                                @NonNull IfcCartesianPoint localOrigin,
+                                                IfcReal scale) {
+        super(axis1, axis2, localOrigin, scale);
+        if (getDim().getValue() != 2) {
+            throw new IllegalArgumentException("localOrigin must have dimensionality equal to 2");
+        }
+        if ((axis1 != null && axis1.getDim().getValue() != 2) ||
+                (axis2 != null && axis2.getDim().getValue() != 2)) {
+            throw new IllegalArgumentException("axis1 and axis2, if not null, must have dimensionality equal to 2");
+        }
+        this.u = Collections.unmodifiableList(Functions.ifcBaseAxis(2, axis1, axis2, null));
+    }
 }
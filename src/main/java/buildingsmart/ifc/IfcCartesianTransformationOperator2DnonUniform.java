@@ -1,6 +1,7 @@
 /*
  * Copyright (C) 2019 Pieter Pauwels, Ghent University
  * Modifications Copyright (C) 2020 Giovanni Velludo
+ * Modifications Copyright (C) 2022 Antea S.r.l.
  *
  * This file is part of ifc-java.
  *
@@ -19,8 +20,59 @@
 
 package buildingsmart.ifc;
 
-public abstract class IfcCartesianTransformationOperator2DnonUniform
+import buildingsmart.io.Attribute;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * A Cartesian transformation operator 2d non uniform defines a geometric
+ * transformation in two-dimensional space composed of translation, rotation,
+ * mirroring and non uniform scaling. Non uniform scaling is given by two
+ * different scaling factors: scl for the X axis and scl2 for the Y axis.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class IfcCartesianTransformationOperator2DnonUniform
         extends IfcCartesianTransformationOperator2D {
-    private double Scale2;
-    private double Scl2;
+    @Attribute(4)
+    private final IfcReal scale2;
+    /**
+     * The scaling factor for the Y axis, equal to scale2 if that exists, or to
+     * scl otherwise.
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final double scl2; // derived attribute
+
+    /**
+     * @param axis1       The exact direction of U[1], the derived X axis.
+     * @param axis2       The direction used to determine U[2], the derived Y
+     *                    axis.
+     * @param localOrigin The required translation, specified as a Cartesian
+     *                    point.
+     * @param scale       The scaling value specified for the X axis. If
+     *                    omitted, 1.0 is used.
+     * @param scale2      The scaling value specified for the Y axis. If
+     *                    omitted, the scaling of the X axis is used.
+     * @throws NullPointerException     If localOrigin is null.
+     * @throws IllegalArgumentException If any of the conditions of
+     *                                  {@link IfcCartesianTransformationOperator2D}
+     *                                  is not met, or if the derived scaling
+     *                                  Scl2 is not greater than zero.
+     */
+    public IfcCartesianTransformationOperator2DnonUniform(IfcDirection axis1,
+                                                          IfcDirection axis2,
+                                                          @NonNull IfcCartesianPoint localOrigin,
+                                                          IfcReal scale,
+                                                          IfcReal scale2) {
+        super(axis1, axis2, localOrigin, scale);
+        this.scl2 = scale2 == null ? getScl() : scale2.getValue();
+        if (!(scl2 > 0)) {
+            throw new IllegalArgumentException("scale2 must be greater than zero");
+        }
+        this.scale2 = scale2;
+    }
 }
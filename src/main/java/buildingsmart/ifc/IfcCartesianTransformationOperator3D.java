@@ -1,6 +1,7 @@
 /*
  * Copyright (C) 2019 Pieter Pauwels, Ghent University
  * Modifications Copyright (C) 2020 Giovanni Velludo
+ * Modifications Copyright (C) 2022 Antea S.r.l.
  *
  * This file is part of ifc-java.
  *
@@ -19,8 +20,92 @@
 
 package buildingsmart.ifc;
 
-public abstract class IfcCartesianTransformationOperator3D
+import buildingsmart.io.Attribute;
+import buildingsmart.util.Functions;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Cartesian transformation operator 3d defines a geometric transformation in
+ * three-dimensional space composed of translation, rotation, mirroring and
+ * uniform scaling. It is used by {@link IfcMappedItem} to place a shared
+ * representation in the coordinate system of the representation that uses it.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class IfcCartesianTransformationOperator3D
         extends IfcCartesianTransformationOperator {
-    private IfcDirection Axis3;
-    private IfcDirection[] U;
+    @Attribute(4)
+    private final IfcDirection axis3;
+    /**
+     * The list of mutually orthogonal, normalised vectors defining the
+     * transformation matrix T. They are derived from the explicit attributes
+     * axis3, axis1, and axis2 in that order. The list is unmodifiable.
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final List<IfcDirection> u; // derived attribute
+
+    /**
+     * @param axis1       The exact direction of U[1], or the direction used to
+     *                    determine it when axis3 is given.
+     * @param axis2       The direction used to determine U[2].
+     * @param localOrigin The required translation, specified as a Cartesian
+     *                    point.
+     * @param scale       The scaling value specified for the transformation.
+     *                    If omitted, 1.0 is used.
+     * @param axis3       The exact direction of U[3], the derived Z axis.
+     * @throws NullPointerException     If localOrigin is null.
+     * @throws IllegalArgumentException If any of the following conditions is
+     *                                  not met:
+     *                                  <ul>
+     *                                  <li>the derived scaling Scl shall be
+     *                                  greater than zero;</li>
+     *                                  <li>the dimensionality of localOrigin
+     *                                  shall be 3;</li>
+     *                                  <li>axis1, axis2 and axis3 (when given)
+     *                                  shall be three-dimensional;</li>
+     *                                  <li>the derived axes U shall be
+     *                                  computable from the given
+     *                                  directions.</li>
+     *                                  </ul>
+     */
+    public IfcCartesianTransformationOperator3D(IfcDirection axis1,
+                                                IfcDirection axis2,
+                                                @NonNull IfcCartesianPoint localOrigin,
+                                                IfcReal scale,
+                                                IfcDirection axis3) {
+        super(axis1, axis2, localOrigin, scale);
+        if (getDim().getValue() != 3) {
+            throw new IllegalArgumentException("localOrigin must have dimensionality equal to 3");
+        }
+        if ((axis1 != null && axis1.getDim().getValue() != 3) ||
+                (axis2 != null && axis2.getDim().getValue() != 3) ||
+                (axis3 != null && axis3.getDim().getValue() != 3)) {
+            throw new IllegalArgumentException("axis1, axis2 and axis3, if not null, must have dimensionality equal " +
+                                                       "to 3");
+        }
+        this.axis3 = axis3;
+        this.u = Collections.unmodifiableList(Functions.ifcBaseAxis(3, axis1, axis2, axis3));
+    }
+
+    /**
+     * Creates a transformation that only translates to localOrigin, without
+     * rotating or scaling.
+     *
+     * @param localOrigin The required translation, specified as a Cartesian
+     *                    point.
+     * @throws NullPointerException     If localOrigin is null.
+     * @throws IllegalArgumentException If the dimensionality of localOrigin is
+     *                                  not 3.
+     */
+    public IfcCartesianTransformationOperator3D(@NonNull IfcCartesianPoint localOrigin) {
+        this(null, null, localOrigin, null, null);
+    }
 }
@@ -1,6 +1,7 @@
 /*
  * Copyright (C) 2019 Pieter Pauwels, Ghent University
  * Modifications Copyright (C) 2020 Giovanni Velludo
+ * Modifications Copyright (C) 2022 Antea S.r.l.
  *
  * This file is part of ifc-java.
  *
@@ -19,10 +20,77 @@
 
 package buildingsmart.ifc;
 
-public abstract class IfcCartesianTransformationOperator3DnonUniform
+import buildingsmart.io.Attribute;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * A Cartesian transformation operator 3d non uniform defines a geometric
+ * transformation in three-dimensional space composed of translation, rotation,
+ * mirroring and non uniform scaling. Non uniform scaling is given by three
+ * different scaling factors: scl for the X axis, scl2 for the Y axis and scl3
+ * for the Z axis.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class IfcCartesianTransformationOperator3DnonUniform
         extends IfcCartesianTransformationOperator3D {
-    private double Scale2;
-    private double Scale3;
-    private double Scl2;
-    private double Scl3;
+    @Attribute(5)
+    private final IfcReal scale2;
+    @Attribute(6)
+    private final IfcReal scale3;
+    /**
+     * The scaling factor for the Y axis, equal to scale2 if that exists, or to
+     * scl otherwise.
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final double scl2; // derived attribute
+    /**
+     * The scaling factor for the Z axis, equal to scale3 if that exists, or to
+     * scl otherwise.
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final double scl3; // derived attribute
+
+    /**
+     * @param axis1       The exact direction of U[1], or the direction used to
+     *                    determine it when axis3 is given.
+     * @param axis2       The direction used to determine U[2].
+     * @param localOrigin The required translation, specified as a Cartesian
+     *                    point.
+     * @param scale       The scaling value specified for the X axis. If
+     *                    omitted, 1.0 is used.
+     * @param axis3       The exact direction of U[3], the derived Z axis.
+     * @param scale2      The scaling value specified for the Y axis. If
+     *                    omitted, the scaling of the X axis is used.
+     * @param scale3      The scaling value specified for the Z axis. If
+     *                    omitted, the scaling of the X axis is used.
+     * @throws NullPointerException     If localOrigin is null.
+     * @throws IllegalArgumentException If any of the conditions of
+     *                                  {@link IfcCartesianTransformationOperator3D}
+     *                                  is not met, or if the derived scalings
+     *                                  Scl2 and Scl3 are not greater than
+     *                                  zero.
+     */
+    public IfcCartesianTransformationOperator3DnonUniform(IfcDirection axis1,
+                                                          IfcDirection axis2,
+                                                          @NonNull IfcCartesianPoint localOrigin,
+                                                          IfcReal scale,
+                                                          IfcDirection axis3,
+                                                          IfcReal scale2,
+                                                          IfcReal scale3) {
+        super(axis1, axis2, localOrigin, scale, axis3);
+        this.scl2 = scale2 == null ? getScl() : scale2.getValue();
+        this.scl3 = scale3 == null ? getScl() : scale3.getValue();
+        if (!(scl2 > 0) || !(scl3 > 0)) {
+            throw new IllegalArgumentException("scale2 and scale3 must be greater than zero");
+        }
+        this.scale2 = scale2;
+        this.scale3 = scale3;
+    }
 }
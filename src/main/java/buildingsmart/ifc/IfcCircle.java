@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -30,6 +31,7 @@ import lombok.ToString;
  * placed on the plane defined by {@code position.p[0]} and {@code
  * position.p[1]}.
  */
+@Getter
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class IfcCircle extends IfcConic {
@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -49,6 +50,7 @@ import lombok.ToString;
  * is defined by a set of parameter attributes, see attribute definition
  * below.</p>
  */
+@Getter
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class IfcCircleHollowProfileDef extends IfcCircleProfileDef {
@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -30,6 +31,7 @@ import lombok.ToString;
  * Radius attribute and placed within the 2D position coordinate system,
  * established by the Position attribute.
  */
+@Getter
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class IfcCircleProfileDef extends IfcParameterizedProfileDef {
@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -39,6 +40,7 @@ import java.util.List;
  * SameSense, the segments shall join end-to-end.</LI>
  * </OL>
  */
+@Getter
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public class IfcCompositeCurve extends IfcBoundedCurve {
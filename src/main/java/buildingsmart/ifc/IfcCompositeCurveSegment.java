@@ -33,8 +33,10 @@ public class IfcCompositeCurveSegment extends IfcGeometricRepresentationItem {
     @Getter(AccessLevel.PROTECTED)
     @Attribute(0)
     private final IfcTransitionCode transition;
+    @Getter
     @Attribute(1)
     private final IfcBoolean sameSense;
+    @Getter
     @Attribute(2)
     private final IfcBoundedCurve parentCurve;
 
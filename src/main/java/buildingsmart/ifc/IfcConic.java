@@ -33,7 +33,7 @@ import lombok.*;
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public abstract class IfcConic extends IfcCurve {
-    @Getter(AccessLevel.PROTECTED)
+    @Getter
     @Attribute(0)
     private final IfcAxis2Placement position;
 
@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -40,6 +41,7 @@ import java.util.Set;
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public class IfcConnectedFaceSet extends IfcTopologicalRepresentationItem {
+    @Getter
     @Attribute(0)
     private final Set<IfcFace> cfsFaces;
 
@@ -21,14 +21,13 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import buildingsmart.util.Functions;
+import buildingsmart.util.VectorMath;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * This entity defines a general direction vector in two or three dimensional space. The actual magnitudes of the
@@ -56,25 +55,7 @@ public class IfcDirection extends IfcGeometricRepresentationItem implements IfcV
      * @throws IllegalArgumentException If the size of directionRatios is not 2 or 3.
      */
     public IfcDirection(@NonNull List<IfcReal> directionRatios) {
-
-        if (directionRatios.size() < 2 || directionRatios.size() > 3) {
-            throw new IllegalArgumentException("size of directionRatios must be 2 or 3");
-        }
-        this.directionRatios =
-                directionRatios.stream().map(dirRatio -> new IfcReal(Functions.round(dirRatio.getValue())))
-                        .collect(Collectors.toUnmodifiableList());
-        this.dim = new IfcDimensionCount(this.directionRatios.size());
-
-        double[] dirRatios = this.directionRatios.stream().mapToDouble(IfcReal::getValue).toArray();
-
-        if (Functions.alreadyNormalised(dirRatios)) {
-            this.normalisedDirectionRatios = this.directionRatios;
-
-        } else {
-            double[] normalisedDirRatios = Functions.ifcNormalise(dirRatios);
-            this.normalisedDirectionRatios = normalisedDirRatios == null ? null :
-                    Arrays.stream(normalisedDirRatios).mapToObj(IfcReal::new).collect(Collectors.toUnmodifiableList());
-        }
+        this(directionRatios.stream().mapToDouble(IfcReal::getValue).toArray());
     }
 
     /**
@@ -89,19 +70,26 @@ public class IfcDirection extends IfcGeometricRepresentationItem implements IfcV
         if (directionRatios.length < 2 || directionRatios.length > 3) {
             throw new IllegalArgumentException("size of directionRatios must be 2 or 3");
         }
-        this.directionRatios = Arrays.stream(directionRatios).mapToObj(d -> new IfcReal(Functions.round(d)))
-                .collect(Collectors.toUnmodifiableList());
-        this.dim = new IfcDimensionCount(this.directionRatios.size());
-
-        double[] dirRatios = this.directionRatios.stream().mapToDouble(IfcReal::getValue).toArray();
+        double[] dirRatios = new double[directionRatios.length];
+        IfcReal[] ratios = new IfcReal[directionRatios.length];
+        for (int i = 0; i < dirRatios.length; i++) {
+            ratios[i] = new IfcReal(Functions.round(directionRatios[i]));
+            dirRatios[i] = ratios[i].getValue();
+        }
+        this.directionRatios = List.of(ratios);
+        this.dim = new IfcDimensionCount(dirRatios.length);
 
         if (Functions.alreadyNormalised(dirRatios)) {
             this.normalisedDirectionRatios = this.directionRatios;
 
+        } else if (VectorMath.normalise(dirRatios, dirRatios)) {
+            IfcReal[] normalisedRatios = new IfcReal[dirRatios.length];
+            for (int i = 0; i < dirRatios.length; i++) {
+                normalisedRatios[i] = new IfcReal(dirRatios[i]);
+            }
+            this.normalisedDirectionRatios = List.of(normalisedRatios);
         } else {
-            double[] normalisedDirRatios = Functions.ifcNormalise(dirRatios);
-            this.normalisedDirectionRatios = normalisedDirRatios == null ? null :
-                    Arrays.stream(normalisedDirRatios).mapToObj(IfcReal::new).collect(Collectors.toUnmodifiableList());
+            this.normalisedDirectionRatios = null;
         }
     }
 
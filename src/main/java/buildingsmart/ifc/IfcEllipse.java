@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -48,6 +49,7 @@ import lombok.ToString;
  * IfcEllipse, and the inherited Position.P[1] from IfcConic the direction of
  * the SemiAxis1. </P>
  */
+@Getter
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class IfcEllipse extends IfcConic {
@@ -23,9 +23,12 @@ package buildingsmart.ifc;
 import buildingsmart.io.Attribute;
 import buildingsmart.util.Functions;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
+import java.util.List;
+
 /**
  * The extruded area solid (<I>IfcExtrudedAreaSolid</I>) is defined by sweeping
  * a bounded planar surface. The direction of the extrusion is given by the
@@ -47,6 +50,7 @@ import lombok.ToString;
  * are not longer restricted to be perpendicular to the extruded surface of the
  * profile.</P>
  */
+@Getter
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class IfcExtrudedAreaSolid extends IfcSweptAreaSolid {
@@ -82,9 +86,9 @@ public class IfcExtrudedAreaSolid extends IfcSweptAreaSolid {
             throw new IllegalArgumentException(
                     "extrudedDirection must be three-dimensional");
         }
-        if (Functions
-                .ifcDotProduct(new IfcDirection(0, 0, 1), extrudedDirection)
-                .getValue() == 0) {
+        // the dot product with the local z-axis is the z component
+        List<IfcReal> normalisedDirection = extrudedDirection.getNormalisedDirectionRatios();
+        if (normalisedDirection == null || Functions.round(normalisedDirection.get(2).getValue()) == 0) {
             throw new IllegalArgumentException(
                     "extrudedDirection cannot be perpendicular to the local " +
                             "z-axis");
@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -68,6 +69,7 @@ import java.util.Set;
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public class IfcFace extends IfcTopologicalRepresentationItem {
+    @Getter
     @Attribute(0)
     private final Set<IfcFaceBound> bounds;
 
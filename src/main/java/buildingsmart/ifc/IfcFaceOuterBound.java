@@ -19,9 +19,18 @@
 
 package buildingsmart.ifc;
 
+import lombok.EqualsAndHashCode;
 import lombok.NonNull;
+import lombok.ToString;
 
-public abstract class IfcFaceOuterBound extends IfcFaceBound {
+/**
+ * A face outer bound is a special subtype of face bound that carries the
+ * additional semantics of defining the outer boundary on the surface of the
+ * face. No more than one boundary of a face shall be of this type.
+ */
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class IfcFaceOuterBound extends IfcFaceBound {
     /**
      * @param bound       The loop which will be used as a face boundary.
      * @param orientation This indicated whether (TRUE) or not (FALSE) the
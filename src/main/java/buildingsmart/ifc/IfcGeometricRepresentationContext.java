@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -38,6 +39,7 @@ import lombok.ToString;
 @ToString(callSuper = true)
 public class IfcGeometricRepresentationContext
         extends IfcRepresentationContext {
+    @Getter
     @Attribute(2)
     private final IfcDimensionCount coordinateSpaceDimension;
     @Attribute(3)
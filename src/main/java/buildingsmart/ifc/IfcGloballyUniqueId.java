@@ -19,9 +19,10 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.DefinedType;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
-import lombok.ToString;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 /**
@@ -70,10 +71,8 @@ import java.util.UUID;
  * exchanged within the IFC exchange file structure.
  */
 @EqualsAndHashCode
-@ToString
 public class IfcGloballyUniqueId implements DefinedType {
     protected static final int LENGTH = 22;
-    private static final String ALLOWED_CHARS_REGEX = "^[0-9A-Za-z_$]*$";
     private static final char[] CONVERSION_TABLE = new char[]{'0',
                                                               '1',
                                                               '2',
@@ -138,7 +137,38 @@ public class IfcGloballyUniqueId implements DefinedType {
                                                               'z',
                                                               '_',
                                                               '$'};
-    private final String value;
+    /**
+     * Maps each ASCII character to its index in {@link #CONVERSION_TABLE}, or
+     * to -1 if the character is not allowed.
+     */
+    private static final byte[] DECODING_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(DECODING_TABLE, (byte) -1);
+        for (int i = 0; i < CONVERSION_TABLE.length; i++) {
+            DECODING_TABLE[CONVERSION_TABLE[i]] = (byte) i;
+        }
+    }
+
+    /**
+     * The most significant 64 bits of the 128-bit identifier.
+     */
+    @Getter
+    private final long mostSignificantBits;
+    /**
+     * The least significant 64 bits of the 128-bit identifier.
+     */
+    @Getter
+    private final long leastSignificantBits;
+    /**
+     * The first character of a compressed GUID only carries the two most
+     * significant bits of the identifier, so it should be one of {@code
+     * '0'-'3'}. Strings starting with any other allowed character have always
+     * been accepted by this class, so the remaining high bits of the first
+     * character are kept here to serialize them unchanged. It is 0 for every
+     * identifier generated by this class.
+     */
+    private final byte overflow;
 
     /**
      * @param value The String representation of the GUID, obtained by mapping
@@ -154,131 +184,96 @@ public class IfcGloballyUniqueId implements DefinedType {
             throw new IllegalArgumentException(
                     "value must be 22 characters long");
         }
-        if (!value.matches(ALLOWED_CHARS_REGEX)) {
-            throw new IllegalArgumentException(
-                    "value contains illegal characters");
+        int first = decode(value.charAt(0));
+        long high = 0;
+        long low = first & 0x3;
+        for (int i = 1; i < LENGTH; i++) {
+            int digit = decode(value.charAt(i));
+            // shifts the 128-bit number (high, low) left by 6 bits
+            high = (high << 6) | (low >>> 58);
+            low = (low << 6) | digit;
         }
-        this.value = value;
+        this.mostSignificantBits = high;
+        this.leastSignificantBits = low;
+        this.overflow = (byte) (first >>> 2);
     }
 
     /**
-     * Generates a pseudo random IfcGloballyUniqueId.
+     * @param mostSignificantBits  The most significant 64 bits of the 128-bit
+     *                             identifier.
+     * @param leastSignificantBits The least significant 64 bits of the 128-bit
+     *                             identifier.
      */
-    public IfcGloballyUniqueId() {
-        this.value =
-                getCompressedStringFromGuid(getGuidFromUUID(UUID.randomUUID()));
+    public IfcGloballyUniqueId(long mostSignificantBits,
+                               long leastSignificantBits) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+        this.overflow = 0;
     }
 
     /**
-     * Converts an UIID (also called GUID) into a Guid data structure.
-     *
-     * @param uuid the UUID to convert.
-     * @return a Guid object.
+     * @param uuid The UUID from which to build the identifier.
+     * @throws NullPointerException If uuid is null.
      */
-    private static Guid getGuidFromUUID(UUID uuid) {
-        String uncompressedUuidString = uuid.toString();
-        String[] parts = uncompressedUuidString.split("-");
-        Guid guid = new Guid();
-        guid.data1 = Long.parseLong(parts[0], 16);
-        guid.data2 = Integer.parseInt(parts[1], 16);
-        guid.data3 = Integer.parseInt(parts[2], 16);
-
-        String temp;
-
-        temp = parts[3];
-        guid.data4[0] = (char) Integer.parseInt(temp.substring(0, 2), 16);
-        guid.data4[1] = (char) Integer.parseInt(temp.substring(2, 4), 16);
-
-        temp = parts[4];
-        guid.data4[2] = (char) Integer.parseInt(temp.substring(0, 2), 16);
-        guid.data4[3] = (char) Integer.parseInt(temp.substring(2, 4), 16);
-        guid.data4[4] = (char) Integer.parseInt(temp.substring(4, 6), 16);
-        guid.data4[5] = (char) Integer.parseInt(temp.substring(6, 8), 16);
-        guid.data4[6] = (char) Integer.parseInt(temp.substring(8, 10), 16);
-        guid.data4[7] = (char) Integer.parseInt(temp.substring(10, 12), 16);
-
-        return guid;
+    public IfcGloballyUniqueId(@NonNull UUID uuid) {
+        this(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
     }
 
     /**
-     * Converts a Guid object into its compressed String representation
-     * according to the IFC specification.
-     *
-     * @param guid The Guid object to compress.
-     * @return The 22 characters long String representation of the Guid.
+     * Generates a pseudo random IfcGloballyUniqueId.
      */
-    private static String getCompressedStringFromGuid(Guid guid) {
-        long[] num = new long[6];
-        char[][] str = new char[6][5];
-        int i, j, n;
-        StringBuilder result = new StringBuilder();
-
-        // Creation of six 32 bit integers from the components of the Guid
-        // structure
-        num[0] = guid.data1 / 16777216;
-        // 16. byte  (guid.data1 / 16777216) is the same as (guid.data1 >> 24)
-        num[1] = guid.data1 % 16777216;
-        // 15-13. bytes (guid.data1 % 16777216) is the same as (guid.data1 &
-        // 0xFFFFFF)
-        num[2] = guid.data2 * 256L + guid.data3 / 256;
-        // 12-10. bytes
-        num[3] = (guid.data3 % 256) * 65536 + guid.data4[0] * 256 +
-                guid.data4[1];
-        // 09-07. bytes
-        num[4] = guid.data4[2] * 65536L + guid.data4[3] * 256 + guid.data4[4];
-        // 06-04. bytes
-        num[5] = guid.data4[5] * 65536L + guid.data4[6] * 256 + guid.data4[7];
-        // 03-01. bytes
-
-        // Conversion of the numbers into a system using a base of 64
-        n = 3;
-        for (i = 0; i < 6; i++) {
-            if (!convertToBase64(num[i], str[i], n)) {
-                return null;
-            }
-            for (j = 0; j < str[i].length; j++) {
-                if (str[i][j] != '\0') {
-                    result.append(str[i][j]);
-                }
-            }
-            n = 5;
-        }
-        return result.toString();
+    public IfcGloballyUniqueId() {
+        this(UUID.randomUUID());
     }
 
     /**
-     * Conversion of an integer into a number with base 64 using the table
-     * CONVERSION_TABLE.
+     * @param c The character to decode.
+     * @return The index of {@code c} in {@link #CONVERSION_TABLE}.
      *
-     * @param number The integer to convert.
-     * @param code   The char array where to put the converted integer.
-     * @return true if no error occurred
+     * @throws IllegalArgumentException If {@code c} is not included in {@link
+     *                                  #CONVERSION_TABLE}.
      */
-    private static boolean convertToBase64(long number, char[] code, int len) {
-        long act;
-        int iDigit, nDigits;
-        char[] result = new char[5];
-
-        if (len > 5) {
-            return false;
+    private static int decode(char c) {
+        byte digit = c < DECODING_TABLE.length ? DECODING_TABLE[c] : -1;
+        if (digit < 0) {
+            throw new IllegalArgumentException(
+                    "value contains illegal characters");
         }
+        return digit;
+    }
 
-        act = number;
-        nDigits = len - 1;
-
-        for (iDigit = 0; iDigit < nDigits; iDigit++) {
-            result[nDigits - iDigit - 1] = CONVERSION_TABLE[(int) (act % 64)];
-            act /= 64;
-        }
-        result[len - 1] = '\0';
+    /**
+     * @return {@code true} if this identifier is fully described by its 128
+     * bits, {@code false} if it was created from a String whose first character
+     * is not one of {@code '0'-'3'}.
+     */
+    public boolean isCanonical() {
+        return overflow == 0;
+    }
 
-        if (act != 0) {
-            return false;
+    /**
+     * @return The 22 characters long compressed String representation of this
+     * identifier, according to the IFC specification.
+     */
+    public String getValue() {
+        char[] result = new char[LENGTH];
+        result[0] = CONVERSION_TABLE[(overflow << 2) |
+                (int) (mostSignificantBits >>> 62)];
+        for (int i = 1; i < LENGTH; i++) {
+            int shift = 6 * (LENGTH - 1 - i);
+            long digit;
+            if (shift >= Long.SIZE) {
+                digit = mostSignificantBits >>> (shift - Long.SIZE);
+            } else if (shift + 6 <= Long.SIZE) {
+                digit = leastSignificantBits >>> shift;
+            } else {
+                // the digit is split between the two halves
+                digit = (leastSignificantBits >>> shift) |
+                        (mostSignificantBits << (Long.SIZE - shift));
+            }
+            result[i] = CONVERSION_TABLE[(int) (digit & 0x3F)];
         }
-
-        System.arraycopy(result, 0, code, 0, result.length);
-
-        return true;
+        return new String(result);
     }
 
     /**
@@ -286,18 +281,11 @@ public class IfcGloballyUniqueId implements DefinedType {
      */
     @Override
     public String serialize() {
-        return "'" + value + "'";
+        return "'" + getValue() + "'";
     }
 
-    /**
-     * Data structure used for the conversion from standard String
-     * representation of a UUID (or GUID) to its compressed String
-     * representation (according to the IFC specification).
-     */
-    private static class Guid {
-        long data1;
-        int data2;
-        int data3;
-        final char[] data4 = new char[8];
+    @Override
+    public String toString() {
+        return "IfcGloballyUniqueId(value=" + getValue() + ")";
     }
 }
@@ -22,6 +22,7 @@ package buildingsmart.ifc;
 import buildingsmart.io.Attribute;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -34,6 +35,7 @@ import lombok.ToString;
  * about its major and minor axes; and that has both top and bottom flanges
  * being equal and centred on the web.
  */
+@Getter
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class IfcIShapeProfileDef extends IfcParameterizedProfileDef {
@@ -25,15 +25,8 @@ import buildingsmart.util.Functions;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
-import lombok.extern.slf4j.Slf4j;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
-import java.util.Objects;
+import java.util.List;
 
 /**
  * The <i>IfcLocalPlacement</i> defines the relative placement of a product in relation to the placement of another
@@ -46,12 +39,13 @@ import java.util.Objects;
  * <p>If the <i>PlacementRelTo</i> is not given, then
  * the <i>IfcProduct</i> is placed absolutely within the world coordinate system.</p>
  */
-@Slf4j
 @ToString
 public class IfcLocalPlacement extends IfcObjectPlacement {
 
-    private static final IfcAxis2Placement3D DEFAULT_A2P3D = new IfcAxis2Placement3D(0, 0, 0);
-    private static final IfcAxis2Placement2D DEFAULT_A2P2D = new IfcAxis2Placement2D(0, 0);
+    private static final long SEED_HIGH = 0x243F6A8885A308D3L;
+    private static final long SEED_LOW = 0x13198A2E03707344L;
+    private static final long PRIME_HIGH = 0x9E3779B97F4A7C15L;
+    private static final long PRIME_LOW = 0xC2B2AE3D27D4EB4FL;
 
     @Getter
     @Attribute(0)
@@ -60,10 +54,13 @@ public class IfcLocalPlacement extends IfcObjectPlacement {
     @Attribute(1)
     private final IfcAxis2Placement relativePlacement;
     /**
-     * This field is needed to avoid recursion in {@link #equals(Object)}, as comparing hashCodes of {@code
-     * placementRelTo} could lead to wrong results because of collisions.
+     * These fields are needed to avoid recursion in {@link #equals(Object)}, as comparing hashCodes of {@code
+     * placementRelTo} could lead to wrong results because of collisions. Together they are a 128-bit hash of the
+     * coordinates of the location and of the axes of {@code relativePlacement}, chained with the hash of {@code
+     * placementRelTo}.
      */
-    private final byte[] md5;
+    private final long contentHashHigh;
+    private final long contentHashLow;
 
     /**
      * @param placementRelTo    Reference to Object that provides the relative placement by its local coordinate system.
@@ -83,49 +80,92 @@ public class IfcLocalPlacement extends IfcObjectPlacement {
         }
         this.placementRelTo = placementRelTo;
         this.relativePlacement = relativePlacement;
-        if (placementRelTo != null &&
-                (relativePlacement.equals(DEFAULT_A2P3D) || relativePlacement.equals(DEFAULT_A2P2D))) {
-            this.md5 = placementRelTo.getMd5();
-        } else {
-            this.md5 = computeMD5(placementRelTo, relativePlacement);
+
+        long high = placementRelTo == null ? SEED_HIGH : placementRelTo.getContentHashHigh();
+        long low = placementRelTo == null ? SEED_LOW : placementRelTo.getContentHashLow();
+        // skips adding relativePlacement if it's the default, as in that case the placement wouldn't be different
+        // from that of placementRelTo
+        if (placementRelTo == null || !isDefault(relativePlacement)) {
+            double delta = Functions.getDelta();
+            List<IfcLengthMeasure> coordinates = relativePlacement.getLocation().getCoordinates();
+            for (int i = 0; i < coordinates.size(); i++) {
+                long q = quantize(coordinates.get(i).getValue(), delta);
+                high = Long.rotateLeft(high ^ q, 31) * PRIME_HIGH;
+                low = Long.rotateLeft(low + q, 27) * PRIME_LOW;
+            }
+            List<IfcDirection> axes = relativePlacement.getP();
+            for (int i = 0; i < axes.size(); i++) {
+                List<IfcReal> ratios = axes.get(i).getNormalisedDirectionRatios();
+                for (int j = 0; j < ratios.size(); j++) {
+                    long q = quantize(ratios.get(j).getValue(), delta);
+                    high = Long.rotateLeft(high ^ q, 31) * PRIME_HIGH;
+                    low = Long.rotateLeft(low + q, 27) * PRIME_LOW;
+                }
+            }
+            high = finalizeHash(high ^ low);
+            low = finalizeHash(low + high);
         }
+        this.contentHashHigh = high;
+        this.contentHashLow = low;
     }
 
-    private static byte[] computeMD5(IfcObjectPlacement placementRelTo, IfcAxis2Placement relativePlacement) {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(baos)) {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-
-            // adds placementRelTo
-            if (placementRelTo != null) {
-                md.update(placementRelTo.getMd5());
+    /**
+     * @param relativePlacement The placement on which to perform the check.
+     * @return {@code true} if {@code relativePlacement} is located in the origin and its axes are the ones of the
+     * coordinate system it is relative to, {@code false} otherwise.
+     */
+    private static boolean isDefault(IfcAxis2Placement relativePlacement) {
+        double delta = Functions.getDelta();
+        List<IfcLengthMeasure> coordinates = relativePlacement.getLocation().getCoordinates();
+        for (int i = 0; i < coordinates.size(); i++) {
+            if (Math.abs(coordinates.get(i).getValue()) > delta) {
+                return false;
             }
-
-            // skips adding relativePlacement if it's the default, as in that case the placement wouldn't be different
-            // from that of placementRelTo
-            if (!relativePlacement.equals(DEFAULT_A2P3D) && !relativePlacement.equals(DEFAULT_A2P2D)) {
-                oos.writeObject(relativePlacement.getLocation());
-                oos.writeObject(relativePlacement.getP());
-                md.update(baos.toByteArray());
+        }
+        List<IfcDirection> axes = relativePlacement.getP();
+        for (int i = 0; i < axes.size(); i++) {
+            List<IfcReal> ratios = axes.get(i).getNormalisedDirectionRatios();
+            for (int j = 0; j < ratios.size(); j++) {
+                if (Math.abs(ratios.get(j).getValue() - (i == j ? 1 : 0)) > delta) {
+                    return false;
+                }
             }
+        }
+        return true;
+    }
 
-            return md.digest();
-        } catch (NoSuchAlgorithmException | IOException e) {
-            // MD5 must be implemented by the Java Security API so the NoSuchAlgorithmException should not be possible,
-            // see https://docs.oracle.com/javase/1.5.0/docs/guide/security/CryptoSpec.html#AppA
-            log.error("", e);
-
-            // using hashCode instead of md5, not ideal but at least the program won't crash because of an
-            // IOException. This could lead to wrong comparisons in equals() when comparing two identical instances
-            // of this class if in one of them md5 was initialized in the try block. The only inconvenience resulting
-            // from it should be that the same object will be serialized multiple times, but the generated IFC files
-            // should be correct.
-            int hashCode = Objects.hash(placementRelTo, relativePlacement);
-            return new byte[]{(byte) (hashCode >>> 24),
-                              (byte) (hashCode >>> 16),
-                              (byte) (hashCode >>> 8),
-                              (byte) hashCode};
+    /**
+     * @param value The value to quantize.
+     * @param delta The precision used for double values.
+     * @return The value as a multiple of {@code delta}, so that values which would be serialized in the same way
+     * usually get the same result.
+     */
+    private static long quantize(double value, double delta) {
+        if (delta == 0) {
+            return Double.doubleToLongBits(value == -0d ? 0d : value);
         }
+        return Math.round(value / delta);
+    }
+
+    /**
+     * @param h The hash to finalize.
+     * @return The hash with its bits mixed, as done by the finalizer of MurmurHash3.
+     */
+    private static long finalizeHash(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param that The placement to compare with this one.
+     * @return {@code true} if the content hash of this placement is the same as the one of {@code that}.
+     */
+    private boolean sameContentHash(IfcObjectPlacement that) {
+        return contentHashHigh == that.getContentHashHigh() && contentHashLow == that.getContentHashLow();
     }
 
     @Override
@@ -139,33 +179,29 @@ public class IfcLocalPlacement extends IfcObjectPlacement {
         if (!super.equals(o)) return false;
         IfcLocalPlacement that = (IfcLocalPlacement) o;
 
-        return Arrays.equals(md5, that.md5) && relativePlacement.equals(that.relativePlacement) ||
+        return sameContentHash(that) && relativePlacement.equals(that.relativePlacement) ||
                 // if a "child" placement is in the same place as its parent, they're considered equal
-                that.placementRelTo != null && Arrays.equals(md5, that.placementRelTo.getMd5()) &&
-                        (that.relativePlacement.equals(DEFAULT_A2P3D) || that.relativePlacement.equals(DEFAULT_A2P2D)) ||
-                placementRelTo != null && Arrays.equals(placementRelTo.getMd5(), that.md5) &&
-                        (relativePlacement.equals(DEFAULT_A2P3D) || relativePlacement.equals(DEFAULT_A2P2D));
+                that.placementRelTo != null && sameContentHash(that.placementRelTo) &&
+                        isDefault(that.relativePlacement) ||
+                placementRelTo != null && that.sameContentHash(placementRelTo) && isDefault(relativePlacement);
     }
 
     /**
-     * @return The hashCode generated by using the last 4 bytes of the md5.
+     * @return The hashCode generated by using the least significant bits of the content hash.
      */
     @Override
     public int hashCode() {
-        byte b0 = md5[md5.length - 4];
-        byte b1 = md5[md5.length - 3];
-        byte b2 = md5[md5.length - 2];
-        byte b3 = md5[md5.length - 1];
-
-        int result = ((b0 & 0xFF) << 24) | ((b1 & 0xFF) << 16) | ((b2 & 0xFF) << 8) | (b3 & 0xFF);
+        int result = (int) (contentHashLow ^ (contentHashLow >>> 32));
         return result + 31 * super.hashCode();
     }
 
-    /**
-     * @return The MD5 digest of the serialization of this class.
-     */
     @Override
-    protected byte[] getMd5() {
-        return md5;
+    protected long getContentHashHigh() {
+        return contentHashHigh;
+    }
+
+    @Override
+    protected long getContentHashLow() {
+        return contentHashLow;
     }
 }
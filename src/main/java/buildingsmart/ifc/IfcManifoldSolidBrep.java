@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -75,6 +76,7 @@ import lombok.ToString;
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public abstract class IfcManifoldSolidBrep extends IfcSolidModel {
+    @Getter
     @Attribute(0)
     private final IfcClosedShell outer;
 
@@ -1,6 +1,7 @@
 /*
  * Copyright (C) 2019 Pieter Pauwels, Ghent University
  * Modifications Copyright (C) 2020 Giovanni Velludo
+ * Modifications Copyright (C) 2022 Antea S.r.l.
  *
  * This file is part of ifc-java.
  *
@@ -19,7 +20,44 @@
 
 package buildingsmart.ifc;
 
-public abstract class IfcMappedItem extends IfcRepresentationItem {
-    private IfcRepresentationMap MappingSource;
-    private IfcCartesianTransformationOperator MappingTarget;
+import buildingsmart.io.Attribute;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * The IfcMappedItem is the inserted instance of a source definition (to be
+ * compared with a block / shared cell / macro definition). The instance is
+ * inserted by applying a Cartesian transformation operator as the
+ * MappingTarget.
+ * <p>
+ * The same IfcRepresentationMap can be used by any number of mapped items,
+ * each of them adds only two references to the output file instead of a copy
+ * of the mapped geometry.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = false)
+@ToString
+public class IfcMappedItem extends IfcRepresentationItem {
+    @Attribute(0)
+    private final IfcRepresentationMap mappingSource;
+    @Attribute(1)
+    private final IfcCartesianTransformationOperator mappingTarget;
+
+    /**
+     * @param mappingSource A representation map that is the source of the
+     *                      mapped item. It can be seen as a block (or cell or
+     *                      marco) definition.
+     * @param mappingTarget A representation item that is the target onto which
+     *                      the source is mapped. It is a Cartesian
+     *                      transformation operator.
+     * @throws NullPointerException If any of the arguments is null.
+     */
+    public IfcMappedItem(@NonNull IfcRepresentationMap mappingSource,
+                         @NonNull IfcCartesianTransformationOperator mappingTarget) {
+        this.mappingSource = mappingSource;
+        this.mappingTarget = mappingTarget;
+        mappingSource.addToMapUsage(this);
+    }
 }
@@ -22,6 +22,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import buildingsmart.io.InverseRelationship;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -77,6 +78,7 @@ import java.util.Set;
 public abstract class IfcObject extends IfcObjectDefinition {
 
     @Attribute(4)
+    @Getter
     private final IfcLabel objectType;
     /**
      * Set of relationships to type or property (statically or dynamically defined) information that further define the
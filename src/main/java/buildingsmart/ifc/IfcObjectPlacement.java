@@ -66,7 +66,14 @@ public abstract class IfcObjectPlacement extends Entity implements Serializable
     //private IfcLocalPlacement[] ReferencedByPlacements;
 
     /**
-     * @return The MD5 digest of the serialization of this class.
+     * @return The most significant bits of the 128-bit hash of the position of this placement in the world coordinate
+     * system, which includes the placements it is relative to.
      */
-    protected abstract byte[] getMd5();
+    protected abstract long getContentHashHigh();
+
+    /**
+     * @return The least significant bits of the 128-bit hash of the position of this placement in the world coordinate
+     * system, which includes the placements it is relative to.
+     */
+    protected abstract long getContentHashLow();
 }
@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.DefinedType;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 
 import static buildingsmart.util.Functions.format;
 
@@ -31,6 +32,7 @@ import static buildingsmart.util.Functions.format;
 @EqualsAndHashCode
 public class IfcParameterValue
         implements DefinedType, IfcMeasureValue, IfcTrimmingSelect {
+    @Getter
     @EqualsAndHashCode.Exclude
     private final double value;
     private final String serialization;
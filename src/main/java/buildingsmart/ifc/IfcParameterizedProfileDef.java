@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -37,6 +38,7 @@ import lombok.ToString;
  * that becomes the origin [0.,0.,0.] of the extruded or rotated surface or
  * solid.
  */
+@Getter
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public abstract class IfcParameterizedProfileDef extends IfcProfileDef {
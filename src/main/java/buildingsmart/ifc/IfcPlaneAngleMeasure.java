@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.DefinedType;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 
 import static buildingsmart.util.Functions.format;
 
@@ -38,6 +39,7 @@ import static buildingsmart.util.Functions.format;
  */
 @EqualsAndHashCode
 public class IfcPlaneAngleMeasure implements DefinedType, IfcMeasureValue {
+    @Getter
     @EqualsAndHashCode.Exclude
     private final double value;
     private final String serialization;
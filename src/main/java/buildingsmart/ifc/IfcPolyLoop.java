@@ -20,7 +20,9 @@
 package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
+import buildingsmart.util.DeferredValidation;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -64,6 +66,7 @@ import java.util.List;
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public class IfcPolyLoop extends IfcLoop {
+    @Getter
     @Attribute(0)
     private final List<IfcCartesianPoint> polygon;
 
@@ -75,19 +78,71 @@ public class IfcPolyLoop extends IfcLoop {
      *                                  the same dimensionality.
      */
     public IfcPolyLoop(@NonNull List<IfcCartesianPoint> polygon) {
-        if (polygon.stream().distinct().count() < 3) {
+        DeferredValidation validation = DeferredValidation.current();
+        if (validation == null) {
+            check(polygon);
+        } else {
+            validation.defer(this, () -> check(polygon));
+        }
+        this.polygon = polygon;
+    }
+
+    /**
+     * @param polygon List of points defining the loop.
+     * @throws IllegalArgumentException If the size of {@code polygon} is smaller than 3, if the first point of
+     *                                  {@code polygon} is the same as the last, if points in {@code polygon} don't have
+     *                                  the same dimensionality.
+     */
+    private static void check(List<IfcCartesianPoint> polygon) {
+        if (polygon.size() < 3) {
             throw new IllegalArgumentException("polygon must contain at least 3 different points");
         }
-        if (polygon.get(0).equals(polygon.get(polygon.size() - 1))) {
+        IfcCartesianPoint first = polygon.get(0);
+        if (samePoint(first, polygon.get(polygon.size() - 1))) {
             throw new IllegalArgumentException("the first and last point of polygon must be different");
         }
-        IfcDimensionCount firstPointDim = polygon.get(0).getDim();
-        if (polygon.stream()
-                .anyMatch(point -> !point.getDim().equals(firstPointDim))) {
-            throw new IllegalArgumentException(
-                    "dimensionality of all points in polygon must be the same");
+        int dim = first.getDim().getValue();
+        // the last point is different from the first, so only a third one is needed
+        IfcCartesianPoint second = null;
+        boolean threeDistinct = false;
+        for (int i = 1; i < polygon.size(); i++) {
+            IfcCartesianPoint point = polygon.get(i);
+            if (point.getDim().getValue() != dim) {
+                throw new IllegalArgumentException("dimensionality of all points in polygon must be the same");
+            }
+            if (!threeDistinct && !samePoint(first, point)) {
+                if (second == null) {
+                    second = point;
+                } else if (!samePoint(second, point)) {
+                    threeDistinct = true;
+                }
+            }
         }
-        this.polygon = polygon;
+        if (!threeDistinct) {
+            throw new IllegalArgumentException("polygon must contain at least 3 different points");
+        }
+    }
+
+    /**
+     * @return {@code true} if the points are the same instance or are equal, checking the coordinates before calling
+     * {@link IfcCartesianPoint#equals(Object)}.
+     */
+    private static boolean samePoint(IfcCartesianPoint a, IfcCartesianPoint b) {
+        if (a == b) {
+            return true;
+        }
+        List<IfcLengthMeasure> aCoordinates = a.getCoordinates();
+        List<IfcLengthMeasure> bCoordinates = b.getCoordinates();
+        if (aCoordinates.size() != bCoordinates.size()) {
+            return false;
+        }
+        for (int i = 0; i < aCoordinates.size(); i++) {
+            if (aCoordinates.get(i).getValue() != bCoordinates.get(i).getValue()) {
+                // values which differ by less than the precision are serialized in the same way
+                return a.equals(b);
+            }
+        }
+        return true;
     }
 
     /**
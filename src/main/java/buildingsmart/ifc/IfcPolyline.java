@@ -20,7 +20,9 @@
 package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
+import buildingsmart.util.DeferredValidation;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -34,6 +36,7 @@ import java.util.List;
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public class IfcPolyline extends IfcBoundedCurve {
+    @Getter
     @Attribute(0)
     private final List<IfcCartesianPoint> points;
 
@@ -45,17 +48,33 @@ public class IfcPolyline extends IfcBoundedCurve {
      *                                  the same dimensionality.
      */
     public IfcPolyline(@NonNull List<IfcCartesianPoint> points) {
+        DeferredValidation validation = DeferredValidation.current();
+        if (validation == null) {
+            check(points);
+        } else {
+            validation.defer(this, () -> check(points));
+        }
+        this.points = points;
+    }
+
+    /**
+     * @param points The points defining the polyline.
+     * @throws IllegalArgumentException If the size of {@code points} is smaller
+     *                                  than 2, if all {@code points} don't have
+     *                                  the same dimensionality.
+     */
+    private static void check(List<IfcCartesianPoint> points) {
         if (points.size() < 2) {
             throw new IllegalArgumentException(
                     "size of points must be at least 2");
         }
-        IfcDimensionCount firstPointDim = points.get(0).getDim();
-        if (!points.stream()
-                .allMatch(point -> point.getDim().equals(firstPointDim))) {
-            throw new IllegalArgumentException(
-                    "dimensionality of all points must be the same");
+        int dim = points.get(0).getDim().getValue();
+        for (int i = 1; i < points.size(); i++) {
+            if (points.get(i).getDim().getValue() != dim) {
+                throw new IllegalArgumentException(
+                        "dimensionality of all points must be the same");
+            }
         }
-        this.points = points;
     }
 
     /**
@@ -67,10 +67,11 @@ import lombok.ToString;
  */
 @ToString(callSuper = true)
 public abstract class IfcProduct extends IfcObject {
+    @Getter
     @Attribute(5)
     private final IfcObjectPlacement objectPlacement;
     @ToString.Exclude
-    @Getter(AccessLevel.PROTECTED)
+    @Getter
     @Attribute(6)
     private final IfcProductRepresentation representation;
 
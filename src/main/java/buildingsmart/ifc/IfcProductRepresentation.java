@@ -26,7 +26,9 @@ import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 import lombok.ToString;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -44,7 +46,7 @@ public class IfcProductRepresentation extends Entity {
     @Attribute(1)
     private final IfcText description;
     @Attribute(2)
-    private final List<IfcRepresentation> representations;
+    private List<IfcRepresentation> representations;
 
     /**
      * @param name            The word or group of words by which the product
@@ -104,4 +106,47 @@ public class IfcProductRepresentation extends Entity {
             repr.setOfProductRepresentation(this);
         }
     }
+
+    /**
+     * @return The representations of the product. The List is unmodifiable.
+     */
+    public List<IfcRepresentation> getRepresentations() {
+        return Collections.unmodifiableList(representations);
+    }
+
+    /**
+     * Replaces one of the representations of the product, keeping its position
+     * in the list of representations.
+     *
+     * @param representation The representation to replace.
+     * @param replacement    The representation that takes its place.
+     * @throws NullPointerException     If any of the arguments is null.
+     * @throws IllegalArgumentException If representation is not one of the
+     *                                  representations of the product.
+     * @throws IllegalStateException    If replacement is already used by an
+     *                                  IfcProductRepresentation, by an
+     *                                  IfcRepresentationMap or by an
+     *                                  IfcShapeAspect.
+     */
+    public void replaceRepresentation(@NonNull IfcRepresentation representation,
+                                      @NonNull IfcRepresentation replacement) {
+        int index = -1;
+        for (int i = 0; i < representations.size() && index < 0; i++) {
+            if (representations.get(i) == representation) {
+                index = i;
+            }
+        }
+        if (index < 0) {
+            throw new IllegalArgumentException("representation is not one of the representations of the product");
+        }
+        if (replacement.isUsed()) {
+            throw new IllegalStateException("replacement is already used by an IfcProductRepresentation, " +
+                                                    "an IfcRepresentationMap or an IfcShapeAspect");
+        }
+        replacement.setOfProductRepresentation(this);
+        representation.setOfProductRepresentation(null);
+        List<IfcRepresentation> replaced = new ArrayList<>(representations);
+        replaced.set(index, replacement);
+        representations = replaced;
+    }
 }
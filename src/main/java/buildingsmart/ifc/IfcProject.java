@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.Builder;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.Singular;
 import lombok.ToString;
@@ -45,6 +46,7 @@ import java.util.Set;
  * </ul>
  */
 @ToString(callSuper = true)
+@Getter
 public class IfcProject extends IfcObject {
     @Attribute(5)
     private final IfcLabel longName;
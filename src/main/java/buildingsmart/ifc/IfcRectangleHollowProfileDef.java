@@ -22,6 +22,7 @@ package buildingsmart.ifc;
 import buildingsmart.io.Attribute;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -37,6 +38,7 @@ import lombok.ToString;
  * longer sides are parallel to the y-axis, the shorter sides parallel to the
  * x-axis.</p>
  */
+@Getter
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class IfcRectangleHollowProfileDef extends IfcRectangleProfileDef {
@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -32,6 +33,7 @@ import lombok.ToString;
  * is placed <font color="#ff0000">centric</font> within the position coordinate
  * system. </p>
  */
+@Getter
 @EqualsAndHashCode(callSuper = true)
 @ToString(callSuper = true)
 public class IfcRectangleProfileDef extends IfcParameterizedProfileDef {
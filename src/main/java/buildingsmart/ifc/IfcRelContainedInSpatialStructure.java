@@ -27,7 +27,7 @@ import lombok.ToString;
 
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -241,7 +241,7 @@ public class IfcRelContainedInSpatialStructure extends IfcRelConnects implements
              ownerHistory,
              name,
              description,
-             new HashSet<>(Arrays.asList(relatedElements)),
+             new LinkedHashSet<>(Arrays.asList(relatedElements)),
              relatingStructure);
     }
 
@@ -283,18 +283,18 @@ public class IfcRelContainedInSpatialStructure extends IfcRelConnects implements
         this(ownerHistory,
              name,
              description,
-             new HashSet<>(Arrays.asList(relatedElements)),
+             new LinkedHashSet<>(Arrays.asList(relatedElements)),
              relatingStructure);
     }
 
     /**
-     * @return A copy of relatedElements. Operations performed on this Set don't
-     * have any effect on relatedElements. This is done to prevent its size from
+     * @return A copy of relatedElements, iterated in the same order. Operations
+     * performed on this Set don't have any effect on relatedElements. This is done to prevent its size from
      * becoming zero, and to prevent the addition of illegal IfcProducts to
      * relatedElements.
      */
     public Set<IfcProduct> getRelatedElements() {
-        return new HashSet<>(relatedElements);
+        return new LinkedHashSet<>(relatedElements);
     }
 
     protected IfcSpatialStructureElement getRelatingStructure() {
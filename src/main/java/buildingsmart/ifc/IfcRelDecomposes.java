@@ -146,7 +146,7 @@ public class IfcRelDecomposes extends IfcRelationship {
                             IfcText description,
                             @NonNull IfcObjectDefinition relatingObject,
                             @NonNull IfcObjectDefinition... relatedObjects) {
-        this(globalId, ownerHistory, name, description, relatingObject, new HashSet<>(Arrays.asList(relatedObjects)));
+        this(globalId, ownerHistory, name, description, relatingObject, new LinkedHashSet<>(Arrays.asList(relatedObjects)));
     }
 
     /**
@@ -177,7 +177,7 @@ public class IfcRelDecomposes extends IfcRelationship {
              name,
              description,
              relatingObject,
-             new HashSet<>(Arrays.asList(relatedObjects)));
+             new LinkedHashSet<>(Arrays.asList(relatedObjects)));
     }
 
     protected IfcObjectDefinition getRelatingObject() {
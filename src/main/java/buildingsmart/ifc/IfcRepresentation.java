@@ -26,6 +26,7 @@ import buildingsmart.io.InverseRelationship;
 import lombok.*;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -36,10 +37,13 @@ import java.util.Set;
 @EqualsAndHashCode(callSuper = false, onlyExplicitlyIncluded = true)
 @ToString
 public class IfcRepresentation extends Entity {
+    @Getter
     @Attribute(0)
     private final IfcRepresentationContext contextOfItems;
+    @Getter
     @Attribute(1)
     private final IfcLabel representationIdentifier;
+    @Getter
     @Attribute(2)
     private final IfcLabel representationType;
     @Attribute(3)
@@ -126,4 +130,19 @@ public class IfcRepresentation extends Entity {
              representationType,
              new HashSet<>(Arrays.asList(items)));
     }
+
+    /**
+     * @return {@code true} if this representation is already used by an
+     * IfcProductRepresentation or by an IfcRepresentationMap.
+     */
+    boolean isUsed() {
+        return ofProductRepresentation != null || representationMap != null;
+    }
+
+    /**
+     * @return The items of this representation. The Set is unmodifiable.
+     */
+    public Set<IfcRepresentationItem> getItems() {
+        return Collections.unmodifiableSet(items);
+    }
 }
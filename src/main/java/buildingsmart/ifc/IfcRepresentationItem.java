@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Entity;
 import buildingsmart.io.InverseRelationship;
+import lombok.Getter;
 
 /**
  * A representation item is an element of product data that participates in one
@@ -30,6 +31,11 @@ import buildingsmart.io.InverseRelationship;
  * item.
  */
 public abstract class IfcRepresentationItem extends Entity {
+    /**
+     * Reference to the IfcStyledItem that provides presentation information to
+     * the representation, or null.
+     */
+    @Getter
     @InverseRelationship
     private IfcStyledItem styledByItem;
 
@@ -1,6 +1,7 @@
 /*
  * Copyright (C) 2019 Pieter Pauwels, Ghent University
  * Modifications Copyright (C) 2020 Giovanni Velludo
+ * Modifications Copyright (C) 2022 Antea S.r.l.
  *
  * This file is part of ifc-java.
  *
@@ -19,8 +20,96 @@
 
 package buildingsmart.ifc;
 
-public class IfcRepresentationMap {
-    private IfcAxis2Placement MappingOrigin;
-    private IfcRepresentation MappedRepresentation;
-    private IfcMappedItem[] MapUsage;
+import buildingsmart.io.Attribute;
+import buildingsmart.io.Entity;
+import buildingsmart.io.InverseRelationship;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An IfcRepresentationMap defines the base definition (also referred to as
+ * block, cell or macro) called the MappedRepresentation within the
+ * MappingOrigin. The MappingOrigin defines the coordinate system in which the
+ * MappedRepresentation is defined.
+ * <p>
+ * The RepresentationMap is used through an IfcMappedItem in one or several
+ * IfcShapeRepresentation's. An Cartesian transformation operator can be
+ * applied to transform the MappedRepresentation into the placement coordinate
+ * system of the shape representation. This way the geometry of a shared
+ * representation is written only once, however many times it is placed.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = false)
+@ToString
+public class IfcRepresentationMap extends Entity {
+    @Attribute(0)
+    private final IfcAxis2Placement mappingOrigin;
+    @Attribute(1)
+    private final IfcRepresentation mappedRepresentation;
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Getter(lombok.AccessLevel.NONE)
+    @InverseRelationship
+    private Set<IfcMappedItem> mapUsage;
+
+    /**
+     * @param mappingOrigin        An axis2 placement that defines the position
+     *                             about which the mapped representation is
+     *                             mapped.
+     * @param mappedRepresentation A representation that is mapped to at least
+     *                             one mapped item.
+     * @throws NullPointerException     If any of the arguments is null.
+     * @throws IllegalArgumentException If mappedRepresentation is not an
+     *                                  IfcShapeModel.
+     * @throws IllegalStateException    If mappedRepresentation is already used
+     *                                  by an IfcProductRepresentation, by
+     *                                  another IfcRepresentationMap or by an
+     *                                  IfcShapeAspect.
+     */
+    public IfcRepresentationMap(@NonNull IfcAxis2Placement mappingOrigin,
+                                @NonNull IfcRepresentation mappedRepresentation) {
+        if (!(mappedRepresentation instanceof IfcShapeModel)) {
+            throw new IllegalArgumentException("mappedRepresentation must be an IfcShapeModel");
+        }
+        if (mappedRepresentation.isUsed()) {
+            throw new IllegalStateException("mappedRepresentation is already used by an IfcProductRepresentation, " +
+                                                    "an IfcRepresentationMap or an IfcShapeAspect");
+        }
+        this.mappingOrigin = mappingOrigin;
+        this.mappedRepresentation = mappedRepresentation;
+        mappedRepresentation.setRepresentationMap(this);
+    }
+
+    /**
+     * @return The mapped items that use this representation map. The Set is
+     * unmodifiable.
+     */
+    public Set<IfcMappedItem> getMapUsage() {
+        return mapUsage == null ? Collections.emptySet() : Collections.unmodifiableSet(mapUsage);
+    }
+
+    /**
+     * @param mappedItem The mapped item to add to the Set mapUsage.
+     * @throws IllegalArgumentException If this map is not the mappingSource of
+     *                                  mappedItem.
+     * @throws NullPointerException     If mappedItem is null.
+     */
+    protected void addToMapUsage(@NonNull IfcMappedItem mappedItem) {
+        if (mappedItem.getMappingSource() != this) {
+            throw new IllegalArgumentException("any IfcMappedItem part of mapUsage must have this instance of " +
+                                                       "IfcRepresentationMap as its mappingSource");
+        }
+        synchronized (this) {
+            if (mapUsage == null) {
+                mapUsage = new HashSet<>();
+            }
+            mapUsage.add(mappedItem);
+        }
+    }
 }
@@ -21,14 +21,12 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import buildingsmart.io.Entity;
+import buildingsmart.util.GlobalIdRegistry;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * The IfcRoot is the most abstract and root class for all IFC entity
  * definitions that roots in the kernel or in subsequent layers of the IFC
@@ -46,8 +44,6 @@ import java.util.Set;
 @ToString
 @Getter
 public abstract class IfcRoot extends Entity {
-    private static final Set<IfcGloballyUniqueId> uniqueGlobalIds =
-            new HashSet<>();
     @EqualsAndHashCode.Include
     @Attribute(0)
     private final IfcGloballyUniqueId globalId;
@@ -76,18 +72,21 @@ public abstract class IfcRoot extends Entity {
      *                     informative comments.
      * @throws NullPointerException     If globalId or ownerHistory are null.
      * @throws IllegalArgumentException If globalId was used in another instance
-     *                                  of this class.
+     *                                  of this class created while the same
+     *                                  {@link GlobalIdRegistry} was bound to
+     *                                  the current thread (see {@link
+     *                                  GlobalIdRegistry#current()}).
      */
     public IfcRoot(@NonNull IfcGloballyUniqueId globalId,
                    @NonNull IfcOwnerHistory ownerHistory,
                    IfcLabel name,
                    IfcText description) {
-        if (uniqueGlobalIds.contains(globalId)) {
+        GlobalIdRegistry registry = GlobalIdRegistry.current();
+        if (registry != null && !registry.add(globalId)) {
             throw new IllegalArgumentException(
                     "globalId must be unique, and this one was used in " +
                             "another instance of this class");
         }
-        uniqueGlobalIds.add(globalId);
         this.globalId = globalId;
         this.ownerHistory = ownerHistory;
         this.name = name;
@@ -117,13 +116,17 @@ public abstract class IfcRoot extends Entity {
     }
 
     /**
-     * Clears the Sets used to keep track of attributes that must be unique in
-     * different instances of this class and its subclasses, thus allowing the
-     * creation of new instances of this class having attributes marked as
-     * UNIQUE with the same values as ones belonging to instances of this class
-     * created before calling this method. Use at your own risk.
+     * Clears the {@link GlobalIdRegistry} bound to the current thread and the
+     * one shared by the whole JVM, thus allowing the creation of new instances
+     * of this class having attributes marked as UNIQUE with the same values as
+     * ones belonging to instances of this class created before calling this
+     * method. Use at your own risk.
      */
     public static void clearUniqueConstraint() {
-        uniqueGlobalIds.clear();
+        GlobalIdRegistry registry = GlobalIdRegistry.current();
+        if (registry != null) {
+            registry.clear();
+        }
+        GlobalIdRegistry.getGlobal().clear();
     }
 }
@@ -175,4 +175,14 @@ public class IfcShapeModel extends IfcRepresentation {
         }
         super.setOfProductRepresentation(ofProductRepresentation);
     }
+
+    /**
+     * @return {@code true} if this shape model is already used by an
+     * IfcProductRepresentation, by an IfcRepresentationMap or by an
+     * IfcShapeAspect.
+     */
+    @Override
+    boolean isUsed() {
+        return super.isUsed() || ofShapeAspect != null;
+    }
 }
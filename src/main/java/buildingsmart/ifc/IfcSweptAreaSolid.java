@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -32,6 +33,7 @@ import lombok.ToString;
  * for the case of a revolved area solid with angle equal to 2 p (or 360
  * degrees).
  */
+@Getter
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public abstract class IfcSweptAreaSolid extends IfcSolidModel {
@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -33,6 +34,7 @@ import lombok.ToString;
  * resulting solid has a through hole, or, an internal void when the directrix
  * forms a close curve.
  */
+@Getter
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public class IfcSweptDiskSolid extends IfcSolidModel {
@@ -21,6 +21,7 @@ package buildingsmart.ifc;
 
 import buildingsmart.io.Attribute;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 
@@ -97,6 +98,7 @@ import java.util.Set;
  * or <i>Trim2</i> it shall lie within the parametric range
  * of the <i>BasisCurve</i>.</li>
  */
+@Getter
 @EqualsAndHashCode(callSuper = false)
 @ToString
 public class IfcTrimmedCurve extends IfcBoundedCurve {
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fields of an {@link Entity} type, found once since looking for them and
+ * for their annotations takes much longer than reading or writing them.
+ * <p>
+ * The {@link Attribute} fields of the type and of its superclasses are sorted
+ * by {@link Attribute#value()}, i.e. in the order of the parameters of the
+ * instances in STEP files. The ones named by the {@link DerivedAttributes} of
+ * the type are derived: they're written as asterisks and are determined by the
+ * other attributes, so they're skipped by whoever walks or compares entities.
+ * All the fields are made accessible.
+ */
+public final class EntityAttributes {
+    private static final Map<Class<?>, EntityAttributes> TYPES = new ConcurrentHashMap<>();
+
+    /**
+     * The name of the type in upper case.
+     */
+    final String name;
+    /**
+     * The {@link Attribute} fields, in the order in which they're serialized.
+     */
+    final Field[] fields;
+    /**
+     * Whether each field is a derived attribute.
+     */
+    final boolean[] derived;
+    /**
+     * Whether each field is a Select Type.
+     */
+    final boolean[] select;
+    /**
+     * Whether each field is a collection of Select Types.
+     */
+    final boolean[] selectElements;
+    final Field[] inverseRelationships;
+    /**
+     * The {@link Attribute} fields which are not derived, in the order in which
+     * they're serialized.
+     */
+    @Getter
+    private final List<Field> explicitAttributes;
+    /**
+     * The {@link InverseRelationship} fields.
+     */
+    @Getter
+    private final List<Field> inverseRelationshipFields;
+
+    private EntityAttributes(Class<?> type) {
+        name = type.getSimpleName().toUpperCase();
+        DerivedAttributes derivedAttributes = type.getAnnotation(DerivedAttributes.class);
+        Set<String> derivedAttributesNames =
+                derivedAttributes == null ? new HashSet<>(0) :
+                        new HashSet<>(Arrays.asList(derivedAttributes.value()));
+        List<Field> allFields = getAllFields(type);
+        fields = allFields.stream()
+                .filter(field -> field.isAnnotationPresent(Attribute.class))
+                .sorted(Comparator.comparingInt(field -> field.getAnnotation(Attribute.class).value()))
+                .toArray(Field[]::new);
+        derived = new boolean[fields.length];
+        select = new boolean[fields.length];
+        selectElements = new boolean[fields.length];
+        List<Field> explicit = new ArrayList<>(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            derived[i] = derivedAttributesNames.contains(field.getName());
+            field.setAccessible(true);
+            select[i] = field.getType().isInterface();
+            if (field.getGenericType() instanceof ParameterizedType) {
+                Type typeParameter = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+                selectElements[i] = typeParameter instanceof Class && ((Class<?>) typeParameter).isInterface();
+            }
+            if (!derived[i]) {
+                explicit.add(field);
+            }
+        }
+        explicitAttributes = Collections.unmodifiableList(explicit);
+        inverseRelationships = allFields.stream()
+                .filter(field -> field.isAnnotationPresent(InverseRelationship.class))
+                .toArray(Field[]::new);
+        for (Field field : inverseRelationships) {
+            field.setAccessible(true);
+        }
+        inverseRelationshipFields = Collections.unmodifiableList(Arrays.asList(inverseRelationships));
+    }
+
+    /**
+     * @param type The type of which to get the attributes.
+     * @return The attributes of {@code type}.
+     *
+     * @throws NullPointerException If type is null.
+     */
+    public static EntityAttributes of(@NonNull Class<?> type) {
+        return TYPES.computeIfAbsent(type, EntityAttributes::new);
+    }
+
+    /**
+     * @param field  A field returned by an instance of this class.
+     * @param entity An instance of the type declaring {@code field}.
+     * @return The value of {@code field} in {@code entity}.
+     */
+    public static Object get(Field field, Object entity) {
+        try {
+            return field.get(entity);
+        } catch (IllegalAccessException e) {
+            // this should never happen, since the fields are accessible
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param type The type for which to get all fields.
+     * @return The unsorted fields of the given type and all its superclasses.
+     * If there are none, the returned List will be empty.
+     */
+    private static List<Field> getAllFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        do {
+            fields.addAll(Arrays.asList(type.getDeclaredFields()));
+            type = type.getSuperclass();
+        } while (type != null);
+        return fields;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import com.google.common.reflect.ClassPath;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes how the instances of an {@link Entity} class are read from a STEP
+ * file: which constructor creates them and how each of their parameters maps
+ * to the arguments of the constructor.
+ * <p>
+ * Parameters are matched to the fields annotated with {@link Attribute}, in
+ * the order of their {@link Attribute#value()}. The constructor taking exactly
+ * the types of those fields is used; if there's none, the one with fewest
+ * parameters starting with those types is used, and its remaining parameters
+ * are read from the remaining parameters of the instance, if any. Derived
+ * attributes (see {@link DerivedAttributes}) are skipped.
+ */
+final class EntityType {
+    private static final String PACKAGE = "buildingsmart.ifc";
+    private static final Map<Class<?>, EntityType> TYPES = new ConcurrentHashMap<>();
+
+    @Getter
+    private final Class<? extends Entity> type;
+    private final Constructor<?> constructor;
+    private final ValueReader[] readers;
+    /**
+     * For each parameter of the instances, whether it is derived.
+     */
+    private final boolean[] derived;
+    /**
+     * The types of the fields of the entities that are not attributes, such
+     * as inverse relationships, which may be set by the constructors of the
+     * entities referencing them.
+     */
+    private final List<Class<?>> settableTypes = new ArrayList<>();
+    /**
+     * Whether the entity, or one of its superclasses, has static fields that
+     * may be modified by its constructors.
+     */
+    private final boolean staticState;
+
+    private EntityType(Class<? extends Entity> type, Constructor<?> constructor, boolean[] derived) {
+        this.type = type;
+        this.constructor = constructor;
+        this.derived = derived;
+        boolean staticState = false;
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    staticState |= !Modifier.isFinal(field.getModifiers());
+                } else if (!field.isAnnotationPresent(Attribute.class) && !field.getType().isPrimitive()) {
+                    settableTypes.add(elementType(field));
+                }
+            }
+        }
+        this.staticState = staticState;
+        Type[] parameterTypes = constructor.getGenericParameterTypes();
+        readers = new ValueReader[parameterTypes.length];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = ValueReader.of(parameterTypes[i]);
+        }
+    }
+
+    /**
+     * @param name The name of a type in upper case, e.g. {@code IFCWALL}.
+     * @return The class of {@code buildingsmart.ifc} having that name, or
+     * {@code null} if there's none.
+     */
+    static Class<?> classForName(String name) {
+        return Classes.BY_NAME.get(name);
+    }
+
+    /**
+     * @param name The name of an entity in upper case, e.g. {@code IFCWALL}.
+     * @return The description of the entity, or {@code null} if there's no
+     * entity with that name.
+     *
+     * @throws IllegalArgumentException If the entity exists, but its instances
+     *                                  can't be created from STEP files.
+     */
+    static EntityType forName(String name) {
+        Class<?> type = classForName(name);
+        if (type == null || !Entity.class.isAssignableFrom(type)) {
+            return null;
+        }
+        return of(type.asSubclass(Entity.class));
+    }
+
+    /**
+     * @param id   The id of an instance, used in error messages.
+     * @param name The name of the type of the instance in upper case.
+     * @return The description of the entity of the instance.
+     *
+     * @throws IllegalArgumentException If there's no entity with that name,
+     *                                  or its instances can't be created from
+     *                                  STEP files.
+     */
+    static EntityType forInstance(int id, String name) {
+        EntityType type;
+        try {
+            type = forName(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("#" + id + ": " + e.getMessage(), e);
+        }
+        if (type == null) {
+            throw new IllegalArgumentException("#" + id + ": unknown entity " + name);
+        }
+        return type;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the instances of {@code type} can't
+     *                                  be created from STEP files.
+     */
+    static EntityType of(Class<? extends Entity> type) {
+        EntityType entityType = TYPES.get(type);
+        if (entityType == null) {
+            entityType = create(type);
+            TYPES.putIfAbsent(type, entityType);
+        }
+        return entityType;
+    }
+
+    /**
+     * @return The type of the elements of a collection field, or the type of
+     * the field otherwise.
+     */
+    private static Class<?> elementType(Field field) {
+        if (Collection.class.isAssignableFrom(field.getType()) &&
+                field.getGenericType() instanceof ParameterizedType) {
+            Type element = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+            if (element instanceof Class) {
+                return (Class<?>) element;
+            }
+        }
+        return field.getType().isArray() ? field.getType().getComponentType() : field.getType();
+    }
+
+    private static EntityType create(Class<? extends Entity> type) {
+        if (Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalArgumentException(type.getSimpleName() + " is abstract");
+        }
+        EntityAttributes attributes = EntityAttributes.of(type);
+        List<Class<?>> attributeTypes = new ArrayList<>();
+        for (Field field : attributes.getExplicitAttributes()) {
+            attributeTypes.add(field.getType());
+        }
+
+        Constructor<?> chosen = null;
+        for (Constructor<?> constructor : type.getConstructors()) {
+            List<Class<?>> parameterTypes = Arrays.asList(constructor.getParameterTypes());
+            if (parameterTypes.size() >= attributeTypes.size() &&
+                    parameterTypes.subList(0, attributeTypes.size()).equals(attributeTypes) &&
+                    (chosen == null || parameterTypes.size() < chosen.getParameterCount())) {
+                chosen = constructor;
+            }
+        }
+        if (chosen == null) {
+            throw new IllegalArgumentException(
+                    type.getSimpleName() + " has no constructor taking its attributes, so it can't be read");
+        }
+        return new EntityType(type, chosen, attributes.derived);
+    }
+
+    /**
+     * Entities whose constructors modify no other entity and no static field
+     * can be created by many threads at once. The constructors of entities
+     * are assumed to modify only the fields of the entities they reference
+     * that are not attributes and whose type is a supertype of their own, as
+     * the ones setting inverse relationships do, e.g. an IfcProduct setting
+     * the {@code placesObject} of its placement.
+     *
+     * @return Whether the constructor of this entity may modify an entity of
+     * the {@code referenced} type.
+     */
+    boolean mayModify(EntityType referenced) {
+        for (Class<?> settableType : referenced.settableTypes) {
+            if (settableType.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether the constructor of this entity may modify static fields,
+     * so that entities of this type must be created by one thread at a time,
+     * in the order of the file.
+     */
+    boolean hasStaticState() {
+        return staticState;
+    }
+
+    /**
+     * Reads the parameters of an instance, from the opening parenthesis to the
+     * closing one, and creates the entity.
+     *
+     * @throws IllegalArgumentException If the parameters are not valid, or the
+     *                                  constructor of the entity rejects them.
+     */
+    Entity read(StepLexer lexer, ValueReader.References references) {
+        Object[] arguments = new Object[readers.length];
+        int start = lexer.getPosition();
+        lexer.expect('(');
+        if (!lexer.accept(')')) {
+            int position = 0;
+            int argument = 0;
+            do {
+                if (position < derived.length && derived[position] || argument >= readers.length) {
+                    lexer.skipValue();
+                } else {
+                    arguments[argument] = readers[argument].read(lexer, references);
+                    argument++;
+                }
+                position++;
+            } while (lexer.accept(','));
+            lexer.expect(')');
+        }
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] == null) {
+                arguments[i] = readers[i].defaultValue();
+            }
+        }
+        try {
+            return (Entity) constructor.newInstance(arguments);
+        } catch (InvocationTargetException e) {
+            lexer.setPosition(start);
+            RuntimeException cause = ValueReader.unwrap(e);
+            throw new RejectedEntity(
+                    lexer.error("invalid " + type.getSimpleName() + ": " + cause.getMessage()).getMessage(), cause);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The classes of IFC entities and types, loaded the first time they're
+     * needed.
+     */
+    private static final class Classes {
+        private static final Map<String, Class<?>> BY_NAME = load();
+
+        private static Map<String, Class<?>> load() {
+            Map<String, Class<?>> classes = new HashMap<>();
+            try {
+                for (ClassPath.ClassInfo info : ClassPath.from(EntityType.class.getClassLoader())
+                        .getTopLevelClasses(PACKAGE)) {
+                    Class<?> c = info.load();
+                    if (Entity.class.isAssignableFrom(c) || DefinedType.class.isAssignableFrom(c)) {
+                        classes.put(c.getSimpleName().toUpperCase(Locale.ROOT), c);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return classes;
+        }
+    }
+}
@@ -0,0 +1,617 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.IfcLabel;
+import buildingsmart.ifc.IfcProduct;
+import buildingsmart.ifc.IfcProject;
+import buildingsmart.ifc.IfcRoot;
+import buildingsmart.util.Functions;
+import buildingsmart.util.PlacementResolver;
+import buildingsmart.util.Precision;
+import buildingsmart.util.Tessellator;
+import buildingsmart.util.TriangleMesh;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Exports the geometry of a project as a binary glTF file (GLB), which viewers
+ * load much faster than an IFC STEP file.
+ * <p>
+ * Every product in the spatial structure of the project whose shape
+ * representations have triangles becomes a node of the scene. The mesh of a
+ * product is in the coordinate system of its placement and the matrix of the
+ * node moves it to world coordinates, so identical geometry placed in
+ * different positions is written once and shared by many nodes: meshes are
+ * shared both by the products with the same representation and by the ones
+ * whose tessellation is identical. Nodes are named after the GlobalId of their
+ * product, and hold its IFC type, GlobalId and name in their extras. They are
+ * children of a root node turning the Z axis up of IFC into the Y axis up of
+ * glTF.
+ * <p>
+ * The products are tessellated and placed in parallel, with the
+ * {@link Precision} of the thread calling export, then the file is written in
+ * a single pass: the JSON chunk, whose offsets are known as soon as the meshes
+ * are deduplicated, is followed by the binary chunk, streamed from the meshes
+ * through a direct buffer. Vertices are written as 32-bit floats, indices as
+ * unsigned shorts for meshes with fewer than 65536 vertices and as unsigned
+ * ints for the others.
+ * <p>
+ * An exporter can be used by many threads at once, each export uses its own
+ * {@link Tessellator} and {@link PlacementResolver}.
+ */
+@Slf4j
+public class GlbExporter {
+    private static final int MAGIC = 0x46546C67;
+    private static final int VERSION = 2;
+    private static final int JSON_CHUNK = 0x4E4F534A;
+    private static final int BIN_CHUNK = 0x004E4942;
+    private static final int FLOAT = 5126;
+    private static final int UNSIGNED_SHORT = 5123;
+    private static final int UNSIGNED_INT = 5125;
+    private static final int ARRAY_BUFFER = 34962;
+    private static final int ELEMENT_ARRAY_BUFFER = 34963;
+    private static final int TRIANGLES = 4;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * The column-major matrix of the root node, a rotation of -90 degrees
+     * around the X axis.
+     */
+    private static final double[] Z_UP_TO_Y_UP = {1, 0, 0, 0, 0, 0, -1, 0, 0, 1, 0, 0, 0, 0, 0, 1};
+
+    private double chordTolerance = Tessellator.DEFAULT_CHORD_TOLERANCE;
+    private double planeAngleUnit = 1;
+    private boolean skipUnsupported;
+
+    /**
+     * @param chordTolerance The maximum distance between a curve and the
+     *                       segments approximating it, see
+     *                       {@link Tessellator#getChordTolerance()}.
+     * @return This exporter.
+     *
+     * @throws IllegalArgumentException If chordTolerance is not positive and
+     *                                  finite.
+     */
+    public GlbExporter chordTolerance(double chordTolerance) {
+        if (!(chordTolerance > 0) || Double.isInfinite(chordTolerance)) {
+            throw new IllegalArgumentException("chordTolerance must be positive and finite");
+        }
+        this.chordTolerance = chordTolerance;
+        return this;
+    }
+
+    /**
+     * @param planeAngleUnit The size in radians of the plane angle unit of the
+     *                       exported models, see
+     *                       {@link Tessellator#getPlaneAngleUnit()}. It is 1
+     *                       by default.
+     * @return This exporter.
+     *
+     * @throws IllegalArgumentException If planeAngleUnit is not positive and
+     *                                  finite.
+     */
+    public GlbExporter planeAngleUnit(double planeAngleUnit) {
+        if (!(planeAngleUnit > 0) || Double.isInfinite(planeAngleUnit)) {
+            throw new IllegalArgumentException("planeAngleUnit must be positive and finite");
+        }
+        this.planeAngleUnit = planeAngleUnit;
+        return this;
+    }
+
+    /**
+     * @param skipUnsupported Whether the products with geometry that can't be
+     *                        tessellated (e.g. boolean results) are left out
+     *                        of the exported file, instead of failing the
+     *                        export. It is {@code false} by default.
+     * @return This exporter.
+     */
+    public GlbExporter skipUnsupported(boolean skipUnsupported) {
+        this.skipUnsupported = skipUnsupported;
+        return this;
+    }
+
+    /**
+     * Creates a GLB file in the given filePath. If some of the directories in
+     * the filePath do not exist, this method creates them.
+     *
+     * @param project  The project to export.
+     * @param filePath The path to the file to create, or to an already existing
+     *                 file which is overwritten.
+     * @return The report of the export.
+     *
+     * @throws NullPointerException     If any of the arguments is null.
+     * @throws IllegalArgumentException If filePath is empty; if any of the
+     *                                  products can't be tessellated and
+     *                                  unsupported products are not skipped;
+     *                                  if the file would be bigger than 4 GiB.
+     * @throws IOException              If the file can't be created or an I/O
+     *                                  error occurs while writing it.
+     */
+    public Report export(@NonNull IfcProject project, @NonNull String filePath) throws IOException {
+        File file = Serializer.createFile(filePath);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            return export(project, channel);
+        }
+    }
+
+    /**
+     * Writes a GLB file in the given channel, which is not closed.
+     *
+     * @param project The project to export.
+     * @param output  The channel in which to write the file.
+     * @return The report of the export.
+     *
+     * @throws NullPointerException     If any of the arguments is null.
+     * @throws IllegalArgumentException If any of the products can't be
+     *                                  tessellated and unsupported products are
+     *                                  not skipped; if the file would be bigger
+     *                                  than 4 GiB.
+     * @throws IOException              If an I/O error occurs.
+     */
+    public Report export(@NonNull IfcProject project, @NonNull WritableByteChannel output) throws IOException {
+        Tessellator tessellator = new Tessellator(chordTolerance, planeAngleUnit);
+        PlacementResolver placementResolver = new PlacementResolver();
+        AtomicInteger skipped = new AtomicInteger();
+        List<Node> nodes = PlacementResolver.collectProducts(project).parallelStream()
+                .map(product -> {
+                    TriangleMesh mesh;
+                    double[] transform;
+                    try (Precision.Binding ignored = tessellator.getPrecision().bind()) {
+                        mesh = tessellator.tessellate(product);
+                        transform = mesh.isEmpty() ? null : placementResolver.resolve(product);
+                    } catch (IllegalArgumentException e) {
+                        if (!skipUnsupported) {
+                            throw new IllegalArgumentException(
+                                    "cannot export " + product.getGlobalId().getValue() + ": " + e.getMessage(), e);
+                        }
+                        log.warn("skipping {} {}: {}",
+                                 product.getClass().getSimpleName(),
+                                 product.getGlobalId().getValue(),
+                                 e.getMessage());
+                        skipped.incrementAndGet();
+                        return null;
+                    }
+                    return mesh.isEmpty() ? null : new Node(product, transform, mesh);
+                })
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(node -> node.globalId))
+                .collect(Collectors.toList());
+
+        List<Geometry> geometries = deduplicate(nodes);
+        long positionsLength = 0;
+        long indicesLength = 0;
+        long triangles = 0;
+        for (Geometry geometry : geometries) {
+            geometry.positionsOffset = positionsLength;
+            geometry.indicesOffset = indicesLength;
+            positionsLength += geometry.positionsLength();
+            indicesLength += align(geometry.indicesLength());
+        }
+        for (Node node : nodes) {
+            triangles += node.geometry.mesh.triangleCount();
+        }
+
+        byte[] json = json(project, nodes, geometries, positionsLength, indicesLength);
+        long jsonChunkLength = align(json.length);
+        long binChunkLength = positionsLength + indicesLength;
+        long length = 12 + 8 + jsonChunkLength + (binChunkLength > 0 ? 8 + binChunkLength : 0);
+        if (length > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("the exported file would be bigger than 4 GiB");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt((int) length);
+        buffer.putInt((int) jsonChunkLength).putInt(JSON_CHUNK);
+        for (int offset = 0; offset < json.length; ) {
+            int count = Math.min(buffer.remaining(), json.length - offset);
+            buffer.put(json, offset, count);
+            offset += count;
+            if (!buffer.hasRemaining()) {
+                flush(buffer, output);
+            }
+        }
+        pad(buffer, output, json.length, (byte) ' ');
+        if (binChunkLength > 0) {
+            ensureRemaining(buffer, output, 8);
+            buffer.putInt((int) binChunkLength).putInt(BIN_CHUNK);
+            for (Geometry geometry : geometries) {
+                double[] vertices = geometry.mesh.getVertices();
+                for (int i = 0; i < vertices.length; i += 3) {
+                    ensureRemaining(buffer, output, 12);
+                    buffer.putFloat((float) vertices[i])
+                            .putFloat((float) vertices[i + 1])
+                            .putFloat((float) vertices[i + 2]);
+                }
+            }
+            for (Geometry geometry : geometries) {
+                int[] indices = geometry.mesh.getIndices();
+                if (geometry.shortIndices()) {
+                    for (int index : indices) {
+                        ensureRemaining(buffer, output, 2);
+                        buffer.putShort((short) index);
+                    }
+                } else {
+                    for (int index : indices) {
+                        ensureRemaining(buffer, output, 4);
+                        buffer.putInt(index);
+                    }
+                }
+                pad(buffer, output, geometry.indicesLength(), (byte) 0);
+            }
+        }
+        flush(buffer, output);
+        return new Report(nodes.size(), geometries.size(), triangles, skipped.get(), length);
+    }
+
+    /**
+     * Assigns to every node its geometry, sharing it among the nodes with the
+     * same mesh instance or with meshes having the same vertices and indices.
+     *
+     * @return The distinct geometries, in order of first use.
+     */
+    private static List<Geometry> deduplicate(List<Node> nodes) {
+        Map<TriangleMesh, Geometry> byInstance = new IdentityHashMap<>();
+        for (Node node : nodes) {
+            node.geometry = byInstance.computeIfAbsent(node.mesh, Geometry::new);
+        }
+        // hashing the arrays and computing the bounds is the costly part, so
+        // it's done in parallel before comparing the geometries
+        List<Geometry> candidates = new ArrayList<>(byInstance.values());
+        candidates.parallelStream().forEach(Geometry::prepare);
+        Map<Geometry, Geometry> byContent = new HashMap<>();
+        for (Geometry geometry : candidates) {
+            geometry.shared = byContent.computeIfAbsent(geometry, key -> key);
+        }
+        List<Geometry> geometries = new ArrayList<>(byContent.size());
+        for (Node node : nodes) {
+            node.geometry = node.geometry.shared;
+            if (node.geometry.index < 0) {
+                node.geometry.index = geometries.size();
+                geometries.add(node.geometry);
+            }
+        }
+        return geometries;
+    }
+
+    private static byte[] json(IfcProject project, List<Node> nodes, List<Geometry> geometries,
+                               long positionsLength, long indicesLength) {
+        Json json = new Json();
+        json.append("{\"asset\":{\"version\":\"2.0\",\"generator\":\"ifc-java\"},\"scene\":0,\"scenes\":[{\"nodes\":[0]}]");
+
+        json.append(",\"nodes\":[{\"name\":").string(project.getGlobalId().getValue());
+        json.append(",\"matrix\":").numbers(Z_UP_TO_Y_UP);
+        extras(json, project);
+        if (!nodes.isEmpty()) {
+            json.append(",\"children\":[");
+            for (int i = 0; i < nodes.size(); i++) {
+                json.append(i > 0 ? "," : "").number(i + 1);
+            }
+            json.append("]");
+        }
+        json.append("}");
+        for (Node node : nodes) {
+            json.append(",{\"name\":").string(node.globalId);
+            json.append(",\"mesh\":").number(node.geometry.index);
+            if (!isIdentity(node.transform)) {
+                double[] t = node.transform;
+                json.append(",\"matrix\":").numbers(new double[]{
+                        t[0], t[4], t[8], 0, t[1], t[5], t[9], 0, t[2], t[6], t[10], 0, t[3], t[7], t[11], 1});
+            }
+            extras(json, node.product);
+            json.append("}");
+        }
+        json.append("]");
+
+        if (!geometries.isEmpty()) {
+            json.append(",\"meshes\":[");
+            for (Geometry geometry : geometries) {
+                json.append(geometry.index > 0 ? "," : "");
+                json.append("{\"primitives\":[{\"attributes\":{\"POSITION\":").number(geometry.index * 2L);
+                json.append("},\"indices\":").number(geometry.index * 2L + 1);
+                json.append(",\"mode\":").number(TRIANGLES).append("}]}");
+            }
+            json.append("],\"accessors\":[");
+            for (Geometry geometry : geometries) {
+                json.append(geometry.index > 0 ? "," : "");
+                json.append("{\"bufferView\":0,\"byteOffset\":").number(geometry.positionsOffset);
+                json.append(",\"componentType\":").number(FLOAT);
+                json.append(",\"count\":").number(geometry.mesh.vertexCount());
+                json.append(",\"type\":\"VEC3\",\"min\":").numbers(geometry.min);
+                json.append(",\"max\":").numbers(geometry.max);
+                json.append("},{\"bufferView\":1,\"byteOffset\":").number(geometry.indicesOffset);
+                json.append(",\"componentType\":").number(geometry.shortIndices() ? UNSIGNED_SHORT : UNSIGNED_INT);
+                json.append(",\"count\":").number(geometry.mesh.getIndices().length);
+                json.append(",\"type\":\"SCALAR\"}");
+            }
+            json.append("],\"bufferViews\":[{\"buffer\":0,\"byteLength\":").number(positionsLength);
+            json.append(",\"target\":").number(ARRAY_BUFFER);
+            json.append("},{\"buffer\":0,\"byteOffset\":").number(positionsLength);
+            json.append(",\"byteLength\":").number(indicesLength);
+            json.append(",\"target\":").number(ELEMENT_ARRAY_BUFFER);
+            json.append("}],\"buffers\":[{\"byteLength\":").number(positionsLength + indicesLength).append("}]");
+        }
+        return json.append("}").toByteArray();
+    }
+
+    private static void extras(Json json, IfcRoot root) {
+        json.append(",\"extras\":{\"type\":").string(root.getClass().getSimpleName());
+        json.append(",\"globalId\":").string(root.getGlobalId().getValue());
+        IfcLabel name = root.getName();
+        if (name != null) {
+            json.append(",\"name\":").string(Functions.parseFromStepFile(name.getValue()));
+        }
+        json.append("}");
+    }
+
+    private static boolean isIdentity(double[] transform) {
+        for (int i = 0; i < 12; i++) {
+            if (transform[i] != (i % 5 == 0 ? 1 : 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long align(long length) {
+        return (length + 3) & ~3L;
+    }
+
+    private static void pad(ByteBuffer buffer, WritableByteChannel output, long length, byte padding)
+            throws IOException {
+        for (long i = length; i < align(length); i++) {
+            ensureRemaining(buffer, output, 1);
+            buffer.put(padding);
+        }
+    }
+
+    private static void ensureRemaining(ByteBuffer buffer, WritableByteChannel output, int bytes)
+            throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(buffer, output);
+        }
+    }
+
+    private static void flush(ByteBuffer buffer, WritableByteChannel output) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static final class Node {
+        private final IfcProduct product;
+        private final String globalId;
+        private final double[] transform;
+        private final TriangleMesh mesh;
+        private Geometry geometry;
+
+        private Node(IfcProduct product, double[] transform, TriangleMesh mesh) {
+            this.product = product;
+            this.globalId = product.getGlobalId().getValue();
+            this.transform = transform;
+            this.mesh = mesh;
+        }
+    }
+
+    /**
+     * A mesh written in the binary chunk, equal to the others with the same
+     * vertices and indices.
+     */
+    private static final class Geometry {
+        private final TriangleMesh mesh;
+        private int hash;
+        private float[] min;
+        private float[] max;
+        private Geometry shared;
+        private int index = -1;
+        private long positionsOffset;
+        private long indicesOffset;
+
+        private Geometry(TriangleMesh mesh) {
+            this.mesh = mesh;
+        }
+
+        /**
+         * Computes the hash code and the bounds of the vertices, as written in
+         * the file.
+         */
+        private void prepare() {
+            double[] vertices = mesh.getVertices();
+            hash = Arrays.hashCode(vertices) * 31 + Arrays.hashCode(mesh.getIndices());
+            min = new float[]{Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY};
+            max = new float[]{Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+            for (int i = 0; i < vertices.length; i++) {
+                float value = (float) vertices[i];
+                min[i % 3] = Math.min(min[i % 3], value);
+                max[i % 3] = Math.max(max[i % 3], value);
+            }
+        }
+
+        private boolean shortIndices() {
+            return mesh.vertexCount() <= 0xFFFF;
+        }
+
+        private long positionsLength() {
+            return mesh.getVertices().length * 4L;
+        }
+
+        private long indicesLength() {
+            return mesh.getIndices().length * (shortIndices() ? 2L : 4L);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Geometry)) {
+                return false;
+            }
+            Geometry other = (Geometry) o;
+            return hash == other.hash &&
+                    Arrays.equals(mesh.getVertices(), other.mesh.getVertices()) &&
+                    Arrays.equals(mesh.getIndices(), other.mesh.getIndices());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Builds a JSON document made of ASCII characters only, escaping all the
+     * others, directly into bytes.
+     */
+    private static final class Json {
+        private byte[] bytes = new byte[BUFFER_SIZE];
+        private int size;
+
+        private Json append(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                put(text.charAt(i));
+            }
+            return this;
+        }
+
+        private Json number(long value) {
+            return append(Long.toString(value));
+        }
+
+        private Json numbers(double[] values) {
+            put('[');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    put(',');
+                }
+                append(format(values[i]));
+            }
+            put(']');
+            return this;
+        }
+
+        private Json numbers(float[] values) {
+            put('[');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    put(',');
+                }
+                append(format(values[i]));
+            }
+            put(']');
+            return this;
+        }
+
+        private Json string(String value) {
+            put('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    put('\\');
+                    put(c);
+                } else if (c < 0x20 || c > 0x7E) {
+                    append(String.format("\\u%04x", (int) c));
+                } else {
+                    put(c);
+                }
+            }
+            put('"');
+            return this;
+        }
+
+        private static String format(double value) {
+            return value == (long) value ? Long.toString((long) value) : Double.toString(value);
+        }
+
+        private static String format(float value) {
+            return value == (long) value ? Long.toString((long) value) : Float.toString(value);
+        }
+
+        private void put(char c) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) c;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * The outcome of a {@link GlbExporter#export(IfcProject, WritableByteChannel)}.
+     */
+    @Getter
+    public static final class Report {
+        /**
+         * The number of products exported as nodes.
+         */
+        private final int nodes;
+        /**
+         * The number of distinct meshes written in the file, shared by the
+         * nodes.
+         */
+        private final int meshes;
+        /**
+         * The number of triangles of all the nodes, counting the ones of shared
+         * meshes once for each node.
+         */
+        private final long triangles;
+        /**
+         * The number of products left out because they can't be tessellated,
+         * see {@link GlbExporter#skipUnsupported(boolean)}.
+         */
+        private final int skippedProducts;
+        /**
+         * The size in bytes of the file.
+         */
+        private final long bytes;
+
+        private Report(int nodes, int meshes, long triangles, int skippedProducts, long bytes) {
+            this.nodes = nodes;
+            this.meshes = meshes;
+            this.triangles = triangles;
+            this.skippedProducts = skippedProducts;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "nodes=" + nodes + ", meshes=" + meshes + ", triangles=" + triangles + ", skippedProducts=" +
+                    skippedProducts + ", bytes=" + bytes;
+        }
+    }
+}
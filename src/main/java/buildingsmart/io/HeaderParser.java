@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the entities of the HEADER section of STEP files into a
+ * {@link StepHeader}.
+ */
+@Slf4j
+final class HeaderParser {
+    private HeaderParser() {}
+
+    /**
+     * Reads an entity of the header, e.g. {@code FILE_NAME(...);}, leaving the
+     * lexer after its semicolon. Entities other than FILE_DESCRIPTION,
+     * FILE_NAME and FILE_SCHEMA are ignored.
+     *
+     * @param header The header to which the content of the entity is added.
+     * @throws IllegalArgumentException If the entity is not valid.
+     */
+    static void readEntity(StepLexer lexer, StepHeader header) {
+        String name = lexer.readKeyword();
+        List<Object> parameters = readParameters(lexer);
+        lexer.expect(';');
+        switch (name) {
+            case "FILE_DESCRIPTION":
+                header.setDescription(strings(parameters, 0));
+                header.setImplementationLevel(string(parameters, 1, ""));
+                break;
+            case "FILE_NAME":
+                header.setFileName(string(parameters, 0, ""));
+                header.setTimeStamp(string(parameters, 1, null));
+                header.setAuthor(strings(parameters, 2));
+                header.setOrganization(strings(parameters, 3));
+                header.setPreprocessorVersion(string(parameters, 4, ""));
+                header.setOriginatingSystem(string(parameters, 5, ""));
+                header.setAuthorization(string(parameters, 6, ""));
+                break;
+            case "FILE_SCHEMA":
+                List<String> schemas = strings(parameters, 0);
+                header.setSchemas(schemas);
+                if (!schemas.contains(Header.FILE_SCHEMA)) {
+                    log.warn("reading a file of schema {}, while {} is supported", schemas, Header.FILE_SCHEMA);
+                }
+                break;
+            default:
+                // other entities of the header are optional and ignored
+        }
+    }
+
+    /**
+     * @return The parameters of an entity of the header, in which Strings and
+     * Lists are kept and other values are replaced by {@code null}.
+     */
+    private static List<Object> readParameters(StepLexer lexer) {
+        List<Object> parameters = new ArrayList<>();
+        lexer.expect('(');
+        if (!lexer.accept(')')) {
+            do {
+                int next = lexer.peek();
+                if (next == '\'') {
+                    parameters.add(lexer.readString());
+                } else if (next == '(') {
+                    parameters.add(readParameters(lexer));
+                } else {
+                    lexer.skipValue();
+                    parameters.add(null);
+                }
+            } while (lexer.accept(','));
+            lexer.expect(')');
+        }
+        return parameters;
+    }
+
+    /**
+     * @return The String elements of the List parameter at {@code index}, in
+     * a new mutable List, which is empty if the parameter is missing or is not
+     * a List.
+     */
+    private static List<String> strings(List<Object> parameters, int index) {
+        List<String> strings = new ArrayList<>();
+        Object values = index < parameters.size() ? parameters.get(index) : null;
+        if (values instanceof List) {
+            for (Object value : (List<?>) values) {
+                if (value instanceof String) {
+                    strings.add((String) value);
+                }
+            }
+        }
+        return strings;
+    }
+
+    /**
+     * @return The String parameter at {@code index}, or {@code orElse} if it
+     * is missing or is not a String.
+     */
+    private static String string(List<Object> parameters, int index, String orElse) {
+        Object value = index < parameters.size() ? parameters.get(index) : null;
+        return value instanceof String ? (String) value : orElse;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import java.util.Arrays;
+
+/**
+ * Maps the ids of the instances of a STEP file to their indices in the file.
+ * <p>
+ * Ids are usually numbered from 1 with few gaps, so they're indexed by an
+ * array whenever it's not much bigger than the number of instances, and by an
+ * {@link IntIntMap} otherwise. Instances of this class are immutable, so they
+ * can be used by many threads at once.
+ */
+final class IdIndex {
+    private final int[] dense;
+    private final IntIntMap sparse;
+
+    private IdIndex(int[] dense, IntIntMap sparse) {
+        this.dense = dense;
+        this.sparse = sparse;
+    }
+
+    /**
+     * @param ids  The non-negative ids of the instances, in the order of the
+     *             file.
+     * @param size The number of instances, i.e. of elements of {@code ids} to
+     *             index.
+     * @throws IllegalArgumentException If two instances have the same id.
+     */
+    static IdIndex of(int[] ids, int size) {
+        int maxId = -1;
+        for (int i = 0; i < size; i++) {
+            maxId = Math.max(maxId, ids[i]);
+        }
+        if (maxId <= size * 2L + 1024) {
+            int[] dense = new int[maxId + 1];
+            Arrays.fill(dense, -1);
+            for (int i = 0; i < size; i++) {
+                if (dense[ids[i]] >= 0) {
+                    throw duplicate(ids[i]);
+                }
+                dense[ids[i]] = i;
+            }
+            return new IdIndex(dense, null);
+        }
+        IntIntMap sparse = new IntIntMap(size);
+        for (int i = 0; i < size; i++) {
+            if (sparse.putIfAbsent(ids[i], i) >= 0) {
+                throw duplicate(ids[i]);
+            }
+        }
+        return new IdIndex(null, sparse);
+    }
+
+    private static IllegalArgumentException duplicate(int id) {
+        return new IllegalArgumentException("duplicate instance #" + id);
+    }
+
+    /**
+     * @return The index of the instance having the given id, or -1 if there's
+     * none.
+     */
+    int get(int id) {
+        if (dense != null) {
+            return id >= 0 && id < dense.length ? dense[id] : -1;
+        }
+        return id >= 0 ? sparse.get(id) : -1;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import java.util.Arrays;
+
+/**
+ * Maps non-negative int keys, such as the ids of the instances of a STEP file,
+ * to non-negative int values without boxing them.
+ * <p>
+ * Open addressing hash table with linear probing, whose load factor is kept
+ * under 0.5. Empty slots have a key of -1. Instances of this class can't be
+ * used by many threads at once, unless none of them modifies it.
+ */
+final class IntIntMap {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    IntIntMap() {
+        this(INITIAL_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize The number of keys that can be added before the
+     *                     table is resized.
+     */
+    IntIntMap(int expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < expectedSize * 2L) {
+            capacity *= 2;
+        }
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, -1);
+    }
+
+    /**
+     * @return The value associated to {@code key}, or -1 if there's none.
+     */
+    int get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int current = keys[slot];
+            if (current == key) {
+                return values[slot];
+            }
+            if (current < 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Associates {@code value} to {@code key}, unless another value is already
+     * associated to it.
+     *
+     * @return The value previously associated to {@code key}, which is left
+     * unchanged, or -1 if there was none.
+     */
+    int putIfAbsent(int key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] >= 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, -1);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] >= 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * @return A well distributed hash of the key, as done by the 32-bit
+     * finalizer of MurmurHash3, since ids are often consecutive.
+     */
+    private static int hash(int key) {
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.IfcProject;
+import buildingsmart.ifc.IfcRoot;
+import buildingsmart.util.DeferredValidation;
+import buildingsmart.util.GlobalIdRegistry;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The instances of an IFC STEP file opened by {@link StepReader#open(Path)},
+ * whose entities are created only when they're requested.
+ * <p>
+ * The file is mapped into memory and read once to build its
+ * {@link StepIndex}, unless it's opened with an index built before, e.g. by
+ * {@link StepIndex#of(Path)} from a sidecar file. When
+ * an entity is requested, it's created together with the entities it
+ * references, and kept in a cache holding the most recently used entities.
+ * Entities evicted from the cache are created again when requested, so the
+ * same instance can be represented by different, although equal, objects.
+ * <p>
+ * Since only some entities are created, their inverse attributes contain only
+ * the entities created so far, and globalIds are only checked to be unique
+ * among the entities created together. Instances of this class can be used by
+ * many threads at once.
+ */
+public final class LazyStepModel {
+    /**
+     * The number of entities kept in the cache by default.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 100_000;
+    /**
+     * The number of bytes read at first to find the end of an instance.
+     */
+    private static final int INSTANCE_SIZE = 256;
+
+    private final MappedFile file;
+    private final Header header;
+    private final StepIndex index;
+    private final EntityType[] types;
+    private final Map<Integer, Entity> cache;
+
+    private LazyStepModel(MappedFile file, Header header, StepIndex index, int cacheSize) {
+        this.file = file;
+        this.header = header;
+        this.index = index;
+        types = new EntityType[index.typeCount()];
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entity> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @param index The index of the file, or {@code null} to build it by
+     *              reading the file.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid IFC STEP
+     *                                  file; if index was built for a file of
+     *                                  a different size.
+     */
+    static LazyStepModel open(Path path, StepIndex index, int cacheSize) throws IOException {
+        MappedFile file = MappedFile.map(path);
+        if (index == null) {
+            index = StepIndex.build(file.newInputStream(), file.size());
+        } else if (index.getFileSize() != file.size()) {
+            throw new IllegalArgumentException("the index of " + path + " is out of date");
+        }
+        StepHeader header = new StepEventReader().readHeader(file.newInputStream());
+        return new LazyStepModel(file, header.toHeader(), index, cacheSize);
+    }
+
+    /**
+     * @return The HEADER section of the file.
+     */
+    public Header getHeader() {
+        return header;
+    }
+
+    /**
+     * @return The index of the instances of the file.
+     */
+    public StepIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The number of instances in the file.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return The ids of the instances, in the order in which they appear in
+     * the file.
+     */
+    public int[] getIds() {
+        return index.getIds();
+    }
+
+    /**
+     * @param type The type of the entities whose ids to return.
+     * @return The ids of the instances whose entities are instances of
+     * {@code type}, in the order in which they appear in the file, found
+     * without creating the entities.
+     *
+     * @throws NullPointerException If type is null.
+     */
+    public int[] getIds(@NonNull Class<?> type) {
+        return index.getIds(type);
+    }
+
+    /**
+     * @param id The id of an instance, e.g. 12 for {@code #12}.
+     * @return The name of the type of the instance in upper case, e.g.
+     * {@code IFCWALL}, or {@code null} if there's no instance with that id.
+     */
+    public String getType(int id) {
+        return index.getType(id);
+    }
+
+    /**
+     * @param id The id of an instance, e.g. 12 for {@code #12}.
+     * @return The position in the file of the first byte of the instance, or
+     * -1 if there's no instance with that id.
+     */
+    public long getPosition(int id) {
+        return index.getPosition(id);
+    }
+
+    /**
+     * @param id The id of an instance, e.g. 12 for {@code #12}.
+     * @return The entity of the instance, or {@code null} if there's no
+     * instance with that id.
+     *
+     * @throws IllegalArgumentException If the instance, or one of the
+     *                                  instances it references, can't be
+     *                                  created.
+     */
+    public synchronized Entity get(int id) {
+        int i = index.indexOf(id);
+        if (i < 0) {
+            return null;
+        }
+        Entity entity = cache.get(id);
+        return entity != null ? entity : new Loader().load(i);
+    }
+
+    /**
+     * @param globalId The globalId of an {@link IfcRoot}.
+     * @return The entity having the given globalId, or {@code null} if
+     * there's none.
+     *
+     * @throws NullPointerException     If globalId is null.
+     * @throws IllegalArgumentException If the entity, or one of the
+     *                                  entities it references, can't be
+     *                                  created.
+     */
+    public IfcRoot getByGlobalId(@NonNull String globalId) {
+        int id = index.getId(globalId);
+        return id < 0 ? null : (IfcRoot) get(id);
+    }
+
+    /**
+     * @param type The type of the entities to return.
+     * @return The entities that are instances of {@code type}, in the order in
+     * which they appear in the file.
+     *
+     * @throws NullPointerException     If type is null.
+     * @throws IllegalArgumentException If one of the entities can't be
+     *                                  created.
+     */
+    public <T> List<T> getAll(@NonNull Class<T> type) {
+        List<T> all = new ArrayList<>();
+        for (int id : getIds(type)) {
+            all.add(type.cast(get(id)));
+        }
+        return all;
+    }
+
+    /**
+     * @return The first {@link IfcProject} of the file, or {@code null} if
+     * there's none.
+     *
+     * @throws IllegalArgumentException If the project can't be created.
+     */
+    public IfcProject getProject() {
+        int[] projects = getIds(IfcProject.class);
+        return projects.length == 0 ? null : (IfcProject) get(projects[0]);
+    }
+
+    /**
+     * Creates an entity after the ones it references, with a
+     * {@link GlobalIdRegistry} and a {@link DeferredValidation} of its own.
+     */
+    private final class Loader implements ValueReader.References {
+        /**
+         * The entities created by this loader, by id.
+         */
+        private final Map<Integer, Entity> loaded = new HashMap<>();
+        /**
+         * The bytes of the instance being created, from its start to the
+         * semicolon ending it, at index {@link #end}.
+         */
+        private byte[] data = new byte[INSTANCE_SIZE];
+        private int end;
+        private StepLexer lexer;
+
+        private Entity load(int root) {
+            GlobalIdRegistry registry = new GlobalIdRegistry();
+            DeferredValidation validation = new DeferredValidation();
+            try {
+                try (GlobalIdRegistry.Binding ignored = registry.bind();
+                     DeferredValidation.Binding ignored1 = validation.bind()) {
+                    build(root);
+                }
+                validation.validate();
+            } finally {
+                registry.close();
+            }
+            Entity entity = loaded.remove(index.id(root));
+            cache.putAll(loaded);
+            cache.put(index.id(root), entity);
+            return entity;
+        }
+
+        private void build(int root) {
+            Set<Integer> waiting = new HashSet<>();
+            int[] stack = new int[64];
+            int size = 0;
+            stack[size++] = root;
+            while (size > 0) {
+                int index = stack[size - 1];
+                int id = LazyStepModel.this.index.id(index);
+                if (isCreated(id)) {
+                    size--;
+                    continue;
+                }
+                read(index);
+                try {
+                    loaded.put(id, create(index));
+                    size--;
+                } catch (UnresolvedReference e) {
+                    waiting.add(index);
+                    for (int referenced : references()) {
+                        int reference = LazyStepModel.this.index.indexOf(referenced);
+                        if (reference >= 0 && !isCreated(referenced)) {
+                            if (waiting.contains(reference)) {
+                                throw new IllegalArgumentException(
+                                        "#" + id + ": cyclic reference to #" + referenced);
+                            }
+                            if (size == stack.length) {
+                                stack = Arrays.copyOf(stack, size * 2);
+                            }
+                            stack[size++] = reference;
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean isCreated(int id) {
+            return loaded.containsKey(id) || cache.containsKey(id);
+        }
+
+        /**
+         * Reads the instance at {@code index} into {@link #data}, and sets
+         * {@link #lexer} at its start.
+         */
+        private void read(int index) {
+            long position = LazyStepModel.this.index.position(index);
+            while (true) {
+                int read = file.read(position, data, 0, data.length);
+                lexer = new StepLexer(data, 0, read, position);
+                end = lexer.recordEnd(0);
+                if (end >= 0) {
+                    lexer = new StepLexer(data, 0, end + 1, position);
+                    return;
+                }
+                if (read < data.length) {
+                    throw lexer.error("unterminated instance #" + LazyStepModel.this.index.id(index));
+                }
+                data = new byte[data.length * 2];
+            }
+        }
+
+        /**
+         * @return The ids referenced by the instance that was read last.
+         */
+        private List<Integer> references() {
+            lexer.setPosition(0);
+            lexer.readReference();
+            lexer.expect('=');
+            List<Integer> references = new ArrayList<>();
+            StepValue.forEachReference(data, lexer.getPosition(), end, references::add);
+            return references;
+        }
+
+        private Entity create(int index) {
+            int id = LazyStepModel.this.index.id(index);
+            int typeIndex = LazyStepModel.this.index.typeIndex(index);
+            String name = LazyStepModel.this.index.typeName(typeIndex);
+            if (types[typeIndex] == null) {
+                types[typeIndex] = EntityType.forInstance(id, name);
+            }
+            if (lexer.readReference() != id) {
+                throw lexer.error("expected instance #" + id + ", the index is out of date");
+            }
+            lexer.expect('=');
+            lexer.skipKeyword();
+            try {
+                Entity entity = types[typeIndex].read(lexer, this);
+                if (lexer.peek() != ';') {
+                    throw lexer.error("expected ';'");
+                }
+                return entity;
+            } catch (UnresolvedReference e) {
+                throw e;
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new IllegalArgumentException("#" + id + "=" + name + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public Entity get(int id) {
+            Entity entity = loaded.get(id);
+            if (entity == null) {
+                entity = cache.get(id);
+            }
+            if (entity != null) {
+                return entity;
+            }
+            if (index.indexOf(id) < 0) {
+                throw lexer.error("reference to undefined instance #" + id);
+            }
+            throw new UnresolvedReference();
+        }
+    }
+}
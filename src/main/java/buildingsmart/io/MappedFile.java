@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file mapped into memory, read at any position.
+ * <p>
+ * A {@link MappedByteBuffer} can't be bigger than 2 GB, so the file is mapped
+ * in segments. Instances of this class are immutable, so they can be used by
+ * many threads at once.
+ */
+final class MappedFile {
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    private MappedFile(MappedByteBuffer[] segments, long size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    /**
+     * @throws IOException If the file can't be mapped.
+     */
+    static MappedFile map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                          position,
+                                          Math.min(SEGMENT_SIZE, size - position));
+            }
+            return new MappedFile(segments, size);
+        }
+    }
+
+    /**
+     * @return The size of the file in bytes.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Copies bytes of the file into {@code destination}, stopping at the end
+     * of the file.
+     *
+     * @param position The position in the file of the first byte to copy.
+     * @return The number of bytes copied, which is lower than {@code length}
+     * only at the end of the file.
+     */
+    int read(long position, byte[] destination, int offset, int length) {
+        int read = 0;
+        while (read < length && position < size) {
+            ByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)].duplicate();
+            segment.position((int) (position % SEGMENT_SIZE));
+            int n = Math.min(length - read, segment.remaining());
+            segment.get(destination, offset + read, n);
+            read += n;
+            position += n;
+        }
+        return read;
+    }
+
+    /**
+     * @return A stream reading the whole file from the mapped memory.
+     */
+    InputStream newInputStream() {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                int read = MappedFile.this.read(position, b, off, len);
+                position += read;
+                return read == 0 ? -1 : read;
+            }
+        };
+    }
+}
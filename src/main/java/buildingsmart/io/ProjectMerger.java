@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.IfcOwnerHistory;
+import buildingsmart.ifc.IfcProject;
+import buildingsmart.ifc.IfcRepresentationContext;
+import buildingsmart.util.GlobalIdRegistry;
+import lombok.NonNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Writes several projects, e.g. the models of different disciplines built
+ * separately, in a single IFC STEP file containing a single
+ * {@link IfcProject}.
+ * <p>
+ * The merged project has the attributes of the first project and the
+ * representation contexts of all of them, and is written in place of every
+ * project, so that the spatial structures of all the projects are decomposed
+ * from it. The projects are written in a single pass by a {@link Serializer},
+ * which writes only once entities that are equal, so the owner histories,
+ * unit assignments, representation contexts and styles the projects have in
+ * common are written once, and so are spatial structure elements having the
+ * same globalId, which get the elements of all the projects:
+ * <pre>{@code
+ * new ProjectMerger().merge(header, List.of(architecture, structure, mep), "merged.ifc");
+ * }</pre>
+ * The projects must have equal units, since the values of their entities are
+ * written as they are. Owner histories which differ, e.g. because they were
+ * created at different times, are all written, unless
+ * {@link #ownerHistory(IfcOwnerHistory)} replaces them. The projects are not
+ * modified, and a merger can be used by one thread at a time.
+ */
+public final class ProjectMerger {
+    private final Serializer serializer;
+    private IfcOwnerHistory ownerHistory;
+
+    public ProjectMerger() {
+        this(new Serializer());
+    }
+
+    /**
+     * @param serializer The serializer writing the merged projects, e.g. to
+     *                   write their {@link StepIndex} too.
+     * @throws NullPointerException If serializer is null.
+     */
+    public ProjectMerger(@NonNull Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * @param ownerHistory The owner history replacing the ones of all the
+     *                     entities of the projects, or {@code null} to keep
+     *                     them, which is the default.
+     * @return This merger.
+     */
+    public ProjectMerger ownerHistory(IfcOwnerHistory ownerHistory) {
+        this.ownerHistory = ownerHistory;
+        return this;
+    }
+
+    /**
+     * Merges the projects in an IFC STEP file in the given filePath. If some
+     * of the directories in the filePath do not exist, this method creates
+     * them.
+     *
+     * @throws NullPointerException     If header, projects or filePath is
+     *                                  null, or projects contains null.
+     * @throws IllegalArgumentException If projects is empty, or the projects
+     *                                  have different units.
+     * @throws IOException              If the file can't be written.
+     * @see Serializer#serialize(Header, IfcProject, String)
+     */
+    public void merge(@NonNull Header header,
+                      @NonNull List<IfcProject> projects,
+                      @NonNull String filePath) throws IOException {
+        merge(header, projects, Serializer.createFile(filePath));
+    }
+
+    /**
+     * Merges the projects in an IFC STEP file in the given output file.
+     *
+     * @throws NullPointerException     If header, projects or output is null,
+     *                                  or projects contains null.
+     * @throws IllegalArgumentException If projects is empty, or the projects
+     *                                  have different units.
+     * @throws IOException              If the file can't be written.
+     * @see Serializer#serialize(Header, IfcProject, File)
+     */
+    public void merge(@NonNull Header header,
+                      @NonNull List<IfcProject> projects,
+                      @NonNull File output) throws IOException {
+        IfcProject merged = mergedProject(projects);
+        serializer.serialize(header,
+                             merged,
+                             projects,
+                             substitution(projects, merged),
+                             new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output),
+                                                                       StandardCharsets.US_ASCII)),
+                             output.getCanonicalPath());
+        if (serializer.getIndex() != null) {
+            serializer.getIndex().write(StepIndex.sidecarPath(output.toPath()));
+        }
+    }
+
+    /**
+     * Merges the projects in an IFC STEP file in the given output
+     * {@link Writer}.
+     *
+     * @throws NullPointerException     If header, projects or output is null,
+     *                                  or projects contains null.
+     * @throws IllegalArgumentException If projects is empty, or the projects
+     *                                  have different units.
+     * @throws IOException              If an I/O error occurs.
+     * @see Serializer#serialize(Header, IfcProject, Writer, String)
+     */
+    public void merge(@NonNull Header header,
+                      @NonNull List<IfcProject> projects,
+                      @NonNull Writer output,
+                      String canonicalPath) throws IOException {
+        IfcProject merged = mergedProject(projects);
+        serializer.serialize(header, merged, projects, substitution(projects, merged), output, canonicalPath);
+    }
+
+    /**
+     * @return A project with the attributes of the first project and the
+     * representation contexts of all of them.
+     */
+    private IfcProject mergedProject(List<IfcProject> projects) {
+        if (projects.isEmpty()) {
+            throw new IllegalArgumentException("there must be at least one project to merge");
+        }
+        IfcProject first = projects.get(0);
+        Set<IfcRepresentationContext> contexts = new LinkedHashSet<>();
+        for (IfcProject project : projects) {
+            if (!project.getUnitsInContext().equals(first.getUnitsInContext())) {
+                throw new IllegalArgumentException(
+                        "project " + project.getGlobalId().getValue() + " has different units than project " +
+                                first.getGlobalId().getValue());
+            }
+            contexts.addAll(project.getRepresentationContexts());
+        }
+        // the merged project has the globalId of the first one, so it's
+        // created with a registry of its own
+        try (GlobalIdRegistry registry = new GlobalIdRegistry();
+             GlobalIdRegistry.Binding ignored = registry.bind()) {
+            return new IfcProject(first.getGlobalId(),
+                                  ownerHistory == null ? first.getOwnerHistory() : ownerHistory,
+                                  first.getName(),
+                                  first.getDescription(),
+                                  first.getObjectType(),
+                                  first.getLongName(),
+                                  first.getPhase(),
+                                  contexts,
+                                  first.getUnitsInContext());
+        }
+    }
+
+    /**
+     * @return The function replacing the projects with the merged one, and
+     * the owner histories with {@link #ownerHistory} if it's set.
+     */
+    private UnaryOperator<Entity> substitution(List<IfcProject> projects, IfcProject merged) {
+        Set<Entity> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+        replaced.addAll(projects);
+        IfcOwnerHistory ownerHistory = this.ownerHistory;
+        return entity -> {
+            if (replaced.contains(entity)) {
+                return merged;
+            }
+            if (ownerHistory != null && entity instanceof IfcOwnerHistory) {
+                return ownerHistory;
+            }
+            return entity;
+        };
+    }
+}
@@ -19,6 +19,7 @@
 package buildingsmart.io;
 
 import buildingsmart.ifc.IfcProject;
+import buildingsmart.ifc.IfcRoot;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 import lombok.SneakyThrows;
@@ -27,9 +28,10 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
 import java.lang.reflect.Field;
-import java.lang.reflect.ParameterizedType;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -42,6 +44,24 @@ public class Serializer {
     private final Queue<Object> remainingInvRels;
     private Writer fileWriter;
     private int idCounter;
+    private boolean writingIndex;
+    /**
+     * The number of characters written so far, which is the position in the
+     * file since files are written in ASCII.
+     */
+    private long position;
+    private StepIndex.Builder indexBuilder;
+    private StepIndex index;
+    /**
+     * Replaces the entities being serialized while merging projects, or
+     * {@code null}.
+     */
+    private UnaryOperator<Entity> substitution;
+    /**
+     * The entities whose inverse relationships were queued while merging
+     * projects, or {@code null}.
+     */
+    private Set<Entity> visited;
 
     public Serializer() {
         serializedEntitiesToIds = new HashMap<>();
@@ -49,6 +69,37 @@ public class Serializer {
         remainingInvRels = new LinkedList<>();
     }
 
+    /**
+     * @return Whether the {@link StepIndex} of the files is built while writing
+     * them.
+     */
+    public boolean isWritingIndex() {
+        return writingIndex;
+    }
+
+    /**
+     * @param writingIndex Whether to build the {@link StepIndex} of the files
+     *                     while writing them, which is then saved in their
+     *                     sidecar file when written to a {@link File}, and
+     *                     returned by {@link #getIndex()}. The index is built
+     *                     for the bytes written, so the positions it contains
+     *                     are correct only if the output uses a single byte per
+     *                     character, e.g. if it's ASCII.
+     */
+    public void setWritingIndex(boolean writingIndex) {
+        this.writingIndex = writingIndex;
+    }
+
+    /**
+     * @return The index of the last file written, or {@code null} if its index
+     * was not built.
+     *
+     * @see #setWritingIndex(boolean)
+     */
+    public StepIndex getIndex() {
+        return index;
+    }
+
     /**
      * @param entity The entity for which to return its inverse relationships.
      * @return A Stream containing the values of the fields of {@code entity}
@@ -86,9 +137,7 @@ public class Serializer {
      *                              </ul>
      */
     private static Stream<Object> getInvRels(@NonNull Entity entity) {
-        return getAllFields(entity.getClass()).stream().filter(field -> field
-                .isAnnotationPresent(InverseRelationship.class)).map(field -> {
-            field.setAccessible(true);
+        return Arrays.stream(EntityAttributes.of(entity.getClass()).inverseRelationships).map(field -> {
             Object invRel = null;
             try {
                 invRel = field.get(entity);
@@ -100,38 +149,6 @@ public class Serializer {
         });
     }
 
-    /**
-     * @param type The type for which to get all fields.
-     * @return The unsorted fields of the given type and all its superclasses.
-     * If there are none, the returned List will be empty.
-     *
-     * @throws NullPointerException If type is null.
-     * @throws SecurityException    If a security manager, <i>s</i>, is present
-     *                              and any of the following conditions is met:
-     *                              <ul>
-     *                              <li> invocation of
-     *                              {@link SecurityManager#checkPermission
-     *                              s.checkPermission} method with
-     *                              {@code RuntimePermission
-     *                              ("accessDeclaredMembers")}
-     *                              denies access to the declared fields within
-     *                              {@code type}
-     *                              <li> invocation of
-     *                              {@link SecurityManager#checkPackageAccess
-     *                              s.checkPackageAccess()} denies access to the
-     *                              package of {@code type}
-     *                              </ul>
-     */
-    private static List<Field> getAllFields(@NonNull Class<?> type) {
-        List<Field> fields = new LinkedList<>();
-        do {
-            fields.addAll(Arrays.asList(type.getDeclaredFields()));
-            type = type.getSuperclass();
-        } while (type != null);
-
-        return fields;
-    }
-
     /**
      * Creates a File in the given filePath. If some of the directories in the
      * filePath do not exist, this method creates them.
@@ -208,72 +225,53 @@ public class Serializer {
      */
     @SuppressWarnings("JavaDoc")
     private String serializeEntity(@NonNull Entity entity) {
-        DerivedAttributes derivedAttributes =
-                entity.getClass().getAnnotation(DerivedAttributes.class);
-        Set<String> derivedAttributesNames =
-                derivedAttributes == null ? new HashSet<>(0) :
-                        new HashSet<>(Arrays.asList(derivedAttributes.value()));
-        return getAllFields(entity.getClass()).stream()
-                .filter(field -> field.isAnnotationPresent(Attribute.class))
-                .sorted((field1, field2) -> {
-                    int order1 = field1.getAnnotation(Attribute.class).value();
-                    int order2 = field2.getAnnotation(Attribute.class).value();
-                    return order1 - order2;
-                }).map(field -> {
-                    if (derivedAttributesNames.contains(field.getName())) {
-                        return "*";
-                    }
-                    field.setAccessible(true);
-                    Object attribute = null;
-                    try {
-                        attribute = field.get(entity);
-                    } catch (IllegalAccessException e) {
-                        // this cannot happen as field was set accessible
-                        log.error("", e);
-                    }
-                    if (field.getType().isInterface() &&
-                            (attribute instanceof DefinedType ||
-                                    attribute instanceof Enum)) {
-                        // serialization of attributes that are Select Types
-                        return attribute.getClass().getSimpleName()
-                                .toUpperCase() + "(" + serialize(attribute) +
-                                ")";
-                    }
-                    if (field.getGenericType() instanceof ParameterizedType &&
-                            attribute instanceof Collection) {
-                        ParameterizedType collType =
-                                (ParameterizedType) field.getGenericType();
-                        Class<?> typeParameter =
-                                (Class<?>) collType.getActualTypeArguments()[0];
-                        if (typeParameter.isInterface()) {
-                            @SuppressWarnings({"unchecked", "rawtypes"})
-                            Stream<String> elements =
-                                    ((Collection) attribute).stream()
-                                            .map(element -> {
-                                                if (element instanceof DefinedType ||
-                                                        element instanceof Enum) {
-                                                    // serialization of
-                                                    // elements of Sets and
-                                                    // Lists of Select Types
-                                                    return element.getClass()
-                                                            .getSimpleName()
-                                                            .toUpperCase() +
-                                                            "(" +
-                                                            serialize(element) +
-                                                            ")";
-                                                }
-                                                return serialize(element);
-                                            });
-                            return elements
-                                    .collect(Collectors.joining(",", "(", ")"));
-                        }
+        EntityAttributes attributes = EntityAttributes.of(entity.getClass());
+        StringBuilder line = new StringBuilder(attributes.name).append('(');
+        for (int i = 0; i < attributes.fields.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            Object attribute = null;
+            if (!attributes.derived[i]) {
+                try {
+                    attribute = attributes.fields[i].get(entity);
+                } catch (IllegalAccessException e) {
+                    // this cannot happen as field was set accessible
+                    log.error("", e);
+                }
+            }
+            line.append(serializeAttribute(attributes, i, attribute));
+        }
+        return line.append(");\n").toString();
+    }
 
-                    }
-                    return serialize(attribute);
-                }).collect(Collectors.joining(",",
-                                              entity.getClass().getSimpleName()
-                                                      .toUpperCase() + "(",
-                                              ");\n"));
+    /**
+     * @param i         The index of the attribute in
+     *                  {@code attributes.fields}.
+     * @param attribute The value of the attribute.
+     * @return The serialization of the attribute.
+     */
+    private String serializeAttribute(EntityAttributes attributes, int i, Object attribute) {
+        if (attributes.derived[i]) {
+            return "*";
+        }
+        if (attributes.select[i] && (attribute instanceof DefinedType || attribute instanceof Enum)) {
+            // serialization of attributes that are Select Types
+            return attribute.getClass().getSimpleName().toUpperCase() + "(" + serialize(attribute) + ")";
+        }
+        if (attributes.selectElements[i] && attribute instanceof Collection) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Stream<String> elements = ((Collection) attribute).stream().map(element -> {
+                if (element instanceof DefinedType || element instanceof Enum) {
+                    // serialization of elements of Sets and Lists of Select
+                    // Types
+                    return element.getClass().getSimpleName().toUpperCase() + "(" + serialize(element) + ")";
+                }
+                return serialize(element);
+            });
+            return elements.collect(Collectors.joining(",", "(", ")"));
+        }
+        return serialize(attribute);
     }
 
     /**
@@ -365,7 +363,9 @@ public class Serializer {
      *                has already been set, its fileName will be set to the
      *                canonical path of {@code output}.
      * @param project The {@link IfcProject} to serialize.
-     * @param output  The file in which to serialize the project.
+     * @param output  The file in which to serialize the project. If
+     *                {@link #isWritingIndex()}, the index of the file is saved
+     *                in its sidecar file {@link StepIndex#sidecarPath(Path)}.
      * @throws NullPointerException If {@code header} is null; if {@code output}
      *                              is null.
      * @throws IOException          If the file exists but is a directory rather
@@ -419,6 +419,9 @@ public class Serializer {
         fileWriter =
                 new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.US_ASCII));
         serialize(header, project, fileWriter, output.getCanonicalPath());
+        if (index != null) {
+            index.write(StepIndex.sidecarPath(output.toPath()));
+        }
     }
 
     /**
@@ -483,17 +486,97 @@ public class Serializer {
                           IfcProject project,
                           @NonNull Writer output,
                           String canonicalPath) throws IOException {
+        serialize(header, project, Collections.emptyList(), null, output, canonicalPath);
+    }
+
+    /**
+     * Creates an IFC STEP file containing several projects merged into
+     * {@code project}, see {@link ProjectMerger}.
+     *
+     * @param merged       The projects merged into {@code project}, whose
+     *                     inverse relationships are serialized too.
+     * @param substitution Replaces the entities being serialized, e.g. the
+     *                     merged projects with {@code project}, or
+     *                     {@code null}. When not null, the inverse
+     *                     relationships of entities equal to ones already
+     *                     serialized are serialized too, since they may
+     *                     belong to different projects.
+     */
+    void serialize(Header header,
+                   IfcProject project,
+                   Collection<? extends Entity> merged,
+                   UnaryOperator<Entity> substitution,
+                   Writer output,
+                   String canonicalPath) throws IOException {
         header.setFileName(canonicalPath);
         fileWriter = new BufferedWriter(output);
-        fileWriter.write("ISO-10303-21;\n" + header.serialize() + "DATA;\n");
+        position = 0;
+        indexBuilder = writingIndex ? new StepIndex.Builder() : null;
+        index = null;
+        this.substitution = substitution;
+        visited = substitution == null ? null : Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            write("ISO-10303-21;\n" + header.serialize() + "DATA;\n");
 
-        serialize(project);
-        serializeRemainingInvRels();
+            serialize(project);
+            for (Entity entity : merged) {
+                getInvRels(entity).forEach(remainingInvRels::add);
+            }
+            serializeRemainingInvRels();
 
-        fileWriter.write("ENDSEC;\n" + "END-ISO-10303-21;\n");
-        fileWriter.close();
-        serializedEntitiesToIds.clear();
-        idCounter = 0;
+            write("ENDSEC;\n" + "END-ISO-10303-21;\n");
+            fileWriter.close();
+            if (indexBuilder != null) {
+                index = indexBuilder.build(position);
+            }
+        } finally {
+            indexBuilder = null;
+            this.substitution = null;
+            visited = null;
+            serializedEntitiesToIds.clear();
+            remainingInvRels.clear();
+            idCounter = 0;
+        }
+    }
+
+    private void write(String string) throws IOException {
+        fileWriter.write(string);
+        position += string.length();
+    }
+
+    /**
+     * Queues the inverse relationships of an entity equal to one already
+     * serialized, which may belong to another project, and the
+     * {@link IfcRoot} entities it references, whose inverse relationships may
+     * differ too: e.g. a building storey shared by two projects contains the
+     * elements of both. Other entities are not queued, since they'd be
+     * written only if they're not equal to the ones already serialized, i.e.
+     * if they're referenced only by the duplicate, which is not written.
+     */
+    private void visitDuplicate(Entity entity) {
+        getInvRels(entity).forEach(remainingInvRels::add);
+        EntityAttributes attributes = EntityAttributes.of(entity.getClass());
+        for (int i = 0; i < attributes.fields.length; i++) {
+            if (attributes.derived[i]) {
+                continue;
+            }
+            Object attribute = null;
+            try {
+                attribute = attributes.fields[i].get(entity);
+            } catch (IllegalAccessException e) {
+                // this cannot happen as field was set accessible
+                log.error("", e);
+            }
+            if (attribute instanceof IfcRoot) {
+                remainingInvRels.add(attribute);
+            } else if (attribute instanceof Collection) {
+                for (Object element : (Collection<?>) attribute) {
+                    if (element instanceof IfcRoot) {
+                        remainingInvRels.add(element);
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -590,14 +673,23 @@ public class Serializer {
         Entity entity = (Entity) obj;
         // if obj is neither an DefinedType nor a Collection (List or
         // Set), then it must be an Entity
+        if (substitution != null) {
+            entity = substitution.apply(entity);
+        }
         Integer entityId = serializedEntitiesToIds.get(entity);
         if (entityId != null) {
+            if (visited != null && visited.add(entity)) {
+                visitDuplicate(entity);
+            }
             return "#" + entityId;
         }
         // entity hasn't been serialized yet, so we'll do it now
         String serializedEntity = serializeEntity(entity);
         entityId = serializedEntitiesToIds.get(entity);
         if (entityId != null) {
+            if (visited != null && visited.add(entity)) {
+                visitDuplicate(entity);
+            }
             return "#" + entityId;
             // entity has been serialized while we were serializing
             // our attributes, because one of our attributes contained
@@ -605,8 +697,17 @@ public class Serializer {
         }
         String serializedEntityString =
                 "#" + ++idCounter + "=" + serializedEntity;
-        fileWriter.write(serializedEntityString);
+        if (indexBuilder != null) {
+            indexBuilder.add(idCounter, serializedEntity.substring(0, serializedEntity.indexOf('(')), position);
+            if (entity instanceof IfcRoot && ((IfcRoot) entity).getGlobalId() != null) {
+                indexBuilder.addGlobalId(((IfcRoot) entity).getGlobalId().getValue());
+            }
+        }
+        write(serializedEntityString);
         serializedEntitiesToIds.put(entity, idCounter);
+        if (visited != null) {
+            visited.add(entity);
+        }
 
         getInvRels(entity).forEach(remainingInvRels::add);
 
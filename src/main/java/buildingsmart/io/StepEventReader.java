@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Reads IFC STEP files (ISO 10303-21) as a stream of events, passing each
+ * instance to a {@link StepHandler} without creating entities.
+ * <p>
+ * The file is read through a buffer holding at least one whole instance,
+ * which grows only when an instance is bigger than it, so the memory used
+ * doesn't depend on the size of the file. Instances and their parameters are
+ * views of the buffer, decoded only when the handler asks for them. Use
+ * {@link StepReader} to get the entities of a file instead.
+ * <p>
+ * Instances of this class can be used by many threads at once, as long as
+ * they're not configured while reading.
+ */
+public class StepEventReader {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    /**
+     * The initial size of the buffer through which headers are read, which
+     * usually contains the whole header.
+     */
+    private static final int HEADER_BUFFER_SIZE = 8192;
+    private static final String MAGIC = "ISO-10303-21";
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    public StepEventReader() {}
+
+    /**
+     * @param bufferSize The initial size in bytes of the buffer through which
+     *                   files are read, {@link #DEFAULT_BUFFER_SIZE} by
+     *                   default.
+     * @return This reader.
+     *
+     * @throws IllegalArgumentException If bufferSize is not positive.
+     */
+    public StepEventReader bufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * @param filePath The path to the IFC file to read.
+     * @param handler  The handler receiving the content of the file.
+     * @return The number of instances read.
+     *
+     * @throws NullPointerException     If any of the parameters is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid IFC STEP
+     *                                  file.
+     */
+    public long read(@NonNull String filePath, @NonNull StepHandler handler) throws IOException {
+        return read(Paths.get(filePath), handler);
+    }
+
+    /**
+     * @param path    The path to the IFC file to read.
+     * @param handler The handler receiving the content of the file.
+     * @return The number of instances read.
+     *
+     * @throws NullPointerException     If any of the parameters is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid IFC STEP
+     *                                  file.
+     */
+    public long read(@NonNull Path path, @NonNull StepHandler handler) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return read(input, handler);
+        }
+    }
+
+    /**
+     * Reads the stream until the end of the STEP file it contains, without
+     * closing it.
+     *
+     * @param input   The stream to read the IFC file from.
+     * @param handler The handler receiving the content of the file.
+     * @return The number of instances read.
+     *
+     * @throws NullPointerException     If any of the parameters is null.
+     * @throws IOException              If the stream can't be read.
+     * @throws IllegalArgumentException If the stream doesn't contain a valid
+     *                                  IFC STEP file.
+     */
+    public long read(@NonNull InputStream input, @NonNull StepHandler handler) throws IOException {
+        return new Session(input, handler, new byte[bufferSize]).read();
+    }
+
+    /**
+     * Reads the HEADER section of a file, and nothing after it.
+     *
+     * @param filePath The path to the IFC file to read.
+     * @return The header of the file.
+     *
+     * @throws NullPointerException     If filePath is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file doesn't start with a valid
+     *                                  STEP header.
+     */
+    public StepHeader readHeader(@NonNull String filePath) throws IOException {
+        return readHeader(Paths.get(filePath));
+    }
+
+    /**
+     * Reads the HEADER section of a file, and nothing after it.
+     *
+     * @param path The path to the IFC file to read.
+     * @return The header of the file.
+     *
+     * @throws NullPointerException     If path is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file doesn't start with a valid
+     *                                  STEP header.
+     */
+    public StepHeader readHeader(@NonNull Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return readHeader(input);
+        }
+    }
+
+    /**
+     * Reads the HEADER section of a STEP file from a stream, without closing
+     * it. Since the stream is read through a buffer, some bytes after the
+     * header are read too.
+     *
+     * @param input The stream to read the IFC file from.
+     * @return The header of the file.
+     *
+     * @throws NullPointerException     If input is null.
+     * @throws IOException              If the stream can't be read.
+     * @throws IllegalArgumentException If the stream doesn't start with a
+     *                                  valid STEP header.
+     */
+    public StepHeader readHeader(@NonNull InputStream input) throws IOException {
+        Session session = new Session(input, null, new byte[Math.min(bufferSize, HEADER_BUFFER_SIZE)]);
+        session.read();
+        return session.header;
+    }
+
+    /**
+     * The parts of a STEP file, in order.
+     */
+    private enum Section {
+        START, HEADER, HEADER_ENTITIES, DATA, INSTANCES, END
+    }
+
+    /**
+     * The state of the reading of a file.
+     */
+    private static final class Session {
+        private final InputStream input;
+        private final StepHandler handler;
+        private final TypeNames types = new TypeNames();
+        private final StepInstance instance = new StepInstance();
+        private final StepHeader header = new StepHeader();
+        private byte[] buffer;
+        /**
+         * The position in the file of the first byte of the buffer.
+         */
+        private long offset;
+        /**
+         * The index of the first byte of the buffer that wasn't read yet.
+         */
+        private int start;
+        /**
+         * The index after the last byte of the buffer filled from the stream.
+         */
+        private int limit;
+        private boolean endOfStream;
+        private Section section = Section.START;
+        private long instances;
+
+        /**
+         * @param handler The handler of the content of the file, or
+         *                {@code null} to read only the header.
+         */
+        private Session(InputStream input, StepHandler handler, byte[] buffer) {
+            this.input = input;
+            this.handler = handler;
+            this.buffer = buffer;
+        }
+
+        private long read() throws IOException {
+            while (section != Section.END) {
+                int end = new StepLexer(buffer, start, limit, offset).recordEnd(start);
+                if (end >= 0) {
+                    statement(new StepLexer(buffer, start, end + 1, offset));
+                    start = end + 1;
+                } else if (endOfStream) {
+                    throw new StepLexer(buffer, start, limit, offset).error("unexpected end of file");
+                } else {
+                    fill();
+                }
+            }
+            return instances;
+        }
+
+        /**
+         * Reads more bytes from the stream, after moving the ones not read
+         * yet to the start of the buffer, and growing it if they fill it.
+         */
+        private void fill() throws IOException {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, limit - start);
+                limit -= start;
+                offset += start;
+                start = 0;
+            }
+            if (limit == buffer.length) {
+                if (buffer.length == Integer.MAX_VALUE - 8) {
+                    throw new IllegalArgumentException("instance at byte " + offset + " is too big");
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, Integer.MAX_VALUE - 8));
+            }
+            int read = input.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfStream = true;
+            } else {
+                limit += read;
+            }
+        }
+
+        /**
+         * Reads a statement ending with a semicolon.
+         */
+        private void statement(StepLexer lexer) {
+            switch (section) {
+                case START:
+                    if (!lexer.acceptKeyword(MAGIC)) {
+                        throw lexer.error("expected " + MAGIC);
+                    }
+                    section = Section.HEADER;
+                    break;
+                case HEADER:
+                    if (!lexer.acceptKeyword("HEADER")) {
+                        throw lexer.error("expected HEADER");
+                    }
+                    section = Section.HEADER_ENTITIES;
+                    break;
+                case HEADER_ENTITIES:
+                    if (lexer.acceptKeyword("ENDSEC")) {
+                        if (handler == null) {
+                            section = Section.END;
+                            break;
+                        }
+                        handler.header(header.toHeader());
+                        section = Section.DATA;
+                    } else {
+                        HeaderParser.readEntity(lexer, header);
+                        return;
+                    }
+                    break;
+                case DATA:
+                    if (lexer.acceptKeyword("DATA")) {
+                        section = Section.INSTANCES;
+                    } else if (lexer.acceptKeyword("END-" + MAGIC)) {
+                        section = Section.END;
+                    } else {
+                        throw lexer.error("expected DATA or END-" + MAGIC);
+                    }
+                    break;
+                default:
+                    if (lexer.acceptKeyword("ENDSEC")) {
+                        section = Section.DATA;
+                        break;
+                    }
+                    instance(lexer);
+                    return;
+            }
+            lexer.expect(';');
+        }
+
+        private void instance(StepLexer lexer) {
+            lexer.peek();
+            long position = offset + lexer.getPosition();
+            int id = lexer.readReference();
+            lexer.expect('=');
+            if (lexer.peek() == '(') {
+                throw lexer.error("complex instances are not supported");
+            }
+            int nameStart = lexer.skipKeyword();
+            String type = types.get(types.indexOf(buffer, nameStart, lexer.getPosition()));
+            instance.reset(buffer, offset, id, type, position, lexer.getPosition(), end(lexer));
+            instances++;
+            handler.instance(instance);
+        }
+
+        /**
+         * @return The index of the semicolon ending the statement read by
+         * {@code lexer}.
+         */
+        private int end(StepLexer lexer) {
+            return lexer.recordEnd(lexer.getPosition());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+/**
+ * Receives the content of a STEP file while {@link StepEventReader} reads it,
+ * in the order of the file.
+ */
+public interface StepHandler {
+    /**
+     * Called once the HEADER section was read, before any instance.
+     *
+     * @param header The content of the HEADER section.
+     */
+    default void header(Header header) {}
+
+    /**
+     * Called for each instance of the DATA sections.
+     *
+     * @param instance The instance, which is only valid until this method
+     *                 returns.
+     */
+    void instance(StepInstance instance);
+}
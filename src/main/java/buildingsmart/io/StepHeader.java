@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The content of the HEADER section of an IFC STEP file, as read by
+ * {@link StepEventReader#readHeader(java.nio.file.Path)}.
+ * <p>
+ * Unlike {@link Header}, which is meant to be written, Strings are decoded
+ * (see {@link buildingsmart.util.Functions#parseFromStepFile(String)}) and all
+ * the parameters of FILE_DESCRIPTION, FILE_NAME and FILE_SCHEMA are kept.
+ * The values of an entity missing from the file are {@code null}, while
+ * Strings missing from an entity are empty. Instances of this class are
+ * immutable, so they can be used by many threads at once.
+ */
+@Getter
+@Setter(AccessLevel.PACKAGE)
+@EqualsAndHashCode
+@ToString
+public final class StepHeader {
+    /**
+     * Information about the exchanged content, e.g.
+     * {@code ViewDefinition[CoordinationView]}.
+     */
+    private List<String> description;
+    /**
+     * The level of the implementation of ISO 10303-21, e.g. {@code 2;1}.
+     */
+    private String implementationLevel;
+    private String fileName;
+    /**
+     * The date and time of the creation of the file, usually in the ISO 8601
+     * local time format.
+     */
+    private String timeStamp;
+    private List<String> author;
+    private List<String> organization;
+    /**
+     * The name of the program that wrote the file, e.g.
+     * {@code ifc-java 0.3.6}.
+     */
+    private String preprocessorVersion;
+    private String originatingSystem;
+    private String authorization;
+    /**
+     * The schemas of the file, e.g. {@code IFC2X3}.
+     */
+    private List<String> schemas;
+
+    StepHeader() {}
+
+    void setDescription(List<String> description) {
+        this.description = Collections.unmodifiableList(description);
+    }
+
+    void setAuthor(List<String> author) {
+        this.author = Collections.unmodifiableList(author);
+    }
+
+    void setOrganization(List<String> organization) {
+        this.organization = Collections.unmodifiableList(organization);
+    }
+
+    void setSchemas(List<String> schemas) {
+        this.schemas = Collections.unmodifiableList(schemas);
+    }
+
+    /**
+     * @return A new {@link Header} having the description, file name, time
+     * stamp, author, organization, originating system and authorization of
+     * this header, which are the values it can be set.
+     *
+     * @throws IllegalArgumentException If any of the values is too long for
+     *                                  {@link Header}.
+     */
+    public Header toHeader() {
+        Header header = new Header();
+        if (description != null) {
+            header.setDescription(new ArrayList<>(description));
+        }
+        if (fileName != null) {
+            header.setFileName(fileName)
+                    .setTimeStamp(timeStamp)
+                    .setAuthor(new ArrayList<>(author))
+                    .setOrganization(new ArrayList<>(organization))
+                    .setOriginatingSystem(originatingSystem)
+                    .setAuthorization(authorization);
+        }
+        return header;
+    }
+}
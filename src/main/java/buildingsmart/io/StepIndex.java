@@ -0,0 +1,575 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.IfcRoot;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the instances of an IFC STEP file, mapping the globalId of each
+ * {@link IfcRoot} to the id of its instance, and the id of each instance to
+ * its position in the file and to the name of its type.
+ * <p>
+ * The index is built by reading the file once, or by {@link Serializer} while
+ * writing it, and can be saved in a sidecar file next to the IFC file, by
+ * default named like it with the {@code .idx} extension, so that
+ * {@link StepReader#open(Path, StepIndex, int)} can find any instance, and the
+ * ones it references, with a few random reads:
+ * <pre>{@code
+ * StepIndex index = StepIndex.of(path); // reads or builds the sidecar file
+ * LazyStepModel model = new StepReader().open(path, index, 1000);
+ * IfcWall wall = (IfcWall) model.getByGlobalId("2O2Fr$t4X7Zf8NOew3FLOH");
+ * }</pre>
+ * The sidecar file stores the positions and the ids as variable-length
+ * deltas, the types of consecutive instances of the same type as a single
+ * run and the globalIds sorted, taking about 5 bytes per instance plus 25
+ * bytes per globalId. Instances of this class are immutable, so they can be
+ * used by many threads at once.
+ */
+@Slf4j
+public final class StepIndex {
+    /**
+     * The extension added to the name of an IFC file to get the name of its
+     * sidecar index file.
+     */
+    public static final String EXTENSION = ".idx";
+    private static final byte[] MAGIC = "IFCIDX".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int GLOBAL_ID_LENGTH = 22;
+
+    private final long fileSize;
+    private final String[] typeNames;
+    private final int[] ids;
+    private final long[] positions;
+    private final int[] typeIndices;
+    /**
+     * The globalIds, sorted and concatenated, each one taking
+     * {@link #GLOBAL_ID_LENGTH} bytes.
+     */
+    private final byte[] globalIds;
+    /**
+     * The index of the instance of each globalId in {@link #globalIds}.
+     */
+    private final int[] globalIdIndices;
+    private final IdIndex index;
+
+    private StepIndex(long fileSize,
+                      String[] typeNames,
+                      int[] ids,
+                      long[] positions,
+                      int[] typeIndices,
+                      byte[] globalIds,
+                      int[] globalIdIndices) {
+        this.fileSize = fileSize;
+        this.typeNames = typeNames;
+        this.ids = ids;
+        this.positions = positions;
+        this.typeIndices = typeIndices;
+        this.globalIds = globalIds;
+        this.globalIdIndices = globalIdIndices;
+        index = IdIndex.of(ids, ids.length);
+    }
+
+    /**
+     * Builds the index of a file by reading it once.
+     *
+     * @throws NullPointerException     If path is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid IFC STEP
+     *                                  file.
+     */
+    public static StepIndex build(@NonNull Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return build(input, Files.size(path));
+        }
+    }
+
+    /**
+     * Builds the index of a file by reading it from {@code input}, which is
+     * not closed.
+     *
+     * @param fileSize The size in bytes of the file.
+     */
+    static StepIndex build(InputStream input, long fileSize) throws IOException {
+        Builder builder = new Builder();
+        new StepEventReader().read(input, builder);
+        return builder.build(fileSize);
+    }
+
+    /**
+     * Returns the index of a file, reading it from its sidecar file if it's up
+     * to date, i.e. if it's not older than the file and was built for a file
+     * of the same size, otherwise building it and trying to save it to the
+     * sidecar file.
+     *
+     * @throws NullPointerException     If path is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid IFC STEP
+     *                                  file.
+     * @see #sidecarPath(Path)
+     */
+    public static StepIndex of(@NonNull Path path) throws IOException {
+        Path sidecar = sidecarPath(path);
+        long fileSize = Files.size(path);
+        if (Files.isRegularFile(sidecar) &&
+                Files.getLastModifiedTime(sidecar).compareTo(Files.getLastModifiedTime(path)) >= 0) {
+            try {
+                StepIndex index = read(sidecar);
+                if (index.fileSize == fileSize) {
+                    return index;
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("ignoring the invalid index {}", sidecar, e);
+            }
+        }
+        StepIndex index = build(path);
+        try {
+            index.write(sidecar);
+        } catch (IOException e) {
+            log.warn("can't write the index {}", sidecar, e);
+        }
+        return index;
+    }
+
+    /**
+     * @return The path of the sidecar index file of an IFC file, named like it
+     * with the {@link #EXTENSION} extension.
+     *
+     * @throws NullPointerException If path is null.
+     */
+    public static Path sidecarPath(@NonNull Path path) {
+        return path.resolveSibling(path.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Reads an index saved by {@link #write(Path)}.
+     *
+     * @throws NullPointerException     If path is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid index.
+     */
+    public static StepIndex read(@NonNull Path path) throws IOException {
+        ByteBuffer input = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            input.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IllegalArgumentException(path + " is not an index");
+            }
+            int version = input.getInt();
+            if (version != VERSION) {
+                throw new IllegalArgumentException(path + ": unsupported index version " + version);
+            }
+            long fileSize = input.getLong();
+            String[] typeNames = new String[readSize(input)];
+            for (int i = 0; i < typeNames.length; i++) {
+                byte[] typeName = new byte[readSize(input)];
+                input.get(typeName);
+                typeNames[i] = new String(typeName, StandardCharsets.US_ASCII);
+            }
+            int size = readSize(input);
+            int[] ids = new int[size];
+            long[] positions = new long[size];
+            int[] typeIndices = new int[size];
+            int id = 0;
+            long position = 0;
+            for (int i = 0; i < size; i++) {
+                id += (int) readVarLong(input);
+                position += readVarLong(input);
+                ids[i] = id;
+                positions[i] = position;
+            }
+            for (int i = 0; i < size; ) {
+                int type = readSize(input);
+                int run = readSize(input);
+                if (type >= typeNames.length || run == 0 || run > size - i) {
+                    throw new IllegalArgumentException(path + ": invalid run of types");
+                }
+                Arrays.fill(typeIndices, i, i + run, type);
+                i += run;
+            }
+            int globalIdCount = readSize(input);
+            byte[] globalIds = new byte[globalIdCount * GLOBAL_ID_LENGTH];
+            int[] globalIdIndices = new int[globalIdCount];
+            for (int i = 0; i < globalIdCount; i++) {
+                input.get(globalIds, i * GLOBAL_ID_LENGTH, GLOBAL_ID_LENGTH);
+                globalIdIndices[i] = readSize(input);
+                if (globalIdIndices[i] >= size) {
+                    throw new IllegalArgumentException(path + ": invalid globalId");
+                }
+            }
+            return new StepIndex(fileSize, typeNames, ids, positions, typeIndices, globalIds, globalIdIndices);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException(path + ": truncated index", e);
+        }
+    }
+
+    /**
+     * Saves this index, replacing the file if it already exists.
+     *
+     * @throws NullPointerException If path is null.
+     * @throws IOException          If the file can't be written.
+     */
+    public void write(@NonNull Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.write(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(fileSize);
+            writeVarLong(output, typeNames.length);
+            for (String typeName : typeNames) {
+                writeVarLong(output, typeName.length());
+                output.write(typeName.getBytes(StandardCharsets.US_ASCII));
+            }
+            writeVarLong(output, ids.length);
+            int id = 0;
+            long position = 0;
+            for (int i = 0; i < ids.length; i++) {
+                writeVarLong(output, ids[i] - id);
+                writeVarLong(output, positions[i] - position);
+                id = ids[i];
+                position = positions[i];
+            }
+            for (int i = 0; i < ids.length; ) {
+                int run = 1;
+                while (i + run < ids.length && typeIndices[i + run] == typeIndices[i]) {
+                    run++;
+                }
+                writeVarLong(output, typeIndices[i]);
+                writeVarLong(output, run);
+                i += run;
+            }
+            writeVarLong(output, globalIdIndices.length);
+            for (int i = 0; i < globalIdIndices.length; i++) {
+                output.write(globalIds, i * GLOBAL_ID_LENGTH, GLOBAL_ID_LENGTH);
+                writeVarLong(output, globalIdIndices[i]);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes a value with 7 bits per byte, the highest bit telling whether
+     * more bytes follow, after moving its sign to the lowest bit so that small
+     * negative values take few bytes too.
+     */
+    private static void writeVarLong(OutputStream output, long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            output.write((int) (zigZag & 0x7F) | 0x80);
+            zigZag >>>= 7;
+        }
+        output.write((int) zigZag);
+    }
+
+    private static long readVarLong(ByteBuffer input) {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.get();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IllegalArgumentException("invalid index: variable-length value too long");
+    }
+
+    private static int readSize(ByteBuffer input) {
+        long size = readVarLong(input);
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid index: size " + size);
+        }
+        return (int) size;
+    }
+
+    /**
+     * @return The size in bytes of the indexed file.
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return The number of instances in the file.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return The ids of the instances, in the order in which they appear in
+     * the file.
+     */
+    public int[] getIds() {
+        return ids.clone();
+    }
+
+    /**
+     * @param type The type of the entities whose ids to return.
+     * @return The ids of the instances whose entities are instances of
+     * {@code type}, in the order in which they appear in the file.
+     *
+     * @throws NullPointerException If type is null.
+     */
+    public int[] getIds(@NonNull Class<?> type) {
+        boolean[] matching = new boolean[typeNames.length];
+        for (int i = 0; i < typeNames.length; i++) {
+            Class<?> typeClass = EntityType.classForName(typeNames[i]);
+            matching[i] = typeClass != null && type.isAssignableFrom(typeClass);
+        }
+        int[] matchingIds = new int[ids.length];
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (matching[typeIndices[i]]) {
+                matchingIds[size++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(matchingIds, size);
+    }
+
+    /**
+     * @param globalId The globalId of an {@link IfcRoot}.
+     * @return The id of the instance of the entity having the given globalId,
+     * or -1 if there's none.
+     *
+     * @throws NullPointerException If globalId is null.
+     */
+    public int getId(@NonNull String globalId) {
+        int i = globalIdIndex(globalId);
+        return i < 0 ? -1 : ids[i];
+    }
+
+    /**
+     * @param id The id of an instance, e.g. 12 for {@code #12}.
+     * @return The name of the type of the instance in upper case, e.g.
+     * {@code IFCWALL}, or {@code null} if there's no instance with that id.
+     */
+    public String getType(int id) {
+        int i = index.get(id);
+        return i < 0 ? null : typeNames[typeIndices[i]];
+    }
+
+    /**
+     * @param id The id of an instance, e.g. 12 for {@code #12}.
+     * @return The position in the file of the first byte of the instance, or
+     * -1 if there's no instance with that id.
+     */
+    public long getPosition(int id) {
+        int i = index.get(id);
+        return i < 0 ? -1 : positions[i];
+    }
+
+    /**
+     * @return The index in the file of the instance having the given
+     * globalId, or -1 if there's none.
+     */
+    int globalIdIndex(String globalId) {
+        if (globalId.length() != GLOBAL_ID_LENGTH) {
+            return -1;
+        }
+        int low = 0;
+        int high = globalIdIndices.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, globalId);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return globalIdIndices[middle];
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int i, String globalId) {
+        int offset = i * GLOBAL_ID_LENGTH;
+        for (int j = 0; j < GLOBAL_ID_LENGTH; j++) {
+            int comparison = Character.compare((char) globalIds[offset + j], globalId.charAt(j));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return The index in the file of the instance having the given id, or
+     * -1 if there's none.
+     */
+    int indexOf(int id) {
+        return index.get(id);
+    }
+
+    int id(int index) {
+        return ids[index];
+    }
+
+    long position(int index) {
+        return positions[index];
+    }
+
+    int typeIndex(int index) {
+        return typeIndices[index];
+    }
+
+    String typeName(int typeIndex) {
+        return typeNames[typeIndex];
+    }
+
+    int typeCount() {
+        return typeNames.length;
+    }
+
+    /**
+     * Collects the instances of a file, while it's read by
+     * {@link StepEventReader} or written by {@link Serializer}.
+     */
+    static final class Builder implements StepHandler {
+        private final List<String> typeNames = new ArrayList<>();
+        private final Map<String, Integer> typesByName = new HashMap<>();
+        /**
+         * Whether the entities of each type are instances of {@link IfcRoot},
+         * whose first attribute is the globalId.
+         */
+        private boolean[] rooted = new boolean[64];
+        private int[] ids = new int[1024];
+        private long[] positions = new long[1024];
+        private int[] typeIndices = new int[1024];
+        private int size;
+        private byte[] globalIds = new byte[64 * GLOBAL_ID_LENGTH];
+        private int[] globalIdIndices = new int[64];
+        private int globalIdCount;
+
+        @Override
+        public void instance(StepInstance instance) {
+            int type = add(instance.getId(), instance.getType(), instance.getPosition());
+            if (rooted[type] && instance.size() > 0) {
+                StepValue globalId = instance.get(0);
+                if (globalId.getKind() == StepValue.Kind.STRING) {
+                    addGlobalId(globalId.getString());
+                }
+            }
+        }
+
+        /**
+         * Adds an instance after the ones added so far.
+         *
+         * @param typeName The name of the type of the instance in upper case.
+         * @return The index of the type.
+         */
+        int add(int id, String typeName, long position) {
+            if (size == ids.length) {
+                int length = size * 2;
+                ids = Arrays.copyOf(ids, length);
+                positions = Arrays.copyOf(positions, length);
+                typeIndices = Arrays.copyOf(typeIndices, length);
+            }
+            Integer type = typesByName.get(typeName);
+            if (type == null) {
+                type = typeNames.size();
+                typeNames.add(typeName);
+                typesByName.put(typeName, type);
+                if (type == rooted.length) {
+                    rooted = Arrays.copyOf(rooted, type * 2);
+                }
+                Class<?> typeClass = EntityType.classForName(typeName);
+                rooted[type] = typeClass != null && IfcRoot.class.isAssignableFrom(typeClass);
+            }
+            ids[size] = id;
+            positions[size] = position;
+            typeIndices[size] = type;
+            size++;
+            return type;
+        }
+
+        /**
+         * Sets the globalId of the instance added last. GlobalIds that are not
+         * 22 ASCII characters long are ignored.
+         */
+        void addGlobalId(String globalId) {
+            if (globalId.length() != GLOBAL_ID_LENGTH) {
+                return;
+            }
+            for (int i = 0; i < GLOBAL_ID_LENGTH; i++) {
+                if (globalId.charAt(i) > 0x7F) {
+                    return;
+                }
+            }
+            if (globalIdCount == globalIdIndices.length) {
+                globalIdIndices = Arrays.copyOf(globalIdIndices, globalIdCount * 2);
+                globalIds = Arrays.copyOf(globalIds, globalIdCount * 2 * GLOBAL_ID_LENGTH);
+            }
+            int offset = globalIdCount * GLOBAL_ID_LENGTH;
+            for (int i = 0; i < GLOBAL_ID_LENGTH; i++) {
+                globalIds[offset + i] = (byte) globalId.charAt(i);
+            }
+            globalIdIndices[globalIdCount++] = size - 1;
+        }
+
+        /**
+         * @param fileSize The size in bytes of the file.
+         * @throws IllegalArgumentException If two instances have the same id.
+         */
+        StepIndex build(long fileSize) {
+            Integer[] order = new Integer[globalIdCount];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compare(globalIds, a * GLOBAL_ID_LENGTH, (a + 1) * GLOBAL_ID_LENGTH,
+                                                        globalIds, b * GLOBAL_ID_LENGTH, (b + 1) * GLOBAL_ID_LENGTH));
+            byte[] sortedGlobalIds = new byte[order.length * GLOBAL_ID_LENGTH];
+            int[] sortedIndices = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                System.arraycopy(globalIds, order[i] * GLOBAL_ID_LENGTH,
+                                 sortedGlobalIds, i * GLOBAL_ID_LENGTH, GLOBAL_ID_LENGTH);
+                sortedIndices[i] = globalIdIndices[order[i]];
+            }
+            return new StepIndex(fileSize,
+                                 typeNames.toArray(new String[0]),
+                                 Arrays.copyOf(ids, size),
+                                 Arrays.copyOf(positions, size),
+                                 Arrays.copyOf(typeIndices, size),
+                                 sortedGlobalIds,
+                                 sortedIndices);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntConsumer;
+
+/**
+ * An instance of the DATA section of a STEP file, e.g.
+ * {@code #12=IFCWALL(...);}, read by {@link StepEventReader}.
+ * <p>
+ * The same object is reused for all the instances of a file, so it's only
+ * valid until the {@link StepHandler} that received it returns, as the
+ * {@link StepValue}s of its parameters. Instances of this class can't be used
+ * by many threads at once.
+ */
+public final class StepInstance {
+    private byte[] data;
+    private long offset;
+    private int id;
+    private String type;
+    private int start;
+    private int end;
+    private long position;
+    private StepValue parameters;
+
+    StepInstance() {}
+
+    /**
+     * Makes this object represent another instance.
+     *
+     * @param data     The bytes containing the instance.
+     * @param offset   The position in the file of the first byte of
+     *                 {@code data}.
+     * @param id       The id of the instance.
+     * @param type     The name of the type of the instance, in upper case.
+     * @param position The position in the file of the first byte of the
+     *                 instance.
+     * @param start    The index of the first byte after the name of the type.
+     * @param end      The index of the semicolon ending the instance.
+     */
+    void reset(byte[] data, long offset, int id, String type, long position, int start, int end) {
+        this.data = data;
+        this.offset = offset;
+        this.id = id;
+        this.type = type;
+        this.position = position;
+        this.start = start;
+        this.end = end;
+        parameters = null;
+    }
+
+    /**
+     * @return The id of this instance, e.g. 12 for {@code #12}.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The name of the type of this instance in upper case, e.g.
+     * {@code IFCWALL}. The same String is returned for all the instances of a
+     * type, so it can be compared by identity with the one of a previous
+     * instance.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return The position in the file of the first byte of this instance.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The number of parameters of this instance.
+     *
+     * @throws IllegalArgumentException If the parameters are not valid.
+     */
+    public int size() {
+        return parameters().size();
+    }
+
+    /**
+     * @param index The index of a parameter, starting from 0.
+     * @return The parameter at {@code index}.
+     *
+     * @throws IndexOutOfBoundsException If there's no parameter at
+     *                                   {@code index}.
+     * @throws IllegalArgumentException  If the parameters are not valid.
+     */
+    public StepValue get(int index) {
+        return parameters().get(index);
+    }
+
+    /**
+     * Passes to {@code action} the ids of all the instances referenced by this
+     * instance, in order.
+     *
+     * @throws NullPointerException If action is null.
+     */
+    public void forEachReference(@NonNull IntConsumer action) {
+        StepValue.forEachReference(data, start, end, action);
+    }
+
+    /**
+     * @return A read-only view of the bytes of the parameters of this
+     * instance, from the opening parenthesis to the closing one, as they're
+     * written in the file.
+     */
+    public ByteBuffer getBytes() {
+        return parameters().getBytes();
+    }
+
+    /**
+     * @return This instance as it's written in the file, without the
+     * semicolon ending it.
+     */
+    @Override
+    public String toString() {
+        return "#" + id + "=" + type + new String(data, start, end - start, StandardCharsets.UTF_8).trim();
+    }
+
+    private StepValue parameters() {
+        if (parameters == null) {
+            StepLexer lexer = new StepLexer(data, start, end + 1, offset);
+            if (lexer.peek() != '(') {
+                throw lexer.error("expected '('");
+            }
+            int parametersStart = lexer.getPosition();
+            lexer.skipValue();
+            int parametersEnd = lexer.getPosition();
+            if (lexer.peek() != ';' || lexer.getPosition() != end) {
+                throw lexer.error("expected ';'");
+            }
+            parameters = new StepValue(data, parametersStart, parametersEnd, offset);
+        }
+        return parameters;
+    }
+}
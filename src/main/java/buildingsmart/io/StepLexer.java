@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.util.Functions;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the tokens of an ISO 10303-21 (STEP) file directly from its bytes,
+ * without decoding them to characters first.
+ * <p>
+ * A lexer is a cursor over a range of a byte array: every method reading a
+ * token skips the whitespace and the comments before it, then moves the cursor
+ * after it. Numbers are parsed without creating strings whenever they fit in a
+ * double exactly, strings are decoded only when they contain escapes or
+ * non-ASCII bytes (which are read as UTF-8). Instances of this class can't be
+ * used by many threads at once.
+ */
+final class StepLexer {
+    /**
+     * The powers of ten that are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final byte[] data;
+    private final int end;
+    /**
+     * The position in the file of the first byte of {@link #data}, reported in
+     * errors.
+     */
+    private final long offset;
+    private int position;
+
+    /**
+     * @param data     The bytes to read.
+     * @param position The index of the first byte to read.
+     * @param end      The index after the last byte to read.
+     */
+    StepLexer(byte[] data, int position, int end) {
+        this(data, position, end, 0);
+    }
+
+    /**
+     * @param data     The bytes to read, which are part of a file.
+     * @param position The index of the first byte to read.
+     * @param end      The index after the last byte to read.
+     * @param offset   The position in the file of the first byte of
+     *                 {@code data}.
+     */
+    StepLexer(byte[] data, int position, int end, long offset) {
+        this.data = data;
+        this.position = position;
+        this.end = end;
+        this.offset = offset;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    void setPosition(int position) {
+        this.position = position;
+    }
+
+    /**
+     * @return The next byte after whitespace and comments, without consuming
+     * it, or -1 at the end of the range.
+     */
+    int peek() {
+        skipSpace();
+        return position < end ? data[position] : -1;
+    }
+
+    /**
+     * Consumes the next byte if it is {@code c}.
+     *
+     * @return Whether the byte was consumed.
+     */
+    boolean accept(char c) {
+        if (peek() == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the next byte is not {@code c}.
+     */
+    void expect(char c) {
+        if (!accept(c)) {
+            throw error("expected '" + c + "'");
+        }
+    }
+
+    /**
+     * @return Whether the next keyword is {@code keyword}, which is consumed if
+     * it is.
+     */
+    boolean acceptKeyword(String keyword) {
+        skipSpace();
+        if (end - position < keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (data[position + i] != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        int next = position + keyword.length();
+        if (next < end && isKeywordPart(data[next])) {
+            return false;
+        }
+        position = next;
+        return true;
+    }
+
+    /**
+     * Skips a keyword, e.g. the name of the type of an instance, leaving the
+     * cursor after it.
+     *
+     * @return The index of the first byte of the keyword.
+     */
+    int skipKeyword() {
+        skipSpace();
+        int start = position;
+        if (position >= end || !isKeywordStart(data[position])) {
+            throw error("expected a keyword");
+        }
+        do {
+            position++;
+        } while (position < end && isKeywordPart(data[position]));
+        return start;
+    }
+
+    /**
+     * @return The next keyword, in upper case.
+     */
+    String readKeyword() {
+        int start = skipKeyword();
+        char[] chars = new char[position - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) Character.toUpperCase(data[start + i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return The id of an instance name, e.g. 12 for {@code #12}.
+     */
+    int readReference() {
+        expect('#');
+        if (position >= end || !isDigit(data[position])) {
+            throw error("expected the id of an instance");
+        }
+        long id = 0;
+        do {
+            id = id * 10 + data[position++] - '0';
+            if (id > Integer.MAX_VALUE) {
+                throw error("id of instance too big");
+            }
+        } while (position < end && isDigit(data[position]));
+        return (int) id;
+    }
+
+    /**
+     * @return The next integer.
+     */
+    long readInteger() {
+        skipSpace();
+        int start = position;
+        boolean negative = false;
+        if (position < end && (data[position] == '-' || data[position] == '+')) {
+            negative = data[position++] == '-';
+        }
+        if (position >= end || !isDigit(data[position])) {
+            throw error("expected an integer");
+        }
+        long value = 0;
+        do {
+            int digit = data[position++] - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                position = start;
+                throw error("integer too big");
+            }
+            value = value * 10 + digit;
+        } while (position < end && isDigit(data[position]));
+        if (position < end && (data[position] == '.' || data[position] == 'E' || data[position] == 'e')) {
+            position = start;
+            throw error("expected an integer");
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return The next real, or integer converted to a real.
+     */
+    double readReal() {
+        skipSpace();
+        int start = position;
+        boolean negative = false;
+        if (position < end && (data[position] == '-' || data[position] == '+')) {
+            negative = data[position++] == '-';
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean digits = false;
+        while (position < end && isDigit(data[position])) {
+            int digit = data[position++] - '0';
+            digits = true;
+            if (significantDigits < 18) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+            } else {
+                exponent++;
+            }
+        }
+        if (!digits) {
+            position = start;
+            throw error("expected a number");
+        }
+        if (position < end && data[position] == '.') {
+            position++;
+            while (position < end && isDigit(data[position])) {
+                int digit = data[position++] - '0';
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + digit;
+                    exponent--;
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                }
+            }
+        }
+        if (position < end && (data[position] == 'E' || data[position] == 'e')) {
+            position++;
+            boolean negativeExponent = false;
+            if (position < end && (data[position] == '-' || data[position] == '+')) {
+                negativeExponent = data[position++] == '-';
+            }
+            if (position >= end || !isDigit(data[position])) {
+                position = start;
+                throw error("invalid exponent");
+            }
+            int value = 0;
+            do {
+                value = Math.min(value * 10 + data[position++] - '0', 100_000);
+            } while (position < end && isDigit(data[position]));
+            exponent += negativeExponent ? -value : value;
+        }
+        double value;
+        if (significantDigits <= 15 && exponent >= -22 && exponent <= 22) {
+            // the mantissa and the power of ten are exact, so the division or
+            // the multiplication is correctly rounded
+            value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(data, start, position - start, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * @return The decoded content of the next string.
+     *
+     * @see Functions#parseFromStepFile(String)
+     */
+    String readString() {
+        expect('\'');
+        int start = position;
+        boolean escaped = false;
+        boolean ascii = true;
+        while (true) {
+            if (position >= end) {
+                position = start - 1;
+                throw error("unterminated string");
+            }
+            byte b = data[position];
+            if (b == '\'') {
+                if (position + 1 < end && data[position + 1] == '\'') {
+                    escaped = true;
+                    position += 2;
+                    continue;
+                }
+                break;
+            }
+            if (b == '\\') {
+                escaped = true;
+            } else if (b < 0) {
+                ascii = false;
+            }
+            position++;
+        }
+        String raw = new String(data,
+                                start,
+                                position - start,
+                                ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        position++;
+        try {
+            return escaped ? Functions.parseFromStepFile(raw) : raw;
+        } catch (IllegalArgumentException e) {
+            position = start - 1;
+            throw error(e.getMessage());
+        }
+    }
+
+    /**
+     * @return The name of the next enumeration value, e.g. {@code T} for
+     * {@code .T.}.
+     */
+    String readEnumeration() {
+        expect('.');
+        int start = position;
+        while (position < end && data[position] != '.') {
+            if (!isKeywordPart(data[position])) {
+                throw error("invalid enumeration value");
+            }
+            position++;
+        }
+        if (position >= end || position == start) {
+            position = start - 1;
+            throw error("invalid enumeration value");
+        }
+        return new String(data, start, position++ - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Skips the next parameter, whatever its kind.
+     */
+    void skipValue() {
+        int next = peek();
+        if (next == '\'') {
+            readString();
+        } else if (next == '(') {
+            position++;
+            if (!accept(')')) {
+                do {
+                    skipValue();
+                } while (accept(','));
+                expect(')');
+            }
+        } else if (next == '#') {
+            readReference();
+        } else if (next == '.') {
+            readEnumeration();
+        } else if (next == '$' || next == '*') {
+            position++;
+        } else if (next == '"') {
+            int close = indexOf((byte) '"', position + 1);
+            if (close < 0) {
+                throw error("unterminated binary");
+            }
+            position = close + 1;
+        } else if (next >= 0 && isKeywordStart((byte) next)) {
+            skipKeyword();
+            expect('(');
+            skipValue();
+            expect(')');
+        } else {
+            readReal();
+        }
+    }
+
+    /**
+     * @param from The index of the first byte of the instance, after its
+     *             name and type.
+     * @return The index of the semicolon ending the instance, or -1 if there
+     * is none. Semicolons in strings and comments are skipped.
+     */
+    int recordEnd(int from) {
+        byte[] data = this.data;
+        for (int i = from; i < end; i++) {
+            byte b = data[i];
+            if (b == ';') {
+                return i;
+            }
+            if (b == '\'') {
+                // a doubled apostrophe ends the string and starts another one
+                do {
+                    i++;
+                } while (i < end && data[i] != '\'');
+            } else if (b == '/' && i + 1 < end && data[i + 1] == '*') {
+                int close = indexOf((byte) '*', (byte) '/', i + 2);
+                if (close < 0) {
+                    return -1;
+                }
+                i = close + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return An exception reporting {@code message} and the current position.
+     */
+    IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("invalid STEP file at byte " + (offset + position) + ": " + message);
+    }
+
+    private void skipSpace() {
+        byte[] data = this.data;
+        while (position < end) {
+            byte b = data[position];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                position++;
+            } else if (b == '/' && position + 1 < end && data[position + 1] == '*') {
+                int close = indexOf((byte) '*', (byte) '/', position + 2);
+                if (close < 0) {
+                    throw error("unterminated comment");
+                }
+                position = close + 2;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int indexOf(byte b, int from) {
+        for (int i = from; i < end; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(byte first, byte second, int from) {
+        for (int i = from; i + 1 < end; i++) {
+            if (data[i] == first && data[i + 1] == second) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isKeywordStart(byte b) {
+        return b >= 'A' && b <= 'Z' || b >= 'a' && b <= 'z' || b == '_' || b == '!';
+    }
+
+    private static boolean isKeywordPart(byte b) {
+        return isKeywordStart(b) || isDigit(b) || b == '-';
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.IfcProject;
+import buildingsmart.util.GlobalIdRegistry;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The entities read from an IFC STEP file by {@link StepReader}, indexed by
+ * the ids of their instances in the file.
+ * <p>
+ * Instances of this class are immutable, although the entities they contain
+ * are not, so they can be used by many threads at once.
+ */
+public final class StepModel {
+    /**
+     * The HEADER section of the file.
+     */
+    @Getter
+    private final Header header;
+    /**
+     * The registry of the globalIds of the entities of the model, which should
+     * be bound to the threads adding entities to the model.
+     */
+    @Getter
+    private final GlobalIdRegistry globalIdRegistry;
+    private final IdIndex index;
+    private final int[] ids;
+    private final Entity[] entities;
+
+    /**
+     * @param index    Maps the id of each instance to its index in
+     *                 {@code ids} and {@code entities}.
+     * @param ids      The ids of the instances, in the order of the file.
+     * @param entities The entities of the instances, in the order of the file.
+     */
+    StepModel(Header header, GlobalIdRegistry globalIdRegistry, IdIndex index, int[] ids, Entity[] entities) {
+        this.header = header;
+        this.globalIdRegistry = globalIdRegistry;
+        this.index = index;
+        this.ids = ids;
+        this.entities = entities;
+    }
+
+    /**
+     * @return The number of instances in the file.
+     */
+    public int size() {
+        return entities.length;
+    }
+
+    /**
+     * @param id The id of an instance, e.g. 12 for {@code #12}.
+     * @return The entity of the instance, or {@code null} if there's no
+     * instance with that id.
+     */
+    public Entity get(int id) {
+        int i = index.get(id);
+        return i < 0 ? null : entities[i];
+    }
+
+    /**
+     * @param type The type of the entities to return.
+     * @return The entities that are instances of {@code type}, in the order in
+     * which they appear in the file.
+     *
+     * @throws NullPointerException If type is null.
+     */
+    public <T> List<T> getAll(@NonNull Class<T> type) {
+        List<T> all = new ArrayList<>();
+        for (Entity entity : entities) {
+            if (type.isInstance(entity)) {
+                all.add(type.cast(entity));
+            }
+        }
+        return all;
+    }
+
+    /**
+     * @return The ids of the instances, in the order in which they appear in
+     * the file.
+     */
+    public int[] getIds() {
+        return ids.clone();
+    }
+
+    /**
+     * @return The first {@link IfcProject} of the file, or {@code null} if
+     * there's none.
+     */
+    public IfcProject getProject() {
+        for (Entity entity : entities) {
+            if (entity instanceof IfcProject) {
+                return (IfcProject) entity;
+            }
+        }
+        return null;
+    }
+}
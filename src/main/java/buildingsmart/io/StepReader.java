@@ -0,0 +1,880 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.util.DeferredValidation;
+import buildingsmart.util.GlobalIdRegistry;
+import buildingsmart.util.Precision;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Reads IFC STEP files (ISO 10303-21), such as the ones written by
+ * {@link Serializer}, creating their entities.
+ * <p>
+ * The file is read in two passes over its bytes. The first one only finds
+ * where each instance starts and ends, and indexes it by its id. The second
+ * one creates the entities in the order of the file through their
+ * constructors, so that inverse relationships are set as when building a
+ * model in code: when an instance references another one that appears later
+ * in the file, the instances it references are created first. Entities are
+ * created with a new {@link GlobalIdRegistry} and a
+ * {@link DeferredValidation} bound to the current thread.
+ * <p>
+ * Big files are read by many threads, unless {@link #parallel(boolean)} is
+ * set to {@code false}. The DATA sections are split into chunks at the ends
+ * of instances, which are scanned at once and then joined. The entities whose
+ * constructors modify no other entity (see
+ * {@link EntityType#mayModify(EntityType)}), such as the geometric items
+ * making up most of big files, are then created at once in rounds, each one
+ * creating the entities referencing only the ones created before it; the
+ * remaining ones are created by the current thread in the order of the file.
+ * <p>
+ * Instances of this class can be used by many threads at once, as long as
+ * they're not configured while reading.
+ */
+public class StepReader {
+    /**
+     * The minimum size in bytes of the chunks of the files read by many
+     * threads.
+     */
+    static final int CHUNK_SIZE = 1 << 20;
+    private static final String MAGIC = "ISO-10303-21";
+
+    private boolean parallel = true;
+    private int chunkSize = CHUNK_SIZE;
+    private Set<Class<?>> types = Collections.emptySet();
+    private Set<Class<?>> cutTypes = Collections.emptySet();
+
+    public StepReader() {}
+
+    /**
+     * @param parallel Whether big files are read by many threads, through the
+     *                 common {@link java.util.concurrent.ForkJoinPool}, which
+     *                 is {@code true} by default.
+     * @return This reader.
+     */
+    public StepReader parallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    /**
+     * Makes this reader create only the entities that are instances of the
+     * given types, and the ones they reference directly or through other
+     * entities. The other instances are only scanned, so they're not checked
+     * to be valid and can even be of unknown types.
+     *
+     * @param types The types of the entities to read, or no type to read all
+     *              of them, which is the default.
+     * @return This reader.
+     *
+     * @throws NullPointerException If types is null.
+     */
+    public StepReader types(@NonNull Class<?>... types) {
+        this.types = new HashSet<>(Arrays.asList(types));
+        return this;
+    }
+
+    /**
+     * Makes this reader skip the instances of the given types when reading
+     * only some types (see {@link #types(Class[])}), unless they're instances
+     * of those types, so that the instances they reference are skipped too.
+     * References to skipped instances are read as unset values, and left out
+     * of collections; an instance that is not of the types to read is skipped
+     * too if its entity can't be created without the skipped ones. For
+     * instance, reading walls and cutting at IfcShapeRepresentation also
+     * skips the IfcProductDefinitionShapes of the walls, which must have at
+     * least one representation, and leaves their representation unset.
+     *
+     * @param cutTypes The types of the entities to skip, or no type to skip
+     *                 none, which is the default.
+     * @return This reader.
+     *
+     * @throws NullPointerException If cutTypes is null.
+     */
+    public StepReader cutTypes(@NonNull Class<?>... cutTypes) {
+        this.cutTypes = new HashSet<>(Arrays.asList(cutTypes));
+        return this;
+    }
+
+    /**
+     * Sets the minimum size of the chunks of the files read by many threads,
+     * so that small files can be read by many threads in tests.
+     */
+    StepReader chunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * @param filePath The path to the IFC file to read.
+     * @return The model contained in the file.
+     *
+     * @throws NullPointerException     If {@code filePath} is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid IFC STEP
+     *                                  file, or contains instances that can't
+     *                                  be created.
+     */
+    public StepModel read(@NonNull String filePath) throws IOException {
+        return read(Paths.get(filePath));
+    }
+
+    /**
+     * @param path The path to the IFC file to read.
+     * @return The model contained in the file.
+     *
+     * @throws NullPointerException     If {@code path} is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid IFC STEP
+     *                                  file, or contains instances that can't
+     *                                  be created.
+     */
+    public StepModel read(@NonNull Path path) throws IOException {
+        return read(Files.readAllBytes(path));
+    }
+
+    /**
+     * @param input The stream to read the IFC file from, which is read until
+     *              its end and not closed.
+     * @return The model contained in the stream.
+     *
+     * @throws NullPointerException     If {@code input} is null.
+     * @throws IOException              If the stream can't be read.
+     * @throws IllegalArgumentException If the stream doesn't contain a valid
+     *                                  IFC STEP file, or contains instances
+     *                                  that can't be created.
+     */
+    public StepModel read(@NonNull InputStream input) throws IOException {
+        return read(input.readAllBytes());
+    }
+
+    /**
+     * @param data The content of an IFC file.
+     * @return The model contained in {@code data}.
+     *
+     * @throws NullPointerException     If {@code data} is null.
+     * @throws IllegalArgumentException If {@code data} is not a valid IFC STEP
+     *                                  file, or contains instances that can't
+     *                                  be created.
+     */
+    public StepModel read(byte @NonNull [] data) {
+        StepLexer lexer = new StepLexer(data, 0, data.length);
+        if (!lexer.acceptKeyword(MAGIC)) {
+            throw lexer.error("expected " + MAGIC);
+        }
+        lexer.expect(';');
+        Header header = readHeader(lexer);
+        Instances instances = new Instances();
+        boolean parallel = this.parallel && data.length >= chunkSize * 2L;
+        while (lexer.acceptKeyword("DATA")) {
+            lexer.expect(';');
+            if (parallel) {
+                scanInParallel(data, lexer, instances);
+            } else {
+                scan(data, lexer, instances, Integer.MAX_VALUE);
+            }
+            if (!lexer.acceptKeyword("ENDSEC")) {
+                throw lexer.error("expected ENDSEC");
+            }
+            lexer.expect(';');
+        }
+        if (!lexer.acceptKeyword("END-" + MAGIC)) {
+            throw lexer.error("expected END-" + MAGIC);
+        }
+        lexer.expect(';');
+        instances.index = IdIndex.of(instances.ids, instances.size);
+        if (!types.isEmpty()) {
+            new Selection(data, instances).select(types, cutTypes);
+        }
+
+        GlobalIdRegistry registry = new GlobalIdRegistry();
+        DeferredValidation validation = new DeferredValidation();
+        try {
+            Entity[] entities = new Entity[instances.size];
+            EntityType[] types = new EntityType[instances.types.size()];
+            if (parallel) {
+                new Rounds(data, instances, entities, types).build(registry, validation);
+            }
+            try (GlobalIdRegistry.Binding ignored = registry.bind();
+                 DeferredValidation.Binding ignored1 = validation.bind()) {
+                new Builder(data, instances, entities, types).build();
+            }
+            validation.validate();
+            if (instances.excluded != null) {
+                return selected(header, registry, instances, entities);
+            }
+            return new StepModel(header,
+                                 registry,
+                                 instances.index,
+                                 Arrays.copyOf(instances.ids, instances.size),
+                                 entities);
+        } catch (RuntimeException | Error e) {
+            registry.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The model made of the entities of the instances that were not
+     * excluded.
+     */
+    private static StepModel selected(Header header,
+                                      GlobalIdRegistry registry,
+                                      Instances instances,
+                                      Entity[] entities) {
+        int size = 0;
+        int[] ids = new int[instances.size];
+        Entity[] selected = new Entity[instances.size];
+        for (int i = 0; i < instances.size; i++) {
+            if (!instances.excluded[i]) {
+                ids[size] = instances.ids[i];
+                selected[size++] = entities[i];
+            }
+        }
+        return new StepModel(header,
+                             registry,
+                             IdIndex.of(ids, size),
+                             Arrays.copyOf(ids, size),
+                             Arrays.copyOf(selected, size));
+    }
+
+    /**
+     * Opens a file without creating its entities, which are created only when
+     * requested from the returned model, keeping the
+     * {@link LazyStepModel#DEFAULT_CACHE_SIZE} most recently used ones.
+     *
+     * @param path The path to the IFC file to open.
+     * @return The model contained in the file.
+     *
+     * @throws NullPointerException     If {@code path} is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid IFC STEP
+     *                                  file.
+     */
+    public LazyStepModel open(@NonNull Path path) throws IOException {
+        return open(path, LazyStepModel.DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Opens a file without creating its entities, which are created only when
+     * requested from the returned model.
+     *
+     * @param path      The path to the IFC file to open.
+     * @param cacheSize The number of most recently used entities kept by the
+     *                  returned model.
+     * @return The model contained in the file.
+     *
+     * @throws NullPointerException     If {@code path} is null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid IFC STEP
+     *                                  file, or cacheSize is not positive.
+     */
+    public LazyStepModel open(@NonNull Path path, int cacheSize) throws IOException {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("cacheSize must be positive");
+        }
+        return LazyStepModel.open(path, null, cacheSize);
+    }
+
+    /**
+     * Opens a file without creating its entities nor reading it to index its
+     * instances, which are created only when requested from the returned
+     * model.
+     *
+     * @param path      The path to the IFC file to open.
+     * @param index     The index of the file.
+     * @param cacheSize The number of most recently used entities kept by the
+     *                  returned model.
+     * @return The model contained in the file.
+     *
+     * @throws NullPointerException     If {@code path} or {@code index} is
+     *                                  null.
+     * @throws IOException              If the file can't be read.
+     * @throws IllegalArgumentException If the file is not a valid IFC STEP
+     *                                  file, index was built for a file of a
+     *                                  different size, or cacheSize is not
+     *                                  positive.
+     * @see StepIndex#of(Path)
+     */
+    public LazyStepModel open(@NonNull Path path, @NonNull StepIndex index, int cacheSize) throws IOException {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("cacheSize must be positive");
+        }
+        return LazyStepModel.open(path, index, cacheSize);
+    }
+
+    /**
+     * Reads the HEADER section, leaving the lexer after it.
+     */
+    private Header readHeader(StepLexer lexer) {
+        if (!lexer.acceptKeyword("HEADER")) {
+            throw lexer.error("expected HEADER");
+        }
+        lexer.expect(';');
+        StepHeader header = new StepHeader();
+        while (!lexer.acceptKeyword("ENDSEC")) {
+            HeaderParser.readEntity(lexer, header);
+        }
+        lexer.expect(';');
+        return header.toHeader();
+    }
+
+    /**
+     * Finds the instances of a DATA section starting before {@code limit},
+     * leaving the lexer before the first one starting after it, or before
+     * ENDSEC if the section ends first.
+     *
+     * @return Whether the end of the section was reached.
+     */
+    private static boolean scan(byte[] data, StepLexer lexer, Instances instances, int limit) {
+        while (lexer.peek() >= 0 && lexer.getPosition() < limit) {
+            int start = lexer.getPosition();
+            if (lexer.acceptKeyword("ENDSEC")) {
+                lexer.setPosition(start);
+                return true;
+            }
+            int id = lexer.readReference();
+            lexer.expect('=');
+            if (lexer.peek() == '(') {
+                throw lexer.error("complex instances are not supported");
+            }
+            int nameStart = lexer.skipKeyword();
+            int type = instances.types.indexOf(data, nameStart, lexer.getPosition());
+            int end = lexer.recordEnd(lexer.getPosition());
+            if (end < 0) {
+                lexer.setPosition(start);
+                throw lexer.error("unterminated instance #" + id);
+            }
+            instances.add(id, type, lexer.getPosition(), end);
+            lexer.setPosition(end + 1);
+        }
+        return lexer.peek() < 0;
+    }
+
+    /**
+     * Finds the instances of a DATA section by splitting the rest of the file
+     * into chunks, each one starting after a semicolon, scanned by many
+     * threads. A chunk is joined to the previous one if it starts where the
+     * scan of the previous one stopped; otherwise, which happens when it
+     * starts after a semicolon in a string or a comment, it's scanned again
+     * from there by the current thread.
+     */
+    private void scanInParallel(byte[] data, StepLexer lexer, Instances instances) {
+        int start = lexer.getPosition();
+        int[] bounds = new int[Math.max(1, (data.length - start) / chunkSize) + 1];
+        int chunks = 0;
+        bounds[0] = start;
+        for (int chunk = 1; chunk < bounds.length - 1; chunk++) {
+            int position = start + (int) ((long) (data.length - start) * chunk / (bounds.length - 1));
+            while (position < data.length && data[position - 1] != ';') {
+                position++;
+            }
+            if (position > bounds[chunks]) {
+                bounds[++chunks] = position;
+            }
+        }
+        bounds[++chunks] = Integer.MAX_VALUE;
+        Chunk[] scanned = new Chunk[chunks];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            scanned[chunk] = new Chunk(data, bounds[chunk], bounds[chunk + 1]);
+        });
+
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            Chunk next = scanned[chunk];
+            lexer.peek();
+            if (next.error != null || next.start != lexer.getPosition()) {
+                next = new Chunk(data, lexer.getPosition(), bounds[chunk + 1]);
+                if (next.error != null) {
+                    throw next.error;
+                }
+            }
+            instances.addAll(next.instances);
+            lexer.setPosition(next.end);
+            if (next.endOfSection) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The instances of a part of a DATA section.
+     */
+    private static final class Chunk {
+        private final Instances instances = new Instances();
+        /**
+         * The position of the first instance, or of ENDSEC.
+         */
+        private int start = -1;
+        /**
+         * The position of the first instance after the chunk, or of ENDSEC.
+         */
+        private int end;
+        private boolean endOfSection;
+        /**
+         * The error found scanning the chunk, which is not valid if it starts
+         * within a string or a comment.
+         */
+        private IllegalArgumentException error;
+
+        private Chunk(byte[] data, int start, int limit) {
+            StepLexer lexer = new StepLexer(data, start, data.length);
+            try {
+                lexer.peek();
+                this.start = lexer.getPosition();
+                endOfSection = scan(data, lexer, instances, limit);
+            } catch (IllegalArgumentException e) {
+                error = e;
+            }
+            end = lexer.getPosition();
+        }
+    }
+
+    /**
+     * The instances found in the DATA sections, stored in parallel arrays in
+     * the order of the file.
+     */
+    private static final class Instances {
+        private final TypeNames types;
+        private int[] ids = new int[1024];
+        private int[] typeIndices = new int[1024];
+        /**
+         * The index of the first byte after the name of the type of each
+         * instance.
+         */
+        private int[] starts = new int[1024];
+        /**
+         * The index of the semicolon ending each instance.
+         */
+        private int[] ends = new int[1024];
+        private int size;
+        /**
+         * The index of the ids, built once all instances were found.
+         */
+        private IdIndex index;
+        /**
+         * Whether each instance is not read, or {@code null} if all of them
+         * are read.
+         */
+        private boolean[] excluded;
+        /**
+         * Whether the instances of each type are to be read, or {@code null}
+         * if all of them are read.
+         */
+        private boolean[] wantedTypes;
+
+        private Instances() {
+            types = new TypeNames();
+        }
+
+        private void add(int id, int type, int start, int end) {
+            if (size == ids.length) {
+                int length = size * 2;
+                ids = Arrays.copyOf(ids, length);
+                typeIndices = Arrays.copyOf(typeIndices, length);
+                starts = Arrays.copyOf(starts, length);
+                ends = Arrays.copyOf(ends, length);
+            }
+            ids[size] = id;
+            typeIndices[size] = type;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        private boolean isExcluded(int index) {
+            return excluded != null && excluded[index];
+        }
+
+        /**
+         * Adds the instances found in a following part of the file.
+         */
+        private void addAll(Instances other) {
+            int[] typeIndices = new int[other.types.size()];
+            for (int i = 0; i < typeIndices.length; i++) {
+                byte[] name = other.types.get(i).getBytes(StandardCharsets.ISO_8859_1);
+                typeIndices[i] = types.indexOf(name, 0, name.length);
+            }
+            for (int i = 0; i < other.size; i++) {
+                add(other.ids[i], typeIndices[other.typeIndices[i]], other.starts[i], other.ends[i]);
+            }
+        }
+    }
+
+    /**
+     * Selects the instances to read, which are the ones of the types to read
+     * and the ones they reference, through instances not of the cut types.
+     */
+    private static final class Selection implements IntConsumer {
+        private final byte[] data;
+        private final Instances instances;
+        private final boolean[] excluded;
+        private boolean[] cutTypes;
+        private final int[] queue;
+        private int size;
+
+        private Selection(byte[] data, Instances instances) {
+            this.data = data;
+            this.instances = instances;
+            excluded = new boolean[instances.size];
+            queue = new int[instances.size];
+        }
+
+        private void select(Set<Class<?>> types, Set<Class<?>> cutTypes) {
+            boolean[] wantedTypes = new boolean[instances.types.size()];
+            this.cutTypes = new boolean[wantedTypes.length];
+            for (int type = 0; type < wantedTypes.length; type++) {
+                Class<?> typeClass = EntityType.classForName(instances.types.get(type));
+                if (typeClass != null) {
+                    wantedTypes[type] = isInstance(types, typeClass);
+                    this.cutTypes[type] = !wantedTypes[type] && isInstance(cutTypes, typeClass);
+                }
+            }
+            for (int i = 0; i < excluded.length; i++) {
+                excluded[i] = !wantedTypes[instances.typeIndices[i]];
+                if (!excluded[i]) {
+                    queue[size++] = i;
+                }
+            }
+            for (int next = 0; next < size; next++) {
+                int index = queue[next];
+                StepValue.forEachReference(data, instances.starts[index], instances.ends[index], this);
+            }
+            instances.excluded = excluded;
+            instances.wantedTypes = wantedTypes;
+        }
+
+        private static boolean isInstance(Set<Class<?>> types, Class<?> type) {
+            for (Class<?> t : types) {
+                if (t.isAssignableFrom(type)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Selects an instance referenced by the current one.
+         */
+        @Override
+        public void accept(int id) {
+            int reference = instances.index.get(id);
+            // undefined references are reported when the entity of the
+            // instance referencing them is created
+            if (reference >= 0 && excluded[reference] && !cutTypes[instances.typeIndices[reference]]) {
+                excluded[reference] = false;
+                queue[size++] = reference;
+            }
+        }
+    }
+
+    /**
+     * Creates at once the entities whose constructors modify no other entity,
+     * in rounds: each round creates, by many threads, the entities
+     * referencing only entities created by previous rounds.
+     */
+    private static final class Rounds implements IntConsumer {
+        private final byte[] data;
+        private final Instances instances;
+        private final Entity[] entities;
+        private final EntityType[] types;
+        /**
+         * For each pair of types, 1 if the constructor of the first one may
+         * modify entities of the second one, -1 if it doesn't, 0 if unknown.
+         */
+        private final byte[][] modifies;
+        /**
+         * The round in which each instance is created, starting from 1, or 0
+         * if it's created afterwards.
+         */
+        private final int[] rounds;
+        private int index;
+        private int round;
+
+        private Rounds(byte[] data, Instances instances, Entity[] entities, EntityType[] types) {
+            this.data = data;
+            this.instances = instances;
+            this.entities = entities;
+            this.types = types;
+            modifies = new byte[types.length][types.length];
+            rounds = new int[instances.size];
+        }
+
+        private void build(GlobalIdRegistry registry, DeferredValidation validation) {
+            for (int type = 0; type < types.length; type++) {
+                try {
+                    // the types of excluded instances are resolved too, for
+                    // simplicity, since it's cheap
+                    types[type] = EntityType.forName(instances.types.get(type));
+                } catch (IllegalArgumentException e) {
+                    // reported when the current thread creates its instances
+                }
+            }
+            int count = 0;
+            for (index = 0; index < rounds.length; index++) {
+                EntityType type = types[instances.typeIndices[index]];
+                if (type != null && !type.hasStaticState() && !instances.isExcluded(index)) {
+                    round = 1;
+                    StepValue.forEachReference(data, instances.starts[index], instances.ends[index], this);
+                    rounds[index] = round;
+                    count = Math.max(count, round);
+                }
+            }
+
+            // sorts the instances by round, keeping the order of the file
+            int[] roundStarts = new int[count + 2];
+            for (int r : rounds) {
+                roundStarts[r + 1]++;
+            }
+            for (int r = 1; r < roundStarts.length; r++) {
+                roundStarts[r] += roundStarts[r - 1];
+            }
+            int[] sorted = new int[rounds.length];
+            int[] next = roundStarts.clone();
+            for (int i = 0; i < rounds.length; i++) {
+                sorted[next[rounds[i]]++] = i;
+            }
+
+            Precision precision = Precision.current();
+            int tasks = ForkJoinPool.getCommonPoolParallelism() * 4;
+            for (int r = 1; r <= count; r++) {
+                int start = roundStarts[r];
+                int size = roundStarts[r + 1] - start;
+                IntStream.range(0, Math.min(tasks, size)).parallel().forEach(task -> {
+                    try (GlobalIdRegistry.Binding ignored = registry.bind();
+                         DeferredValidation.Binding ignored1 = validation.bind();
+                         Precision.Binding ignored2 = precision.bind()) {
+                        Builder builder = new Builder(data, instances, entities, types);
+                        int end = start + (int) ((long) size * (task + 1) / Math.min(tasks, size));
+                        for (int i = start + (int) ((long) size * task / Math.min(tasks, size)); i < end; i++) {
+                            entities[sorted[i]] = builder.create(sorted[i]);
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Updates the round of the current instance with one of the ids it
+         * references, setting it to 0 if the instance must be created
+         * afterwards.
+         */
+        @Override
+        public void accept(int id) {
+            if (round == 0) {
+                return;
+            }
+            int reference = instances.index.get(id);
+            if (reference < 0 || reference >= index || rounds[reference] == 0 ||
+                    modifies(instances.typeIndices[index], instances.typeIndices[reference])) {
+                round = 0;
+            } else {
+                round = Math.max(round, rounds[reference] + 1);
+            }
+        }
+
+        private boolean modifies(int type, int referenced) {
+            if (modifies[type][referenced] == 0) {
+                modifies[type][referenced] = (byte) (types[type].mayModify(types[referenced]) ? 1 : -1);
+            }
+            return modifies[type][referenced] > 0;
+        }
+    }
+
+    /**
+     * Creates the entities of the instances, in the order of the file.
+     */
+    private static final class Builder implements ValueReader.References {
+        private final byte[] data;
+        private final Instances instances;
+        private final StepLexer lexer;
+        private final EntityType[] types;
+        private final Entity[] entities;
+        private final IdIndex idIndex;
+        /**
+         * Whether each instance is waiting for the instances it references to
+         * be created.
+         */
+        private boolean[] waiting;
+        private int[] stack = new int[64];
+        /**
+         * Whether the entity being created references excluded instances,
+         * which are read as unset values.
+         */
+        private boolean readExcluded;
+
+        /**
+         * @param entities The entities of the instances, which are created
+         *                 if null.
+         * @param types    The types of the instances, which are resolved if
+         *                 null.
+         */
+        private Builder(byte[] data, Instances instances, Entity[] entities, EntityType[] types) {
+            this.data = data;
+            this.instances = instances;
+            this.entities = entities;
+            this.types = types;
+            lexer = new StepLexer(data, 0, data.length);
+            idIndex = instances.index;
+        }
+
+        private Entity[] build() {
+            for (int index = 0; index < entities.length; index++) {
+                if (entities[index] == null && !instances.isExcluded(index)) {
+                    build(index);
+                }
+            }
+            return entities;
+        }
+
+        /**
+         * Creates the entity of an instance, after the ones it references.
+         */
+        private void build(int root) {
+            int size = 0;
+            stack[size++] = root;
+            while (size > 0) {
+                int index = stack[size - 1];
+                if (entities[index] != null || instances.isExcluded(index)) {
+                    size--;
+                    continue;
+                }
+                try {
+                    readExcluded = false;
+                    entities[index] = create(index);
+                    size--;
+                } catch (IllegalArgumentException e) {
+                    // only the failures caused by the excluded instances
+                    // exclude the instance, the other ones are errors
+                    if (!(e.getCause() instanceof RejectedEntity) || !readExcluded || !isCuttable(index)) {
+                        throw e;
+                    }
+                    instances.excluded[index] = true;
+                    size--;
+                } catch (UnresolvedReference e) {
+                    if (waiting == null) {
+                        waiting = new boolean[entities.length];
+                    }
+                    waiting[index] = true;
+                    size = pushReferences(index, size);
+                }
+            }
+        }
+
+        /**
+         * Pushes on the stack the instances referenced by the instance at
+         * {@code index} whose entities weren't created yet.
+         *
+         * @return The new size of the stack.
+         *
+         * @throws IllegalArgumentException If the instance references itself
+         *                                  through other instances.
+         */
+        private int pushReferences(int index, int size) {
+            int end = instances.ends[index];
+            for (int i = instances.starts[index]; i < end; i++) {
+                byte b = data[i];
+                if (b == '\'') {
+                    do {
+                        i++;
+                    } while (i < end && data[i] != '\'');
+                } else if (b == '#') {
+                    int id = 0;
+                    while (i + 1 < end && data[i + 1] >= '0' && data[i + 1] <= '9') {
+                        id = id * 10 + data[++i] - '0';
+                    }
+                    int reference = idIndex.get(id);
+                    if (reference >= 0 && entities[reference] == null && !instances.isExcluded(reference)) {
+                        if (waiting[reference]) {
+                            throw new IllegalArgumentException(
+                                    "#" + instances.ids[index] + ": cyclic reference to #" + id);
+                        }
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, size * 2);
+                        }
+                        stack[size++] = reference;
+                    }
+                }
+            }
+            return size;
+        }
+
+        /**
+         * @return Whether the instance at {@code index} is excluded if its
+         * entity can't be created without the excluded instances it
+         * references, since it's not of one of the types to read.
+         */
+        private boolean isCuttable(int index) {
+            return instances.wantedTypes != null && !instances.wantedTypes[instances.typeIndices[index]];
+        }
+
+        private Entity create(int index) {
+            int id = instances.ids[index];
+            int typeIndex = instances.typeIndices[index];
+            EntityType type = types[typeIndex];
+            String name = instances.types.get(typeIndex);
+            if (type == null) {
+                type = EntityType.forInstance(id, name);
+                types[typeIndex] = type;
+            }
+            lexer.setPosition(instances.starts[index]);
+            try {
+                Entity entity = type.read(lexer, this);
+                if (lexer.peek() != ';' || lexer.getPosition() != instances.ends[index]) {
+                    throw lexer.error("expected ';'");
+                }
+                return entity;
+            } catch (UnresolvedReference e) {
+                throw e;
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new IllegalArgumentException("#" + id + "=" + name + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public Entity get(int id) {
+            int reference = idIndex.get(id);
+            if (reference < 0) {
+                throw lexer.error("reference to undefined instance #" + id);
+            }
+            Entity entity = entities[reference];
+            if (entity == null) {
+                if (!instances.isExcluded(reference)) {
+                    throw new UnresolvedReference();
+                }
+                readExcluded = true;
+            }
+            return entity;
+        }
+    }
+}
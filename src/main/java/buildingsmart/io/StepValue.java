@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.util.Functions;
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A parameter of an instance of a STEP file, read by {@link StepEventReader}.
+ * <p>
+ * Values are views of the bytes of the file: they're decoded only when one of
+ * their getters is called, and they're only valid until the
+ * {@link StepHandler} that received them returns, since the bytes are
+ * overwritten afterwards. Instances of this class can't be used by many
+ * threads at once.
+ */
+public final class StepValue {
+    private final byte[] data;
+    private final int start;
+    private final int end;
+    private final long offset;
+    private final Kind kind;
+    /**
+     * The start and end of each element of lists, computed the first time
+     * they're needed.
+     */
+    private int[] bounds;
+    private int size = -1;
+
+    /**
+     * @param data   The bytes containing the value.
+     * @param start  The index of the first byte of the value.
+     * @param end    The index after the last byte of the value.
+     * @param offset The position in the file of the first byte of
+     *               {@code data}.
+     */
+    StepValue(byte[] data, int start, int end, long offset) {
+        this.data = data;
+        this.start = start;
+        this.end = end;
+        this.offset = offset;
+        this.kind = kindOf(data[start], data, start, end);
+    }
+
+    private static Kind kindOf(byte first, byte[] data, int start, int end) {
+        switch (first) {
+            case '$':
+                return Kind.UNSET;
+            case '*':
+                return Kind.DERIVED;
+            case '#':
+                return Kind.REFERENCE;
+            case '\'':
+                return Kind.STRING;
+            case '.':
+                return Kind.ENUMERATION;
+            case '"':
+                return Kind.BINARY;
+            case '(':
+                return Kind.LIST;
+            default:
+                if (first >= '0' && first <= '9' || first == '-' || first == '+') {
+                    for (int i = start; i < end; i++) {
+                        if (data[i] == '.' || data[i] == 'E' || data[i] == 'e') {
+                            return Kind.REAL;
+                        }
+                    }
+                    return Kind.INTEGER;
+                }
+                return Kind.TYPED;
+        }
+    }
+
+    /**
+     * @return The kind of this value, which determines the getters that can be
+     * called.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The id of the instance referenced by this value, e.g. 12 for
+     * {@code #12}.
+     *
+     * @throws IllegalStateException If this value is not a
+     *                               {@link Kind#REFERENCE}.
+     */
+    public int getReference() {
+        check(Kind.REFERENCE);
+        return lexer().readReference();
+    }
+
+    /**
+     * @throws IllegalStateException If this value is not an
+     *                               {@link Kind#INTEGER}.
+     */
+    public long getInteger() {
+        check(Kind.INTEGER);
+        return lexer().readInteger();
+    }
+
+    /**
+     * @return This value, which can also be an integer.
+     *
+     * @throws IllegalStateException If this value is neither a
+     *                               {@link Kind#REAL} nor an
+     *                               {@link Kind#INTEGER}.
+     */
+    public double getReal() {
+        if (kind != Kind.INTEGER) {
+            check(Kind.REAL);
+        }
+        return lexer().readReal();
+    }
+
+    /**
+     * @return The decoded content of this string.
+     *
+     * @throws IllegalStateException    If this value is not a
+     *                                  {@link Kind#STRING}.
+     * @throws IllegalArgumentException If the string contains invalid escape
+     *                                  sequences.
+     * @see Functions#parseFromStepFile(String)
+     */
+    public String getString() {
+        check(Kind.STRING);
+        return lexer().readString();
+    }
+
+    /**
+     * Compares the decoded content of this string with {@code value}, without
+     * decoding it if it contains no escape sequences.
+     *
+     * @return Whether this value is a {@link Kind#STRING} equal to
+     * {@code value}.
+     *
+     * @throws NullPointerException If value is null.
+     */
+    public boolean stringEquals(@NonNull String value) {
+        if (kind != Kind.STRING) {
+            return false;
+        }
+        for (int i = start + 1; i < end - 1; i++) {
+            if (data[i] == '\\' || data[i] == '\'' || data[i] < 0) {
+                return getString().equals(value);
+            }
+        }
+        return asciiEquals(start + 1, end - 1, value);
+    }
+
+    /**
+     * @return The name of this enumeration value, e.g. {@code T} for
+     * {@code .T.}.
+     *
+     * @throws IllegalStateException If this value is not an
+     *                               {@link Kind#ENUMERATION}.
+     */
+    public String getEnumeration() {
+        check(Kind.ENUMERATION);
+        return lexer().readEnumeration();
+    }
+
+    /**
+     * @return Whether this value is the {@link Kind#ENUMERATION} value
+     * {@code name}, e.g. {@code true} for {@code .ELEMENT.} and
+     * {@code "ELEMENT"}.
+     *
+     * @throws NullPointerException If name is null.
+     */
+    public boolean isEnumeration(@NonNull String name) {
+        return kind == Kind.ENUMERATION && asciiEquals(start + 1, end - 1, name);
+    }
+
+    /**
+     * @return The name of the type of this value, e.g. {@code IFCLABEL} for
+     * {@code IFCLABEL('Name')}, in upper case.
+     *
+     * @throws IllegalStateException If this value is not a
+     *                               {@link Kind#TYPED} value.
+     */
+    public String getTypeName() {
+        check(Kind.TYPED);
+        return lexer().readKeyword();
+    }
+
+    /**
+     * @return The number of elements of this list, or 1 if this is a
+     * {@link Kind#TYPED} value.
+     *
+     * @throws IllegalStateException If this value is neither a
+     *                               {@link Kind#LIST} nor a {@link Kind#TYPED}
+     *                               value.
+     */
+    public int size() {
+        if (kind != Kind.TYPED) {
+            check(Kind.LIST);
+        }
+        split();
+        return size;
+    }
+
+    /**
+     * @param index The index of an element of this list, which must be 0 for
+     *              {@link Kind#TYPED} values.
+     * @return The element at {@code index}, or the value wrapped by this
+     * {@link Kind#TYPED} value.
+     *
+     * @throws IllegalStateException     If this value is neither a
+     *                                   {@link Kind#LIST} nor a
+     *                                   {@link Kind#TYPED} value.
+     * @throws IndexOutOfBoundsException If there's no element at
+     *                                   {@code index}.
+     */
+    public StepValue get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size);
+        }
+        return new StepValue(data, bounds[index * 2], bounds[index * 2 + 1], offset);
+    }
+
+    /**
+     * Passes to {@code action} the ids of all the instances referenced by this
+     * value, including the ones in nested lists, in order.
+     *
+     * @throws NullPointerException If action is null.
+     */
+    public void forEachReference(@NonNull IntConsumer action) {
+        forEachReference(data, start, end, action);
+    }
+
+    static void forEachReference(byte[] data, int start, int end, IntConsumer action) {
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '\'') {
+                do {
+                    i++;
+                } while (i < end && data[i] != '\'');
+            } else if (b == '#') {
+                int id = 0;
+                while (i + 1 < end && data[i + 1] >= '0' && data[i + 1] <= '9') {
+                    id = id * 10 + data[++i] - '0';
+                }
+                action.accept(id);
+            }
+        }
+    }
+
+    /**
+     * @return A read-only view of the bytes of this value, as they're written
+     * in the file.
+     */
+    public ByteBuffer getBytes() {
+        return ByteBuffer.wrap(data, start, end - start).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return This value as it's written in the file.
+     */
+    @Override
+    public String toString() {
+        return new String(data, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private StepLexer lexer() {
+        return new StepLexer(data, start, end, offset);
+    }
+
+    private void check(Kind expected) {
+        if (kind != expected) {
+            throw new IllegalStateException("expected a value of kind " + expected + ", found " + kind);
+        }
+    }
+
+    private boolean asciiEquals(int from, int to, String value) {
+        if (to - from != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (data[from + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the bounds of the elements of lists, or of the value wrapped by
+     * typed values.
+     */
+    private void split() {
+        if (size >= 0) {
+            return;
+        }
+        StepLexer lexer = lexer();
+        int[] bounds = new int[8];
+        int size = 0;
+        if (kind == Kind.TYPED) {
+            lexer.skipKeyword();
+        }
+        lexer.expect('(');
+        if (!lexer.accept(')')) {
+            do {
+                lexer.peek();
+                if (size * 2 == bounds.length) {
+                    bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                }
+                bounds[size * 2] = lexer.getPosition();
+                lexer.skipValue();
+                bounds[size * 2 + 1] = lexer.getPosition();
+                size++;
+            } while (lexer.accept(','));
+            lexer.expect(')');
+        }
+        if (kind == Kind.TYPED && size != 1) {
+            throw lexer.error("a typed value must wrap exactly one value");
+        }
+        this.bounds = bounds;
+        this.size = size;
+    }
+
+    /**
+     * The kinds of parameters of STEP files.
+     */
+    public enum Kind {
+        /**
+         * An unset optional value, written as {@code $}.
+         */
+        UNSET,
+        /**
+         * A value derived from other ones, written as {@code *}.
+         */
+        DERIVED,
+        /**
+         * A reference to another instance, e.g. {@code #12}.
+         */
+        REFERENCE,
+        INTEGER,
+        REAL,
+        STRING,
+        /**
+         * A value of an enumeration or a boolean, e.g. {@code .T.}.
+         */
+        ENUMERATION,
+        BINARY,
+        /**
+         * A list or set of values, e.g. {@code (#1,#2)}.
+         */
+        LIST,
+        /**
+         * A value of a select type preceded by its type, e.g.
+         * {@code IFCLABEL('Name')}.
+         */
+        TYPED
+    }
+}
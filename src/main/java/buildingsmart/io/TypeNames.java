@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Assigns an index to each distinct name of type found in a STEP file,
+ * without creating a String for each instance. Names are compared ignoring
+ * case. Instances of this class can't be used by many threads at once.
+ */
+final class TypeNames {
+    private final List<String> names = new ArrayList<>();
+    private final List<byte[]> upperCaseNames = new ArrayList<>();
+    /**
+     * Open addressing hash table of the indices of the names plus one, zero
+     * marking empty slots.
+     */
+    private int[] slots = new int[256];
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = hash * 31 + (bytes[i] & 0xDF);
+        }
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * @param data  The bytes containing the name, made of letters, digits and
+     *              underscores.
+     * @param start The index of the first byte of the name.
+     * @param end   The index after the last byte of the name.
+     * @return The index of the name, which is added if it wasn't found before.
+     */
+    int indexOf(byte[] data, int start, int end) {
+        int mask = slots.length - 1;
+        for (int slot = hash(data, start, end) & mask; ; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (index < 0) {
+                return add(slot, data, start, end);
+            }
+            byte[] name = upperCaseNames.get(index);
+            if (name.length == end - start && matches(name, data, start)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * @return The name having the given index, in upper case.
+     */
+    String get(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * @return The number of distinct names.
+     */
+    int size() {
+        return names.size();
+    }
+
+    private static boolean matches(byte[] name, byte[] data, int start) {
+        for (int i = 0; i < name.length; i++) {
+            // the upper case of letters differs only in bit 5
+            if (name[i] != (data[start + i] & 0xDF) && name[i] != data[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int add(int slot, byte[] data, int start, int end) {
+        String name = new String(data, start, end - start, StandardCharsets.ISO_8859_1).toUpperCase(Locale.ROOT);
+        names.add(name);
+        upperCaseNames.add(name.getBytes(StandardCharsets.ISO_8859_1));
+        slots[slot] = names.size();
+        if (names.size() * 2 > slots.length) {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int index = 0; index < upperCaseNames.size(); index++) {
+                byte[] bytes = upperCaseNames.get(index);
+                int s = hash(bytes, 0, bytes.length) & mask;
+                while (slots[s] != 0) {
+                    s = (s + 1) & mask;
+                }
+                slots[s] = index + 1;
+            }
+        }
+        return names.size() - 1;
+    }
+}
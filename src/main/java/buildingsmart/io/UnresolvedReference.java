@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+/**
+ * Signals that an instance references another one whose entity wasn't created
+ * yet. It has no stack trace, since it's thrown and caught as part of the
+ * normal reading of files.
+ */
+final class UnresolvedReference extends RuntimeException {
+    UnresolvedReference() {
+        super(null, null, false, false);
+    }
+}
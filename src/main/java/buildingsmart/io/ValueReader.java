@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the parameters of the instances of a STEP file having a given Java
+ * type, i.e. the type of a field annotated with {@link Attribute} or of a
+ * parameter of the constructor of an {@link Entity}.
+ * <p>
+ * Readers are created once for each type and shared: they are stateless, so
+ * they can be used by many threads at once.
+ */
+abstract class ValueReader {
+    private static final Map<Type, ValueReader> READERS = new ConcurrentHashMap<>();
+
+    /**
+     * Resolves the instance names found while reading parameters.
+     */
+    interface References {
+        /**
+         * @param id The id of the instance name, e.g. 12 for {@code #12}.
+         * @return The entity having the given id, or {@code null} if the
+         * instance is not read, in which case the instance name is read as an
+         * unset value, and left out of collections.
+         */
+        Entity get(int id);
+    }
+
+    /**
+     * @return The reader of the values of {@code type}. Types that can't be
+     * read produce readers accepting only unset values ({@code $}).
+     */
+    static ValueReader of(Type type) {
+        ValueReader reader = READERS.get(type);
+        if (reader == null) {
+            reader = create(type);
+            READERS.putIfAbsent(type, reader);
+        }
+        return reader;
+    }
+
+    private static ValueReader create(Type type) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            Type raw = parameterized.getRawType();
+            if ((raw == List.class || raw == Set.class || raw == Collection.class) &&
+                    parameterized.getActualTypeArguments()[0] instanceof Class) {
+                return new CollectionReader(raw == Set.class,
+                                            of(parameterized.getActualTypeArguments()[0]));
+            }
+            return new UnsupportedReader(type);
+        }
+        if (!(type instanceof Class)) {
+            return new UnsupportedReader(type);
+        }
+        Class<?> c = (Class<?>) type;
+        if (Entity.class.isAssignableFrom(c)) {
+            return new EntityReader(c);
+        }
+        if (c.isInterface() && c != DefinedType.class) {
+            return new SelectReader(c);
+        }
+        if (c.isEnum()) {
+            return new EnumReader(c);
+        }
+        if (DefinedType.class.isAssignableFrom(c)) {
+            return DefinedTypeReader.of(c);
+        }
+        if (c == String.class) {
+            return new StringReader();
+        }
+        if (c.isArray()) {
+            return new ArrayReader(c.getComponentType(), of(c.getComponentType()));
+        }
+        if (c == double.class || c == Double.class || c == float.class || c == Float.class) {
+            return new RealReader(c);
+        }
+        if (c == long.class || c == Long.class || c == int.class || c == Integer.class ||
+                c == short.class || c == Short.class || c == byte.class || c == Byte.class) {
+            return new IntegerReader(c);
+        }
+        if (c == boolean.class || c == Boolean.class) {
+            return new BooleanReader(c);
+        }
+        return new UnsupportedReader(type);
+    }
+
+    /**
+     * Reads a value, leaving the lexer after it.
+     *
+     * @return The value read, {@code null} if it was unset or derived.
+     *
+     * @throws IllegalArgumentException If the value doesn't have the type of
+     *                                  this reader.
+     */
+    final Object read(StepLexer lexer, References references) {
+        int next = lexer.peek();
+        if (next == '$' || next == '*') {
+            lexer.accept((char) next);
+            return null;
+        }
+        return readValue(lexer, references);
+    }
+
+    /**
+     * Reads a value that is neither unset nor derived.
+     */
+    abstract Object readValue(StepLexer lexer, References references);
+
+    /**
+     * @return The value to pass to constructors in place of unset values,
+     * which is not {@code null} for primitive types.
+     */
+    Object defaultValue() {
+        return null;
+    }
+
+    /**
+     * @return The unwrapped cause of {@code e}, as an
+     * {@link IllegalArgumentException} reporting it.
+     */
+    static RuntimeException unwrap(InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IllegalArgumentException) {
+            return (IllegalArgumentException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return new IllegalArgumentException(cause.getMessage(), cause);
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalArgumentException(cause);
+    }
+
+    private static final class EntityReader extends ValueReader {
+        private final Class<?> type;
+
+        private EntityReader(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            int position = lexer.getPosition();
+            Entity entity = references.get(lexer.readReference());
+            if (entity != null && !type.isInstance(entity)) {
+                lexer.setPosition(position);
+                throw lexer.error("expected an instance of " + type.getSimpleName() + ", found " +
+                                          entity.getClass().getSimpleName());
+            }
+            return entity;
+        }
+    }
+
+    /**
+     * Reads select types, whose values are either instance names or defined
+     * types preceded by their name, e.g. {@code IFCLABEL('Name')}.
+     */
+    private static final class SelectReader extends ValueReader {
+        private final Class<?> type;
+
+        private SelectReader(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            int position = lexer.getPosition();
+            if (lexer.peek() == '#') {
+                Entity entity = references.get(lexer.readReference());
+                if (entity != null && !type.isInstance(entity)) {
+                    lexer.setPosition(position);
+                    throw lexer.error("expected an instance of " + type.getSimpleName() + ", found " +
+                                              entity.getClass().getSimpleName());
+                }
+                return entity;
+            }
+            String name = lexer.readKeyword();
+            Class<?> valueType = EntityType.classForName(name);
+            if (valueType == null || !type.isAssignableFrom(valueType) || Entity.class.isAssignableFrom(valueType)) {
+                lexer.setPosition(position);
+                throw lexer.error("expected a value of " + type.getSimpleName() + ", found " + name);
+            }
+            lexer.expect('(');
+            Object value = of(valueType).read(lexer, references);
+            lexer.expect(')');
+            return value;
+        }
+    }
+
+    private static final class EnumReader extends ValueReader {
+        private final Class<?> type;
+        private final Map<String, Object> constants = new HashMap<>();
+
+        private EnumReader(Class<?> type) {
+            this.type = type;
+            for (Object constant : type.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name(), constant);
+            }
+        }
+
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            int position = lexer.getPosition();
+            Object constant = constants.get(lexer.readEnumeration());
+            if (constant == null) {
+                lexer.setPosition(position);
+                throw lexer.error("invalid value of " + type.getSimpleName());
+            }
+            return constant;
+        }
+    }
+
+    /**
+     * Reads defined types by passing the underlying value to their
+     * constructor, which is the first one taking a String, a real, an integer
+     * or a List.
+     */
+    private static final class DefinedTypeReader extends ValueReader {
+        private final Constructor<?> constructor;
+        private final ValueReader valueReader;
+
+        private DefinedTypeReader(Constructor<?> constructor, ValueReader valueReader) {
+            this.constructor = constructor;
+            this.valueReader = valueReader;
+        }
+
+        private static ValueReader of(Class<?> type) {
+            if (Modifier.isAbstract(type.getModifiers())) {
+                return new UnsupportedReader(type);
+            }
+            Class<?>[] parameterTypes = {String.class, double.class, long.class, int.class, byte.class, List.class};
+            for (Class<?> parameterType : parameterTypes) {
+                for (Constructor<?> constructor : type.getConstructors()) {
+                    if (constructor.getParameterCount() == 1 && constructor.getParameterTypes()[0] == parameterType) {
+                        return new DefinedTypeReader(constructor,
+                                                     ValueReader.of(constructor.getGenericParameterTypes()[0]));
+                    }
+                }
+            }
+            return new UnsupportedReader(type);
+        }
+
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            int position = lexer.getPosition();
+            Object value = valueReader.readValue(lexer, references);
+            try {
+                return constructor.newInstance(value);
+            } catch (InvocationTargetException e) {
+                lexer.setPosition(position);
+                throw lexer.error("invalid value of " + constructor.getDeclaringClass().getSimpleName() + ": " +
+                                          unwrap(e).getMessage());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class CollectionReader extends ValueReader {
+        private final boolean set;
+        private final ValueReader elementReader;
+
+        private CollectionReader(boolean set, ValueReader elementReader) {
+            this.set = set;
+            this.elementReader = elementReader;
+        }
+
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            Collection<Object> collection = set ? new LinkedHashSet<>() : new ArrayList<>();
+            lexer.expect('(');
+            if (!lexer.accept(')')) {
+                do {
+                    boolean reference = lexer.peek() == '#';
+                    Object element = elementReader.read(lexer, references);
+                    if (element != null || !reference) {
+                        collection.add(element);
+                    }
+                } while (lexer.accept(','));
+                lexer.expect(')');
+            }
+            return collection;
+        }
+    }
+
+    private static final class ArrayReader extends ValueReader {
+        private final Class<?> componentType;
+        private final ValueReader elementReader;
+
+        private ArrayReader(Class<?> componentType, ValueReader elementReader) {
+            this.componentType = componentType;
+            this.elementReader = elementReader;
+        }
+
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            List<Object> elements = new ArrayList<>();
+            lexer.expect('(');
+            if (!lexer.accept(')')) {
+                do {
+                    Object element = elementReader.read(lexer, references);
+                    elements.add(element == null ? elementReader.defaultValue() : element);
+                } while (lexer.accept(','));
+                lexer.expect(')');
+            }
+            Object array = Array.newInstance(componentType, elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Array.set(array, i, elements.get(i));
+            }
+            return array;
+        }
+    }
+
+    private static final class StringReader extends ValueReader {
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            return lexer.readString();
+        }
+    }
+
+    private static final class RealReader extends ValueReader {
+        private final Object defaultValue;
+        private final boolean single;
+
+        private RealReader(Class<?> type) {
+            single = type == float.class || type == Float.class;
+            if (type == double.class) {
+                defaultValue = 0d;
+            } else {
+                defaultValue = type == float.class ? (Object) 0f : null;
+            }
+        }
+
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            double value = lexer.readReal();
+            return single ? (Object) (float) value : (Object) value;
+        }
+
+        @Override
+        Object defaultValue() {
+            return defaultValue;
+        }
+    }
+
+    private static final class IntegerReader extends ValueReader {
+        private final Class<?> type;
+
+        private IntegerReader(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            int position = lexer.getPosition();
+            long value = lexer.readInteger();
+            if (type == long.class || type == Long.class) {
+                return value;
+            }
+            if (type == int.class || type == Integer.class) {
+                if (value == (int) value) {
+                    return (int) value;
+                }
+            } else if (type == short.class || type == Short.class) {
+                if (value == (short) value) {
+                    return (short) value;
+                }
+            } else if (value == (byte) value) {
+                return (byte) value;
+            }
+            lexer.setPosition(position);
+            throw lexer.error("integer out of range");
+        }
+
+        @Override
+        Object defaultValue() {
+            if (type == long.class) {
+                return 0L;
+            }
+            if (type == int.class) {
+                return 0;
+            }
+            if (type == short.class) {
+                return (short) 0;
+            }
+            return type == byte.class ? (byte) 0 : null;
+        }
+    }
+
+    private static final class BooleanReader extends ValueReader {
+        private final boolean primitive;
+
+        private BooleanReader(Class<?> type) {
+            primitive = type == boolean.class;
+        }
+
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            int position = lexer.getPosition();
+            String value = lexer.readEnumeration();
+            if (value.equals("T")) {
+                return true;
+            }
+            if (value.equals("F")) {
+                return false;
+            }
+            lexer.setPosition(position);
+            throw lexer.error("expected a boolean");
+        }
+
+        @Override
+        Object defaultValue() {
+            return primitive ? false : null;
+        }
+    }
+
+    /**
+     * Reads the values of types that can't be found in STEP files, which can
+     * only be unset.
+     */
+    private static final class UnsupportedReader extends ValueReader {
+        private final Type type;
+
+        private UnsupportedReader(Type type) {
+            this.type = type;
+        }
+
+        @Override
+        Object readValue(StepLexer lexer, References references) {
+            throw lexer.error("values of " + type.getTypeName() + " can't be read");
+        }
+    }
+}
@@ -0,0 +1,510 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes the axis-aligned bounding boxes of representation items and
+ * products, both in their local coordinate system and in the world coordinate
+ * system.
+ * <p>
+ * Boxes are arrays of 6 doubles: the minimum X, Y and Z coordinates followed
+ * by the maximum ones. A null box means that the geometry is empty (e.g. the
+ * intersection of disjoint solids), while an unbounded geometry (e.g. an
+ * {@link IfcHalfSpaceSolid}) has an infinite box, see
+ * {@link #isUnbounded(double[])}. Boxes are conservative: they always contain
+ * the geometry, but they can be larger than the smallest box containing it.
+ * In particular, revolved solids are bounded as if revolved by a full turn,
+ * trimmed curves as their basis curve and the world box of a product is the
+ * box of its transformed local box.
+ * <p>
+ * Supported items are {@link IfcExtrudedAreaSolid}, {@link IfcRevolvedAreaSolid}
+ * and {@link IfcSweptDiskSolid} (with {@link IfcRectangleProfileDef},
+ * {@link IfcCircleProfileDef}, {@link IfcIShapeProfileDef} and
+ * {@link IfcArbitraryClosedProfileDef} profiles, including their subtypes),
+ * {@link IfcManifoldSolidBrep}, {@link IfcBooleanResult},
+ * {@link IfcHalfSpaceSolid}, {@link IfcMappedItem}, {@link IfcGeometricSet},
+ * {@link IfcCartesianPoint}, {@link IfcPolyLoop} and the curves
+ * {@link IfcPolyline}, {@link IfcCircle}, {@link IfcEllipse},
+ * {@link IfcTrimmedCurve} and {@link IfcCompositeCurve}.
+ * <p>
+ * The box of every item is cached by identity, so items shared by many
+ * representations (e.g. the ones of an {@link IfcRepresentationMap}) are
+ * computed only once. Instances of this class can be used by many threads at
+ * once, but the cache is never emptied: a calculator should be used for a
+ * single model and discarded with it.
+ */
+public class BoundingBoxCalculator {
+    /**
+     * Cached in place of null boxes, which can't be stored in the cache.
+     */
+    private static final double[] EMPTY = new double[0];
+
+    /**
+     * The box of unbounded geometries, which is never returned as is since
+     * boxes can be modified.
+     */
+    private static final double[] UNBOUNDED = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+
+    private final PlacementResolver placementResolver;
+    private final Map<Identity, double[]> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a calculator with its own {@link PlacementResolver}.
+     */
+    public BoundingBoxCalculator() {
+        this(new PlacementResolver());
+    }
+
+    /**
+     * @param placementResolver The resolver of the placements of products.
+     * @throws NullPointerException If placementResolver is null.
+     */
+    public BoundingBoxCalculator(@NonNull PlacementResolver placementResolver) {
+        this.placementResolver = placementResolver;
+    }
+
+    /**
+     * @param box A box, or null.
+     * @return true if {@code box} is the box of an unbounded geometry, i.e. it
+     * has infinite coordinates.
+     */
+    public static boolean isUnbounded(double[] box) {
+        if (box == null) {
+            return false;
+        }
+        for (double coordinate : box) {
+            if (Double.isInfinite(coordinate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param box       A box, or null.
+     * @param transform A 3x4 transform, as returned by
+     *                  {@link PlacementResolver#resolve(IfcObjectPlacement)}.
+     * @return The box containing {@code box} after being transformed by
+     * {@code transform}, or null if {@code box} is null. An unbounded box stays
+     * unbounded.
+     *
+     * @throws NullPointerException If transform is null.
+     */
+    public static double[] transform(double[] box, double @NonNull [] transform) {
+        if (box == null) {
+            return null;
+        }
+        if (isUnbounded(box)) {
+            // multiplying infinite coordinates by zero would give NaN
+            return UNBOUNDED.clone();
+        }
+        double[] result = new double[6];
+        for (int row = 0; row < 3; row++) {
+            double min = transform[row * 4 + 3];
+            double max = min;
+            for (int column = 0; column < 3; column++) {
+                double a = transform[row * 4 + column] * box[column];
+                double b = transform[row * 4 + column] * box[column + 3];
+                min += Math.min(a, b);
+                max += Math.max(a, b);
+            }
+            result[row] = min;
+            result[row + 3] = max;
+        }
+        return result;
+    }
+
+    /**
+     * @param a A box, or null.
+     * @param b Another box, or null.
+     * @return The smallest box containing both boxes, or the other box if one
+     * of them is null (empty). The result is unbounded if any of the boxes is.
+     * The result is a new array, unless one of the boxes is null.
+     */
+    public static double[] union(double[] a, double[] b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        double[] result = new double[6];
+        for (int i = 0; i < 3; i++) {
+            result[i] = Math.min(a[i], b[i]);
+            result[i + 3] = Math.max(a[i + 3], b[i + 3]);
+        }
+        return result;
+    }
+
+    /**
+     * @param item The item of which to compute the box.
+     * @return The box of {@code item} in the coordinate system of the
+     * representation it belongs to, null if it is empty or an infinite box if
+     * it is unbounded. The returned array can be freely modified.
+     *
+     * @throws NullPointerException     If item is null.
+     * @throws IllegalArgumentException If item, or one of the items it is made
+     *                                  of, is not supported.
+     */
+    public double[] box(@NonNull IfcRepresentationItem item) {
+        double[] box = boxCached(item);
+        return box == null ? null : box.clone();
+    }
+
+    /**
+     * @param representation The representation of which to compute the box.
+     * @return The box containing all the items of {@code representation}, null
+     * if all of them are empty or an infinite box if any of them is unbounded.
+     *
+     * @throws NullPointerException     If representation is null.
+     * @throws IllegalArgumentException If any of the items is not supported.
+     */
+    public double[] box(@NonNull IfcRepresentation representation) {
+        double[] box = null;
+        for (IfcRepresentationItem item : representation.getItems()) {
+            box = union(box, boxCached(item));
+        }
+        return box == null ? null : box.clone();
+    }
+
+    /**
+     * @param product The product of which to compute the box.
+     * @return The box containing the shape representations of {@code product}
+     * in three-dimensional contexts, in the coordinate system of its
+     * placement, null if its shape representations are empty or an infinite
+     * box if any of them is unbounded.
+     *
+     * @throws NullPointerException     If product is null.
+     * @throws IllegalArgumentException If any of the items is not supported.
+     */
+    public double[] localBox(@NonNull IfcProduct product) {
+        double[] box = null;
+        for (IfcRepresentation representation : shapeRepresentations(product)) {
+            box = union(box, box(representation));
+        }
+        return box;
+    }
+
+    /**
+     * @param product The product of which to compute the box.
+     * @return The box of {@code product} in the world coordinate system, see
+     * {@link #localBox(IfcProduct)}.
+     *
+     * @throws NullPointerException     If product is null.
+     * @throws IllegalArgumentException If any of the items is not supported,
+     *                                  or if the placement of {@code product}
+     *                                  can't be resolved.
+     */
+    public double[] worldBox(@NonNull IfcProduct product) {
+        double[] box = localBox(product);
+        return box == null ? null : transform(box, placementResolver.resolve(product));
+    }
+
+    /**
+     * Computes in parallel the world boxes of all the products in the spatial
+     * structure of {@code project}, see
+     * {@link PlacementResolver#resolveAll(IfcProject)}.
+     *
+     * @param project The project of which to compute the boxes.
+     * @return The world box of each product which has one, leaving out empty
+     * and unbounded products.
+     *
+     * @throws NullPointerException     If project is null.
+     * @throws IllegalArgumentException If any of the items is not supported, or
+     *                                  if any of the placements can't be
+     *                                  resolved.
+     */
+    public Map<IfcProduct, double[]> worldBoxes(@NonNull IfcProject project) {
+        Map<IfcProduct, double[]> boxes = new ConcurrentHashMap<>();
+        PlacementResolver.collectProducts(project).parallelStream().forEach(product -> {
+            double[] box = worldBox(product);
+            if (box != null && !isUnbounded(box)) {
+                boxes.put(product, box);
+            }
+        });
+        return boxes;
+    }
+
+    /**
+     * @return The number of items of which the box is cached.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @param product A product.
+     * @return The shape representations of {@code product} in
+     * three-dimensional contexts, i.e. the ones describing its geometry.
+     */
+    static List<IfcRepresentation> shapeRepresentations(IfcProduct product) {
+        IfcProductRepresentation productRepresentation = product.getRepresentation();
+        if (productRepresentation == null) {
+            return Collections.emptyList();
+        }
+        List<IfcRepresentation> representations = new ArrayList<>();
+        for (IfcRepresentation representation : productRepresentation.getRepresentations()) {
+            if (representation instanceof IfcShapeModel &&
+                    representation.getContextOfItems() instanceof IfcGeometricRepresentationContext &&
+                    ((IfcGeometricRepresentationContext) representation.getContextOfItems())
+                            .getCoordinateSpaceDimension().getValue() == 3) {
+                representations.add(representation);
+            }
+        }
+        return representations;
+    }
+
+    /**
+     * @return The cached box of {@code item}, which must not be modified.
+     */
+    private double[] boxCached(Object item) {
+        Identity key = new Identity(item);
+        double[] box = cache.get(key);
+        if (box == null) {
+            // not computed in computeIfAbsent, since computing a box can
+            // require the boxes of other items
+            box = compute(item);
+            double[] previous = cache.putIfAbsent(key, box == null ? EMPTY : box);
+            if (previous != null) {
+                box = previous;
+            }
+        }
+        return box == EMPTY ? null : box;
+    }
+
+    private double[] compute(Object item) {
+        if (item instanceof IfcCartesianPoint) {
+            return pointsBox(Collections.singletonList((IfcCartesianPoint) item));
+        }
+        if (item instanceof IfcPolyLoop) {
+            return pointsBox(((IfcPolyLoop) item).getPolygon());
+        }
+        if (item instanceof IfcPolyline) {
+            return pointsBox(((IfcPolyline) item).getPoints());
+        }
+        if (item instanceof IfcCircle) {
+            IfcCircle circle = (IfcCircle) item;
+            double radius = circle.getRadius().getValue();
+            return transform(new double[]{-radius, -radius, 0, radius, radius, 0},
+                             PlacementResolver.toTransform(circle.getPosition()));
+        }
+        if (item instanceof IfcEllipse) {
+            IfcEllipse ellipse = (IfcEllipse) item;
+            double semiAxis1 = ellipse.getSemiAxis1().getValue();
+            double semiAxis2 = ellipse.getSemiAxis2().getValue();
+            return transform(new double[]{-semiAxis1, -semiAxis2, 0, semiAxis1, semiAxis2, 0},
+                             PlacementResolver.toTransform(ellipse.getPosition()));
+        }
+        if (item instanceof IfcTrimmedCurve) {
+            return boxCached(((IfcTrimmedCurve) item).getBasisCurve());
+        }
+        if (item instanceof IfcCompositeCurve) {
+            double[] box = null;
+            for (IfcCompositeCurveSegment segment : ((IfcCompositeCurve) item).getSegments()) {
+                box = union(box, boxCached(segment.getParentCurve()));
+            }
+            return box;
+        }
+        if (item instanceof IfcExtrudedAreaSolid) {
+            return extrudedBox((IfcExtrudedAreaSolid) item);
+        }
+        if (item instanceof IfcRevolvedAreaSolid) {
+            return revolvedBox((IfcRevolvedAreaSolid) item);
+        }
+        if (item instanceof IfcSweptDiskSolid) {
+            IfcSweptDiskSolid solid = (IfcSweptDiskSolid) item;
+            double[] box = boxCached(solid.getDirectrix());
+            if (box == null) {
+                return null;
+            }
+            double radius = solid.getRadius().getValue();
+            return new double[]{box[0] - radius, box[1] - radius, box[2] - radius,
+                    box[3] + radius, box[4] + radius, box[5] + radius};
+        }
+        if (item instanceof IfcManifoldSolidBrep) {
+            double[] box = null;
+            for (IfcFace face : ((IfcManifoldSolidBrep) item).getOuter().getCfsFaces()) {
+                for (IfcFaceBound bound : face.getBounds()) {
+                    box = union(box, boxCached(bound.getBound()));
+                }
+            }
+            return box;
+        }
+        if (item instanceof IfcBooleanResult) {
+            IfcBooleanResult result = (IfcBooleanResult) item;
+            double[] first = boxCached(result.getFirstOperand());
+            if (result.getOperator() == IfcBooleanOperator.DIFFERENCE) {
+                return first;
+            }
+            double[] second = boxCached(result.getSecondOperand());
+            if (result.getOperator() == IfcBooleanOperator.UNION) {
+                return union(first, second);
+            }
+            return intersection(first, second);
+        }
+        if (item instanceof IfcHalfSpaceSolid) {
+            return UNBOUNDED;
+        }
+        if (item instanceof IfcMappedItem) {
+            IfcMappedItem mappedItem = (IfcMappedItem) item;
+            IfcRepresentationMap map = mappedItem.getMappingSource();
+            double[] box = null;
+            for (IfcRepresentationItem mapped : map.getMappedRepresentation().getItems()) {
+                box = union(box, boxCached(mapped));
+            }
+            return transform(box,
+                             PlacementResolver.multiply(PlacementResolver.toTransform(mappedItem.getMappingTarget()),
+                                                        PlacementResolver.toTransform(map.getMappingOrigin())));
+        }
+        if (item instanceof IfcGeometricSet) {
+            double[] box = null;
+            for (IfcGeometricSetSelect element : ((IfcGeometricSet) item).getElements()) {
+                box = union(box, boxCached(element));
+            }
+            return box;
+        }
+        throw new IllegalArgumentException("bounding boxes of " + item.getClass().getSimpleName() +
+                                                   " are not supported");
+    }
+
+    private double[] extrudedBox(IfcExtrudedAreaSolid solid) {
+        double[] profile = profileBox(solid.getSweptArea());
+        List<IfcReal> direction = solid.getExtrudedDirection().getNormalisedDirectionRatios();
+        double depth = solid.getDepth().getValue();
+        double[] box = profile.clone();
+        for (int i = 0; i < 3; i++) {
+            double offset = direction.get(i).getValue() * depth;
+            box[i] = Math.min(profile[i], profile[i] + offset);
+            box[i + 3] = Math.max(profile[i + 3], profile[i + 3] + offset);
+        }
+        return transform(box, PlacementResolver.toTransform(solid.getPosition()));
+    }
+
+    /**
+     * @return The box of the cylinder containing the revolution of the box of
+     * the profile by a full turn around the axis.
+     */
+    private double[] revolvedBox(IfcRevolvedAreaSolid solid) {
+        double[] profile = profileBox(solid.getSweptArea());
+        List<IfcLengthMeasure> location = solid.getAxis().getLocation().getCoordinates();
+        List<IfcReal> axis = solid.getAxis().getZ().getNormalisedDirectionRatios();
+        double[] origin = new double[3];
+        double[] direction = new double[3];
+        for (int i = 0; i < 3; i++) {
+            origin[i] = i < location.size() ? location.get(i).getValue() : 0;
+            direction[i] = axis.get(i).getValue();
+        }
+        double minT = Double.POSITIVE_INFINITY;
+        double maxT = Double.NEGATIVE_INFINITY;
+        double radius = 0;
+        double[] corner = new double[3];
+        for (int i = 0; i < 8; i++) {
+            corner[0] = profile[(i & 1) == 0 ? 0 : 3] - origin[0];
+            corner[1] = profile[(i & 2) == 0 ? 1 : 4] - origin[1];
+            corner[2] = profile[(i & 4) == 0 ? 2 : 5] - origin[2];
+            double t = VectorMath.dot(corner, direction);
+            minT = Math.min(minT, t);
+            maxT = Math.max(maxT, t);
+            radius = Math.max(radius, Math.sqrt(Math.max(0, VectorMath.dot(corner, corner) - t * t)));
+        }
+        double[] box = new double[6];
+        for (int i = 0; i < 3; i++) {
+            double extent = radius * Math.sqrt(Math.max(0, 1 - direction[i] * direction[i]));
+            double start = origin[i] + minT * direction[i];
+            double end = origin[i] + maxT * direction[i];
+            box[i] = Math.min(start, end) - extent;
+            box[i + 3] = Math.max(start, end) + extent;
+        }
+        return transform(box, PlacementResolver.toTransform(solid.getPosition()));
+    }
+
+    /**
+     * @return The box of the profile in the XY plane of the coordinate system
+     * of the swept solid.
+     */
+    private double[] profileBox(IfcProfileDef profile) {
+        double halfX;
+        double halfY;
+        if (profile instanceof IfcRectangleProfileDef) {
+            halfX = ((IfcRectangleProfileDef) profile).getXDim().getValue() / 2;
+            halfY = ((IfcRectangleProfileDef) profile).getYDim().getValue() / 2;
+        } else if (profile instanceof IfcCircleProfileDef) {
+            halfX = ((IfcCircleProfileDef) profile).getRadius().getValue();
+            halfY = halfX;
+        } else if (profile instanceof IfcIShapeProfileDef) {
+            halfX = ((IfcIShapeProfileDef) profile).getOverallWidth().getValue() / 2;
+            halfY = ((IfcIShapeProfileDef) profile).getOverallDepth().getValue() / 2;
+        } else if (profile instanceof IfcArbitraryClosedProfileDef) {
+            // voids are inside the outer curve
+            double[] box = boxCached(((IfcArbitraryClosedProfileDef) profile).getOuterCurve());
+            if (box == null || isUnbounded(box)) {
+                throw new IllegalArgumentException("the outer curve of the profile has no bounds");
+            }
+            return box;
+        } else {
+            throw new IllegalArgumentException("bounding boxes of " + profile.getClass().getSimpleName() +
+                                                       " are not supported");
+        }
+        return transform(new double[]{-halfX, -halfY, 0, halfX, halfY, 0},
+                         PlacementResolver.toTransform(((IfcParameterizedProfileDef) profile).getPosition()));
+    }
+
+    private static double[] pointsBox(List<IfcCartesianPoint> points) {
+        double[] box = null;
+        for (IfcCartesianPoint point : points) {
+            List<IfcLengthMeasure> coordinates = point.getCoordinates();
+            if (box == null) {
+                box = new double[]{Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            }
+            for (int i = 0; i < 3; i++) {
+                double value = i < coordinates.size() ? coordinates.get(i).getValue() : 0;
+                box[i] = Math.min(box[i], value);
+                box[i + 3] = Math.max(box[i + 3], value);
+            }
+        }
+        return box;
+    }
+
+    /**
+     * @return The intersection of the boxes, or null if any of them is null
+     * (empty) or if they don't intersect.
+     */
+    private static double[] intersection(double[] a, double[] b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        double[] result = new double[6];
+        for (int i = 0; i < 3; i++) {
+            result[i] = Math.max(a[i], b[i]);
+            result[i + 3] = Math.min(a[i + 3], b[i + 3]);
+            if (result[i] > result[i + 3]) {
+                return null;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.io.Entity;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the checks of entities created from trusted input, so that their
+ * constructors don't have to run them and they can be run later in a single
+ * batch.
+ * <p>
+ * Only entities whose constructors support it defer their checks, the others
+ * still run them when created. While a validation is bound to the current
+ * thread, the supporting entities created by it skip their checks and register
+ * them in the validation instead:
+ * <pre>{@code
+ * DeferredValidation validation = new DeferredValidation();
+ * try (DeferredValidation.Binding ignored = validation.bind()) {
+ *     // create the entities of the model
+ * }
+ * validation.validate();
+ * }</pre>
+ * A validation can be bound to many threads at once.
+ */
+public final class DeferredValidation {
+    private static final ThreadLocal<DeferredValidation> CURRENT = new ThreadLocal<>();
+
+    private final List<Check> checks = new ArrayList<>();
+
+    /**
+     * @return The validation bound to the current thread, or {@code null} if
+     * there's none.
+     */
+    public static DeferredValidation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds this validation to the current thread, until the returned
+     * {@link Binding} is closed. Bindings can be nested, closing one restores
+     * the validation that was bound before it.
+     *
+     * @return The binding of this validation to the current thread.
+     */
+    public Binding bind() {
+        return new Binding(this);
+    }
+
+    /**
+     * @param entity The entity whose checks are deferred.
+     * @param check  The checks that the constructor of {@code entity} would
+     *               have run, throwing an {@link IllegalArgumentException} if
+     *               they fail.
+     * @throws NullPointerException If any of the arguments is null.
+     */
+    public void defer(@NonNull Entity entity, @NonNull Runnable check) {
+        synchronized (checks) {
+            checks.add(new Check(entity, check));
+        }
+    }
+
+    /**
+     * @return The number of checks that were deferred and not validated yet.
+     */
+    public int size() {
+        synchronized (checks) {
+            return checks.size();
+        }
+    }
+
+    /**
+     * Runs in parallel all the checks deferred until now, and forgets them.
+     *
+     * @throws IllegalArgumentException If any of the checks fails. The
+     *                                  exception references the entity that
+     *                                  failed the check and has the exception
+     *                                  of the check as its cause, the failures
+     *                                  of other checks are added as suppressed
+     *                                  exceptions.
+     */
+    public void validate() {
+        List<Check> toValidate;
+        synchronized (checks) {
+            toValidate = new ArrayList<>(checks);
+            checks.clear();
+        }
+        List<IllegalArgumentException> failures = new ArrayList<>(0);
+        toValidate.parallelStream().forEach(check -> {
+            try {
+                check.check.run();
+            } catch (IllegalArgumentException e) {
+                synchronized (failures) {
+                    failures.add(new IllegalArgumentException(
+                            "invalid " + check.entity.getClass().getSimpleName() + ": " + e.getMessage(), e));
+                }
+            }
+        });
+        if (!failures.isEmpty()) {
+            IllegalArgumentException failure = failures.get(0);
+            for (int i = 1; i < failures.size(); i++) {
+                failure.addSuppressed(failures.get(i));
+            }
+            throw failure;
+        }
+    }
+
+    private static final class Check {
+        private final Entity entity;
+        private final Runnable check;
+
+        private Check(Entity entity, Runnable check) {
+            this.entity = entity;
+            this.check = check;
+        }
+    }
+
+    /**
+     * The binding of a validation to a thread, closing it restores the
+     * validation previously bound to the thread.
+     */
+    public static final class Binding extends ThreadBinding<DeferredValidation> {
+        private Binding(DeferredValidation validation) {
+            super(CURRENT, validation);
+        }
+    }
+}
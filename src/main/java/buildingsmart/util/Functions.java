@@ -19,60 +19,48 @@
 package buildingsmart.util;
 
 import buildingsmart.ifc.*;
-import lombok.Getter;
 import lombok.NonNull;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.text.DecimalFormat;
 import java.util.*;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import static java.lang.Math.sqrt;
-
 public class Functions {
 
     /**
-     * The precision used for double values in this library.
+     * @return The tolerance of the {@link Precision} used by the current
+     * thread.
+     *
+     * @see Precision#current()
      */
-    @Getter
-    private static double delta;
-    private static DecimalFormat decimalFormat;
-
-    static {
-        setDelta(0.00000001);
+    public static double getDelta() {
+        return Precision.current().getDelta();
     }
 
     /**
      * @param d The precision to use for double values in this library. It will be used when serializing doubles, and
-     *          internally when checking if a vector is normalised.
+     *          internally when checking if a vector is normalised. It only affects threads that have no
+     *          {@link Precision} bound to them, see {@link Precision#bind()} to use different precisions in different
+     *          threads.
+     * @throws IllegalArgumentException If d is negative, infinite or NaN.
      */
     public static void setDelta(double d) {
-        delta = d;
-        int decimals = BigDecimal.valueOf(delta).stripTrailingZeros().scale();
-        var pattern = "0.0" + (decimals >= 1 ? "#".repeat(decimals - 1) : "");
-
-        decimalFormat = new DecimalFormat(pattern);
-        var decimalFormatSymbols = decimalFormat.getDecimalFormatSymbols();
-        decimalFormatSymbols.setDecimalSeparator('.');
-        decimalFormat.setDecimalFormatSymbols(decimalFormatSymbols);
-        decimalFormat.setRoundingMode(RoundingMode.HALF_EVEN);
+        Precision.setDefault(new Precision(d));
     }
 
     /**
      * @param d The value to format for serialization.
-     * @return The String representation of the given value, rounded to according to the precision set with
-     * {@link #setDelta(double)}.
+     * @return The String representation of the given value, rounded to according to the {@link Precision} used by the
+     * current thread.
      */
     public static String format(double d) {
-        return decimalFormat.format(d);
+        return Precision.current().format(d);
     }
 
     private static final Map<IfcUnitEnum, Predicate<IfcDimensionalExponents>> ifcCorrectDimensions =
@@ -216,6 +204,10 @@ public class Functions {
      * @throws NullPointerException If unformatted is null.
      */
     public static String formatForStepFile(@NonNull String unformatted) {
+        if (isPrintableAscii(unformatted)) {
+            // nothing to escape, which is the case of most strings
+            return unformatted;
+        }
         String escaped = unformatted.replace("\\", "\\\\").replace("'", "''");
         ByteBuffer utf32Bytes =
                 ByteBuffer.wrap(escaped.getBytes(Charset.forName("UTF-32")));
@@ -240,6 +232,96 @@ public class Functions {
                 }).collect(Collectors.joining());
     }
 
+    /**
+     * @return Whether {@code str} contains only printable ASCII characters
+     * other than "'" and "\".
+     */
+    private static boolean isPrintableAscii(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < 0x20 || c >= 0x7F || c == '\'' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method reverts {@link #formatForStepFile(String)}, decoding the
+     * content of a string read from a STEP file: "''" and "\\" become "'" and
+     * "\", and the control directives defined in ISO 10303-21 (\X\, \X2\,
+     * \X4\ and \S\) become the characters they encode. Code page directives
+     * (\P\) are skipped, \S\ is always decoded in ISO 8859-1.
+     *
+     * @param formatted The content of the string, without the enclosing
+     *                  apostrophes.
+     * @return The decoded String.
+     *
+     * @throws NullPointerException     If formatted is null.
+     * @throws IllegalArgumentException If formatted contains an invalid
+     *                                  directive.
+     */
+    public static String parseFromStepFile(@NonNull String formatted) {
+        if (formatted.indexOf('\\') < 0 && formatted.indexOf('\'') < 0) {
+            return formatted;
+        }
+        StringBuilder parsed = new StringBuilder(formatted.length());
+        int i = 0;
+        try {
+            while (i < formatted.length()) {
+                char c = formatted.charAt(i);
+                if (c == '\'') {
+                    if (formatted.charAt(i + 1) != '\'') {
+                        throw new IllegalArgumentException("unescaped apostrophe at " + i);
+                    }
+                    parsed.append(c);
+                    i += 2;
+                } else if (c != '\\') {
+                    parsed.append(c);
+                    i++;
+                } else if (formatted.charAt(i + 1) == '\\') {
+                    parsed.append(c);
+                    i += 2;
+                } else if (formatted.startsWith("X\\", i + 1)) {
+                    parsed.append((char) Integer.parseInt(formatted.substring(i + 3, i + 5), 16));
+                    i += 5;
+                } else if (formatted.startsWith("X2\\", i + 1) || formatted.startsWith("X4\\", i + 1)) {
+                    int digits = formatted.charAt(i + 2) == '2' ? 4 : 8;
+                    int end = formatted.indexOf("\\X0\\", i + 4);
+                    if (end < 0 || (end - i - 4) % digits != 0) {
+                        throw new IllegalArgumentException("unterminated directive at " + i);
+                    }
+                    for (int j = i + 4; j < end; j += digits) {
+                        parsed.appendCodePoint(Integer.parseUnsignedInt(formatted.substring(j, j + digits), 16));
+                    }
+                    i = end + 4;
+                } else if (formatted.startsWith("S\\", i + 1)) {
+                    parsed.append((char) (formatted.charAt(i + 3) + 0x80));
+                    i += 4;
+                } else if (formatted.charAt(i + 1) == 'P' && formatted.charAt(i + 3) == '\\') {
+                    i += 4;
+                } else {
+                    throw new IllegalArgumentException("invalid directive at " + i);
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated directive at " + i, e);
+        }
+        return parsed.toString();
+    }
+
+    /**
+     * @param ratios The direction ratios to convert.
+     * @return The values of the direction ratios.
+     */
+    private static double[] components(List<IfcReal> ratios) {
+        double[] components = new double[ratios.size()];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = ratios.get(i).getValue();
+        }
+        return components;
+    }
+
     /**
      * @param arg1 The first input direction. Must be three-dimensional.
      * @param arg2 The second input direction. Must be three-dimensional
@@ -260,39 +342,20 @@ public class Functions {
         if (arg1.getDim().getValue() != 3 || arg2.getDim().getValue() != 3) {
             return null;
         }
+        double[] v1 = components(arg1.getDirectionRatios());
+        double[] v2 = components(arg2.getDirectionRatios());
+        double[] res = new double[3];
         // default result if the directions are parallel, anti-parallel or
         // one of them has components that are all zero
-        IfcVector result = new IfcVector(arg1, new IfcLengthMeasure(0));
-        List<IfcReal> v1Real;
-        List<IfcReal> v2Real;
-        IfcDirection ifcDirection1 = ifcNormalise(arg1);
-        IfcDirection ifcDirection2 = ifcNormalise(arg2);
-        if (null == ifcDirection1 || null == ifcDirection2) {
-            return result;
-        }
-        v1Real = ifcDirection1.getDirectionRatios();
-        v2Real = ifcDirection2.getDirectionRatios();
-
-        double[] v1 = new double[v1Real.size()];
-        double[] v2 = new double[v2Real.size()];
-        for (byte i = 0; i < v1.length; i++) {
-            v1[i] = v1Real.get(i).getValue();
-            v2[i] = v2Real.get(i).getValue();
-        }
-
-        double[] res = new double[v1.length];
-        res[0] = v1[1] * v2[2] - v1[2] * v2[1];
-        res[1] = v1[2] * v2[0] - v1[0] * v2[2];
-        res[2] = v1[0] * v2[1] - v1[1] * v2[0];
-        double magnitude = 0;
-        for (double component : res) {
-            magnitude += component * component;
+        if (!VectorMath.normalise(v1, v1) || !VectorMath.normalise(v2, v2)) {
+            return new IfcVector(arg1, new IfcLengthMeasure(0));
         }
+        VectorMath.cross(v1, v2, res);
+        double magnitude = VectorMath.magnitude(res);
         if (magnitude > 0) {
-            result = new IfcVector(new IfcDirection(res),
-                                   new IfcLengthMeasure(sqrt(magnitude)));
+            return new IfcVector(new IfcDirection(res), new IfcLengthMeasure(magnitude));
         }
-        return result;
+        return new IfcVector(arg1, new IfcLengthMeasure(0));
     }
 
     /**
@@ -301,23 +364,9 @@ public class Functions {
      * components are all zero then the output is null.
      */
     public static double[] ifcNormalise(double @NonNull [] components) {
-        double magnitude = 0;
-        int dim = components.length;
-
-        for (double component : components) {
-            magnitude += (component * component);
-        }
-
-        if (magnitude > 0) {
-            magnitude = sqrt(magnitude);
-            double[] directionRatios = new double[dim];
-            for (int i = 0; i < dim; i++) {
-                directionRatios[i] = components[i] / magnitude;
-            }
-            return directionRatios;
-        }
-        // should only happen if all components are zero
-        return null;
+        double[] directionRatios = new double[components.length];
+        // should only fail if all components are zero
+        return VectorMath.normalise(components, directionRatios) ? directionRatios : null;
     }
 
     /**
@@ -331,9 +380,8 @@ public class Functions {
         if (direction == null) {
             return null;
         }
-        double[] normalised =
-                ifcNormalise(direction.getDirectionRatios().stream().mapToDouble(IfcReal::getValue).toArray());
-        return normalised == null ? null : new IfcDirection(normalised);
+        double[] normalised = components(direction.getDirectionRatios());
+        return VectorMath.normalise(normalised, normalised) ? new IfcDirection(normalised) : null;
     }
 
     /**
@@ -349,9 +397,9 @@ public class Functions {
             return vector;
         }
 
-        double[] normalised =
-                ifcNormalise(vector.getDirectionRatios().stream().mapToDouble(IfcReal::getValue).toArray());
-        return normalised == null ? null : new IfcVector(new IfcDirection(normalised), new IfcLengthMeasure(1));
+        double[] normalised = components(vector.getDirectionRatios());
+        return VectorMath.normalise(normalised, normalised) ?
+                new IfcVector(new IfcDirection(normalised), new IfcLengthMeasure(1)) : null;
     }
 
     /**
@@ -362,11 +410,7 @@ public class Functions {
      * @throws NullPointerException If components is null.
      */
     public static boolean alreadyNormalised(double @NonNull [] components) {
-        double squaresSum = 0;
-        for (double component : components) {
-            squaresSum += component * component;
-        }
-        return Math.abs(squaresSum - 1) <= delta;
+        return Precision.current().alreadyNormalised(components);
     }
 
     /**
@@ -380,8 +424,7 @@ public class Functions {
         if (vector.getMagnitude().getValue() != 1) {
             return false;
         }
-        return alreadyNormalised(vector.getOrientation().getDirectionRatios().stream().mapToDouble(IfcReal::getValue)
-                                         .toArray());
+        return alreadyNormalised(components(vector.getOrientation().getDirectionRatios()));
     }
 
     /**
@@ -395,93 +438,69 @@ public class Functions {
      * of axis. List[0] is in the direction of the projection of ref_direction
      * onto the plane normal to List[2], List[1] is the cross product of List[2]
      * and List[0]. Default values are supplied if both arguments are null.
+     *
+     * @see VectorMath#buildAxes(double[], double[], double[], double[], double[])
      */
     public static @NotNull List<IfcDirection> ifcBuildAxes(@Nullable IfcDirection axis,
                                                   @Nullable IfcDirection refDirection) {
         if ((axis == null && refDirection != null) || (axis != null && refDirection == null)) {
             throw new IllegalArgumentException("either both axis and refDirection are null, or none can be null");
         }
-        IfcDirection normalisedAxis = ifcNormalise(axis);
-        IfcDirection d1 = normalisedAxis == null ? new IfcDirection(0, 0, 1) :
-                normalisedAxis;
-        IfcDirection d2 = ifcFirstProjAxis(d1, refDirection);
-        List<IfcDirection> result = new ArrayList<>(3);
-        result.add(d2);
-        IfcVector normalisedCrossProduct = ifcNormalise(ifcCrossProduct(d1, d2));
-        if (null == normalisedCrossProduct) {
+        double[] xAxis = new double[3];
+        double[] yAxis = new double[3];
+        double[] zAxis = new double[3];
+        if (!VectorMath.buildAxes(axis == null ? null : components(axis.getDirectionRatios()),
+                                  refDirection == null ? null : components(refDirection.getDirectionRatios()),
+                                  xAxis,
+                                  yAxis,
+                                  zAxis)) {
             throw new IllegalArgumentException("Unable to compute the three axes from the given axis and refDirection: "
             + axis + ", " + refDirection);
         }
-        result.add(normalisedCrossProduct.getOrientation());
-        result.add(d1);
+        List<IfcDirection> result = new ArrayList<>(3);
+        result.add(new IfcDirection(xAxis));
+        result.add(new IfcDirection(yAxis));
+        result.add(new IfcDirection(zAxis));
         return result;
     }
 
     /**
-     * @param zAxis The direction onto whose normal plane the direction arg
-     *              should be projected.
-     * @param arg   The direction to project onto the plane normal to zAxis.
-     * @return A three dimensional direction which is, with fully defined input,
-     * the projection of arg onto the plane normal to zAxis. If arg is null, the
-     * result is the projection of (1.0,0.0,0.0) onto this plane except that if
-     * z-axis = (1.0,0.0,0.0) then (0.0,1.0,0.0) is used as initial value of
-     * arg. If arg is in the same direction as the input zAxis, or it is not
-     * three-dimensional, null will be returned. If zAxis is null, null will be
-     * returned.
-     */
-    private static IfcDirection ifcFirstProjAxis(IfcDirection zAxis,
-                                                 IfcDirection arg) {
-        if (zAxis == null) {
-            return null;
-        }
-        IfcDirection xAxis, v, z;
-        IfcVector xVec;
-        z = ifcNormalise(zAxis);
-        if (arg == null) {
-            v = z.equals(new IfcDirection(1, 0, 0)) ?
-                    new IfcDirection(0, 1, 0) : new IfcDirection(1, 0, 0);
-        } else {
-            if (arg.getDim().getValue() != 3) {
-                return null;
-            }
-            if (ifcCrossProduct(arg, z).getMagnitude().getValue() == 0) {
-                return null;
-            } else {
-                v = ifcNormalise(arg);
-            }
-        }
-        xVec = ifcScalarTimesVector(ifcDotProduct(v, z), z);
-        xAxis = ifcVectorDifference(v, xVec).getOrientation();
-        xAxis = ifcNormalise(xAxis);
-        return xAxis;
-    }
-
-    /**
-     * @param scalar The value by which vec should be multiplied.
-     * @param vec    The vector to multiply.
-     * @return The vector that is the scalar multiple of the input vector. The
-     * output is an IfcVector of the same units as the input vector. If any of
-     * the input arguments is null, returns null.
+     * @param dim   The dimensionality of the axes, 2 or 3.
+     * @param axis1 The direction of the first axis, or null.
+     * @param axis2 The direction of the second axis, or null.
+     * @param axis3 The direction of the third axis, or null. It must be null if
+     *              dim is 2.
+     * @return The normalised orthogonal directions of the axes of a cartesian
+     * transformation operator. Directions that are not given are derived from
+     * the others or take default values, as described by the EXPRESS function
+     * IfcBaseAxis.
+     *
+     * @throws IllegalArgumentException If dim is not 2 or 3, if the
+     *                                  dimensionality of any of the directions
+     *                                  is not dim or if the axes cannot be
+     *                                  computed from the given directions.
+     * @see VectorMath#baseAxis(double[], double[], double[], double[][])
      */
-    private static @Nullable IfcVector ifcScalarTimesVector(@Nullable IfcReal scalar, @Nullable IfcVector vec) {
-        if (scalar == null || vec == null) {
-            return null;
+    public static List<IfcDirection> ifcBaseAxis(int dim,
+                                                 IfcDirection axis1,
+                                                 IfcDirection axis2,
+                                                 IfcDirection axis3) {
+        if (dim != 2 && dim != 3) {
+            throw new IllegalArgumentException("dim must be 2 or 3");
+        }
+        double[][] u = new double[dim][dim];
+        if (!VectorMath.baseAxis(axis1 == null ? null : components(axis1.getDirectionRatios()),
+                                 axis2 == null ? null : components(axis2.getDirectionRatios()),
+                                 axis3 == null ? null : components(axis3.getDirectionRatios()),
+                                 u)) {
+            throw new IllegalArgumentException("Unable to compute the base axes from the given directions: " + axis1 +
+                                                       ", " + axis2 + ", " + axis3);
+        }
+        List<IfcDirection> result = new ArrayList<>(dim);
+        for (double[] axis : u) {
+            result.add(new IfcDirection(axis));
         }
-        return scalarTimesVector(scalar.getValue() * vec.getMagnitude().getValue(), vec.getOrientation());
-    }
-
-    private static IfcVector scalarTimesVector(double mag, @NotNull IfcDirection v) {
-        if (mag < 0) {
-            List<IfcReal> directionRatios = v.getDirectionRatios();
-            double[] negativeDirectionRatios =
-                    new double[directionRatios.size()];
-            for (int i = 0; i < directionRatios.size(); i++) {
-                negativeDirectionRatios[i] = -directionRatios.get(i).getValue();
-            }
-            v = new IfcDirection(negativeDirectionRatios);
-            mag = -mag;
-        }
-        return new IfcVector(ifcNormalise(v), new IfcLengthMeasure(mag));
+        return result;
     }
 
     /**
@@ -495,57 +514,14 @@ public class Functions {
         if (scalar == null || dir == null) {
             return null;
         }
-        return scalarTimesVector(scalar.getValue(), dir);
-    }
-
-    /**
-     * @param arg1 The first argument of the subtraction {@code arg1 - arg2}. If
-     *             both input arguments are IfcVectors, they must be expressed
-     *             in the same units.
-     * @param arg2 The second argument of the subtraction {@code arg1 - arg2}.
-     *             If both input arguments are IfcVectors, they must be
-     *             expressed in the same units.
-     * @return The vector difference of the two input vectors. If both vectors
-     * are IfcDirections, a unitless result is produced. A zero difference
-     * vector produces a an IfcVector of zero magnitude.
-     */
-    private static IfcVector ifcVectorDifference(IfcVectorOrDirection arg1,
-                                                 IfcVectorOrDirection arg2) {
-        if (arg1 == null || arg2 == null ||
-                !arg1.getDim().equals(arg2.getDim())) {
-            return null;
+        double mag = scalar.getValue();
+        double[] orientation = components(dir.getDirectionRatios());
+        if (mag < 0) {
+            VectorMath.scale(-1, orientation, orientation);
+            mag = -mag;
         }
-        IfcDirection vec1, vec2;
-        double mag1, mag2;
-        if (arg1 instanceof IfcVector) {
-            mag1 = ((IfcVector) arg1).getMagnitude().getValue();
-            vec1 = ((IfcVector) arg1).getOrientation();
-        } else {
-            mag1 = 1;
-            vec1 = (IfcDirection) arg1;
-        }
-        if (arg2 instanceof IfcVector) {
-            mag2 = ((IfcVector) arg2).getMagnitude().getValue();
-            vec2 = ((IfcVector) arg2).getOrientation();
-        } else {
-            mag2 = 1;
-            vec2 = (IfcDirection) arg2;
-        }
-        vec1 = ifcNormalise(vec1);
-        vec2 = ifcNormalise(vec2);
-        double mag = 0;
-        double[] resultDirectionRatios = new double[vec1.getDim().getValue()];
-        for (byte i = 0; i < resultDirectionRatios.length; i++) {
-            resultDirectionRatios[i] =
-                    mag1 * vec1.getDirectionRatios().get(i).getValue() -
-                            mag2 * vec2.getDirectionRatios().get(i).getValue();
-            mag += resultDirectionRatios[i] * resultDirectionRatios[1];
-        }
-        if (mag > 0) {
-            return new IfcVector(new IfcDirection(resultDirectionRatios),
-                                 new IfcLengthMeasure(sqrt(mag)));
-        }
-        return new IfcVector(vec1, new IfcLengthMeasure(0));
+        return new IfcVector(VectorMath.normalise(orientation, orientation) ? new IfcDirection(orientation) : null,
+                             new IfcLengthMeasure(mag));
     }
 
     /**
@@ -645,15 +621,12 @@ public class Functions {
                 !arg1.getDim().equals(arg2.getDim())) {
             return null;
         }
-        double scalar = 0;
-        IfcDirection vec1 = ifcNormalise(arg1);
-        IfcDirection vec2 = ifcNormalise(arg2);
-        byte dim = arg1.getDim().getValue();
-        for (byte i = 0; i < dim; i++) {
-            scalar += vec1.getDirectionRatios().get(i).getValue() *
-                    vec2.getDirectionRatios().get(i).getValue();
+        double[] vec1 = components(arg1.getDirectionRatios());
+        double[] vec2 = components(arg2.getDirectionRatios());
+        if (!VectorMath.normalise(vec1, vec1) || !VectorMath.normalise(vec2, vec2)) {
+            return new IfcReal(0);
         }
-        return new IfcReal(scalar);
+        return new IfcReal(VectorMath.dot(vec1, vec2));
     }
 
     /**
@@ -729,37 +702,24 @@ public class Functions {
      * input data is incomplete.
      */
     public static List<IfcDirection> ifcBuild2Axes(IfcDirection refDirection) {
-        IfcDirection d = ifcNormalise(refDirection);
-        d = d != null ? d : new IfcDirection(1, 0);
-        return Arrays.asList(d, ifcOrthogonalComplement(d));
-    }
-
-    /**
-     * @param vec The direction for which to find a perpendicular direction. It
-     *            must be two-dimensional
-     * @return A direction perpendicular to the input direction, {@code null} if
-     * the input direction is null or not two-dimensional.
-     */
-    private static IfcDirection ifcOrthogonalComplement(IfcDirection vec) {
-        if (vec == null || vec.getDim().getValue() != 2) {
-            return null;
+        double[] d = refDirection == null ? new double[]{1, 0} : components(refDirection.getDirectionRatios());
+        if (!VectorMath.normalise(d, d)) {
+            d = new double[]{1, 0};
         }
-        return new IfcDirection(-vec.getDirectionRatios().get(1).getValue(),
-                                vec.getDirectionRatios().get(0).getValue());
+        if (d.length != 2) {
+            return Arrays.asList(new IfcDirection(d), null);
+        }
+        // the second direction is the orthogonal complement of the first one
+        return Arrays.asList(new IfcDirection(d), new IfcDirection(-d[1], d[0]));
     }
 
     /**
      * @param value The value that might get rounded.
      * @return The closest integer to {@code value} (as described in the documentation of {@link Math#round(double)}) if
-     * the difference between {@code value} and {@code Math.round(value)} is lower or equal to {@link #delta},
+     * the difference between {@code value} and {@code Math.round(value)} is lower or equal to {@link #getDelta()},
      * {@code value} otherwise.
      */
     public static double round(double value) {
-        double roundedValue = Math.round(value);
-        if (Math.abs(value - roundedValue) > delta) {
-            return value;
-        } else {
-            return roundedValue;
-        }
+        return Precision.current().round(value);
     }
 }
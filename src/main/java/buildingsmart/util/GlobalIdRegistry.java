@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.IfcGloballyUniqueId;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps track of the {@link IfcGloballyUniqueId}s used by the instances of
+ * {@link buildingsmart.ifc.IfcRoot} created while the registry is bound to the
+ * current thread, so that the uniqueness of globalId is checked within a
+ * single model instead of within the whole JVM.
+ * <p>
+ * A registry is usually created for each model being built, bound to every
+ * thread building it and closed when the model is no longer needed:
+ * <pre>{@code
+ * try (GlobalIdRegistry registry = new GlobalIdRegistry();
+ *      GlobalIdRegistry.Binding ignored = registry.bind()) {
+ *     // create the entities of the model
+ * }
+ * }</pre>
+ * When no registry is bound to the current thread, globalIds are not checked
+ * at all, unless {@link #setGlobalCompatibility(boolean)} was called with
+ * {@code true}: in that case they're checked against a registry shared by the
+ * whole JVM, which is never emptied except by
+ * {@link buildingsmart.ifc.IfcRoot#clearUniqueConstraint()}.
+ * <p>
+ * Identifiers are stored as pairs of longs in open addressing hash tables,
+ * split in stripes that are locked independently, so that this class can be
+ * used by many threads at once.
+ */
+public final class GlobalIdRegistry implements AutoCloseable {
+    private static final int STRIPES = 32;
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
+    private static final GlobalIdRegistry GLOBAL = new GlobalIdRegistry();
+    private static final ThreadLocal<GlobalIdRegistry> CURRENT = new ThreadLocal<>();
+    /**
+     * Whether globalIds of entities created when no registry is bound to the
+     * current thread are checked against a registry shared by the whole JVM,
+     * as this library always did before registries were introduced.
+     */
+    @Getter
+    @Setter
+    private static volatile boolean globalCompatibility = false;
+
+    private final Stripe[] stripes;
+    private final Set<Object> uniqueValues = new HashSet<>();
+    private volatile boolean closed;
+
+    public GlobalIdRegistry() {
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * @return The registry shared by the whole JVM, used when
+     * {@link #isGlobalCompatibility()} is {@code true} and no registry is bound
+     * to the current thread.
+     */
+    public static GlobalIdRegistry getGlobal() {
+        return GLOBAL;
+    }
+
+    /**
+     * @return The registry bound to the current thread; if there's none, the
+     * one returned by {@link #getGlobal()} if {@link #isGlobalCompatibility()}
+     * is {@code true}, {@code null} otherwise.
+     */
+    public static GlobalIdRegistry current() {
+        GlobalIdRegistry registry = CURRENT.get();
+        if (registry != null) {
+            return registry;
+        }
+        return globalCompatibility ? GLOBAL : null;
+    }
+
+    /**
+     * @param hi The most significant bits of the identifier.
+     * @param lo The least significant bits of the identifier.
+     * @return A well distributed hash of the 128-bit identifier.
+     */
+    private static long mix(long hi, long lo) {
+        long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Binds this registry to the current thread, until the returned
+     * {@link Binding} is closed. Bindings can be nested, closing one restores
+     * the registry that was bound before it.
+     *
+     * @return The binding of this registry to the current thread.
+     *
+     * @throws IllegalStateException If this registry was closed.
+     */
+    public Binding bind() {
+        checkNotClosed();
+        return new Binding(this);
+    }
+
+    /**
+     * @param globalId The identifier to add.
+     * @return {@code true} if the identifier was not already in this registry,
+     * {@code false} otherwise.
+     *
+     * @throws NullPointerException  If globalId is null.
+     * @throws IllegalStateException If this registry was closed.
+     */
+    public boolean add(@NonNull IfcGloballyUniqueId globalId) {
+        checkNotClosed();
+        long hi = globalId.getMostSignificantBits();
+        long lo = globalId.getLeastSignificantBits();
+        long hash = mix(hi, lo);
+        Stripe stripe = stripes[(int) (hash >>> 59)];
+        synchronized (stripe) {
+            return globalId.isCanonical() ? stripe.add(hi, lo, hash) : stripe.addNonCanonical(globalId);
+        }
+    }
+
+    /**
+     * @param globalId The identifier to look for.
+     * @return {@code true} if the identifier is in this registry, {@code false}
+     * otherwise.
+     *
+     * @throws NullPointerException If globalId is null.
+     */
+    public boolean contains(@NonNull IfcGloballyUniqueId globalId) {
+        long hi = globalId.getMostSignificantBits();
+        long lo = globalId.getLeastSignificantBits();
+        long hash = mix(hi, lo);
+        Stripe stripe = stripes[(int) (hash >>> 59)];
+        synchronized (stripe) {
+            return globalId.isCanonical() ? stripe.contains(hi, lo, hash) : stripe.containsNonCanonical(globalId);
+        }
+    }
+
+    /**
+     * Adds the value of an attribute, other than globalId, that must be unique
+     * within the model, such as applicationIdentifier of
+     * {@link buildingsmart.ifc.IfcApplication}.
+     *
+     * @param value The value to add, which must be equal only to values of the
+     *              same attribute, e.g. a List of the name of the attribute and
+     *              of its value.
+     * @return {@code true} if the value was not already in this registry,
+     * {@code false} otherwise.
+     *
+     * @throws NullPointerException  If value is null.
+     * @throws IllegalStateException If this registry was closed.
+     */
+    public boolean addUnique(@NonNull Object value) {
+        checkNotClosed();
+        synchronized (uniqueValues) {
+            return uniqueValues.add(value);
+        }
+    }
+
+    /**
+     * Removes a value added by {@link #addUnique(Object)}, e.g. when the entity
+     * it belongs to is rejected because of another unique attribute.
+     *
+     * @param value The value to remove.
+     * @return {@code true} if the value was in this registry, {@code false}
+     * otherwise.
+     *
+     * @throws NullPointerException If value is null.
+     */
+    public boolean removeUnique(@NonNull Object value) {
+        synchronized (uniqueValues) {
+            return uniqueValues.remove(value);
+        }
+    }
+
+    /**
+     * @param value The value to look for, see {@link #addUnique(Object)}.
+     * @return {@code true} if the value is in this registry, {@code false}
+     * otherwise.
+     *
+     * @throws NullPointerException If value is null.
+     */
+    public boolean containsUnique(@NonNull Object value) {
+        synchronized (uniqueValues) {
+            return uniqueValues.contains(value);
+        }
+    }
+
+    /**
+     * @return The number of identifiers in this registry.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all identifiers from this registry, releasing the memory they
+     * used.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        synchronized (uniqueValues) {
+            uniqueValues.clear();
+        }
+    }
+
+    /**
+     * Removes all identifiers from this registry and prevents new ones from
+     * being added. The registry returned by {@link #getGlobal()} cannot be
+     * closed, calling this method on it will only clear it.
+     */
+    @Override
+    public void close() {
+        if (this != GLOBAL) {
+            closed = true;
+        }
+        clear();
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("this registry was closed");
+        }
+    }
+
+    /**
+     * The binding of a registry to a thread, closing it restores the registry
+     * previously bound to the thread.
+     */
+    public static final class Binding extends ThreadBinding<GlobalIdRegistry> {
+        private Binding(GlobalIdRegistry registry) {
+            super(CURRENT, registry);
+        }
+    }
+
+    /**
+     * An open addressing hash table of 128-bit identifiers, with linear
+     * probing. Each identifier takes two consecutive slots of {@link #keys}, a
+     * pair of zeros marks an empty slot so the identifier made of zeros only is
+     * tracked by {@link #containsZero}. Identifiers that aren't canonical (see
+     * {@link IfcGloballyUniqueId#isCanonical()}) are rare and are kept in a
+     * separate Set.
+     */
+    private static final class Stripe {
+        private long[] keys;
+        private int size;
+        private boolean containsZero;
+        private Set<IfcGloballyUniqueId> nonCanonical;
+
+        private Stripe() {
+            keys = new long[INITIAL_STRIPE_CAPACITY * 2];
+        }
+
+        private boolean add(long hi, long lo, long hash) {
+            if (hi == 0 && lo == 0) {
+                if (containsZero) {
+                    return false;
+                }
+                containsZero = true;
+                return true;
+            }
+            if ((size + 1) * 4L > keys.length) {
+                // keeps the load factor under 0.5
+                resize(keys.length * 2);
+            }
+            if (!insert(keys, hi, lo, hash)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        private boolean contains(long hi, long lo, long hash) {
+            if (hi == 0 && lo == 0) {
+                return containsZero;
+            }
+            int mask = keys.length / 2 - 1;
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long slotHi = keys[slot * 2];
+                long slotLo = keys[slot * 2 + 1];
+                if (slotHi == hi && slotLo == lo) {
+                    return true;
+                }
+                if (slotHi == 0 && slotLo == 0) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * @return {@code false} if the identifier was already in table.
+         */
+        private static boolean insert(long[] table, long hi, long lo, long hash) {
+            int mask = table.length / 2 - 1;
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long slotHi = table[slot * 2];
+                long slotLo = table[slot * 2 + 1];
+                if (slotHi == hi && slotLo == lo) {
+                    return false;
+                }
+                if (slotHi == 0 && slotLo == 0) {
+                    table[slot * 2] = hi;
+                    table[slot * 2 + 1] = lo;
+                    return true;
+                }
+            }
+        }
+
+        private void resize(int length) {
+            long[] resized = new long[length];
+            for (int i = 0; i < keys.length; i += 2) {
+                long hi = keys[i];
+                long lo = keys[i + 1];
+                if (hi != 0 || lo != 0) {
+                    insert(resized, hi, lo, mix(hi, lo));
+                }
+            }
+            keys = resized;
+        }
+
+        private boolean addNonCanonical(IfcGloballyUniqueId globalId) {
+            if (nonCanonical == null) {
+                nonCanonical = new HashSet<>();
+            }
+            return nonCanonical.add(globalId);
+        }
+
+        private boolean containsNonCanonical(IfcGloballyUniqueId globalId) {
+            return nonCanonical != null && nonCanonical.contains(globalId);
+        }
+
+        private int size() {
+            return size + (containsZero ? 1 : 0) + (nonCanonical == null ? 0 : nonCanonical.size());
+        }
+
+        private void clear() {
+            keys = new long[INITIAL_STRIPE_CAPACITY * 2];
+            size = 0;
+            containsZero = false;
+            nonCanonical = null;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+/**
+ * Wraps an entity to use it as the key of a hash map compared by identity,
+ * since computing the hash of an entity visits its whole graph.
+ */
+final class Identity {
+    private final Object object;
+
+    Identity(Object object) {
+        this.object = object;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Identity && ((Identity) o).object == object;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(object);
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * Builds the faces of a {@link IfcConnectedFaceSet}, {@link IfcClosedShell} or
+ * {@link IfcFacetedBrep} from an indexed mesh, creating a single
+ * {@link IfcCartesianPoint} for each vertex.
+ * <p>
+ * The mesh is described by an array of vertex coordinates, three for each
+ * vertex, and by an array of indices of the vertices of the loops bounding the
+ * faces. By default each loop is a triangle and each face has a single loop;
+ * {@link #loopSizes(int[])} allows polygons of any size and
+ * {@link #boundsPerFace(int[])} allows faces with holes, whose first loop is
+ * the outer bound and the following ones are the inner bounds:
+ * <pre>{@code
+ * IfcFacetedBrep brep = new IndexedMeshBuilder(vertices, indices).buildFacetedBrep();
+ * }</pre>
+ * Faces having the same loops, in the same order, are added only once.
+ * <p>
+ * {@link #buildStreamingFacetedBrep()} doesn't create the faces when it is
+ * called, they're created each time the set of faces of the shell is iterated,
+ * e.g. by the {@link buildingsmart.io.Serializer}. The model keeps only the
+ * arrays and the points, which saves memory when building large models,
+ * but iterating the faces is slower.
+ */
+public final class IndexedMeshBuilder {
+    private final double[] vertices;
+    private final int[] indices;
+    private int[] loopSizes;
+    private int[] boundsPerFace;
+    private PointPool pointPool;
+
+    /**
+     * @param vertices The coordinates of the vertices of the mesh, three for
+     *                 each vertex. The array is not copied, so it must not be
+     *                 modified until the faces are built, or as long as a
+     *                 streaming brep built from it is used.
+     * @param indices  The indices of the vertices of the loops of the mesh.
+     *                 The array is not copied, as for {@code vertices}.
+     * @throws NullPointerException     If any of the arguments is null.
+     * @throws IllegalArgumentException If the length of {@code vertices} is
+     *                                  not a multiple of 3.
+     */
+    public IndexedMeshBuilder(double @NonNull [] vertices, int @NonNull [] indices) {
+        if (vertices.length % 3 != 0) {
+            throw new IllegalArgumentException("the length of vertices must be a multiple of 3");
+        }
+        this.vertices = vertices;
+        this.indices = indices;
+    }
+
+    /**
+     * @param loopSizes The number of vertices of each loop, in the order in
+     *                  which their indices appear in {@code indices}. If not
+     *                  set, each loop is a triangle.
+     * @return This builder.
+     *
+     * @throws NullPointerException If loopSizes is null.
+     */
+    public IndexedMeshBuilder loopSizes(int @NonNull [] loopSizes) {
+        this.loopSizes = loopSizes;
+        return this;
+    }
+
+    /**
+     * @param boundsPerFace The number of loops bounding each face, the first
+     *                      of which is the outer bound. If not set, each face
+     *                      is bounded by a single loop.
+     * @return This builder.
+     *
+     * @throws NullPointerException If boundsPerFace is null.
+     */
+    public IndexedMeshBuilder boundsPerFace(int @NonNull [] boundsPerFace) {
+        this.boundsPerFace = boundsPerFace;
+        return this;
+    }
+
+    /**
+     * @param pointPool The pool from which to get the points of the vertices,
+     *                  so that they are welded with the ones of other meshes
+     *                  and with each other. If not set, a point is created for
+     *                  each vertex, and vertices having equal points are
+     *                  welded with each other.
+     * @return This builder.
+     *
+     * @throws NullPointerException If pointPool is null.
+     */
+    public IndexedMeshBuilder pointPool(@NonNull PointPool pointPool) {
+        this.pointPool = pointPool;
+        return this;
+    }
+
+    /**
+     * @return The connected face set of the mesh.
+     *
+     * @throws IllegalArgumentException If the mesh is not valid, see
+     *                                  {@link #buildFaces()}.
+     */
+    public IfcConnectedFaceSet buildConnectedFaceSet() {
+        return new IfcConnectedFaceSet(buildFaces());
+    }
+
+    /**
+     * @return The closed shell of the mesh. The mesh is not checked to be
+     * closed.
+     *
+     * @throws IllegalArgumentException If the mesh is not valid, see
+     *                                  {@link #buildFaces()}.
+     */
+    public IfcClosedShell buildClosedShell() {
+        return new IfcClosedShell(buildFaces());
+    }
+
+    /**
+     * @return The faceted brep of the mesh. The mesh is not checked to be
+     * closed.
+     *
+     * @throws IllegalArgumentException If the mesh is not valid, see
+     *                                  {@link #buildFaces()}.
+     */
+    public IfcFacetedBrep buildFacetedBrep() {
+        return new IfcFacetedBrep(buildClosedShell());
+    }
+
+    /**
+     * @return The faceted brep of the mesh, whose faces are created every time
+     * they're iterated. The mesh is not checked to be closed, and the loops are
+     * checked only when the faces are created.
+     *
+     * @throws IllegalArgumentException If the mesh is not valid, see
+     *                                  {@link #buildFaces()}.
+     */
+    public IfcFacetedBrep buildStreamingFacetedBrep() {
+        return new IfcFacetedBrep(new IfcClosedShell(new StreamingFaceSet(new Mesh())));
+    }
+
+    /**
+     * @return The faces of the mesh.
+     *
+     * @throws IllegalArgumentException If the mesh has no faces, if any index
+     *                                  is out of the range of the vertices,
+     *                                  if any loop has less than 3 vertices,
+     *                                  if the sum of loopSizes is not the
+     *                                  length of indices, if the sum of
+     *                                  boundsPerFace is not the number of
+     *                                  loops, if any face has no bounds, if
+     *                                  any loop is not a valid
+     *                                  {@link IfcPolyLoop}.
+     */
+    public Set<IfcFace> buildFaces() {
+        Mesh mesh = new Mesh();
+        IfcFace[] faces = new IfcFace[mesh.uniqueFaces.length];
+        for (int i = 0; i < faces.length; i++) {
+            faces[i] = mesh.face(mesh.uniqueFaces[i]);
+        }
+        return new FaceSet(faces);
+    }
+
+    /**
+     * The validated structure of the mesh, with offsets of loops and faces and
+     * the points of the vertices.
+     */
+    private final class Mesh {
+        private final int[] loopStarts;
+        private final int[] faceStarts;
+        private final IfcCartesianPoint[] points;
+        /**
+         * For each vertex, the first vertex having the same point.
+         */
+        private final int[] canonicalVertices;
+        private final int[] uniqueFaces;
+
+        private Mesh() {
+            int vertexCount = vertices.length / 3;
+            for (int index : indices) {
+                if (index < 0 || index >= vertexCount) {
+                    throw new IllegalArgumentException("index " + index + " is out of the range of vertices");
+                }
+            }
+            loopStarts = starts(loopSizes, indices.length, 3, "loopSizes", "indices");
+            int loopCount = loopStarts.length - 1;
+            faceStarts = starts(boundsPerFace, loopCount, 1, "boundsPerFace", "loops");
+            for (int i = 0; i < loopCount; i++) {
+                if (loopStarts[i + 1] - loopStarts[i] < 3) {
+                    throw new IllegalArgumentException("each loop must have at least 3 vertices");
+                }
+            }
+            if (faceStarts.length < 2) {
+                throw new IllegalArgumentException("the mesh must have at least one face");
+            }
+
+            points = new IfcCartesianPoint[vertexCount];
+            canonicalVertices = new int[vertexCount];
+            // vertices having equal points are welded even without a pool, so
+            // that faces are equal only if they have the same canonical
+            // vertices and the faces built from the mesh are distinct
+            Map<IfcCartesianPoint, Integer> firstVertices =
+                    pointPool == null ? new HashMap<>(vertexCount * 2) : new IdentityHashMap<>();
+            for (int i = 0; i < vertexCount; i++) {
+                double x = vertices[i * 3];
+                double y = vertices[i * 3 + 1];
+                double z = vertices[i * 3 + 2];
+                IfcCartesianPoint point = pointPool == null ? new IfcCartesianPoint(x, y, z) : pointPool.get(x, y, z);
+                Integer firstVertex = firstVertices.putIfAbsent(point, i);
+                if (firstVertex == null) {
+                    points[i] = point;
+                    canonicalVertices[i] = i;
+                } else {
+                    points[i] = points[firstVertex];
+                    canonicalVertices[i] = firstVertex;
+                }
+            }
+            uniqueFaces = uniqueFaces();
+        }
+
+        /**
+         * @return The offsets at which each group starts, followed by the total
+         * size.
+         */
+        private int[] starts(int[] sizes, int total, int defaultSize, String sizesName, String totalName) {
+            if (sizes == null) {
+                if (total % defaultSize != 0) {
+                    throw new IllegalArgumentException("the number of " + totalName + " must be a multiple of " +
+                                                               defaultSize + " if " + sizesName + " is not set");
+                }
+                int[] starts = new int[total / defaultSize + 1];
+                for (int i = 0; i < starts.length; i++) {
+                    starts[i] = i * defaultSize;
+                }
+                return starts;
+            }
+            int[] starts = new int[sizes.length + 1];
+            for (int i = 0; i < sizes.length; i++) {
+                if (sizes[i] < 1) {
+                    throw new IllegalArgumentException("all " + sizesName + " must be positive");
+                }
+                starts[i + 1] = starts[i] + sizes[i];
+            }
+            if (starts[sizes.length] != total) {
+                throw new IllegalArgumentException("the sum of " + sizesName + " must be the number of " + totalName);
+            }
+            return starts;
+        }
+
+        /**
+         * @return The indices of the faces, skipping the ones which have the
+         * same loops as a previous face.
+         */
+        private int[] uniqueFaces() {
+            int faceCount = faceStarts.length - 1;
+            int capacity = Integer.highestOneBit(Math.max(faceCount, 1) * 2 - 1) << 1;
+            int[] table = new int[capacity];
+            Arrays.fill(table, -1);
+            int[] unique = new int[faceCount];
+            int uniqueCount = 0;
+            int mask = capacity - 1;
+            for (int face = 0; face < faceCount; face++) {
+                int slot = hash(face) & mask;
+                boolean duplicate = false;
+                for (; table[slot] >= 0; slot = (slot + 1) & mask) {
+                    if (sameLoops(table[slot], face)) {
+                        duplicate = true;
+                        break;
+                    }
+                }
+                if (!duplicate) {
+                    table[slot] = face;
+                    unique[uniqueCount++] = face;
+                }
+            }
+            return Arrays.copyOf(unique, uniqueCount);
+        }
+
+        private int hash(int face) {
+            int hash = 1;
+            for (int loop = faceStarts[face]; loop < faceStarts[face + 1]; loop++) {
+                hash = 31 * hash + loopStarts[loop + 1] - loopStarts[loop];
+                for (int i = loopStarts[loop]; i < loopStarts[loop + 1]; i++) {
+                    hash = 31 * hash + canonicalVertices[indices[i]];
+                }
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        private boolean sameLoops(int face1, int face2) {
+            int loop1 = faceStarts[face1];
+            int loop2 = faceStarts[face2];
+            if (faceStarts[face1 + 1] - loop1 != faceStarts[face2 + 1] - loop2) {
+                return false;
+            }
+            int start1 = loopStarts[loop1];
+            int start2 = loopStarts[loop2];
+            int length = loopStarts[faceStarts[face1 + 1]] - start1;
+            if (loopStarts[faceStarts[face2 + 1]] - start2 != length) {
+                return false;
+            }
+            for (int loop = 0; loop < faceStarts[face1 + 1] - loop1; loop++) {
+                if (loopStarts[loop1 + loop + 1] - loopStarts[loop1 + loop] !=
+                        loopStarts[loop2 + loop + 1] - loopStarts[loop2 + loop]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                if (canonicalVertices[indices[start1 + i]] != canonicalVertices[indices[start2 + i]]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return The face with the given index, whose first loop is an
+         * {@link IfcFaceOuterBound}.
+         */
+        private IfcFace face(int face) {
+            int firstLoop = faceStarts[face];
+            int loopCount = faceStarts[face + 1] - firstLoop;
+            IfcFaceBound outer = new IfcFaceOuterBound(loop(firstLoop), IfcBoolean.T);
+            if (loopCount == 1) {
+                return new IfcFace(Collections.singleton(outer));
+            }
+            Set<IfcFaceBound> bounds = new HashSet<>(loopCount * 2);
+            bounds.add(outer);
+            for (int loop = firstLoop + 1; loop < firstLoop + loopCount; loop++) {
+                bounds.add(new IfcFaceBound(loop(loop), IfcBoolean.T));
+            }
+            return new IfcFace(bounds);
+        }
+
+        private IfcPolyLoop loop(int loop) {
+            IfcCartesianPoint[] polygon = new IfcCartesianPoint[loopStarts[loop + 1] - loopStarts[loop]];
+            for (int i = 0; i < polygon.length; i++) {
+                polygon[i] = points[indices[loopStarts[loop] + i]];
+            }
+            return new IfcPolyLoop(Arrays.asList(polygon));
+        }
+    }
+
+    /**
+     * A set of faces which are already known to be distinct, since vertices
+     * having equal points are welded before skipping the faces with the same
+     * loops, so they don't need to be hashed to be added.
+     */
+    private static final class FaceSet extends AbstractSet<IfcFace> {
+        private final IfcFace[] faces;
+
+        private FaceSet(IfcFace[] faces) {
+            this.faces = faces;
+        }
+
+        @Override
+        public Iterator<IfcFace> iterator() {
+            return Collections.unmodifiableList(Arrays.asList(faces)).iterator();
+        }
+
+        @Override
+        public int size() {
+            return faces.length;
+        }
+    }
+
+    /**
+     * A set of faces which are created every time they're iterated. Its
+     * hashCode is computed only once.
+     */
+    private static final class StreamingFaceSet extends AbstractSet<IfcFace> {
+        private final Mesh mesh;
+        private int hashCode;
+        private boolean hashComputed;
+
+        private StreamingFaceSet(Mesh mesh) {
+            this.mesh = mesh;
+        }
+
+        @Override
+        public Iterator<IfcFace> iterator() {
+            return new Iterator<>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < mesh.uniqueFaces.length;
+                }
+
+                @Override
+                public IfcFace next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return mesh.face(mesh.uniqueFaces[next++]);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return mesh.uniqueFaces.length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o instanceof StreamingFaceSet && ((StreamingFaceSet) o).mesh == mesh) {
+                return true;
+            }
+            return super.equals(o);
+        }
+
+        @Override
+        public synchronized int hashCode() {
+            if (!hashComputed) {
+                hashCode = super.hashCode();
+                hashComputed = true;
+            }
+            return hashCode;
+        }
+    }
+}
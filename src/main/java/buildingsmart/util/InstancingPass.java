@@ -0,0 +1,574 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import buildingsmart.io.Entity;
+import buildingsmart.io.EntityAttributes;
+import buildingsmart.io.Header;
+import buildingsmart.io.Serializer;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the shape representations of products which have the same geometry,
+ * wherever it is placed, and replaces them with mapped representations, so
+ * that their items are defined once in an {@link IfcRepresentationMap} and
+ * reused through an {@link IfcMappedItem}.
+ * <p>
+ * The fingerprint of a representation factors out where its geometry is: the
+ * position of one of its swept solids is taken as the anchor of the
+ * representation, and the items are compared by their attributes other than
+ * their position and by their position relative to the anchor, quantized by
+ * the delta of the {@link Precision} of the thread running the pass. Two
+ * representations with the same context, identifier, type and item
+ * fingerprints, including the styles of the items, are identical up to a
+ * rigid transformation: each of them is replaced by a mapped item whose
+ * MappingTarget moves the anchor of the shared representation onto its own
+ * anchor, while the MappingOrigin is the origin. Items other than swept
+ * solids have no position to factor out, so representations made only of
+ * such items are shared only when they're at the same place. The
+ * fingerprints of the representations are computed in parallel, with the
+ * precision of the thread running the pass bound to the workers; only
+ * representations with the same fingerprint are compared item by item.
+ * <p>
+ * The output file shrinks when the representations replaced had several
+ * items, or items placed differently, which the {@link Serializer} couldn't
+ * write only once; the saved bytes and entities can be measured as part of
+ * the {@link Report}, which always reports the items released from memory.
+ * <p>
+ * Only shape representations in three-dimensional contexts which are not
+ * mapped already are considered. A pass can be run on many projects, but not
+ * on the same project from many threads at once.
+ */
+public final class InstancingPass {
+    private static final IfcLabel MAPPED_REPRESENTATION = new IfcLabel("MappedRepresentation");
+    private static final double[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0};
+    private static final Map<Class<?>, Field[]> SHAPE_ATTRIBUTES = new ConcurrentHashMap<>();
+
+    private int minimumGroupSize = 2;
+    private boolean measureOutput;
+
+    /**
+     * @param minimumGroupSize The minimum number of identical representations
+     *                         that are replaced by mapped representations, 2
+     *                         by default.
+     * @return This pass.
+     *
+     * @throws IllegalArgumentException If minimumGroupSize is lower than 2.
+     */
+    public InstancingPass minimumGroupSize(int minimumGroupSize) {
+        if (minimumGroupSize < 2) {
+            throw new IllegalArgumentException("minimumGroupSize must be at least 2");
+        }
+        this.minimumGroupSize = minimumGroupSize;
+        return this;
+    }
+
+    /**
+     * @param measureOutput Whether the project is serialized before and after
+     *                      the pass, to report the bytes and entities saved in
+     *                      the output file. It is {@code false} by default,
+     *                      since serializing is usually much slower than the
+     *                      pass itself.
+     * @return This pass.
+     */
+    public InstancingPass measureOutput(boolean measureOutput) {
+        this.measureOutput = measureOutput;
+        return this;
+    }
+
+    /**
+     * Replaces the identical shape representations of the products of
+     * {@code project} with mapped representations.
+     *
+     * @param project The project whose products are rewritten.
+     * @return The report of the changes made to the project.
+     *
+     * @throws NullPointerException If project is null.
+     */
+    public Report run(@NonNull IfcProject project) {
+        Output before = measureOutput ? measure(project) : null;
+
+        Precision precision = Precision.current();
+        double delta = precision.getDelta();
+        List<Candidate> candidates = collectCandidates(project).parallelStream()
+                .map(pair -> {
+                    try (Precision.Binding ignored = precision.bind()) {
+                        return new Candidate(pair.getLeft(), pair.getRight(), delta);
+                    }
+                })
+                .collect(Collectors.toList());
+        Map<Candidate, List<Candidate>> groups = new LinkedHashMap<>();
+        for (Candidate candidate : candidates) {
+            groups.computeIfAbsent(candidate, key -> new ArrayList<>()).add(candidate);
+        }
+
+        int sharedGroups = 0;
+        int mappedRepresentations = 0;
+        Set<Object> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Object> dropped = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (List<Candidate> group : groups.values()) {
+            if (group.size() < minimumGroupSize) {
+                continue;
+            }
+            Candidate shared = group.get(0);
+            Set<IfcRepresentationItem> sharedItems = shared.representation.getItems();
+            IfcRepresentationMap map = new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0),
+                                                                new IfcShapeRepresentation(shared.context,
+                                                                                           shared.identifier,
+                                                                                           shared.type,
+                                                                                           new HashSet<>(sharedItems)));
+            double[] sharedInverse = PlacementResolver.invertRigid(shared.anchor);
+            // candidates placed in the same way share the same mapped item
+            Map<TransformKey, IfcMappedItem> mappedItems = new HashMap<>();
+            reachable(sharedItems, kept);
+            for (Candidate candidate : group) {
+                if (candidate != shared) {
+                    reachable(candidate.representation.getItems(), dropped);
+                }
+                double[] target = PlacementResolver.multiply(candidate.anchor, sharedInverse);
+                IfcMappedItem mappedItem = mappedItems.computeIfAbsent(
+                        new TransformKey(target, delta),
+                        key -> new IfcMappedItem(map, operator(target, delta)));
+                candidate.productRepresentation.replaceRepresentation(
+                        candidate.representation,
+                        new IfcShapeRepresentation(shared.context, shared.identifier, MAPPED_REPRESENTATION,
+                                                   mappedItem));
+            }
+            sharedGroups++;
+            mappedRepresentations += group.size();
+        }
+        dropped.removeAll(kept);
+
+        Output after = measureOutput ? measure(project) : null;
+        return new Report(sharedGroups,
+                          mappedRepresentations,
+                          dropped.size(),
+                          measureOutput,
+                          measureOutput ? before.bytes - after.bytes : 0,
+                          measureOutput ? before.entities - after.entities : 0);
+    }
+
+    /**
+     * @return The pairs of product representation and shape representation
+     * that can be replaced by a mapped representation.
+     */
+    private static List<Pair<IfcProductRepresentation, IfcShapeRepresentation>> collectCandidates(
+            IfcProject project) {
+        List<Pair<IfcProductRepresentation, IfcShapeRepresentation>> candidates = new ArrayList<>();
+        for (IfcProduct product : PlacementResolver.collectProducts(project)) {
+            IfcProductRepresentation productRepresentation = product.getRepresentation();
+            if (!(productRepresentation instanceof IfcProductDefinitionShape)) {
+                continue;
+            }
+            for (IfcRepresentation representation : productRepresentation.getRepresentations()) {
+                if (representation instanceof IfcShapeRepresentation &&
+                        representation.getContextOfItems() instanceof IfcGeometricRepresentationContext &&
+                        ((IfcGeometricRepresentationContext) representation.getContextOfItems())
+                                .getCoordinateSpaceDimension().getValue() == 3 &&
+                        representation.getRepresentationType() != null &&
+                        representation.getItems().stream().noneMatch(item -> item instanceof IfcMappedItem)) {
+                    candidates.add(new Pair<>(productRepresentation, (IfcShapeRepresentation) representation));
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @param transform A transform without scaling.
+     * @param delta     The tolerance within which {@code transform} doesn't
+     *                  rotate.
+     * @return The transformation operator of {@code transform}, without axes
+     * if it doesn't rotate.
+     */
+    private static IfcCartesianTransformationOperator3D operator(double[] transform, double delta) {
+        IfcCartesianPoint localOrigin = new IfcCartesianPoint(transform[3], transform[7], transform[11]);
+        boolean rotates = false;
+        for (int row = 0; row < 3 && !rotates; row++) {
+            for (int column = 0; column < 3 && !rotates; column++) {
+                rotates = Math.abs(transform[row * 4 + column] - IDENTITY[row * 4 + column]) > delta;
+            }
+        }
+        if (!rotates) {
+            return new IfcCartesianTransformationOperator3D(localOrigin);
+        }
+        return new IfcCartesianTransformationOperator3D(new IfcDirection(transform[0], transform[4], transform[8]),
+                                                        new IfcDirection(transform[1], transform[5], transform[9]),
+                                                        localOrigin,
+                                                        null,
+                                                        new IfcDirection(transform[2], transform[6], transform[10]));
+    }
+
+    /**
+     * Adds to {@code visited} the entities reachable from {@code roots}
+     * through their attributes.
+     */
+    private static void reachable(Collection<?> roots, Set<Object> visited) {
+        Deque<Object> toVisit = new ArrayDeque<>(roots);
+        while (!toVisit.isEmpty()) {
+            Object object = toVisit.pop();
+            if (object instanceof Collection) {
+                toVisit.addAll((Collection<?>) object);
+            } else if (object instanceof Entity && visited.add(object)) {
+                for (Field field : EntityAttributes.of(object.getClass()).getExplicitAttributes()) {
+                    Object value = EntityAttributes.get(field, object);
+                    if (value != null) {
+                        toVisit.push(value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The attributes of {@code type} which don't depend on where an
+     * item is placed: the position of a swept solid is factored out of its
+     * fingerprint, and the item of a style is the item being fingerprinted.
+     */
+    private static Field[] shapeAttributes(Class<?> type) {
+        return SHAPE_ATTRIBUTES.computeIfAbsent(type, key -> EntityAttributes.of(key).getExplicitAttributes().stream()
+                .filter(field -> !(field.getDeclaringClass() == IfcSweptAreaSolid.class &&
+                        field.getName().equals("position") ||
+                        field.getDeclaringClass() == IfcStyledItem.class && field.getName().equals("item")))
+                .toArray(Field[]::new));
+    }
+
+    /**
+     * @param value The value to quantize.
+     * @param delta The precision used for double values.
+     * @return The value as a multiple of {@code delta}.
+     */
+    private static long quantize(double value, double delta) {
+        if (delta == 0) {
+            return Double.doubleToLongBits(value == -0d ? 0d : value);
+        }
+        return Math.round(value / delta);
+    }
+
+    private static Output measure(IfcProject project) {
+        Output output = new Output();
+        try {
+            new Serializer().serialize(new Header(), project, output, "");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output;
+    }
+
+    /**
+     * A shape representation which might be replaced, its equality is the
+     * one of the representations which can share a representation map.
+     */
+    private static final class Candidate {
+        private final IfcProductRepresentation productRepresentation;
+        private final IfcShapeRepresentation representation;
+        private final IfcRepresentationContext context;
+        private final IfcLabel identifier;
+        private final IfcLabel type;
+        /**
+         * The transform of the position of the anchor item, or the identity if
+         * there's no swept solid.
+         */
+        private final double[] anchor;
+        /**
+         * The fingerprints of the items, sorted so that they're in the same
+         * order in representations with the same items.
+         */
+        private final Item[] items;
+        private final int hashCode;
+
+        /**
+         * @param delta The quantum of the relative positions of the items.
+         */
+        private Candidate(IfcProductRepresentation productRepresentation,
+                          IfcShapeRepresentation representation,
+                          double delta) {
+            this.productRepresentation = productRepresentation;
+            this.representation = representation;
+            this.context = representation.getContextOfItems();
+            this.identifier = representation.getRepresentationIdentifier();
+            this.type = representation.getRepresentationType();
+
+            Set<IfcRepresentationItem> representationItems = representation.getItems();
+            IfcRepresentationItem[] shapes = representationItems.toArray(new IfcRepresentationItem[0]);
+            // computing the hash of the items visits their whole graph, so
+            // it's done only once
+            int[] shapeHashes = new int[shapes.length];
+            for (int i = 0; i < shapes.length; i++) {
+                shapeHashes[i] = shapeHash(shapes[i]);
+            }
+            this.anchor = anchor(shapes, shapeHashes);
+            double[] inverse = PlacementResolver.invertRigid(anchor);
+            this.items = new Item[shapes.length];
+            for (int i = 0; i < shapes.length; i++) {
+                double[] relative = PlacementResolver.multiply(inverse, position(shapes[i]));
+                long[] quantized = new long[relative.length];
+                for (int j = 0; j < relative.length; j++) {
+                    quantized[j] = quantize(relative[j], delta);
+                }
+                items[i] = new Item(shapes[i], shapeHashes[i], quantized);
+            }
+            Arrays.sort(items);
+
+            int hash = Objects.hash(context, identifier, type);
+            for (Item item : items) {
+                hash = 31 * hash + item.shapeHash;
+                hash = 31 * hash + Arrays.hashCode(item.relativePosition);
+            }
+            this.hashCode = hash;
+        }
+
+        /**
+         * @return The transform of the position of the swept solid whose
+         * fingerprint is the lowest among the ones that are unique within the
+         * representation, so that representations with the same items choose
+         * the same anchor; the lowest one if none is unique, the identity if
+         * there are no swept solids.
+         */
+        private static double[] anchor(IfcRepresentationItem[] shapes, int[] shapeHashes) {
+            int anchor = -1;
+            boolean anchorUnique = false;
+            for (int i = 0; i < shapes.length; i++) {
+                if (!(shapes[i] instanceof IfcSweptAreaSolid)) {
+                    continue;
+                }
+                boolean unique = true;
+                for (int j = 0; j < shapes.length && unique; j++) {
+                    unique = j == i || !(shapes[j] instanceof IfcSweptAreaSolid) || shapeHashes[j] != shapeHashes[i];
+                }
+                if (anchor < 0 || unique && !anchorUnique ||
+                        unique == anchorUnique && shapeHashes[i] < shapeHashes[anchor]) {
+                    anchor = i;
+                    anchorUnique = unique;
+                }
+            }
+            return anchor < 0 ? IDENTITY : position(shapes[anchor]);
+        }
+
+        /**
+         * @return The transform of the position of {@code item}, the identity
+         * if it's not a swept solid.
+         */
+        private static double[] position(IfcRepresentationItem item) {
+            return item instanceof IfcSweptAreaSolid ?
+                    PlacementResolver.toTransform(((IfcSweptAreaSolid) item).getPosition()) : IDENTITY;
+        }
+
+        private static int shapeHash(IfcRepresentationItem item) {
+            int hash = item.getClass().hashCode();
+            for (Field field : shapeAttributes(item.getClass())) {
+                hash = 31 * hash + Objects.hashCode(EntityAttributes.get(field, item));
+            }
+            IfcStyledItem style = item.getStyledByItem();
+            return style == null ? hash : 31 * hash + shapeHash(style);
+        }
+
+        /**
+         * @return {@code true} if the items are equal except for their
+         * position, and have equal styles.
+         */
+        private static boolean sameShape(IfcRepresentationItem a, IfcRepresentationItem b) {
+            if (a == b) {
+                return true;
+            }
+            if (a == null || b == null || a.getClass() != b.getClass()) {
+                return false;
+            }
+            for (Field field : shapeAttributes(a.getClass())) {
+                if (!Objects.equals(EntityAttributes.get(field, a), EntityAttributes.get(field, b))) {
+                    return false;
+                }
+            }
+            return sameShape(a.getStyledByItem(), b.getStyledByItem());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Candidate)) {
+                return false;
+            }
+            Candidate other = (Candidate) o;
+            if (hashCode != other.hashCode || !context.equals(other.context) ||
+                    !Objects.equals(identifier, other.identifier) || !type.equals(other.type) ||
+                    items.length != other.items.length) {
+                return false;
+            }
+            for (int i = 0; i < items.length; i++) {
+                if (items[i].shapeHash != other.items[i].shapeHash ||
+                        !Arrays.equals(items[i].relativePosition, other.items[i].relativePosition) ||
+                        !sameShape(items[i].item, other.items[i].item)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * The fingerprint of an item of a representation.
+     */
+    private static final class Item implements Comparable<Item> {
+        private final IfcRepresentationItem item;
+        private final int shapeHash;
+        /**
+         * The quantized transform of the position of the item relative to the
+         * anchor of the representation.
+         */
+        private final long[] relativePosition;
+
+        private Item(IfcRepresentationItem item, int shapeHash, long[] relativePosition) {
+            this.item = item;
+            this.shapeHash = shapeHash;
+            this.relativePosition = relativePosition;
+        }
+
+        @Override
+        public int compareTo(Item other) {
+            int result = Integer.compare(shapeHash, other.shapeHash);
+            return result != 0 ? result : Arrays.compare(relativePosition, other.relativePosition);
+        }
+    }
+
+    /**
+     * A transform quantized by the delta of the pass, to find the mapped items
+     * with the same target.
+     */
+    private static final class TransformKey {
+        private final long[] values;
+
+        private TransformKey(double[] transform, double delta) {
+            values = new long[transform.length];
+            for (int i = 0; i < transform.length; i++) {
+                values[i] = quantize(transform[i], delta);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TransformKey && Arrays.equals(values, ((TransformKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+
+    /**
+     * A writer that discards what it's given, counting its characters and the
+     * lines of entity instances.
+     */
+    private static final class Output extends Writer {
+        private long bytes;
+        private long entities;
+        private boolean lineStart = true;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            bytes += length;
+            for (int i = offset; i < offset + length; i++) {
+                if (lineStart && buffer[i] == '#') {
+                    entities++;
+                }
+                lineStart = buffer[i] == '\n';
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * The changes made to a project by an {@link InstancingPass}.
+     */
+    @Getter
+    public static final class Report {
+        /**
+         * The number of groups of identical representations, each of them now
+         * sharing a representation map.
+         */
+        private final int groups;
+        /**
+         * The number of representations replaced by mapped representations.
+         */
+        private final int mappedRepresentations;
+        /**
+         * The number of entity instances which were referenced by the replaced
+         * representations and are not referenced by the shared ones. They can
+         * be garbage collected, unless something else references them.
+         */
+        private final int releasedEntities;
+        /**
+         * Whether the output file was measured, see
+         * {@link InstancingPass#measureOutput(boolean)}. If not,
+         * {@link #getSavedBytes()} and {@link #getSavedEntities()} are zero.
+         */
+        private final boolean measured;
+        /**
+         * The difference between the size in bytes of the output file before
+         * and after the pass.
+         */
+        private final long savedBytes;
+        /**
+         * The difference between the number of entity instances in the output
+         * file before and after the pass.
+         */
+        private final long savedEntities;
+
+        private Report(int groups, int mappedRepresentations, int releasedEntities, boolean measured,
+                       long savedBytes, long savedEntities) {
+            this.groups = groups;
+            this.mappedRepresentations = mappedRepresentations;
+            this.releasedEntities = releasedEntities;
+            this.measured = measured;
+            this.savedBytes = savedBytes;
+            this.savedEntities = savedEntities;
+        }
+
+        @Override
+        public String toString() {
+            return "groups=" + groups + ", mappedRepresentations=" + mappedRepresentations + ", releasedEntities=" +
+                    releasedEntities + (measured ? ", savedBytes=" + savedBytes + ", savedEntities=" +
+                    savedEntities : "");
+        }
+    }
+}
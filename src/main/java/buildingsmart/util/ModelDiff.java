@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.IfcProject;
+import buildingsmart.ifc.IfcRoot;
+import buildingsmart.io.DefinedType;
+import buildingsmart.io.Entity;
+import buildingsmart.io.EntityAttributes;
+import buildingsmart.io.StepReader;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Compares two versions of a model, finding the {@link IfcRoot} entities that
+ * were added, removed or changed.
+ * <p>
+ * Entities are matched by globalId, and compared by a 128-bit fingerprint of
+ * their attributes and of the entities they reference, computed in parallel.
+ * References to other {@link IfcRoot} entities contribute only their
+ * globalId, so that a change is reported for the entities whose own
+ * attributes changed: moving a wall changes the wall, since its placement is
+ * not an {@link IfcRoot}, while moving it to another storey changes the
+ * relationships containing it. Entities which are not {@link IfcRoot} are
+ * fingerprinted once however many entities reference them, so models are
+ * compared in time proportional to their size.
+ * <p>
+ * Inverse attributes and derived attributes are not compared, since they're
+ * determined by other attributes. Sets are compared regardless of the order
+ * of their elements, lists in order. A diff can be used by many threads at
+ * once.
+ */
+public final class ModelDiff {
+    /**
+     * The hashes of the names of the classes, which are added to the hash of
+     * each value.
+     */
+    private static final ClassValue<Long> CLASS_HASHES = new ClassValue<>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            Hash hash = new Hash();
+            hash.add(type.getName());
+            return hash.get()[0];
+        }
+    };
+
+    /**
+     * Compares the entities reachable from two projects through their
+     * attributes and inverse attributes, i.e. the ones that would be
+     * serialized with them.
+     *
+     * @return The differences from {@code before} to {@code after}.
+     *
+     * @throws NullPointerException     If before or after is null.
+     * @throws IllegalArgumentException If two entities of the same project
+     *                                  have the same globalId.
+     */
+    public Result compare(@NonNull IfcProject before, @NonNull IfcProject after) {
+        return compare(reachableRoots(before), reachableRoots(after));
+    }
+
+    /**
+     * Compares the entities of two IFC STEP files, read by {@link StepReader}.
+     *
+     * @return The differences from {@code before} to {@code after}.
+     *
+     * @throws NullPointerException     If before or after is null.
+     * @throws IOException              If a file can't be read.
+     * @throws IllegalArgumentException If a file is not a valid IFC STEP
+     *                                  file, or two of its entities have the
+     *                                  same globalId.
+     */
+    public Result compare(@NonNull Path before, @NonNull Path after) throws IOException {
+        StepReader reader = new StepReader();
+        List<IfcRoot> beforeRoots = reader.read(before).getAll(IfcRoot.class);
+        return compare(beforeRoots, reader.read(after).getAll(IfcRoot.class));
+    }
+
+    /**
+     * Compares two collections of entities.
+     *
+     * @return The differences from {@code before} to {@code after}.
+     *
+     * @throws NullPointerException     If before or after is null, or contain
+     *                                  null.
+     * @throws IllegalArgumentException If two entities of the same collection
+     *                                  have the same globalId.
+     */
+    public Result compare(@NonNull Collection<? extends IfcRoot> before,
+                          @NonNull Collection<? extends IfcRoot> after) {
+        Map<String, IfcRoot> beforeByGlobalId = byGlobalId(before);
+        Map<String, IfcRoot> afterByGlobalId = byGlobalId(after);
+        List<IfcRoot> matchedBefore = new ArrayList<>();
+        List<IfcRoot> matchedAfter = new ArrayList<>();
+        List<IfcRoot> removed = new ArrayList<>();
+        List<IfcRoot> added = new ArrayList<>();
+        beforeByGlobalId.forEach((globalId, root) -> {
+            IfcRoot other = afterByGlobalId.get(globalId);
+            if (other == null) {
+                removed.add(root);
+            } else {
+                matchedBefore.add(root);
+                matchedAfter.add(other);
+            }
+        });
+        afterByGlobalId.forEach((globalId, root) -> {
+            if (!beforeByGlobalId.containsKey(globalId)) {
+                added.add(root);
+            }
+        });
+
+        Fingerprints beforeFingerprints = new Fingerprints();
+        Fingerprints afterFingerprints = new Fingerprints();
+        boolean[] changed = new boolean[matchedBefore.size()];
+        IntStream.range(0, changed.length).parallel().forEach(i -> changed[i] =
+                !Arrays.equals(beforeFingerprints.root(matchedBefore.get(i)),
+                               afterFingerprints.root(matchedAfter.get(i))));
+        List<Change> changes = new ArrayList<>();
+        for (int i = 0; i < changed.length; i++) {
+            if (changed[i]) {
+                changes.add(new Change(matchedBefore.get(i), matchedAfter.get(i)));
+            }
+        }
+        Comparator<IfcRoot> byGlobalId = Comparator.comparing(root -> root.getGlobalId().getValue());
+        added.sort(byGlobalId);
+        removed.sort(byGlobalId);
+        changes.sort(Comparator.comparing(Change::getBefore, byGlobalId));
+        return new Result(added, removed, changes, matchedBefore.size() - changes.size());
+    }
+
+    /**
+     * @return The entities of {@code roots} by globalId.
+     */
+    private static Map<String, IfcRoot> byGlobalId(Collection<? extends IfcRoot> roots) {
+        Map<String, IfcRoot> byGlobalId = new HashMap<>();
+        for (IfcRoot root : roots) {
+            String globalId = root.getGlobalId().getValue();
+            IfcRoot previous = byGlobalId.put(globalId, root);
+            if (previous != null && previous != root) {
+                throw new IllegalArgumentException("duplicate globalId " + globalId);
+            }
+        }
+        return byGlobalId;
+    }
+
+    /**
+     * @return The {@link IfcRoot} entities reachable from {@code project}
+     * through attributes and inverse attributes, including the project.
+     */
+    private static List<IfcRoot> reachableRoots(IfcProject project) {
+        List<IfcRoot> roots = new ArrayList<>();
+        Set<Identity> visited = new HashSet<>();
+        Deque<Object> toVisit = new ArrayDeque<>();
+        toVisit.push(project);
+        while (!toVisit.isEmpty()) {
+            Object object = toVisit.pop();
+            if (object instanceof Collection) {
+                toVisit.addAll((Collection<?>) object);
+            } else if (object instanceof Entity && visited.add(new Identity(object))) {
+                if (object instanceof IfcRoot) {
+                    roots.add((IfcRoot) object);
+                }
+                EntityAttributes attributes = EntityAttributes.of(object.getClass());
+                for (Field field : attributes.getExplicitAttributes()) {
+                    push(toVisit, field, object);
+                }
+                for (Field field : attributes.getInverseRelationshipFields()) {
+                    push(toVisit, field, object);
+                }
+            }
+        }
+        return roots;
+    }
+
+    private static void push(Deque<Object> toVisit, Field field, Object object) {
+        Object value = EntityAttributes.get(field, object);
+        if (value != null) {
+            toVisit.push(value);
+        }
+    }
+
+    /**
+     * Computes the fingerprints of the entities of a model, remembering the
+     * ones of the entities which are not {@link IfcRoot}, which are usually
+     * referenced by many others.
+     */
+    private static final class Fingerprints {
+        private final Map<Identity, long[]> entities = new ConcurrentHashMap<>();
+
+        private long[] root(IfcRoot root) {
+            return attributes(root);
+        }
+
+        private long[] entity(Object entity) {
+            Identity key = new Identity(entity);
+            long[] fingerprint = entities.get(key);
+            if (fingerprint == null) {
+                // computeIfAbsent can't be used, since computing the
+                // fingerprint adds the ones of the referenced entities
+                fingerprint = attributes(entity);
+                entities.putIfAbsent(key, fingerprint);
+            }
+            return fingerprint;
+        }
+
+        private long[] attributes(Object entity) {
+            Hash hash = new Hash();
+            hash.add(CLASS_HASHES.get(entity.getClass()));
+            for (Field field : EntityAttributes.of(entity.getClass()).getExplicitAttributes()) {
+                add(hash, EntityAttributes.get(field, entity));
+            }
+            return hash.get();
+        }
+
+        private void add(Hash hash, Object value) {
+            if (value == null) {
+                hash.add(0);
+            } else if (value instanceof IfcRoot) {
+                hash.add(1);
+                hash.add(((IfcRoot) value).getGlobalId().getValue());
+            } else if (value instanceof Entity) {
+                long[] fingerprint = entity(value);
+                hash.add(2);
+                hash.add(fingerprint[0]);
+                hash.add(fingerprint[1]);
+            } else if (value instanceof Set) {
+                // the fingerprints of the elements are summed, so that their
+                // order doesn't matter
+                long first = 0;
+                long second = 0;
+                for (Object element : (Set<?>) value) {
+                    Hash elementHash = new Hash();
+                    add(elementHash, element);
+                    long[] fingerprint = elementHash.get();
+                    first += fingerprint[0];
+                    second += fingerprint[1];
+                }
+                hash.add(3);
+                hash.add(((Set<?>) value).size());
+                hash.add(first);
+                hash.add(second);
+            } else if (value instanceof Collection) {
+                hash.add(4);
+                hash.add(((Collection<?>) value).size());
+                for (Object element : (Collection<?>) value) {
+                    add(hash, element);
+                }
+            } else if (value instanceof DefinedType) {
+                hash.add(5);
+                hash.add(CLASS_HASHES.get(value.getClass()));
+                hash.add(((DefinedType) value).serialize());
+            } else {
+                hash.add(6);
+                hash.add(value.toString());
+            }
+        }
+    }
+
+    /**
+     * A 128-bit hash made of two 64-bit hashes with different multipliers.
+     */
+    private static final class Hash {
+        private long first = 0x243F6A8885A308D3L;
+        private long second = 0x13198A2E03707344L;
+
+        private void add(long value) {
+            first = (first ^ value) * 0x9E3779B97F4A7C15L;
+            first ^= first >>> 29;
+            second = (second ^ value) * 0xC2B2AE3D27D4EB4FL;
+            second ^= second >>> 31;
+        }
+
+        private void add(String value) {
+            add(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                add(value.charAt(i));
+            }
+        }
+
+        private long[] get() {
+            return new long[]{finish(first), finish(second)};
+        }
+
+        private static long finish(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+            hash *= 0xC4CEB9FE1A85EC53L;
+            return hash ^ hash >>> 33;
+        }
+    }
+
+    /**
+     * An entity which has the same globalId in both models, but different
+     * attributes.
+     */
+    @Getter
+    public static final class Change {
+        /**
+         * The entity in the model compared to.
+         */
+        private final IfcRoot before;
+        /**
+         * The entity in the model compared.
+         */
+        private final IfcRoot after;
+
+        private Change(IfcRoot before, IfcRoot after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public String toString() {
+            return before.getGlobalId().getValue();
+        }
+    }
+
+    /**
+     * The differences between two models, each list sorted by globalId.
+     */
+    @Getter
+    public static final class Result {
+        /**
+         * The entities whose globalId is only in the model compared.
+         */
+        private final List<IfcRoot> added;
+        /**
+         * The entities whose globalId is only in the model compared to.
+         */
+        private final List<IfcRoot> removed;
+        /**
+         * The entities whose globalId is in both models, with different
+         * attributes.
+         */
+        private final List<Change> changed;
+        /**
+         * The number of entities whose globalId is in both models, with the
+         * same attributes.
+         */
+        private final int unchanged;
+
+        private Result(List<IfcRoot> added, List<IfcRoot> removed, List<Change> changed, int unchanged) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.changed = Collections.unmodifiableList(changed);
+            this.unchanged = unchanged;
+        }
+
+        /**
+         * @return Whether the models have the same entities, with the same
+         * attributes.
+         */
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "added=" + added.size() + ", removed=" + removed.size() + ", changed=" + changed.size() +
+                    ", unchanged=" + unchanged;
+        }
+    }
+}
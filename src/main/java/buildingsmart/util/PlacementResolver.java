@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes the transformation from the local coordinate system of an
+ * {@link IfcObjectPlacement} to the world coordinate system, by composing the
+ * relative placements of the chain of {@link IfcLocalPlacement}s it belongs
+ * to.
+ * <p>
+ * Transforms are 3x4 matrices stored in arrays of 12 doubles in row-major
+ * order: the first three columns are the X, Y and Z axes of the local
+ * coordinate system and the fourth one is its origin, all expressed in world
+ * coordinates. Bidimensional placements are treated as lying in the XY plane.
+ * <p>
+ * The transform of every placement resolved is cached, so placements shared by
+ * many children (e.g. the one of a building storey) are resolved only once.
+ * Instances of this class can be used by many threads at once, but the cache is
+ * never emptied: a resolver should be used for a single model and discarded
+ * with it.
+ */
+public class PlacementResolver {
+    /**
+     * The transform of the world coordinate system.
+     */
+    private static final double[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0};
+
+    private final Map<IfcObjectPlacement, double[]> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param transform A 3x4 transform, as returned by
+     *                  {@link #resolve(IfcObjectPlacement)}.
+     * @return The transform as a 4x4 matrix in row-major order.
+     *
+     * @throws NullPointerException     If transform is null.
+     * @throws IllegalArgumentException If transform doesn't have 12 elements.
+     */
+    public static double[] toMatrix4(double @NonNull [] transform) {
+        if (transform.length != 12) {
+            throw new IllegalArgumentException("transform must have 12 elements");
+        }
+        double[] matrix = Arrays.copyOf(transform, 16);
+        matrix[15] = 1;
+        return matrix;
+    }
+
+    /**
+     * @param transform A 3x4 transform, as returned by
+     *                  {@link #resolve(IfcObjectPlacement)}.
+     * @param x         The X coordinate of the point in local coordinates.
+     * @param y         The Y coordinate of the point in local coordinates.
+     * @param z         The Z coordinate of the point in local coordinates.
+     * @return The coordinates of the point in the coordinate system
+     * {@code transform} leads to.
+     *
+     * @throws NullPointerException If transform is null.
+     */
+    public static double[] transformPoint(double @NonNull [] transform, double x, double y, double z) {
+        return new double[]{
+                transform[0] * x + transform[1] * y + transform[2] * z + transform[3],
+                transform[4] * x + transform[5] * y + transform[6] * z + transform[7],
+                transform[8] * x + transform[9] * y + transform[10] * z + transform[11]};
+    }
+
+    /**
+     * @param placement The placement to resolve. If null, the placement is the
+     *                  world coordinate system.
+     * @return The transform from the coordinate system of {@code placement} to
+     * the world coordinate system. The returned array can be freely modified.
+     *
+     * @throws IllegalArgumentException If {@code placement}, or one of the
+     *                                  placements it is relative to, is not an
+     *                                  {@link IfcLocalPlacement}.
+     */
+    public double[] resolve(IfcObjectPlacement placement) {
+        return resolveCached(placement).clone();
+    }
+
+    /**
+     * @param product The product of which to resolve the placement.
+     * @return The transform from the coordinate system of the placement of
+     * {@code product} to the world coordinate system. The returned array can be
+     * freely modified.
+     *
+     * @throws NullPointerException     If product is null.
+     * @throws IllegalArgumentException If the placement of {@code product}, or
+     *                                  one of the placements it is relative to,
+     *                                  is not an {@link IfcLocalPlacement}.
+     */
+    public double[] resolve(@NonNull IfcProduct product) {
+        return resolve(product.getObjectPlacement());
+    }
+
+    /**
+     * Resolves in parallel the placements of all the products in the spatial
+     * structure of {@code project}, i.e. the ones reachable from it through
+     * {@link IfcRelDecomposes} and {@link IfcRelContainedInSpatialStructure}
+     * relationships.
+     *
+     * @param project The project of which to resolve the products.
+     * @return The transform from the coordinate system of the placement of each
+     * product to the world coordinate system.
+     *
+     * @throws NullPointerException     If project is null.
+     * @throws IllegalArgumentException If any of the placements is not an
+     *                                  {@link IfcLocalPlacement}.
+     */
+    public Map<IfcProduct, double[]> resolveAll(@NonNull IfcProject project) {
+        Map<IfcProduct, double[]> transforms = new ConcurrentHashMap<>();
+        collectProducts(project).parallelStream()
+                .forEach(product -> transforms.put(product, resolve(product)));
+        return transforms;
+    }
+
+    /**
+     * @return The number of placements of which the transform is cached.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * @param project The project from which to start.
+     * @return The products reachable from {@code project} through
+     * {@link IfcRelDecomposes} and {@link IfcRelContainedInSpatialStructure}
+     * relationships, compared by identity. The products are iterated in the
+     * order they're reached, level by level of the spatial structure and in the
+     * order of the related objects of each relationship.
+     *
+     * @throws NullPointerException If project is null.
+     */
+    public static Set<IfcProduct> collectProducts(@NonNull IfcProject project) {
+        Set<IfcProduct> products = new ProductSet();
+        Set<IfcObjectDefinition> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<IfcObjectDefinition> toVisit = new ArrayDeque<>();
+        toVisit.add(project);
+        while (!toVisit.isEmpty()) {
+            IfcObjectDefinition object = toVisit.poll();
+            if (!visited.add(object)) {
+                continue;
+            }
+            if (object instanceof IfcProduct) {
+                products.add((IfcProduct) object);
+            }
+            for (IfcRelDecomposes relationship : object.getIsDecomposedBy()) {
+                toVisit.addAll(relationship.getRelatedObjects());
+            }
+            if (object instanceof IfcSpatialStructureElement) {
+                for (IfcRelContainedInSpatialStructure relationship :
+                        ((IfcSpatialStructureElement) object).getContainsElements()) {
+                    toVisit.addAll(relationship.getRelatedElements());
+                }
+            }
+        }
+        return products;
+    }
+
+    /**
+     * Resolves the chain of placements iteratively, starting from the last
+     * ancestor of {@code placement} which is already cached.
+     *
+     * @return The cached transform of {@code placement}, which must not be
+     * modified.
+     */
+    private double[] resolveCached(IfcObjectPlacement placement) {
+        if (placement == null) {
+            return IDENTITY;
+        }
+        double[] cached = cache.get(placement);
+        if (cached != null) {
+            return cached;
+        }
+        Deque<IfcLocalPlacement> unresolved = new ArrayDeque<>();
+        double[] transform = IDENTITY;
+        for (IfcObjectPlacement current = placement; current != null; ) {
+            if (!(current instanceof IfcLocalPlacement)) {
+                throw new IllegalArgumentException("only IfcLocalPlacement can be resolved, found " +
+                                                           current.getClass().getSimpleName());
+            }
+            cached = cache.get(current);
+            if (cached != null) {
+                transform = cached;
+                break;
+            }
+            IfcLocalPlacement localPlacement = (IfcLocalPlacement) current;
+            unresolved.push(localPlacement);
+            current = localPlacement.getPlacementRelTo();
+        }
+        while (!unresolved.isEmpty()) {
+            IfcLocalPlacement localPlacement = unresolved.pop();
+            double[] composed = compose(transform, localPlacement.getRelativePlacement());
+            double[] previous = cache.putIfAbsent(localPlacement, composed);
+            transform = previous == null ? composed : previous;
+        }
+        return transform;
+    }
+
+    /**
+     * @param parent            The transform of the coordinate system
+     *                          {@code relativePlacement} is relative to.
+     * @param relativePlacement The placement relative to {@code parent}.
+     * @return The transform of the coordinate system defined by
+     * {@code relativePlacement} to the world coordinate system.
+     */
+    private static double[] compose(double[] parent, IfcAxis2Placement relativePlacement) {
+        return multiply(parent, toTransform(relativePlacement));
+    }
+
+    /**
+     * @param placement The placement of a coordinate system.
+     * @return The transform from the coordinate system defined by
+     * {@code placement} to the one {@code placement} is expressed in.
+     */
+    static double[] toTransform(IfcAxis2Placement placement) {
+        List<IfcLengthMeasure> coordinates = placement.getLocation().getCoordinates();
+        List<IfcDirection> axes = placement.getP();
+        double[] transform = new double[12];
+        for (int column = 0; column < 3; column++) {
+            if (column < axes.size()) {
+                List<IfcReal> ratios = axes.get(column).getNormalisedDirectionRatios();
+                for (int row = 0; row < ratios.size(); row++) {
+                    transform[row * 4 + column] = ratios.get(row).getValue();
+                }
+            } else {
+                // the Z axis of a bidimensional placement
+                transform[2 * 4 + column] = 1;
+            }
+        }
+        for (int row = 0; row < coordinates.size(); row++) {
+            transform[row * 4 + 3] = coordinates.get(row).getValue();
+        }
+        return transform;
+    }
+
+    /**
+     * @param operator A cartesian transformation operator.
+     * @return The transform of {@code operator}, including its scaling.
+     */
+    static double[] toTransform(IfcCartesianTransformationOperator operator) {
+        List<IfcDirection> u;
+        double[] scales = {operator.getScl(), operator.getScl(), operator.getScl()};
+        if (operator instanceof IfcCartesianTransformationOperator3D) {
+            u = ((IfcCartesianTransformationOperator3D) operator).getU();
+            if (operator instanceof IfcCartesianTransformationOperator3DnonUniform) {
+                scales[1] = ((IfcCartesianTransformationOperator3DnonUniform) operator).getScl2();
+                scales[2] = ((IfcCartesianTransformationOperator3DnonUniform) operator).getScl3();
+            }
+        } else {
+            u = ((IfcCartesianTransformationOperator2D) operator).getU();
+            if (operator instanceof IfcCartesianTransformationOperator2DnonUniform) {
+                scales[1] = ((IfcCartesianTransformationOperator2DnonUniform) operator).getScl2();
+            }
+        }
+        double[] transform = new double[12];
+        for (int column = 0; column < 3; column++) {
+            if (column < u.size()) {
+                List<IfcReal> ratios = u.get(column).getDirectionRatios();
+                for (int row = 0; row < ratios.size(); row++) {
+                    transform[row * 4 + column] = ratios.get(row).getValue() * scales[column];
+                }
+            } else {
+                transform[2 * 4 + column] = scales[column];
+            }
+        }
+        List<IfcLengthMeasure> origin = operator.getLocalOrigin().getCoordinates();
+        for (int row = 0; row < origin.size(); row++) {
+            transform[row * 4 + 3] = origin.get(row).getValue();
+        }
+        return transform;
+    }
+
+    /**
+     * @param parent The transform of the coordinate system {@code local} leads
+     *               to.
+     * @param local  A transform relative to {@code parent}.
+     * @return The transform equivalent to applying {@code local} and then
+     * {@code parent}.
+     */
+    static double[] multiply(double[] parent, double[] local) {
+        double[] result = new double[12];
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 4; column++) {
+                double sum = column == 3 ? parent[row * 4 + 3] : 0;
+                for (int k = 0; k < 3; k++) {
+                    sum += parent[row * 4 + k] * local[k * 4 + column];
+                }
+                result[row * 4 + column] = sum;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param transform A transform without scaling, whose 3x3 part is a
+     *                  rotation.
+     * @return The inverse of {@code transform}.
+     */
+    static double[] invertRigid(double[] transform) {
+        double[] result = new double[12];
+        for (int row = 0; row < 3; row++) {
+            double translation = 0;
+            for (int column = 0; column < 3; column++) {
+                result[row * 4 + column] = transform[column * 4 + row];
+                translation -= transform[column * 4 + row] * transform[column * 4 + 3];
+            }
+            result[row * 4 + 3] = translation;
+        }
+        return result;
+    }
+
+    /**
+     * A set of products compared by identity, which iterates them in the order
+     * they were added.
+     */
+    private static final class ProductSet extends AbstractSet<IfcProduct> {
+        private final Map<Identity, IfcProduct> products = new LinkedHashMap<>();
+
+        @Override
+        public boolean add(IfcProduct product) {
+            return products.putIfAbsent(new Identity(product), product) == null;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return products.containsKey(new Identity(o));
+        }
+
+        @Override
+        public Iterator<IfcProduct> iterator() {
+            return Collections.unmodifiableCollection(products.values()).iterator();
+        }
+
+        @Override
+        public int size() {
+            return products.size();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.IfcCartesianPoint;
+import buildingsmart.ifc.IfcLengthMeasure;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Welds points closer than a tolerance at construction time, so that vertices
+ * shared by many faces of a mesh are represented by a single
+ * {@link IfcCartesianPoint} instance, instead of being merged only when the
+ * model is serialized.
+ * <p>
+ * Two points are welded if they have the same dimensionality and none of
+ * their coordinates differs by more than the tolerance. Points are found
+ * through a hash grid with cells as large as the tolerance, so each lookup
+ * only checks the cells adjacent to the one containing the point. When a point
+ * is close to more than one pooled point, the first one found is returned.
+ * <p>
+ * A pool is usually created for each model being built. Instances of this
+ * class can be used by many threads at once.
+ */
+public final class PointPool {
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * The maximum difference between the coordinates of welded points.
+     */
+    @Getter
+    private final double tolerance;
+
+    /**
+     * Open addressing hash table with linear probing, from the key of a cell
+     * to the index of the last point added to it. Empty slots have a head of
+     * -1.
+     */
+    private long[] cellKeys;
+    private int[] cellHeads;
+    private int cellCount;
+
+    /**
+     * For each point, the index of the previous point in the same cell (or -1)
+     * and its coordinates, three per point.
+     */
+    private int[] next;
+    private double[] coordinates;
+    private IfcCartesianPoint[] points;
+    private int size;
+
+    /**
+     * Creates a pool that welds points within the tolerance of the
+     * {@link Precision} used by the current thread.
+     */
+    public PointPool() {
+        this(Functions.getDelta());
+    }
+
+    /**
+     * @param tolerance The maximum difference between the coordinates of
+     *                  welded points.
+     * @throws IllegalArgumentException If tolerance is negative, infinite or
+     *                                  NaN.
+     */
+    public PointPool(double tolerance) {
+        if (!(tolerance >= 0) || Double.isInfinite(tolerance)) {
+            throw new IllegalArgumentException("tolerance must be a finite value, equal or higher than zero");
+        }
+        this.tolerance = tolerance;
+        clear();
+    }
+
+    /**
+     * @param coordinates The coordinates of the point, as accepted by
+     *                    {@link IfcCartesianPoint#IfcCartesianPoint(double...)}.
+     * @return A point already in this pool which is within the tolerance from
+     * {@code coordinates}, or a new point that is added to this pool.
+     *
+     * @throws NullPointerException     If coordinates is null.
+     * @throws IllegalArgumentException If the size of coordinates is lower
+     *                                  than 2 or bigger than 3.
+     */
+    public synchronized IfcCartesianPoint get(double @NonNull ... coordinates) {
+        if (coordinates.length < 2 || coordinates.length > 3) {
+            throw new IllegalArgumentException("size of coordinates must be 2 or 3");
+        }
+        double x = coordinates[0];
+        double y = coordinates[1];
+        double z = coordinates.length == 3 ? coordinates[2] : 0;
+        int found = find(coordinates.length, x, y, z);
+        if (found >= 0) {
+            return points[found];
+        }
+        return add(new IfcCartesianPoint(coordinates));
+    }
+
+    /**
+     * @param point The point to look for.
+     * @return A point already in this pool which is within the tolerance from
+     * {@code point}, or {@code point} itself, which is added to this pool.
+     *
+     * @throws NullPointerException If point is null.
+     */
+    public synchronized IfcCartesianPoint get(@NonNull IfcCartesianPoint point) {
+        List<IfcLengthMeasure> pointCoordinates = point.getCoordinates();
+        int found = find(pointCoordinates.size(),
+                         pointCoordinates.get(0).getValue(),
+                         pointCoordinates.get(1).getValue(),
+                         pointCoordinates.size() == 3 ? pointCoordinates.get(2).getValue() : 0);
+        if (found >= 0) {
+            return points[found];
+        }
+        return add(point);
+    }
+
+    /**
+     * @return The number of distinct points in this pool.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Removes all points from this pool, releasing the memory they used.
+     */
+    public synchronized void clear() {
+        cellKeys = new long[INITIAL_CAPACITY];
+        cellHeads = new int[INITIAL_CAPACITY];
+        Arrays.fill(cellHeads, -1);
+        cellCount = 0;
+        next = new int[INITIAL_CAPACITY];
+        coordinates = new double[INITIAL_CAPACITY * 3];
+        points = new IfcCartesianPoint[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * @return The index of a point within the tolerance from the given
+     * coordinates, -1 if there's none.
+     */
+    private int find(int dim, double x, double y, double z) {
+        if (tolerance == 0) {
+            return findInCell(cellKey(dim, cell(x), cell(y), cell(z)), dim, x, y, z);
+        }
+        long cellX = cell(x);
+        long cellY = cell(y);
+        long cellZ = cell(z);
+        int zRange = dim == 3 ? 1 : 0;
+        for (long i = cellX - 1; i <= cellX + 1; i++) {
+            for (long j = cellY - 1; j <= cellY + 1; j++) {
+                for (long k = cellZ - zRange; k <= cellZ + zRange; k++) {
+                    int found = findInCell(cellKey(dim, i, j, k), dim, x, y, z);
+                    if (found >= 0) {
+                        return found;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int findInCell(long key, int dim, double x, double y, double z) {
+        int mask = cellKeys.length - 1;
+        for (int slot = (int) key & mask; cellHeads[slot] >= 0; slot = (slot + 1) & mask) {
+            if (cellKeys[slot] != key) {
+                continue;
+            }
+            // different cells might have the same key, so the coordinates of
+            // every point in the chain are checked
+            for (int index = cellHeads[slot]; index >= 0; index = next[index]) {
+                if (points[index].getDim().getValue() == dim &&
+                        Math.abs(coordinates[index * 3] - x) <= tolerance &&
+                        Math.abs(coordinates[index * 3 + 1] - y) <= tolerance &&
+                        Math.abs(coordinates[index * 3 + 2] - z) <= tolerance) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a point which is not within the tolerance from any other point in
+     * this pool.
+     */
+    private IfcCartesianPoint add(IfcCartesianPoint point) {
+        List<IfcLengthMeasure> pointCoordinates = point.getCoordinates();
+        int dim = pointCoordinates.size();
+        double x = pointCoordinates.get(0).getValue();
+        double y = pointCoordinates.get(1).getValue();
+        double z = dim == 3 ? pointCoordinates.get(2).getValue() : 0;
+
+        if (size == points.length) {
+            next = Arrays.copyOf(next, size * 2);
+            coordinates = Arrays.copyOf(coordinates, size * 6);
+            points = Arrays.copyOf(points, size * 2);
+        }
+        if ((cellCount + 1) * 2 > cellKeys.length) {
+            // keeps the load factor under 0.5
+            resizeCells(cellKeys.length * 2);
+        }
+        long key = cellKey(dim, cell(x), cell(y), cell(z));
+        int mask = cellKeys.length - 1;
+        int slot = (int) key & mask;
+        while (cellHeads[slot] >= 0 && cellKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (cellHeads[slot] < 0) {
+            cellKeys[slot] = key;
+            cellCount++;
+        }
+        next[size] = cellHeads[slot];
+        cellHeads[slot] = size;
+        coordinates[size * 3] = x;
+        coordinates[size * 3 + 1] = y;
+        coordinates[size * 3 + 2] = z;
+        points[size] = point;
+        size++;
+        return point;
+    }
+
+    private void resizeCells(int length) {
+        long[] oldKeys = cellKeys;
+        int[] oldHeads = cellHeads;
+        cellKeys = new long[length];
+        cellHeads = new int[length];
+        Arrays.fill(cellHeads, -1);
+        int mask = length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeads[i] >= 0) {
+                int slot = (int) oldKeys[i] & mask;
+                while (cellHeads[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                cellKeys[slot] = oldKeys[i];
+                cellHeads[slot] = oldHeads[i];
+            }
+        }
+    }
+
+    /**
+     * @return The index of the cell of the grid containing {@code value}, or
+     * the bits of {@code value} if the tolerance is zero.
+     */
+    private long cell(double value) {
+        if (tolerance == 0) {
+            return Double.doubleToLongBits(value == -0d ? 0d : value);
+        }
+        return (long) Math.floor(value / tolerance);
+    }
+
+    /**
+     * @return A well distributed hash of the cell, as done by the finalizer of
+     * MurmurHash3.
+     */
+    private static long cellKey(int dim, long cellX, long cellY, long cellZ) {
+        long h = ((cellX * 0x9E3779B97F4A7C15L + cellY) * 0xC2B2AE3D27D4EB4FL + cellZ) * 31 + dim;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
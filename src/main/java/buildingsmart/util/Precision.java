@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The precision used for double values: it determines how they're rounded when
+ * entities are created, how they're formatted when serialized and the
+ * tolerance used when checking if a vector is normalised.
+ * <p>
+ * Instances of this class are immutable and can be shared between threads.
+ * The precision used by the current thread is the one bound to it with
+ * {@link #bind()}, or the default one if there's none, so that models needing
+ * different precisions can be built in parallel:
+ * <pre>{@code
+ * try (Precision.Binding ignored = new Precision(0.0001).bind()) {
+ *     // create the entities of the model
+ * }
+ * }</pre>
+ * Values are rounded and formatted when entities are created, so the precision
+ * must be bound while creating the entities and not only while serializing
+ * them.
+ */
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@ToString(onlyExplicitlyIncluded = true)
+public final class Precision {
+    private static final ThreadLocal<Precision> CURRENT = new ThreadLocal<>();
+    /**
+     * {@link DecimalFormat} is not thread safe, so each thread gets its own
+     * copies, shared by all the precisions formatting with the same pattern.
+     */
+    private static final ThreadLocal<Map<String, DecimalFormat>> DECIMAL_FORMATS =
+            ThreadLocal.withInitial(HashMap::new);
+    private static volatile Precision defaultPrecision = new Precision(0.00000001);
+
+    /**
+     * The tolerance used when comparing double values.
+     */
+    @Getter
+    @EqualsAndHashCode.Include
+    @ToString.Include
+    private final double delta;
+    /**
+     * The pattern of the {@link DecimalFormat} used to format values.
+     */
+    private final String pattern;
+    /**
+     * The maximum number of decimal digits of formatted values.
+     */
+    private final int decimals;
+
+    /**
+     * @param delta The tolerance used when comparing double values. Doubles
+     *              will be serialized with as many decimal digits as this
+     *              value has.
+     * @throws IllegalArgumentException If delta is negative, infinite or NaN.
+     */
+    public Precision(double delta) {
+        if (!(delta >= 0) || Double.isInfinite(delta)) {
+            throw new IllegalArgumentException("delta must be a finite value, equal or higher than zero");
+        }
+        this.delta = delta;
+        int decimals = BigDecimal.valueOf(delta).stripTrailingZeros().scale();
+        this.decimals = Math.max(decimals, 1);
+        this.pattern = "0.0" + (decimals >= 1 ? "#".repeat(decimals - 1) : "");
+    }
+
+    private static DecimalFormat decimalFormat(String pattern) {
+        DecimalFormat format = new DecimalFormat(pattern);
+        DecimalFormatSymbols decimalFormatSymbols = format.getDecimalFormatSymbols();
+        decimalFormatSymbols.setDecimalSeparator('.');
+        format.setDecimalFormatSymbols(decimalFormatSymbols);
+        format.setRoundingMode(RoundingMode.HALF_EVEN);
+        return format;
+    }
+
+    /**
+     * @return The precision bound to the current thread, or the default one if
+     * there's none.
+     */
+    public static Precision current() {
+        Precision precision = CURRENT.get();
+        return precision == null ? defaultPrecision : precision;
+    }
+
+    /**
+     * @return The precision used by threads that have no precision bound to
+     * them.
+     */
+    public static Precision getDefault() {
+        return defaultPrecision;
+    }
+
+    /**
+     * @param precision The precision to use in threads that have no precision
+     *                  bound to them.
+     * @throws NullPointerException If precision is null.
+     */
+    public static void setDefault(@NonNull Precision precision) {
+        defaultPrecision = precision;
+    }
+
+    /**
+     * Binds this precision to the current thread, until the returned
+     * {@link Binding} is closed. Bindings can be nested, closing one restores
+     * the precision that was bound before it.
+     *
+     * @return The binding of this precision to the current thread.
+     */
+    public Binding bind() {
+        return new Binding(this);
+    }
+
+    /**
+     * @param d The value to format for serialization.
+     * @return The String representation of the given value, rounded according
+     * to this precision.
+     */
+    public String format(double d) {
+        if (d == (long) d && Math.abs(d) < 1e15 && (d != 0 || 1 / d > 0)) {
+            return (long) d + ".0";
+        }
+        String shortest = Double.toString(d);
+        int point = shortest.indexOf('.');
+        if (point >= 0 && shortest.indexOf('E') < 0 && shortest.length() - point - 1 <= decimals) {
+            // the value has no digits to round, so DecimalFormat would write
+            // the same digits, which are much faster to get this way
+            return shortest;
+        }
+        return DECIMAL_FORMATS.get().computeIfAbsent(pattern, Precision::decimalFormat).format(d);
+    }
+
+    /**
+     * @param value The value that might get rounded.
+     * @return The closest integer to {@code value} (as described in the
+     * documentation of {@link Math#round(double)}) if the difference between
+     * {@code value} and {@code Math.round(value)} is lower or equal to
+     * {@link #delta}, {@code value} otherwise.
+     */
+    public double round(double value) {
+        double roundedValue = Math.round(value);
+        if (Math.abs(value - roundedValue) > delta) {
+            return value;
+        } else {
+            return roundedValue;
+        }
+    }
+
+    /**
+     * @param components The components of the direction on which to perform
+     *                   the check.
+     * @return {@code true} if the sum of the squares of the components differs
+     * from 1 by no more than {@link #delta}, {@code false} otherwise.
+     *
+     * @throws NullPointerException If components is null.
+     */
+    public boolean alreadyNormalised(double @NonNull [] components) {
+        double squaresSum = 0;
+        for (double component : components) {
+            squaresSum += component * component;
+        }
+        return Math.abs(squaresSum - 1) <= delta;
+    }
+
+    /**
+     * The binding of a precision to a thread, closing it restores the
+     * precision previously bound to the thread.
+     */
+    public static final class Binding extends ThreadBinding<Precision> {
+        private Binding(Precision precision) {
+            super(CURRENT, precision);
+        }
+    }
+}
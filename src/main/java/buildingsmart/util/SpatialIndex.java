@@ -0,0 +1,611 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.IfcProduct;
+import buildingsmart.ifc.IfcProject;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * An R-tree of the world bounding boxes of products, to find the products in a
+ * region, hit by a ray or nearest to a point without scanning the whole model.
+ * <p>
+ * Boxes are the ones computed by {@link BoundingBoxCalculator}, so queries
+ * are conservative: they can return products whose geometry doesn't actually
+ * touch the region or the ray, but never miss one whose geometry does.
+ * <p>
+ * The tree is bulk loaded in parallel with the Sort-Tile-Recursive algorithm
+ * by {@link #build(IfcProject)} and {@link #insertAll(Map)}, while products
+ * added later by {@link #insert(IfcProduct)} are inserted one at a time as in
+ * a classic R-tree, splitting the nodes that overflow:
+ * <pre>{@code
+ * SpatialIndex index = SpatialIndex.build(project);
+ * List<IfcProduct> found = index.query(new double[]{0, 0, 0, 10, 10, 3});
+ * index.insert(newProduct);
+ * }</pre>
+ * Instances of this class can be used by many threads at once: queries run
+ * concurrently with each other, insertions wait for the running queries.
+ */
+public final class SpatialIndex {
+    /**
+     * The maximum number of children of each node.
+     */
+    private static final int NODE_CAPACITY = 16;
+
+    private final BoundingBoxCalculator calculator;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root = new Node(true);
+    private int size;
+
+    /**
+     * Creates an empty index, which computes the boxes of the inserted
+     * products with its own {@link BoundingBoxCalculator}.
+     */
+    public SpatialIndex() {
+        this(new BoundingBoxCalculator());
+    }
+
+    /**
+     * Creates an empty index.
+     *
+     * @param calculator The calculator of the boxes of the inserted products.
+     * @throws NullPointerException If calculator is null.
+     */
+    public SpatialIndex(@NonNull BoundingBoxCalculator calculator) {
+        this.calculator = calculator;
+    }
+
+    /**
+     * @param project The project whose products are indexed.
+     * @return An index of all the products in the spatial structure of
+     * {@code project} which have a box, see
+     * {@link BoundingBoxCalculator#worldBoxes(IfcProject)}.
+     *
+     * @throws NullPointerException     If project is null.
+     * @throws IllegalArgumentException If the box of any product can't be
+     *                                  computed.
+     */
+    public static SpatialIndex build(@NonNull IfcProject project) {
+        return build(project, new BoundingBoxCalculator());
+    }
+
+    /**
+     * @param project    The project whose products are indexed.
+     * @param calculator The calculator of the boxes of the products.
+     * @return An index of all the products in the spatial structure of
+     * {@code project} which have a box, see
+     * {@link BoundingBoxCalculator#worldBoxes(IfcProject)}.
+     *
+     * @throws NullPointerException     If any of the arguments is null.
+     * @throws IllegalArgumentException If the box of any product can't be
+     *                                  computed.
+     */
+    public static SpatialIndex build(@NonNull IfcProject project, @NonNull BoundingBoxCalculator calculator) {
+        SpatialIndex index = new SpatialIndex(calculator);
+        index.insertAll(calculator.worldBoxes(project));
+        return index;
+    }
+
+    /**
+     * Inserts {@code product} with its world box.
+     *
+     * @param product The product to insert.
+     * @return false if {@code product} is empty or unbounded, and so it wasn't
+     * inserted.
+     *
+     * @throws NullPointerException     If product is null.
+     * @throws IllegalArgumentException If the box of {@code product} can't be
+     *                                  computed.
+     */
+    public boolean insert(@NonNull IfcProduct product) {
+        double[] box = calculator.worldBox(product);
+        if (box == null || BoundingBoxCalculator.isUnbounded(box)) {
+            return false;
+        }
+        insert(product, box);
+        return true;
+    }
+
+    /**
+     * Inserts {@code product} with the given box. A product inserted more than
+     * once is returned by queries once for each time it was inserted.
+     *
+     * @param product The product to insert.
+     * @param box     The box of {@code product} in world coordinates.
+     * @throws NullPointerException     If any of the arguments is null.
+     * @throws IllegalArgumentException If box is not a valid box.
+     */
+    public void insert(@NonNull IfcProduct product, double @NonNull [] box) {
+        Entry entry = new Entry(product, checkBox(box).clone());
+        lock.writeLock().lock();
+        try {
+            Node sibling = root.insert(entry);
+            if (sibling != null) {
+                Node newRoot = new Node(false);
+                newRoot.add(root);
+                newRoot.add(sibling);
+                root = newRoot;
+            }
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts many products at once. If the index is empty the tree is bulk
+     * loaded in parallel, which is much faster than inserting the products one
+     * at a time and produces a better tree; otherwise the products are
+     * inserted one at a time.
+     *
+     * @param boxes The products to insert, with their boxes in world
+     *              coordinates.
+     * @throws NullPointerException     If boxes, or any of its keys or values,
+     *                                  is null.
+     * @throws IllegalArgumentException If any of the boxes is not valid.
+     */
+    public void insertAll(@NonNull Map<IfcProduct, double[]> boxes) {
+        Entry[] entries = boxes.entrySet().parallelStream()
+                .map(mapEntry -> new Entry(Objects.requireNonNull(mapEntry.getKey(), "product"),
+                                           checkBox(Objects.requireNonNull(mapEntry.getValue(), "box")).clone()))
+                .toArray(Entry[]::new);
+        lock.writeLock().lock();
+        try {
+            if (size == 0 && entries.length > 0) {
+                Bounded[] level = entries;
+                boolean leaves = true;
+                do {
+                    level = pack(level, leaves);
+                    leaves = false;
+                } while (level.length > 1);
+                root = (Node) level[0];
+                size = entries.length;
+                return;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (Entry entry : entries) {
+            insert(entry.product, entry.box);
+        }
+    }
+
+    /**
+     * @param box The box to look for, in world coordinates.
+     * @return The products whose boxes intersect or touch {@code box}.
+     *
+     * @throws NullPointerException     If box is null.
+     * @throws IllegalArgumentException If box is not a valid box.
+     */
+    public List<IfcProduct> query(double @NonNull [] box) {
+        List<IfcProduct> found = new ArrayList<>();
+        query(box, found::add);
+        return found;
+    }
+
+    /**
+     * Passes to {@code action} the products whose boxes intersect or touch
+     * {@code box}, without collecting them. The index can't be modified by
+     * {@code action}.
+     *
+     * @param box    The box to look for, in world coordinates.
+     * @param action The action to perform on each product found.
+     * @throws NullPointerException     If any of the arguments is null.
+     * @throws IllegalArgumentException If box is not a valid box.
+     */
+    public void query(double @NonNull [] box, @NonNull Consumer<? super IfcProduct> action) {
+        checkBox(box);
+        lock.readLock().lock();
+        try {
+            if (root.box == null || !intersects(root.box, box)) {
+                return;
+            }
+            Deque<Node> toVisit = new ArrayDeque<>();
+            toVisit.push(root);
+            while (!toVisit.isEmpty()) {
+                Node node = toVisit.pop();
+                for (int i = 0; i < node.count; i++) {
+                    Bounded child = node.children[i];
+                    if (intersects(child.box, box)) {
+                        if (node.leaf) {
+                            action.accept(((Entry) child).product);
+                        } else {
+                            toVisit.push((Node) child);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param origin    The origin of the ray, in world coordinates.
+     * @param direction The direction of the ray, which doesn't need to be
+     *                  normalised.
+     * @return The products whose boxes are hit by the ray, sorted by the
+     * distance from {@code origin} at which the ray enters them. Products whose
+     * boxes contain {@code origin} come first.
+     *
+     * @throws NullPointerException     If any of the arguments is null.
+     * @throws IllegalArgumentException If origin or direction don't have 3
+     *                                  coordinates, or if direction is zero.
+     */
+    public List<IfcProduct> raycast(double @NonNull [] origin, double @NonNull [] direction) {
+        if (origin.length != 3 || direction.length != 3) {
+            throw new IllegalArgumentException("origin and direction must have 3 coordinates");
+        }
+        if (direction[0] == 0 && direction[1] == 0 && direction[2] == 0) {
+            throw new IllegalArgumentException("direction must not be zero");
+        }
+        double[] inverse = {1 / direction[0], 1 / direction[1], 1 / direction[2]};
+        List<Candidate> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (root.box == null || Double.isNaN(entryDistance(root.box, origin, inverse))) {
+                return new ArrayList<>();
+            }
+            Deque<Node> toVisit = new ArrayDeque<>();
+            toVisit.push(root);
+            while (!toVisit.isEmpty()) {
+                Node node = toVisit.pop();
+                for (int i = 0; i < node.count; i++) {
+                    Bounded child = node.children[i];
+                    double distance = entryDistance(child.box, origin, inverse);
+                    if (!Double.isNaN(distance)) {
+                        if (node.leaf) {
+                            hits.add(new Candidate(child, distance));
+                        } else {
+                            toVisit.push((Node) child);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        hits.sort(null);
+        List<IfcProduct> found = new ArrayList<>(hits.size());
+        for (Candidate hit : hits) {
+            found.add(((Entry) hit.item).product);
+        }
+        return found;
+    }
+
+    /**
+     * @param point The point to look from, in world coordinates.
+     * @param count The maximum number of products to return.
+     * @return The {@code count} products whose boxes are nearest to
+     * {@code point}, sorted by distance. The distance of a box containing
+     * {@code point} is zero.
+     *
+     * @throws NullPointerException     If point is null.
+     * @throws IllegalArgumentException If point doesn't have 3 coordinates, or
+     *                                  if count is not positive.
+     */
+    public List<IfcProduct> nearest(double @NonNull [] point, int count) {
+        if (point.length != 3) {
+            throw new IllegalArgumentException("point must have 3 coordinates");
+        }
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive");
+        }
+        List<IfcProduct> found = new ArrayList<>(Math.min(count, 64));
+        lock.readLock().lock();
+        try {
+            if (root.box == null) {
+                return found;
+            }
+            // best-first search: nodes and entries are visited by increasing
+            // distance, so entries are found in order
+            PriorityQueue<Candidate> toVisit = new PriorityQueue<>();
+            toVisit.add(new Candidate(root, distanceSquared(root.box, point)));
+            while (!toVisit.isEmpty() && found.size() < count) {
+                Bounded item = toVisit.poll().item;
+                if (item instanceof Entry) {
+                    found.add(((Entry) item).product);
+                    continue;
+                }
+                Node node = (Node) item;
+                for (int i = 0; i < node.count; i++) {
+                    toVisit.add(new Candidate(node.children[i], distanceSquared(node.children[i].box, point)));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found;
+    }
+
+    /**
+     * @return The number of products in this index.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static double[] checkBox(double[] box) {
+        if (box.length != 6) {
+            throw new IllegalArgumentException("box must have 6 coordinates");
+        }
+        for (int i = 0; i < 3; i++) {
+            if (!(box[i] <= box[i + 3])) {
+                throw new IllegalArgumentException("minimum coordinates of box must not exceed the maximum ones");
+            }
+        }
+        return box;
+    }
+
+    private static boolean intersects(double[] a, double[] b) {
+        return a[0] <= b[3] && b[0] <= a[3] &&
+                a[1] <= b[4] && b[1] <= a[4] &&
+                a[2] <= b[5] && b[2] <= a[5];
+    }
+
+    /**
+     * @return The distance along the ray at which it enters {@code box}, as a
+     * multiple of the length of its direction, 0 if {@code origin} is inside
+     * {@code box} or NaN if the ray misses it.
+     */
+    private static double entryDistance(double[] box, double[] origin, double[] inverse) {
+        double near = 0;
+        double far = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < 3; i++) {
+            if (Double.isInfinite(inverse[i])) {
+                // the ray is parallel to the slab
+                if (origin[i] < box[i] || origin[i] > box[i + 3]) {
+                    return Double.NaN;
+                }
+                continue;
+            }
+            double t1 = (box[i] - origin[i]) * inverse[i];
+            double t2 = (box[i + 3] - origin[i]) * inverse[i];
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+            if (near > far) {
+                return Double.NaN;
+            }
+        }
+        return near;
+    }
+
+    private static double distanceSquared(double[] box, double[] point) {
+        double distance = 0;
+        for (int i = 0; i < 3; i++) {
+            double d = Math.max(Math.max(box[i] - point[i], point[i] - box[i + 3]), 0);
+            distance += d * d;
+        }
+        return distance;
+    }
+
+    private static double volume(double[] box) {
+        return (box[3] - box[0]) * (box[4] - box[1]) * (box[5] - box[2]);
+    }
+
+    private static double center(Bounded item, int axis) {
+        return item.box[axis] + item.box[axis + 3];
+    }
+
+    /**
+     * Groups {@code items} into nodes with the Sort-Tile-Recursive algorithm:
+     * items are sorted by X and split into slabs, each slab is sorted by Y and
+     * split into runs, and each run is sorted by Z and split into nodes. Slabs
+     * are tiled in parallel.
+     *
+     * @return The nodes containing {@code items}, in a new array.
+     */
+    private static Node[] pack(Bounded[] items, boolean leaves) {
+        int nodeCount = (items.length + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int tiles = (int) Math.ceil(Math.cbrt(nodeCount));
+        int runSize = NODE_CAPACITY * tiles;
+        int slabSize = runSize * tiles;
+        long[] keys = new long[items.length];
+        sort(items, 0, items.length, 0, keys);
+        Node[] nodes = new Node[nodeCount];
+        IntStream.range(0, (items.length + slabSize - 1) / slabSize).parallel().forEach(slab -> {
+            int slabEnd = Math.min(items.length, (slab + 1) * slabSize);
+            sort(items, slab * slabSize, slabEnd, 1, keys);
+            for (int run = slab * slabSize; run < slabEnd; run += runSize) {
+                int runEnd = Math.min(slabEnd, run + runSize);
+                sort(items, run, runEnd, 2, keys);
+                for (int start = run; start < runEnd; start += NODE_CAPACITY) {
+                    Node node = new Node(leaves);
+                    for (int i = start; i < Math.min(runEnd, start + NODE_CAPACITY); i++) {
+                        node.add(items[i]);
+                    }
+                    nodes[start / NODE_CAPACITY] = node;
+                }
+            }
+        });
+        return nodes;
+    }
+
+    /**
+     * Sorts a range of {@code items} by the center of their boxes along
+     * {@code axis}. Items aren't compared directly, which would read the box of
+     * each item many times: each item gets a primitive key made of its center,
+     * as a float whose bits are ordered as signed integers, followed by its
+     * position in the range, and the keys are sorted instead.
+     *
+     * @param keys The array where the keys are computed, as long as
+     *             {@code items}.
+     */
+    private static void sort(Bounded[] items, int from, int to, int axis, long[] keys) {
+        for (int i = from; i < to; i++) {
+            int bits = Float.floatToIntBits((float) center(items[i], axis));
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            keys[i] = (long) bits << 32 | (i - from);
+        }
+        if (from == 0 && to == items.length) {
+            Arrays.parallelSort(keys);
+        } else {
+            Arrays.sort(keys, from, to);
+        }
+        Bounded[] unsorted = Arrays.copyOfRange(items, from, to);
+        for (int i = from; i < to; i++) {
+            items[i] = unsorted[(int) keys[i]];
+        }
+    }
+
+    /**
+     * Something with a box, which is not modified once the item is in the
+     * tree, except for the boxes of the nodes growing while inserting.
+     */
+    private abstract static class Bounded {
+        double[] box;
+    }
+
+    private static final class Entry extends Bounded {
+        private final IfcProduct product;
+
+        private Entry(IfcProduct product, double[] box) {
+            this.product = product;
+            this.box = box;
+        }
+    }
+
+    private static final class Node extends Bounded {
+        private final boolean leaf;
+        /**
+         * Entries if this node is a leaf, nodes otherwise. There's room for
+         * one more child than the capacity, so that a node can overflow
+         * before being split.
+         */
+        private final Bounded[] children = new Bounded[NODE_CAPACITY + 1];
+        private int count;
+
+        private Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        private void add(Bounded child) {
+            children[count++] = child;
+            expand(child.box);
+        }
+
+        /**
+         * Enlarges the box of this node in place to contain {@code other}.
+         */
+        private void expand(double[] other) {
+            if (box == null) {
+                box = other.clone();
+                return;
+            }
+            for (int i = 0; i < 3; i++) {
+                box[i] = Math.min(box[i], other[i]);
+                box[i + 3] = Math.max(box[i + 3], other[i + 3]);
+            }
+        }
+
+        /**
+         * Inserts {@code entry} in the subtree of this node.
+         *
+         * @return The node split from this one if it overflowed, or null.
+         */
+        private Node insert(Entry entry) {
+            if (leaf) {
+                add(entry);
+            } else {
+                Node child = chooseChild(entry.box);
+                Node sibling = child.insert(entry);
+                expand(entry.box);
+                if (sibling != null) {
+                    children[count++] = sibling;
+                }
+            }
+            return count > NODE_CAPACITY ? split() : null;
+        }
+
+        /**
+         * @return The child needing the least enlargement of its volume to
+         * contain {@code box}, or the smallest one in case of ties.
+         */
+        private Node chooseChild(double[] box) {
+            Node best = null;
+            double bestEnlargement = Double.POSITIVE_INFINITY;
+            double bestVolume = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                Node child = (Node) children[i];
+                double volume = volume(child.box);
+                double enlargement = volume(BoundingBoxCalculator.union(child.box, box)) - volume;
+                if (enlargement < bestEnlargement || enlargement == bestEnlargement && volume < bestVolume) {
+                    best = child;
+                    bestEnlargement = enlargement;
+                    bestVolume = volume;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Moves half of the children of this node to a new node, splitting
+         * them along the longest axis of the box of this node.
+         *
+         * @return The new node.
+         */
+        private Node split() {
+            int axis = 0;
+            for (int i = 1; i < 3; i++) {
+                if (box[i + 3] - box[i] > box[axis + 3] - box[axis]) {
+                    axis = i;
+                }
+            }
+            int splitAxis = axis;
+            Arrays.sort(children, 0, count, Comparator.comparingDouble(child -> center(child, splitAxis)));
+            Node sibling = new Node(leaf);
+            for (int i = count / 2; i < count; i++) {
+                sibling.add(children[i]);
+                children[i] = null;
+            }
+            count /= 2;
+            box = null;
+            for (int i = 0; i < count; i++) {
+                expand(children[i].box);
+            }
+            return sibling;
+        }
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        private final Bounded item;
+        private final double distance;
+
+        private Candidate(Bounded item, double distance) {
+            this.item = item;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            return Double.compare(distance, o.distance);
+        }
+    }
+}
@@ -0,0 +1,958 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Computes the triangle meshes of representation items and products, in the
+ * coordinate system of the representation they belong to.
+ * <p>
+ * Supported items are {@link IfcExtrudedAreaSolid} and
+ * {@link IfcRevolvedAreaSolid} (with {@link IfcRectangleProfileDef},
+ * {@link IfcRectangleHollowProfileDef}, {@link IfcCircleProfileDef},
+ * {@link IfcCircleHollowProfileDef}, {@link IfcIShapeProfileDef},
+ * {@link IfcArbitraryClosedProfileDef} and
+ * {@link IfcArbitraryProfileDefWithVoids} profiles),
+ * {@link IfcSweptDiskSolid}, {@link IfcManifoldSolidBrep},
+ * {@link IfcConnectedFaceSet} and {@link IfcFace} bounded by
+ * {@link IfcPolyLoop}s, and {@link IfcMappedItem}. Points, curves and
+ * geometric sets have no area, so their meshes are empty. Curves used by
+ * profiles and directrices can be {@link IfcPolyline}s, {@link IfcCircle}s,
+ * {@link IfcEllipse}s, {@link IfcTrimmedCurve}s of circles and ellipses, and
+ * {@link IfcCompositeCurve}s of them.
+ * <p>
+ * Curves are approximated by segments whose distance from the curve is at most
+ * the chord tolerance. Points closer than the delta of the {@link Precision}
+ * bound when the tessellator is created are merged, and that precision is
+ * bound to the threads computing meshes, so meshes don't depend on the thread
+ * that computed them first. The fillets of the profiles are ignored, as are the
+ * start and end parameters of swept disk solids, which are swept along their
+ * whole directrix.
+ * <p>
+ * The mesh of every item, representation and profile is cached by identity,
+ * so the ones shared by many items (e.g. the ones of an
+ * {@link IfcRepresentationMap}) are computed only once. Instances of this
+ * class can be used by many threads at once, but the cache is never emptied:
+ * a tessellator should be used for a single model and discarded with it.
+ */
+public class Tessellator {
+    /**
+     * The chord tolerance used by default, which is a centimetre for models
+     * measured in metres.
+     */
+    public static final double DEFAULT_CHORD_TOLERANCE = 0.01;
+    /**
+     * The minimum and maximum number of segments approximating a full circle.
+     */
+    private static final int MIN_SEGMENTS = 8;
+    private static final int MAX_SEGMENTS = 256;
+    /**
+     * The identifier of the representations of the 3D shape of products.
+     */
+    private static final String BODY = "Body";
+
+    /**
+     * The maximum distance between a curve and the segments approximating it.
+     */
+    @Getter
+    private final double chordTolerance;
+    /**
+     * The size in radians of the plane angle unit of the model.
+     */
+    @Getter
+    private final double planeAngleUnit;
+    /**
+     * The precision of the thread which created this tessellator.
+     */
+    @Getter
+    private final Precision precision;
+    private final Map<Identity, TriangleMesh> meshes = new ConcurrentHashMap<>();
+    private final Map<Identity, Profile> profiles = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a tessellator with the default chord tolerance, for models
+     * measuring plane angles in radians.
+     */
+    public Tessellator() {
+        this(DEFAULT_CHORD_TOLERANCE);
+    }
+
+    /**
+     * Creates a tessellator for models measuring plane angles in radians.
+     *
+     * @param chordTolerance The maximum distance between a curve and the
+     *                       segments approximating it.
+     * @throws IllegalArgumentException If chordTolerance is not positive and
+     *                                  finite.
+     */
+    public Tessellator(double chordTolerance) {
+        this(chordTolerance, 1);
+    }
+
+    /**
+     * @param chordTolerance The maximum distance between a curve and the
+     *                       segments approximating it.
+     * @param planeAngleUnit The size in radians of the plane angle unit of the
+     *                       model, used for the angles of revolved solids and
+     *                       the parameters of trimmed conics, e.g.
+     *                       {@code Math.PI / 180} for degrees.
+     * @throws IllegalArgumentException If any of the arguments is not positive
+     *                                  and finite.
+     */
+    public Tessellator(double chordTolerance, double planeAngleUnit) {
+        if (!(chordTolerance > 0) || Double.isInfinite(chordTolerance)) {
+            throw new IllegalArgumentException("chordTolerance must be positive and finite");
+        }
+        if (!(planeAngleUnit > 0) || Double.isInfinite(planeAngleUnit)) {
+            throw new IllegalArgumentException("planeAngleUnit must be positive and finite");
+        }
+        this.chordTolerance = chordTolerance;
+        this.planeAngleUnit = planeAngleUnit;
+        this.precision = Precision.current();
+    }
+
+    /**
+     * @param item The item to tessellate.
+     * @return The mesh of {@code item}, in the coordinate system of the
+     * representation it belongs to.
+     *
+     * @throws NullPointerException     If item is null.
+     * @throws IllegalArgumentException If item, or one of the items, profiles
+     *                                  or curves it is made of, is not
+     *                                  supported.
+     */
+    public TriangleMesh tessellate(@NonNull IfcRepresentationItem item) {
+        Identity key = new Identity(item);
+        TriangleMesh mesh = meshes.get(key);
+        if (mesh == null) {
+            // not computed in computeIfAbsent, since computing a mesh can
+            // require the meshes of other items
+            try (Precision.Binding ignored = precision.bind()) {
+                mesh = compute(item);
+            }
+            TriangleMesh previous = meshes.putIfAbsent(key, mesh);
+            if (previous != null) {
+                mesh = previous;
+            }
+        }
+        return mesh;
+    }
+
+    /**
+     * @param representation The representation to tessellate.
+     * @return The mesh of all the items of {@code representation}.
+     *
+     * @throws NullPointerException     If representation is null.
+     * @throws IllegalArgumentException If any of the items is not supported.
+     */
+    public TriangleMesh tessellate(@NonNull IfcRepresentation representation) {
+        Identity key = new Identity(representation);
+        TriangleMesh mesh = meshes.get(key);
+        if (mesh == null) {
+            List<TriangleMesh> itemMeshes = new ArrayList<>();
+            for (IfcRepresentationItem item : representation.getItems()) {
+                itemMeshes.add(tessellate(item));
+            }
+            mesh = TriangleMesh.merge(itemMeshes);
+            TriangleMesh previous = meshes.putIfAbsent(key, mesh);
+            if (previous != null) {
+                mesh = previous;
+            }
+        }
+        return mesh;
+    }
+
+    /**
+     * @param product The product to tessellate.
+     * @return The mesh of the "Body" shape representations of {@code product}
+     * in three-dimensional contexts, in the coordinate system of its placement.
+     * Other representations, such as the "Box" or the "Axis" ones, would
+     * overlap the body, so they are tessellated only if there is no body.
+     *
+     * @throws NullPointerException     If product is null.
+     * @throws IllegalArgumentException If any of the items is not supported.
+     */
+    public TriangleMesh tessellate(@NonNull IfcProduct product) {
+        List<IfcRepresentation> representations = BoundingBoxCalculator.shapeRepresentations(product);
+        List<TriangleMesh> representationMeshes = new ArrayList<>();
+        for (IfcRepresentation representation : representations) {
+            if (isBody(representation)) {
+                representationMeshes.add(tessellate(representation));
+            }
+        }
+        if (representationMeshes.isEmpty()) {
+            for (IfcRepresentation representation : representations) {
+                representationMeshes.add(tessellate(representation));
+            }
+        }
+        return TriangleMesh.merge(representationMeshes);
+    }
+
+    private static boolean isBody(IfcRepresentation representation) {
+        IfcLabel identifier = representation.getRepresentationIdentifier();
+        return identifier != null && BODY.equals(identifier.getValue());
+    }
+
+    /**
+     * Tessellates in parallel all the products in the spatial structure of
+     * {@code project}, see {@link PlacementResolver#resolveAll(IfcProject)}.
+     * The meshes are in the coordinate system of the placement of each
+     * product, they can be moved to the world coordinate system with
+     * {@link TriangleMesh#transform(double[])}.
+     *
+     * @param project The project to tessellate.
+     * @return The mesh of each product which has triangles.
+     *
+     * @throws NullPointerException     If project is null.
+     * @throws IllegalArgumentException If any of the items is not supported.
+     */
+    public Map<IfcProduct, TriangleMesh> tessellateAll(@NonNull IfcProject project) {
+        Map<IfcProduct, TriangleMesh> productMeshes = new ConcurrentHashMap<>();
+        PlacementResolver.collectProducts(project).parallelStream().forEach(product -> {
+            TriangleMesh mesh = tessellate(product);
+            if (!mesh.isEmpty()) {
+                productMeshes.put(product, mesh);
+            }
+        });
+        return productMeshes;
+    }
+
+    /**
+     * @return The number of items, representations and profiles whose
+     * tessellation is cached.
+     */
+    public int size() {
+        return meshes.size() + profiles.size();
+    }
+
+    private TriangleMesh compute(IfcRepresentationItem item) {
+        if (item instanceof IfcExtrudedAreaSolid) {
+            return extrude((IfcExtrudedAreaSolid) item);
+        }
+        if (item instanceof IfcRevolvedAreaSolid) {
+            return revolve((IfcRevolvedAreaSolid) item);
+        }
+        if (item instanceof IfcSweptDiskSolid) {
+            return sweepDisk((IfcSweptDiskSolid) item);
+        }
+        if (item instanceof IfcManifoldSolidBrep) {
+            return faces(((IfcManifoldSolidBrep) item).getOuter().getCfsFaces());
+        }
+        if (item instanceof IfcConnectedFaceSet) {
+            return faces(((IfcConnectedFaceSet) item).getCfsFaces());
+        }
+        if (item instanceof IfcFace) {
+            return faces(Collections.singleton((IfcFace) item));
+        }
+        if (item instanceof IfcMappedItem) {
+            IfcMappedItem mappedItem = (IfcMappedItem) item;
+            IfcRepresentationMap map = mappedItem.getMappingSource();
+            return tessellate(map.getMappedRepresentation())
+                    .transform(PlacementResolver.multiply(PlacementResolver.toTransform(mappedItem.getMappingTarget()),
+                                                          PlacementResolver.toTransform(map.getMappingOrigin())));
+        }
+        if (item instanceof IfcPoint || item instanceof IfcCurve || item instanceof IfcGeometricSet) {
+            return TriangleMesh.EMPTY;
+        }
+        throw new IllegalArgumentException("tessellation of " + item.getClass().getSimpleName() +
+                                                   " is not supported");
+    }
+
+    private TriangleMesh extrude(IfcExtrudedAreaSolid solid) {
+        Profile profile = profile(solid.getSweptArea());
+        int n = profile.xy.length / 2;
+        List<IfcReal> direction = solid.getExtrudedDirection().getNormalisedDirectionRatios();
+        double depth = solid.getDepth().getValue();
+        double dx = direction.get(0).getValue() * depth;
+        double dy = direction.get(1).getValue() * depth;
+        double dz = direction.get(2).getValue() * depth;
+
+        MeshBuffer mesh = new MeshBuffer(n * 2, profile.triangles.length * 2 + n * 6);
+        for (int i = 0; i < n; i++) {
+            mesh.addVertex(profile.xy[i * 2], profile.xy[i * 2 + 1], 0);
+        }
+        for (int i = 0; i < n; i++) {
+            mesh.addVertex(profile.xy[i * 2] + dx, profile.xy[i * 2 + 1] + dy, dz);
+        }
+        int[] triangles = profile.triangles;
+        for (int i = 0; i < triangles.length; i += 3) {
+            mesh.addTriangle(triangles[i], triangles[i + 2], triangles[i + 1]);
+            mesh.addTriangle(triangles[i] + n, triangles[i + 1] + n, triangles[i + 2] + n);
+        }
+        for (int loop = 0; loop < profile.loopStarts.length - 1; loop++) {
+            int start = profile.loopStarts[loop];
+            int end = profile.loopStarts[loop + 1];
+            for (int i = start; i < end; i++) {
+                int j = i + 1 == end ? start : i + 1;
+                mesh.addTriangle(i, j, j + n);
+                mesh.addTriangle(i, j + n, i + n);
+            }
+        }
+        return mesh.buildSolid().transform(PlacementResolver.toTransform(solid.getPosition()));
+    }
+
+    private TriangleMesh revolve(IfcRevolvedAreaSolid solid) {
+        Profile profile = profile(solid.getSweptArea());
+        int n = profile.xy.length / 2;
+        double[] origin = coordinates(solid.getAxis().getLocation());
+        double[] axis = ratios(solid.getAxis().getZ());
+        double angle = solid.getAngle().getValue() * planeAngleUnit;
+        boolean fullTurn = Math.abs(angle) >= 2 * Math.PI - 1e-9;
+        if (fullTurn) {
+            angle = Math.copySign(2 * Math.PI, angle);
+        }
+
+        // each vertex of the profile turns around its centre on the axis
+        double[][] centres = new double[n][3];
+        double[][] u = new double[n][3];
+        double[][] w = new double[n][3];
+        boolean[] onAxis = new boolean[n];
+        double maxRadius = 0;
+        double delta = precision.getDelta();
+        for (int k = 0; k < n; k++) {
+            double[] point = {profile.xy[k * 2], profile.xy[k * 2 + 1], 0};
+            VectorMath.subtract(point, origin, u[k]);
+            double t = VectorMath.dot(u[k], axis);
+            for (int i = 0; i < 3; i++) {
+                centres[k][i] = origin[i] + t * axis[i];
+                u[k][i] = point[i] - centres[k][i];
+            }
+            VectorMath.cross(axis, u[k], w[k]);
+            double radius = VectorMath.magnitude(u[k]);
+            onAxis[k] = radius <= delta;
+            maxRadius = Math.max(maxRadius, radius);
+        }
+        int steps = segments(maxRadius, angle);
+        int rings = fullTurn ? steps : steps + 1;
+
+        int[] first = new int[n];
+        MeshBuffer mesh = new MeshBuffer(n * rings, n * steps * 6 + profile.triangles.length * 2);
+        for (int k = 0; k < n; k++) {
+            first[k] = mesh.vertexCount();
+            for (int j = 0; j < (onAxis[k] ? 1 : rings); j++) {
+                double cos = Math.cos(angle * j / steps);
+                double sin = Math.sin(angle * j / steps);
+                mesh.addVertex(centres[k][0] + u[k][0] * cos + w[k][0] * sin,
+                               centres[k][1] + u[k][1] * cos + w[k][1] * sin,
+                               centres[k][2] + u[k][2] * cos + w[k][2] * sin);
+            }
+        }
+        for (int loop = 0; loop < profile.loopStarts.length - 1; loop++) {
+            int start = profile.loopStarts[loop];
+            int end = profile.loopStarts[loop + 1];
+            for (int k = start; k < end; k++) {
+                int l = k + 1 == end ? start : k + 1;
+                for (int j = 0; j < steps; j++) {
+                    int a = ringVertex(first, onAxis, k, j, rings);
+                    int b = ringVertex(first, onAxis, l, j, rings);
+                    int c = ringVertex(first, onAxis, l, j + 1, rings);
+                    int d = ringVertex(first, onAxis, k, j + 1, rings);
+                    mesh.addTriangle(a, b, c);
+                    mesh.addTriangle(a, c, d);
+                }
+            }
+        }
+        if (!fullTurn) {
+            int[] triangles = profile.triangles;
+            for (int i = 0; i < triangles.length; i += 3) {
+                mesh.addTriangle(ringVertex(first, onAxis, triangles[i], 0, rings),
+                                 ringVertex(first, onAxis, triangles[i + 2], 0, rings),
+                                 ringVertex(first, onAxis, triangles[i + 1], 0, rings));
+                mesh.addTriangle(ringVertex(first, onAxis, triangles[i], steps, rings),
+                                 ringVertex(first, onAxis, triangles[i + 1], steps, rings),
+                                 ringVertex(first, onAxis, triangles[i + 2], steps, rings));
+            }
+        }
+        return mesh.buildSolid().transform(PlacementResolver.toTransform(solid.getPosition()));
+    }
+
+    private static int ringVertex(int[] first, boolean[] onAxis, int k, int step, int rings) {
+        return onAxis[k] ? first[k] : first[k] + step % rings;
+    }
+
+    /**
+     * Sweeps the disk along the directrix, keeping its orientation around the
+     * directrix as stable as possible. At the corners of the directrix, the
+     * rings of vertices lie on the planes bisecting the adjacent segments.
+     */
+    private TriangleMesh sweepDisk(IfcSweptDiskSolid solid) {
+        List<double[]> points = curvePoints(solid.getDirectrix());
+        if (points.size() < 2) {
+            return TriangleMesh.EMPTY;
+        }
+        int m = points.size();
+        double radius = solid.getRadius().getValue();
+        double innerRadius = solid.getInnerRadius() == null ? 0 : solid.getInnerRadius().getValue();
+        boolean hollow = innerRadius > 0 && innerRadius < radius;
+        int segments = segments(radius, 2 * Math.PI);
+
+        double[][] directions = new double[m - 1][3];
+        for (int i = 0; i < m - 1; i++) {
+            VectorMath.subtract(points.get(i + 1), points.get(i), directions[i]);
+            VectorMath.normalise(directions[i], directions[i]);
+        }
+        double[] normal = new double[3];
+        double[] binormal = new double[3];
+        double[] d = directions[0];
+        double[] reference = Math.abs(d[0]) < 0.9 ? new double[]{1, 0, 0} : new double[]{0, 1, 0};
+        VectorMath.cross(d, reference, normal);
+        VectorMath.normalise(normal, normal);
+
+        int rings = hollow ? 2 : 1;
+        MeshBuffer mesh = new MeshBuffer(m * segments * rings, (m - 1) * segments * 6 * rings + segments * 6 * 2);
+        double[] tangent = new double[3];
+        double[] offset = new double[3];
+        for (int i = 0; i < m; i++) {
+            d = directions[Math.max(0, i - 1)];
+            VectorMath.cross(d, normal, binormal);
+            boolean corner = i > 0 && i < m - 1;
+            if (corner) {
+                for (int k = 0; k < 3; k++) {
+                    tangent[k] = d[k] + directions[i][k];
+                }
+                if (!VectorMath.normalise(tangent, tangent)) {
+                    corner = false;
+                }
+            }
+            double[] point = points.get(i);
+            for (int ring = 0; ring < rings; ring++) {
+                double r = ring == 0 ? radius : innerRadius;
+                for (int j = 0; j < segments; j++) {
+                    double phi = 2 * Math.PI * j / segments;
+                    for (int k = 0; k < 3; k++) {
+                        offset[k] = r * (Math.cos(phi) * normal[k] + Math.sin(phi) * binormal[k]);
+                    }
+                    // moves the vertex along the segment to the bisecting plane
+                    double s = corner ? -VectorMath.dot(offset, tangent) / VectorMath.dot(d, tangent) : 0;
+                    mesh.addVertex(point[0] + offset[0] + s * d[0],
+                                   point[1] + offset[1] + s * d[1],
+                                   point[2] + offset[2] + s * d[2]);
+                }
+            }
+            if (corner) {
+                rotate(normal, d, directions[i]);
+            }
+        }
+
+        int ringSize = segments * rings;
+        for (int i = 0; i < m - 1; i++) {
+            for (int j = 0; j < segments; j++) {
+                int a = i * ringSize + j;
+                int b = i * ringSize + (j + 1) % segments;
+                mesh.addTriangle(a, b, b + ringSize);
+                mesh.addTriangle(a, b + ringSize, a + ringSize);
+                if (hollow) {
+                    mesh.addTriangle(a + segments, b + segments + ringSize, b + segments);
+                    mesh.addTriangle(a + segments, a + segments + ringSize, b + segments + ringSize);
+                }
+            }
+        }
+        int last = (m - 1) * ringSize;
+        for (int j = 0; j < segments; j++) {
+            int next = (j + 1) % segments;
+            if (hollow) {
+                mesh.addTriangle(j, j + segments, next + segments);
+                mesh.addTriangle(j, next + segments, next);
+                mesh.addTriangle(last + j, last + next + segments, last + j + segments);
+                mesh.addTriangle(last + j, last + next, last + next + segments);
+            } else if (j > 0 && next > 0) {
+                mesh.addTriangle(0, next, j);
+                mesh.addTriangle(last, last + j, last + next);
+            }
+        }
+        return mesh.buildSolid();
+    }
+
+    /**
+     * Rotates {@code v} in place by the smallest rotation bringing the unit
+     * vector {@code from} onto the unit vector {@code to}.
+     */
+    private static void rotate(double[] v, double[] from, double[] to) {
+        double[] axis = new double[3];
+        VectorMath.cross(from, to, axis);
+        double sin = VectorMath.magnitude(axis);
+        if (!VectorMath.normalise(axis, axis)) {
+            return;
+        }
+        double cos = VectorMath.dot(from, to);
+        double[] cross = new double[3];
+        VectorMath.cross(axis, v, cross);
+        double dot = VectorMath.dot(axis, v);
+        for (int k = 0; k < 3; k++) {
+            v[k] = v[k] * cos + cross[k] * sin + axis[k] * dot * (1 - cos);
+        }
+        VectorMath.normalise(v, v);
+    }
+
+    /**
+     * Triangulates each face in the plane of its outer bound. Faces keep the
+     * orientation of their outer bound, and vertices are shared by the faces
+     * having the same point.
+     */
+    private TriangleMesh faces(Collection<IfcFace> faces) {
+        MeshBuffer mesh = new MeshBuffer(faces.size() * 3, faces.size() * 3);
+        Map<IfcCartesianPoint, Integer> indices = new IdentityHashMap<>();
+        double[] normal = new double[3];
+        double[] cross = new double[3];
+        for (IfcFace face : faces) {
+            List<int[]> loops = new ArrayList<>();
+            for (IfcFaceBound bound : face.getBounds()) {
+                if (!(bound.getBound() instanceof IfcPolyLoop)) {
+                    throw new IllegalArgumentException("tessellation of faces bounded by " +
+                                                               bound.getBound().getClass().getSimpleName() +
+                                                               " is not supported");
+                }
+                List<IfcCartesianPoint> polygon = ((IfcPolyLoop) bound.getBound()).getPolygon();
+                int[] loop = new int[polygon.size()];
+                for (int i = 0; i < loop.length; i++) {
+                    IfcCartesianPoint point = polygon.get(bound.getOrientation() == IfcBoolean.F ?
+                                                                  loop.length - 1 - i : i);
+                    loop[i] = indices.computeIfAbsent(point, key -> {
+                        double[] coordinates = coordinates(key);
+                        return mesh.addVertex(coordinates[0], coordinates[1], coordinates[2]);
+                    });
+                }
+                if (bound instanceof IfcFaceOuterBound) {
+                    loops.add(0, loop);
+                } else {
+                    loops.add(loop);
+                }
+            }
+            int[] outer = loops.get(0);
+            if (loops.size() == 1 && outer.length == 3) {
+                mesh.addTriangle(outer[0], outer[1], outer[2]);
+                continue;
+            }
+            // Newell's method, which is robust to collinear vertices
+            Arrays.fill(normal, 0);
+            for (int i = 0; i < outer.length; i++) {
+                int a = outer[i];
+                int b = outer[(i + 1) % outer.length];
+                for (int k = 0; k < 3; k++) {
+                    int k1 = (k + 1) % 3;
+                    int k2 = (k + 2) % 3;
+                    normal[k] += (mesh.vertex(a, k1) - mesh.vertex(b, k1)) * (mesh.vertex(a, k2) + mesh.vertex(b, k2));
+                }
+            }
+            int dropped = 0;
+            for (int k = 1; k < 3; k++) {
+                if (Math.abs(normal[k]) > Math.abs(normal[dropped])) {
+                    dropped = k;
+                }
+            }
+            int vertexCount = 0;
+            for (int[] loop : loops) {
+                vertexCount += loop.length;
+            }
+            double[] xy = new double[vertexCount * 2];
+            int[] vertices = new int[vertexCount];
+            int[] loopStarts = new int[loops.size() + 1];
+            int count = 0;
+            for (int l = 0; l < loops.size(); l++) {
+                loopStarts[l] = count;
+                for (int vertex : loops.get(l)) {
+                    xy[count * 2] = mesh.vertex(vertex, (dropped + 1) % 3);
+                    xy[count * 2 + 1] = mesh.vertex(vertex, (dropped + 2) % 3);
+                    vertices[count++] = vertex;
+                }
+            }
+            loopStarts[loops.size()] = count;
+            int[] triangles = Triangulator.triangulate(xy, loopStarts);
+            for (int i = 0; i < triangles.length; i += 3) {
+                int a = vertices[triangles[i]];
+                int b = vertices[triangles[i + 1]];
+                int c = vertices[triangles[i + 2]];
+                mesh.cross(a, b, c, cross);
+                if (VectorMath.dot(cross, normal) < 0) {
+                    mesh.addTriangle(a, c, b);
+                } else {
+                    mesh.addTriangle(a, b, c);
+                }
+            }
+        }
+        return mesh.build();
+    }
+
+    private Profile profile(IfcProfileDef profileDef) {
+        Identity key = new Identity(profileDef);
+        Profile profile = profiles.get(key);
+        if (profile == null) {
+            profile = new Profile(loops(profileDef));
+            Profile previous = profiles.putIfAbsent(key, profile);
+            if (previous != null) {
+                profile = previous;
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * @return The loops of the profile in the XY plane of the coordinate
+     * system of the swept solid, each one as a sequence of coordinates, two
+     * for each vertex. The first loop is the outer one.
+     */
+    private List<double[]> loops(IfcProfileDef profile) {
+        List<double[]> loops = new ArrayList<>();
+        if (profile instanceof IfcArbitraryClosedProfileDef) {
+            loops.add(curveLoop(((IfcArbitraryClosedProfileDef) profile).getOuterCurve()));
+            if (profile instanceof IfcArbitraryProfileDefWithVoids) {
+                for (IfcCurve curve : ((IfcArbitraryProfileDefWithVoids) profile).getInnerCurves()) {
+                    loops.add(curveLoop(curve));
+                }
+            }
+            return loops;
+        }
+        if (profile instanceof IfcRectangleProfileDef) {
+            IfcRectangleProfileDef rectangle = (IfcRectangleProfileDef) profile;
+            double halfX = rectangle.getXDim().getValue() / 2;
+            double halfY = rectangle.getYDim().getValue() / 2;
+            loops.add(new double[]{-halfX, -halfY, halfX, -halfY, halfX, halfY, -halfX, halfY});
+            if (profile instanceof IfcRectangleHollowProfileDef) {
+                double wall = ((IfcRectangleHollowProfileDef) profile).getWallThickness().getValue();
+                loops.add(new double[]{-halfX + wall, -halfY + wall, halfX - wall, -halfY + wall,
+                        halfX - wall, halfY - wall, -halfX + wall, halfY - wall});
+            }
+        } else if (profile instanceof IfcCircleProfileDef) {
+            double radius = ((IfcCircleProfileDef) profile).getRadius().getValue();
+            loops.add(circleLoop(radius));
+            if (profile instanceof IfcCircleHollowProfileDef) {
+                loops.add(circleLoop(radius - ((IfcCircleHollowProfileDef) profile).getWallThickness().getValue()));
+            }
+        } else if (profile instanceof IfcIShapeProfileDef) {
+            IfcIShapeProfileDef shape = (IfcIShapeProfileDef) profile;
+            double x = shape.getOverallWidth().getValue() / 2;
+            double y = shape.getOverallDepth().getValue() / 2;
+            double web = shape.getWebThickness().getValue() / 2;
+            double flange = y - shape.getFlangeThickness().getValue();
+            loops.add(new double[]{-x, -y, x, -y, x, -flange, web, -flange, web, flange, x, flange,
+                    x, y, -x, y, -x, flange, -web, flange, -web, -flange, -x, -flange});
+        } else {
+            throw new IllegalArgumentException("tessellation of " + profile.getClass().getSimpleName() +
+                                                       " is not supported");
+        }
+        double[] transform = PlacementResolver.toTransform(((IfcParameterizedProfileDef) profile).getPosition());
+        for (double[] loop : loops) {
+            for (int i = 0; i < loop.length; i += 2) {
+                double x = loop[i];
+                double y = loop[i + 1];
+                loop[i] = transform[0] * x + transform[1] * y + transform[3];
+                loop[i + 1] = transform[4] * x + transform[5] * y + transform[7];
+            }
+        }
+        return loops;
+    }
+
+    private double[] circleLoop(double radius) {
+        int segments = segments(radius, 2 * Math.PI);
+        double[] loop = new double[segments * 2];
+        for (int i = 0; i < segments; i++) {
+            loop[i * 2] = radius * Math.cos(2 * Math.PI * i / segments);
+            loop[i * 2 + 1] = radius * Math.sin(2 * Math.PI * i / segments);
+        }
+        return loop;
+    }
+
+    /**
+     * @return The vertices of a closed curve, without repeating the first one
+     * at the end.
+     */
+    private double[] curveLoop(IfcCurve curve) {
+        List<double[]> points = curvePoints(curve);
+        int size = points.size();
+        if (size > 1 && distance(points.get(0), points.get(size - 1)) <= precision.getDelta()) {
+            size--;
+        }
+        double[] loop = new double[size * 2];
+        for (int i = 0; i < size; i++) {
+            loop[i * 2] = points.get(i)[0];
+            loop[i * 2 + 1] = points.get(i)[1];
+        }
+        return loop;
+    }
+
+    /**
+     * @return The vertices of the segments approximating {@code curve}, in
+     * the direction of the curve and without consecutive duplicates. Closed
+     * curves which are not polylines don't repeat the first vertex at the end.
+     */
+    private List<double[]> curvePoints(IfcCurve curve) {
+        List<double[]> points = new ArrayList<>();
+        if (curve instanceof IfcPolyline) {
+            for (IfcCartesianPoint point : ((IfcPolyline) curve).getPoints()) {
+                append(points, coordinates(point));
+            }
+        } else if (curve instanceof IfcCircle || curve instanceof IfcEllipse) {
+            int segments = segments((IfcConic) curve, 2 * Math.PI);
+            for (int i = 0; i < segments; i++) {
+                append(points, conicPoint((IfcConic) curve, 2 * Math.PI * i / segments));
+            }
+        } else if (curve instanceof IfcTrimmedCurve) {
+            trimmedPoints((IfcTrimmedCurve) curve, points);
+        } else if (curve instanceof IfcCompositeCurve) {
+            for (IfcCompositeCurveSegment segment : ((IfcCompositeCurve) curve).getSegments()) {
+                List<double[]> segmentPoints = curvePoints(segment.getParentCurve());
+                if (segment.getSameSense() == IfcBoolean.F) {
+                    Collections.reverse(segmentPoints);
+                }
+                segmentPoints.forEach(point -> append(points, point));
+            }
+        } else {
+            throw new IllegalArgumentException("tessellation of " + curve.getClass().getSimpleName() +
+                                                       " is not supported");
+        }
+        return points;
+    }
+
+    private void trimmedPoints(IfcTrimmedCurve curve, List<double[]> points) {
+        if (!(curve.getBasisCurve() instanceof IfcCircle || curve.getBasisCurve() instanceof IfcEllipse)) {
+            throw new IllegalArgumentException("tessellation of trimmed " +
+                                                       curve.getBasisCurve().getClass().getSimpleName() +
+                                                       " is not supported");
+        }
+        IfcConic conic = (IfcConic) curve.getBasisCurve();
+        double start = trimAngle(conic, curve.getTrim1(), curve.getMasterRepresentation());
+        double end = trimAngle(conic, curve.getTrim2(), curve.getMasterRepresentation());
+        if (curve.getSenseAgreement() == IfcBoolean.F) {
+            while (end >= start) {
+                end -= 2 * Math.PI;
+            }
+        } else {
+            while (end <= start) {
+                end += 2 * Math.PI;
+            }
+        }
+        int segments = segments(conic, end - start);
+        for (int i = 0; i <= segments; i++) {
+            append(points, conicPoint(conic, start + (end - start) * i / segments));
+        }
+    }
+
+    /**
+     * @return The angle of the trimming point on the conic, preferring the
+     * cartesian point unless parameters are preferred.
+     */
+    private double trimAngle(IfcConic conic, Set<IfcTrimmingSelect> trim, IfcTrimmingPreference preference) {
+        IfcCartesianPoint point = null;
+        IfcParameterValue parameter = null;
+        for (IfcTrimmingSelect select : trim) {
+            if (select instanceof IfcCartesianPoint) {
+                point = (IfcCartesianPoint) select;
+            } else {
+                parameter = (IfcParameterValue) select;
+            }
+        }
+        if (point != null && (parameter == null || preference != IfcTrimmingPreference.PARAMETER)) {
+            double[] transform = PlacementResolver.toTransform(conic.getPosition());
+            double[] coordinates = coordinates(point);
+            double[] semiAxes = semiAxes(conic);
+            double x = 0;
+            double y = 0;
+            for (int k = 0; k < 3; k++) {
+                double difference = coordinates[k] - transform[k * 4 + 3];
+                x += difference * transform[k * 4];
+                y += difference * transform[k * 4 + 1];
+            }
+            return Math.atan2(y / semiAxes[1], x / semiAxes[0]);
+        }
+        return parameter.getValue() * planeAngleUnit;
+    }
+
+    private static double[] semiAxes(IfcConic conic) {
+        if (conic instanceof IfcCircle) {
+            double radius = ((IfcCircle) conic).getRadius().getValue();
+            return new double[]{radius, radius};
+        }
+        IfcEllipse ellipse = (IfcEllipse) conic;
+        return new double[]{ellipse.getSemiAxis1().getValue(), ellipse.getSemiAxis2().getValue()};
+    }
+
+    /**
+     * @return The number of segments approximating an arc of {@code angle}
+     * radians of the conic, which is determined by its largest semi-axis.
+     */
+    private int segments(IfcConic conic, double angle) {
+        double[] semiAxes = semiAxes(conic);
+        return segments(Math.max(semiAxes[0], semiAxes[1]), angle);
+    }
+
+    private static double[] conicPoint(IfcConic conic, double angle) {
+        double x;
+        double y;
+        if (conic instanceof IfcCircle) {
+            double radius = ((IfcCircle) conic).getRadius().getValue();
+            x = radius * Math.cos(angle);
+            y = radius * Math.sin(angle);
+        } else {
+            x = ((IfcEllipse) conic).getSemiAxis1().getValue() * Math.cos(angle);
+            y = ((IfcEllipse) conic).getSemiAxis2().getValue() * Math.sin(angle);
+        }
+        return PlacementResolver.transformPoint(PlacementResolver.toTransform(conic.getPosition()), x, y, 0);
+    }
+
+    /**
+     * @return The number of segments approximating an arc of {@code angle}
+     * radians of a circle with the given radius within the chord tolerance.
+     */
+    private int segments(double radius, double angle) {
+        int perTurn = chordTolerance >= radius ?
+                      MIN_SEGMENTS :
+                      (int) Math.ceil(Math.PI / Math.acos(1 - chordTolerance / radius));
+        perTurn = Math.max(MIN_SEGMENTS, Math.min(MAX_SEGMENTS, perTurn));
+        return Math.max(1, (int) Math.ceil(perTurn * Math.abs(angle) / (2 * Math.PI) - 1e-9));
+    }
+
+    private void append(List<double[]> points, double[] point) {
+        if (points.isEmpty() || distance(points.get(points.size() - 1), point) > precision.getDelta()) {
+            points.add(point);
+        }
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double dx = a[0] - b[0];
+        double dy = a[1] - b[1];
+        double dz = a[2] - b[2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * @return The three coordinates of {@code point}, the third one is zero if
+     * the point is bidimensional.
+     */
+    private static double[] coordinates(IfcCartesianPoint point) {
+        List<IfcLengthMeasure> coordinates = point.getCoordinates();
+        return new double[]{coordinates.get(0).getValue(), coordinates.get(1).getValue(),
+                coordinates.size() == 3 ? coordinates.get(2).getValue() : 0};
+    }
+
+    private static double[] ratios(IfcDirection direction) {
+        List<IfcReal> ratios = direction.getNormalisedDirectionRatios();
+        return new double[]{ratios.get(0).getValue(), ratios.get(1).getValue(),
+                ratios.size() == 3 ? ratios.get(2).getValue() : 0};
+    }
+
+    /**
+     * A triangulated profile: its loops are oriented so that the outer one is
+     * counterclockwise and the inner ones are clockwise.
+     */
+    private static final class Profile {
+        private final double[] xy;
+        private final int[] loopStarts;
+        private final int[] triangles;
+
+        private Profile(List<double[]> loops) {
+            int length = 0;
+            for (double[] loop : loops) {
+                length += loop.length;
+            }
+            xy = new double[length];
+            loopStarts = new int[loops.size() + 1];
+            int offset = 0;
+            for (int l = 0; l < loops.size(); l++) {
+                double[] loop = loops.get(l);
+                int n = loop.length / 2;
+                double area = 0;
+                for (int i = 0; i < n; i++) {
+                    int j = (i + 1) % n;
+                    area += loop[i * 2] * loop[j * 2 + 1] - loop[j * 2] * loop[i * 2 + 1];
+                }
+                boolean reversed = area > 0 == l > 0;
+                for (int i = 0; i < n; i++) {
+                    int source = reversed ? n - 1 - i : i;
+                    xy[offset + i * 2] = loop[source * 2];
+                    xy[offset + i * 2 + 1] = loop[source * 2 + 1];
+                }
+                loopStarts[l] = offset / 2;
+                offset += loop.length;
+            }
+            loopStarts[loops.size()] = offset / 2;
+            triangles = Triangulator.triangulate(xy, loopStarts);
+        }
+    }
+
+    /**
+     * A growable mesh, which skips degenerate triangles.
+     */
+    private static final class MeshBuffer {
+        private double[] vertices;
+        private int[] indices;
+        private int vertexLength;
+        private int indexLength;
+
+        private MeshBuffer(int vertexCapacity, int indexCapacity) {
+            vertices = new double[Math.max(vertexCapacity, 1) * 3];
+            indices = new int[Math.max(indexCapacity, 3)];
+        }
+
+        private int vertexCount() {
+            return vertexLength / 3;
+        }
+
+        private double vertex(int index, int axis) {
+            return vertices[index * 3 + axis];
+        }
+
+        private int addVertex(double x, double y, double z) {
+            if (vertexLength == vertices.length) {
+                vertices = Arrays.copyOf(vertices, vertices.length * 2);
+            }
+            vertices[vertexLength++] = x;
+            vertices[vertexLength++] = y;
+            vertices[vertexLength++] = z;
+            return vertexLength / 3 - 1;
+        }
+
+        private void addTriangle(int a, int b, int c) {
+            if (a == b || b == c || a == c) {
+                return;
+            }
+            if (indexLength + 3 > indices.length) {
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            }
+            indices[indexLength++] = a;
+            indices[indexLength++] = b;
+            indices[indexLength++] = c;
+        }
+
+        private void cross(int a, int b, int c, double[] result) {
+            double[] ab = {vertex(b, 0) - vertex(a, 0), vertex(b, 1) - vertex(a, 1), vertex(b, 2) - vertex(a, 2)};
+            double[] ac = {vertex(c, 0) - vertex(a, 0), vertex(c, 1) - vertex(a, 1), vertex(c, 2) - vertex(a, 2)};
+            VectorMath.cross(ab, ac, result);
+        }
+
+        private TriangleMesh build() {
+            return new TriangleMesh(Arrays.copyOf(vertices, vertexLength), Arrays.copyOf(indices, indexLength));
+        }
+
+        /**
+         * @return The mesh of a closed solid, with the triangles flipped if
+         * they're clockwise when seen from outside.
+         */
+        private TriangleMesh buildSolid() {
+            TriangleMesh mesh = build();
+            return mesh.volume() < 0 ? new TriangleMesh(mesh.getVertices(), TriangleMesh.flipped(mesh.getIndices())) :
+                   mesh;
+        }
+    }
+}
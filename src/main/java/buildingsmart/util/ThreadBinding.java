@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+/**
+ * The binding of a value to a thread through a {@link ThreadLocal}: creating
+ * it binds the value, closing it restores the value previously bound to the
+ * thread, so that bindings can be nested.
+ *
+ * @param <T> The type of the bound value.
+ */
+abstract class ThreadBinding<T> implements AutoCloseable {
+    private final ThreadLocal<T> current;
+    private final T previous;
+    private final Thread thread;
+
+    /**
+     * @param current The ThreadLocal holding the value bound to each thread.
+     * @param value   The value to bind to the current thread.
+     */
+    ThreadBinding(ThreadLocal<T> current, T value) {
+        this.current = current;
+        this.previous = current.get();
+        this.thread = Thread.currentThread();
+        current.set(value);
+    }
+
+    /**
+     * @throws IllegalStateException If called from a thread different from
+     *                               the one that created the binding.
+     */
+    @Override
+    public void close() {
+        if (Thread.currentThread() != thread) {
+            throw new IllegalStateException("a binding must be closed by the thread that created it");
+        }
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import lombok.NonNull;
+
+import java.util.List;
+
+/**
+ * An indexed triangle mesh, stored in primitive arrays: the coordinates of the
+ * vertices, three for each vertex, and the indices of the vertices of the
+ * triangles, three for each triangle. Triangles are counterclockwise when
+ * seen from outside of the solid they bound.
+ * <p>
+ * Meshes returned by {@link Tessellator} are shared by all the items they
+ * were computed for, so their arrays must not be modified. The arrays of a
+ * mesh can be turned back into a brep with
+ * {@code new IndexedMeshBuilder(mesh.getVertices(), mesh.getIndices())}.
+ */
+public final class TriangleMesh {
+    /**
+     * The mesh without vertices and triangles.
+     */
+    public static final TriangleMesh EMPTY = new TriangleMesh(new double[0], new int[0]);
+
+    private final double[] vertices;
+    private final int[] indices;
+
+    /**
+     * @param vertices The coordinates of the vertices, three for each vertex.
+     *                 The array is not copied.
+     * @param indices  The indices of the vertices of the triangles, three for
+     *                 each triangle. The array is not copied.
+     * @throws NullPointerException     If any of the arguments is null.
+     * @throws IllegalArgumentException If the length of any of the arrays is
+     *                                  not a multiple of 3, or if any of the
+     *                                  indices is out of range.
+     */
+    public TriangleMesh(double @NonNull [] vertices, int @NonNull [] indices) {
+        if (vertices.length % 3 != 0 || indices.length % 3 != 0) {
+            throw new IllegalArgumentException("the length of vertices and indices must be a multiple of 3");
+        }
+        int vertexCount = vertices.length / 3;
+        for (int index : indices) {
+            if (index < 0 || index >= vertexCount) {
+                throw new IllegalArgumentException("index " + index + " is out of range");
+            }
+        }
+        this.vertices = vertices;
+        this.indices = indices;
+    }
+
+    /**
+     * @param meshes The meshes to merge.
+     * @return A mesh containing the triangles of all {@code meshes}, or the
+     * only non-empty mesh if there's just one.
+     *
+     * @throws NullPointerException If meshes is null, or contains null values.
+     */
+    public static TriangleMesh merge(@NonNull List<TriangleMesh> meshes) {
+        TriangleMesh single = EMPTY;
+        int vertexLength = 0;
+        int indexLength = 0;
+        for (TriangleMesh mesh : meshes) {
+            if (!mesh.isEmpty()) {
+                single = vertexLength == 0 ? mesh : null;
+                vertexLength += mesh.vertices.length;
+                indexLength += mesh.indices.length;
+            }
+        }
+        if (single != null) {
+            return single;
+        }
+        double[] vertices = new double[vertexLength];
+        int[] indices = new int[indexLength];
+        vertexLength = 0;
+        indexLength = 0;
+        for (TriangleMesh mesh : meshes) {
+            System.arraycopy(mesh.vertices, 0, vertices, vertexLength, mesh.vertices.length);
+            int offset = vertexLength / 3;
+            for (int i = 0; i < mesh.indices.length; i++) {
+                indices[indexLength + i] = mesh.indices[i] + offset;
+            }
+            vertexLength += mesh.vertices.length;
+            indexLength += mesh.indices.length;
+        }
+        return new TriangleMesh(vertices, indices);
+    }
+
+    /**
+     * @return The coordinates of the vertices, three for each vertex. The
+     * array must not be modified.
+     */
+    public double[] getVertices() {
+        return vertices;
+    }
+
+    /**
+     * @return The indices of the vertices of the triangles, three for each
+     * triangle. The array must not be modified.
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * @return The number of vertices.
+     */
+    public int vertexCount() {
+        return vertices.length / 3;
+    }
+
+    /**
+     * @return The number of triangles.
+     */
+    public int triangleCount() {
+        return indices.length / 3;
+    }
+
+    /**
+     * @return true if this mesh has no triangles.
+     */
+    public boolean isEmpty() {
+        return indices.length == 0;
+    }
+
+    /**
+     * @param transform A 3x4 transform, as returned by
+     *                  {@link PlacementResolver#resolve(buildingsmart.ifc.IfcObjectPlacement)}.
+     * @return This mesh transformed by {@code transform}. If the transform
+     * mirrors the mesh, the triangles are flipped so that they stay
+     * counterclockwise.
+     *
+     * @throws NullPointerException     If transform is null.
+     * @throws IllegalArgumentException If transform doesn't have 12 elements.
+     */
+    public TriangleMesh transform(double @NonNull [] transform) {
+        if (transform.length != 12) {
+            throw new IllegalArgumentException("transform must have 12 elements");
+        }
+        double[] transformed = new double[vertices.length];
+        for (int i = 0; i < vertices.length; i += 3) {
+            double x = vertices[i];
+            double y = vertices[i + 1];
+            double z = vertices[i + 2];
+            for (int row = 0; row < 3; row++) {
+                transformed[i + row] = transform[row * 4] * x + transform[row * 4 + 1] * y +
+                        transform[row * 4 + 2] * z + transform[row * 4 + 3];
+            }
+        }
+        double determinant = transform[0] * (transform[5] * transform[10] - transform[6] * transform[9]) -
+                transform[1] * (transform[4] * transform[10] - transform[6] * transform[8]) +
+                transform[2] * (transform[4] * transform[9] - transform[5] * transform[8]);
+        return new TriangleMesh(transformed, determinant < 0 ? flipped(indices) : indices);
+    }
+
+    /**
+     * @return The box of the vertices, as described by
+     * {@link BoundingBoxCalculator}, or null if the mesh has no vertices.
+     */
+    public double[] box() {
+        if (vertices.length == 0) {
+            return null;
+        }
+        double[] box = {vertices[0], vertices[1], vertices[2], vertices[0], vertices[1], vertices[2]};
+        for (int i = 3; i < vertices.length; i += 3) {
+            for (int j = 0; j < 3; j++) {
+                box[j] = Math.min(box[j], vertices[i + j]);
+                box[j + 3] = Math.max(box[j + 3], vertices[i + j]);
+            }
+        }
+        return box;
+    }
+
+    /**
+     * @return The total area of the triangles.
+     */
+    public double area() {
+        double area = 0;
+        double[] cross = new double[3];
+        for (int i = 0; i < indices.length; i += 3) {
+            crossProduct(indices[i], indices[i + 1], indices[i + 2], cross);
+            area += Math.sqrt(cross[0] * cross[0] + cross[1] * cross[1] + cross[2] * cross[2]);
+        }
+        return area / 2;
+    }
+
+    /**
+     * @return The volume enclosed by the triangles, which is meaningful only
+     * if they form closed surfaces. It is negative if the triangles are
+     * clockwise when seen from outside.
+     */
+    public double volume() {
+        double volume = 0;
+        for (int i = 0; i < indices.length; i += 3) {
+            int a = indices[i] * 3;
+            int b = indices[i + 1] * 3;
+            int c = indices[i + 2] * 3;
+            volume += vertices[a] * (vertices[b + 1] * vertices[c + 2] - vertices[b + 2] * vertices[c + 1]) -
+                    vertices[a + 1] * (vertices[b] * vertices[c + 2] - vertices[b + 2] * vertices[c]) +
+                    vertices[a + 2] * (vertices[b] * vertices[c + 1] - vertices[b + 1] * vertices[c]);
+        }
+        return volume / 6;
+    }
+
+    /**
+     * Computes the cross product of the edges AB and AC of a triangle, whose
+     * length is twice the area of the triangle.
+     */
+    void crossProduct(int a, int b, int c, double[] result) {
+        double abX = vertices[b * 3] - vertices[a * 3];
+        double abY = vertices[b * 3 + 1] - vertices[a * 3 + 1];
+        double abZ = vertices[b * 3 + 2] - vertices[a * 3 + 2];
+        double acX = vertices[c * 3] - vertices[a * 3];
+        double acY = vertices[c * 3 + 1] - vertices[a * 3 + 1];
+        double acZ = vertices[c * 3 + 2] - vertices[a * 3 + 2];
+        result[0] = abY * acZ - abZ * acY;
+        result[1] = abZ * acX - abX * acZ;
+        result[2] = abX * acY - abY * acX;
+    }
+
+    /**
+     * @return A copy of {@code indices} with the order of the vertices of each
+     * triangle reversed.
+     */
+    static int[] flipped(int[] indices) {
+        int[] flipped = indices.clone();
+        for (int i = 0; i < flipped.length; i += 3) {
+            flipped[i + 1] = indices[i + 2];
+            flipped[i + 2] = indices[i + 1];
+        }
+        return flipped;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Triangulates simple polygons with holes by ear clipping, after joining each
+ * hole to the outer loop with a pair of coincident edges.
+ */
+final class Triangulator {
+    private Triangulator() {}
+
+    /**
+     * @param xy         The coordinates of the vertices of all the loops, two
+     *                   for each vertex.
+     * @param loopStarts The index of the first vertex of each loop, followed by
+     *                   the number of vertices. The first loop is the outer
+     *                   one, the others are holes inside it. Loops can have
+     *                   any orientation.
+     * @return The indices of the vertices of the triangles, three for each
+     * triangle, which are counterclockwise. Degenerate triangles are skipped.
+     */
+    static int[] triangulate(double[] xy, int[] loopStarts) {
+        List<int[]> holes = new ArrayList<>();
+        for (int loop = 1; loop < loopStarts.length - 1; loop++) {
+            int[] hole = loop(xy, loopStarts[loop], loopStarts[loop + 1], false);
+            if (hole.length >= 3) {
+                holes.add(hole);
+            }
+        }
+        int[] polygon = loop(xy, loopStarts[0], loopStarts[1], true);
+        if (polygon.length < 3) {
+            return new int[0];
+        }
+        // holes are joined from the rightmost one, so that the edges joining
+        // the others never cross them
+        holes.sort((a, b) -> Double.compare(xy[rightmost(xy, b) * 2], xy[rightmost(xy, a) * 2]));
+        for (int[] hole : holes) {
+            polygon = join(xy, polygon, hole);
+        }
+        return clipEars(xy, polygon);
+    }
+
+    /**
+     * @return The indices of the vertices of a loop, counterclockwise if
+     * {@code counterclockwise}, clockwise otherwise.
+     */
+    private static int[] loop(double[] xy, int start, int end, boolean counterclockwise) {
+        int[] loop = new int[end - start];
+        double area = 0;
+        for (int i = 0; i < loop.length; i++) {
+            loop[i] = start + i;
+            int next = start + (i + 1) % loop.length;
+            area += xy[loop[i] * 2] * xy[next * 2 + 1] - xy[next * 2] * xy[loop[i] * 2 + 1];
+        }
+        if (area > 0 != counterclockwise) {
+            for (int i = 0; i < loop.length / 2; i++) {
+                int swap = loop[i];
+                loop[i] = loop[loop.length - 1 - i];
+                loop[loop.length - 1 - i] = swap;
+            }
+        }
+        return loop;
+    }
+
+    private static int rightmost(double[] xy, int[] loop) {
+        int rightmost = loop[0];
+        for (int vertex : loop) {
+            if (xy[vertex * 2] > xy[rightmost * 2]) {
+                rightmost = vertex;
+            }
+        }
+        return rightmost;
+    }
+
+    /**
+     * Joins {@code hole} to {@code polygon}, through an edge from the
+     * rightmost vertex of the hole to a vertex of the polygon visible from it.
+     *
+     * @return The joined polygon, or {@code polygon} if the hole is not inside
+     * it.
+     */
+    private static int[] join(double[] xy, int[] polygon, int[] hole) {
+        int holeStart = 0;
+        for (int i = 1; i < hole.length; i++) {
+            if (xy[hole[i] * 2] > xy[hole[holeStart] * 2]) {
+                holeStart = i;
+            }
+        }
+        double mx = xy[hole[holeStart] * 2];
+        double my = xy[hole[holeStart] * 2 + 1];
+
+        // the nearest edge hit by a ray from the vertex towards +X
+        int visible = -1;
+        double hitX = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < polygon.length; i++) {
+            int a = polygon[i];
+            int b = polygon[(i + 1) % polygon.length];
+            double ay = xy[a * 2 + 1];
+            double by = xy[b * 2 + 1];
+            if (ay > my == by > my) {
+                continue;
+            }
+            double x = xy[a * 2] + (my - ay) * (xy[b * 2] - xy[a * 2]) / (by - ay);
+            if (x >= mx && x < hitX) {
+                hitX = x;
+                visible = xy[a * 2] > xy[b * 2] ? i : (i + 1) % polygon.length;
+            }
+        }
+        if (visible < 0) {
+            return polygon;
+        }
+
+        // a reflex vertex inside the triangle between the vertex, the hit
+        // point and the candidate would hide the candidate: the one with the
+        // smallest angle from the ray is visible instead
+        double px = xy[polygon[visible] * 2];
+        double py = xy[polygon[visible] * 2 + 1];
+        double bestCos = -2;
+        for (int i = 0; i < polygon.length && hitX > mx; i++) {
+            int vertex = polygon[i];
+            double x = xy[vertex * 2];
+            double y = xy[vertex * 2 + 1];
+            if (i == visible || x == px && y == py ||
+                    !isReflex(xy, polygon[(i + polygon.length - 1) % polygon.length], vertex,
+                              polygon[(i + 1) % polygon.length]) ||
+                    !inTriangle(mx, my, hitX, my, px, py, x, y)) {
+                continue;
+            }
+            double dx = x - mx;
+            double dy = y - my;
+            double cos = dx / Math.sqrt(dx * dx + dy * dy);
+            if (cos > bestCos) {
+                bestCos = cos;
+                visible = i;
+            }
+        }
+
+        // a vertex already joined to other holes appears more than once: the
+        // hole is joined where the edge lies inside the angle at the vertex
+        double vx = xy[polygon[visible] * 2];
+        double vy = xy[polygon[visible] * 2 + 1];
+        for (int i = 0; i < polygon.length; i++) {
+            if (xy[polygon[i] * 2] == vx && xy[polygon[i] * 2 + 1] == vy &&
+                    insideAngle(xy, polygon[(i + polygon.length - 1) % polygon.length], polygon[i],
+                                polygon[(i + 1) % polygon.length], hole[holeStart])) {
+                visible = i;
+                break;
+            }
+        }
+
+        int[] joined = new int[polygon.length + hole.length + 2];
+        System.arraycopy(polygon, 0, joined, 0, visible + 1);
+        for (int i = 0; i <= hole.length; i++) {
+            joined[visible + 1 + i] = hole[(holeStart + i) % hole.length];
+        }
+        System.arraycopy(polygon, visible, joined, visible + hole.length + 2, polygon.length - visible);
+        return joined;
+    }
+
+    /**
+     * @return The triangles of a counterclockwise polygon.
+     */
+    private static int[] clipEars(double[] xy, int[] polygon) {
+        int n = polygon.length;
+        int[] previous = new int[n];
+        int[] next = new int[n];
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            previous[i] = (i + n - 1) % n;
+            next[i] = (i + 1) % n;
+            minX = Math.min(minX, xy[polygon[i] * 2]);
+            maxX = Math.max(maxX, xy[polygon[i] * 2]);
+            minY = Math.min(minY, xy[polygon[i] * 2 + 1]);
+            maxY = Math.max(maxY, xy[polygon[i] * 2 + 1]);
+        }
+        double size = Math.max(maxX - minX, maxY - minY);
+        double epsilon = size * size * 1e-14;
+
+        int[] triangles = new int[(n - 2) * 3];
+        int count = 0;
+        int remaining = n;
+        int current = 0;
+        int sinceLastEar = 0;
+        while (remaining > 3) {
+            int a = previous[current];
+            int c = next[current];
+            double area = cross(xy, polygon[a], polygon[current], polygon[c]);
+            boolean degenerate = Math.abs(area) <= epsilon;
+            // spikes enclose no area and are removed, while collinear vertices
+            // are kept so that they're shared with the adjacent faces; when no
+            // ear is found in a whole turn, the polygon is not simple and the
+            // current vertex is clipped anyway
+            boolean spike = degenerate && xy[polygon[a] * 2] == xy[polygon[c] * 2] &&
+                    xy[polygon[a] * 2 + 1] == xy[polygon[c] * 2 + 1];
+            boolean clip = spike || sinceLastEar > remaining ||
+                    !degenerate && area > 0 && isEar(xy, polygon, next, a, current, c);
+            if (!clip) {
+                current = c;
+                sinceLastEar++;
+                continue;
+            }
+            if (!degenerate) {
+                triangles[count++] = polygon[a];
+                triangles[count++] = polygon[current];
+                triangles[count++] = polygon[c];
+            }
+            next[a] = c;
+            previous[c] = a;
+            remaining--;
+            current = a;
+            sinceLastEar = 0;
+        }
+        int a = previous[current];
+        int c = next[current];
+        if (Math.abs(cross(xy, polygon[a], polygon[current], polygon[c])) > epsilon) {
+            triangles[count++] = polygon[a];
+            triangles[count++] = polygon[current];
+            triangles[count++] = polygon[c];
+        }
+        return Arrays.copyOf(triangles, count);
+    }
+
+    private static boolean isEar(double[] xy, int[] polygon, int[] next, int a, int b, int c) {
+        double ax = xy[polygon[a] * 2];
+        double ay = xy[polygon[a] * 2 + 1];
+        double bx = xy[polygon[b] * 2];
+        double by = xy[polygon[b] * 2 + 1];
+        double cx = xy[polygon[c] * 2];
+        double cy = xy[polygon[c] * 2 + 1];
+        for (int i = next[c]; i != a; i = next[i]) {
+            double x = xy[polygon[i] * 2];
+            double y = xy[polygon[i] * 2 + 1];
+            // vertices coincident with the ones of the ear are the ends of the
+            // edges joining holes
+            if (x == ax && y == ay || x == bx && y == by || x == cx && y == cy) {
+                continue;
+            }
+            if (inTriangle(ax, ay, bx, by, cx, cy, x, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the direction from B to M lies inside the polygon at the
+     * vertex B, whose previous and next vertices are A and C.
+     */
+    private static boolean insideAngle(double[] xy, int a, int b, int c, int m) {
+        boolean leftOfAB = cross(xy, a, b, m) >= 0;
+        boolean leftOfBC = cross(xy, b, c, m) >= 0;
+        return isReflex(xy, a, b, c) ? leftOfAB || leftOfBC : leftOfAB && leftOfBC;
+    }
+
+    private static boolean isReflex(double[] xy, int a, int b, int c) {
+        return cross(xy, a, b, c) <= 0;
+    }
+
+    /**
+     * @return Twice the signed area of the triangle, positive if it is
+     * counterclockwise.
+     */
+    private static double cross(double[] xy, int a, int b, int c) {
+        return (xy[b * 2] - xy[a * 2]) * (xy[c * 2 + 1] - xy[a * 2 + 1]) -
+                (xy[b * 2 + 1] - xy[a * 2 + 1]) * (xy[c * 2] - xy[a * 2]);
+    }
+
+    /**
+     * @return true if the point is inside the triangle ABC, or on its
+     * boundary, whatever the orientation of the triangle.
+     */
+    private static boolean inTriangle(double ax, double ay, double bx, double by, double cx, double cy,
+                                      double x, double y) {
+        double ab = (bx - ax) * (y - ay) - (by - ay) * (x - ax);
+        double bc = (cx - bx) * (y - by) - (cy - by) * (x - bx);
+        double ca = (ax - cx) * (y - cy) - (ay - cy) * (x - cx);
+        return !((ab < 0 || bc < 0 || ca < 0) && (ab > 0 || bc > 0 || ca > 0));
+    }
+}
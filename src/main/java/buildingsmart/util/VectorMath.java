@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import static java.lang.Math.sqrt;
+
+/**
+ * Vector operations on arrays of doubles, used by the vector functions in
+ * {@link Functions} so that no intermediate entity is created while computing
+ * their result.
+ * <p>
+ * Methods never allocate: results are written in arrays provided by the
+ * caller, which may be the same as the input ones unless stated otherwise.
+ * Vectors are two- or three-dimensional, cross products and axes are only
+ * defined in three dimensions.
+ */
+public final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    /**
+     * @param a The first vector.
+     * @param b The second vector, with the same dimensionality as {@code a}.
+     * @return The scalar (or dot) product of {@code a} and {@code b}.
+     */
+    public static double dot(double[] a, double[] b) {
+        double result = 0;
+        for (int i = 0; i < a.length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    /**
+     * @param v The vector of which to compute the magnitude.
+     * @return The euclidean length of {@code v}.
+     */
+    public static double magnitude(double[] v) {
+        return sqrt(dot(v, v));
+    }
+
+    /**
+     * @param v      The vector to normalise.
+     * @param result The array where the normalised vector is written, with the
+     *               same length as {@code v}.
+     * @return {@code false} if all components of {@code v} are zero, in which
+     * case {@code result} is left unchanged; {@code true} otherwise.
+     */
+    public static boolean normalise(double[] v, double[] result) {
+        double magnitude = magnitude(v);
+        if (!(magnitude > 0)) {
+            return false;
+        }
+        for (int i = 0; i < v.length; i++) {
+            result[i] = v[i] / magnitude;
+        }
+        return true;
+    }
+
+    /**
+     * @param a      The first three-dimensional vector.
+     * @param b      The second three-dimensional vector.
+     * @param result The array where the vector (or cross) product
+     *               {@code a x b} is written. It cannot be the same array as
+     *               {@code a} or {@code b}.
+     */
+    public static void cross(double[] a, double[] b, double[] result) {
+        result[0] = a[1] * b[2] - a[2] * b[1];
+        result[1] = a[2] * b[0] - a[0] * b[2];
+        result[2] = a[0] * b[1] - a[1] * b[0];
+    }
+
+    /**
+     * @param a      The first vector.
+     * @param b      The second vector, with the same dimensionality as
+     *               {@code a}.
+     * @param result The array where the difference {@code a - b} is written.
+     */
+    public static void subtract(double[] a, double[] b, double[] result) {
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] - b[i];
+        }
+    }
+
+    /**
+     * @param scalar The value by which to multiply {@code v}.
+     * @param v      The vector to multiply.
+     * @param result The array where the product is written.
+     */
+    public static void scale(double scalar, double[] v, double[] result) {
+        for (int i = 0; i < v.length; i++) {
+            result[i] = scalar * v[i];
+        }
+    }
+
+    /**
+     * Projects {@code arg} onto the plane normal to {@code zAxis}, as done by
+     * the EXPRESS function IfcFirstProjAxis.
+     *
+     * @param zAxis  The three-dimensional direction onto whose normal plane
+     *               {@code arg} is projected. It must be normalised.
+     * @param arg    The three-dimensional direction to project. If null,
+     *               (1.0,0.0,0.0) is used, or (0.0,1.0,0.0) if {@code zAxis} is
+     *               (1.0,0.0,0.0).
+     * @param result The array where the normalised projection is written. It
+     *               cannot be the same array as {@code zAxis}.
+     * @return {@code false} if {@code arg} is not three-dimensional, has all
+     * components equal to zero or is parallel to {@code zAxis}, in which case
+     * the content of {@code result} is undefined; {@code true} otherwise.
+     */
+    public static boolean firstProjAxis(double[] zAxis, double[] arg, double[] result) {
+        if (arg == null) {
+            double delta = Precision.current().getDelta();
+            boolean zIsX = Math.abs(zAxis[0] - 1) <= delta && Math.abs(zAxis[1]) <= delta &&
+                    Math.abs(zAxis[2]) <= delta;
+            result[0] = zIsX ? 0 : 1;
+            result[1] = zIsX ? 1 : 0;
+            result[2] = 0;
+        } else {
+            if (arg.length != 3 || !normalise(arg, result)) {
+                return false;
+            }
+            double crossX = result[1] * zAxis[2] - result[2] * zAxis[1];
+            double crossY = result[2] * zAxis[0] - result[0] * zAxis[2];
+            double crossZ = result[0] * zAxis[1] - result[1] * zAxis[0];
+            if (crossX == 0 && crossY == 0 && crossZ == 0) {
+                return false;
+            }
+        }
+        double projection = dot(result, zAxis);
+        double x = result[0] - projection * zAxis[0];
+        double y = result[1] - projection * zAxis[1];
+        double z = result[2] - projection * zAxis[2];
+        double magnitude = sqrt(x * x + y * y + z * z);
+        if (magnitude > 0) {
+            result[0] = x / magnitude;
+            result[1] = y / magnitude;
+            result[2] = z / magnitude;
+        }
+        return true;
+    }
+
+    /**
+     * Computes three normalised orthogonal directions, as done by the EXPRESS
+     * function IfcBuildAxes.
+     *
+     * @param axis         The three-dimensional direction of the Z axis. If
+     *                     null or with all components equal to zero,
+     *                     (0.0,0.0,1.0) is used.
+     * @param refDirection The three-dimensional direction used to determine the
+     *                     X axis, see
+     *                     {@link #firstProjAxis(double[], double[], double[])}.
+     * @param xAxis        The array where the X axis is written.
+     * @param yAxis        The array where the Y axis is written.
+     * @param zAxis        The array where the Z axis is written.
+     * @return {@code false} if the axes cannot be computed from the given
+     * directions, in which case the content of the result arrays is undefined;
+     * {@code true} otherwise.
+     */
+    public static boolean buildAxes(double[] axis, double[] refDirection, double[] xAxis, double[] yAxis,
+                                    double[] zAxis) {
+        if (axis != null && axis.length != 3) {
+            return false;
+        }
+        if (axis == null || !normalise(axis, zAxis)) {
+            zAxis[0] = 0;
+            zAxis[1] = 0;
+            zAxis[2] = 1;
+        }
+        if (!firstProjAxis(zAxis, refDirection, xAxis)) {
+            return false;
+        }
+        cross(zAxis, xAxis, yAxis);
+        return normalise(yAxis, yAxis);
+    }
+
+    /**
+     * Computes the direction of the Y axis from the Z and X axes, as done by
+     * the EXPRESS function IfcSecondProjAxis.
+     *
+     * @param zAxis  The normalised three-dimensional direction of the Z axis.
+     * @param xAxis  The normalised three-dimensional direction of the X axis,
+     *               orthogonal to {@code zAxis}.
+     * @param arg    The three-dimensional direction to project onto the plane
+     *               normal to {@code zAxis}, orthogonally to {@code xAxis}. If
+     *               null, (0.0,1.0,0.0) is used, or the cross product of
+     *               {@code zAxis} and {@code xAxis} if (0.0,1.0,0.0) lies in
+     *               the plane defined by the two axes.
+     * @param result The array where the normalised projection is written. It
+     *               cannot be the same array as {@code zAxis} or {@code xAxis}.
+     * @return {@code false} if {@code arg} is not three-dimensional or lies
+     * (within the precision delta) in the plane defined by {@code zAxis} and
+     * {@code xAxis}, in which case the
+     * content of {@code result} is undefined; {@code true} otherwise.
+     */
+    public static boolean secondProjAxis(double[] zAxis, double[] xAxis, double[] arg, double[] result) {
+        if (arg == null) {
+            result[0] = 0;
+            result[1] = 1;
+            result[2] = 0;
+        } else {
+            if (arg.length != 3) {
+                return false;
+            }
+            System.arraycopy(arg, 0, result, 0, 3);
+        }
+        double projection = dot(result, zAxis);
+        for (int i = 0; i < 3; i++) {
+            result[i] -= projection * zAxis[i];
+        }
+        projection = dot(result, xAxis);
+        for (int i = 0; i < 3; i++) {
+            result[i] -= projection * xAxis[i];
+        }
+        double magnitude = magnitude(result);
+        if (magnitude > Precision.current().getDelta()) {
+            scale(1 / magnitude, result, result);
+            return true;
+        }
+        if (arg == null) {
+            cross(zAxis, xAxis, result);
+            return normalise(result, result);
+        }
+        return false;
+    }
+
+    /**
+     * Computes the normalised base axes of a cartesian transformation
+     * operator, as done by the EXPRESS function IfcBaseAxis.
+     *
+     * @param axis1 The direction of the first axis, or null.
+     * @param axis2 The direction of the second axis, or null.
+     * @param axis3 The direction of the third axis, or null. It must be null
+     *              when computing two-dimensional axes.
+     * @param u     The arrays where the axes are written, two or three of them
+     *              with the same length as their count.
+     * @return {@code false} if the axes cannot be computed from the given
+     * directions, in which case the content of {@code u} is undefined;
+     * {@code true} otherwise.
+     */
+    public static boolean baseAxis(double[] axis1, double[] axis2, double[] axis3, double[][] u) {
+        int dim = u.length;
+        if ((axis1 != null && axis1.length != dim) || (axis2 != null && axis2.length != dim) ||
+                (axis3 != null && (dim != 3 || axis3.length != 3))) {
+            return false;
+        }
+        if (dim == 3) {
+            if (axis3 == null || !normalise(axis3, u[2])) {
+                u[2][0] = 0;
+                u[2][1] = 0;
+                u[2][2] = 1;
+            }
+            return firstProjAxis(u[2], axis1, u[0]) && secondProjAxis(u[2], u[0], axis2, u[1]);
+        }
+        if (axis1 != null) {
+            if (!normalise(axis1, u[0])) {
+                return false;
+            }
+            u[1][0] = -u[0][1];
+            u[1][1] = u[0][0];
+            if (axis2 != null && dot(axis2, u[1]) < 0) {
+                u[1][0] = -u[1][0];
+                u[1][1] = -u[1][1];
+            }
+        } else if (axis2 != null) {
+            if (!normalise(axis2, u[1])) {
+                return false;
+            }
+            // the opposite of the orthogonal complement of axis2
+            u[0][0] = u[1][1];
+            u[0][1] = -u[1][0];
+        } else {
+            u[0][0] = 1;
+            u[0][1] = 0;
+            u[1][0] = 0;
+            u[1][1] = 1;
+        }
+        return true;
+    }
+}
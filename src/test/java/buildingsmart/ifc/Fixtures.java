@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.ifc;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Entities shared by the tests of geometry and of its export: an owner
+ * history, a three-dimensional model context, solids, products and a project
+ * containing products in a building.
+ */
+public final class Fixtures {
+    public static final IfcGeometricRepresentationContext CONTEXT =
+            new IfcGeometricRepresentationContext(null,
+                                                  new IfcLabel("Model"),
+                                                  new IfcDimensionCount(3),
+                                                  null,
+                                                  new IfcAxis2Placement3D(0, 0, 0),
+                                                  null);
+    public static final IfcOwnerHistory OWNER_HISTORY = ownerHistory();
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return A new owner history, with a new person, organization and
+     * application.
+     */
+    public static IfcOwnerHistory ownerHistory() {
+        IfcPerson person = IfcPerson.builder().givenName(new IfcLabel("")).build();
+        IfcOrganization organization = IfcOrganization.builder().name(new IfcLabel("")).build();
+        IfcPersonAndOrganization personAndOrganization = new IfcPersonAndOrganization(person, organization, null);
+        IfcApplication application = new IfcApplication(organization,
+                                                        new IfcLabel("1"),
+                                                        new IfcLabel("test"),
+                                                        new IfcIdentifier("test"));
+        return new IfcOwnerHistory(personAndOrganization,
+                                   application,
+                                   null,
+                                   IfcChangeActionEnum.ADDED,
+                                   null,
+                                   null,
+                                   null,
+                                   new IfcTimeStamp(0));
+    }
+
+    /**
+     * @return A rectangle centred in (x, y).
+     */
+    public static IfcRectangleProfileDef rectangle(double x, double y, double xDim, double yDim) {
+        return new IfcRectangleProfileDef(IfcProfileTypeEnum.AREA,
+                                          null,
+                                          new IfcAxis2Placement2D(x, y),
+                                          new IfcPositiveLengthMeasure(xDim),
+                                          new IfcPositiveLengthMeasure(yDim));
+    }
+
+    /**
+     * @return The solid extruded from {@code profile} along the Z axis of
+     * {@code position}.
+     */
+    public static IfcExtrudedAreaSolid extrude(IfcProfileDef profile, IfcAxis2Placement3D position, double depth) {
+        return new IfcExtrudedAreaSolid(profile,
+                                        position,
+                                        new IfcDirection(0, 0, 1),
+                                        new IfcPositiveLengthMeasure(depth));
+    }
+
+    /**
+     * @return A box centred on the Z axis, from 0 to {@code depth}.
+     */
+    public static IfcExtrudedAreaSolid box(double xDim, double yDim, double depth) {
+        return extrude(rectangle(0, 0, xDim, yDim), new IfcAxis2Placement3D(0, 0, 0), depth);
+    }
+
+    /**
+     * @return A "Body" representation of swept solids.
+     */
+    public static IfcShapeRepresentation body(IfcRepresentationItem... items) {
+        return new IfcShapeRepresentation(CONTEXT, new IfcLabel("Body"), new IfcLabel("SweptSolid"), items);
+    }
+
+    /**
+     * @param placement      The placement of the proxy, or null.
+     * @param representation The only representation of the proxy, or null.
+     */
+    public static IfcProxy proxy(String name, IfcObjectPlacement placement, IfcRepresentation representation) {
+        return IfcProxy.builder()
+                .globalId(new IfcGloballyUniqueId())
+                .ownerHistory(OWNER_HISTORY)
+                .name(new IfcLabel(name))
+                .objectPlacement(placement)
+                .representation(representation == null ? null :
+                                        new IfcProductDefinitionShape(null, null, representation))
+                .proxyType(IfcObjectTypeEnum.PRODUCT)
+                .build();
+    }
+
+    /**
+     * @return A proxy placed in (x, 0, 0) in the world coordinate system.
+     */
+    public static IfcProxy proxy(String name, double x, IfcRepresentation representation) {
+        return proxy(name, new IfcLocalPlacement(null, new IfcAxis2Placement3D(x, 0, 0)), representation);
+    }
+
+    /**
+     * @return A project with a building placed in the origin, containing
+     * {@code products}.
+     */
+    public static IfcProject project(IfcProduct... products) {
+        return project(new IfcLocalPlacement(null, new IfcAxis2Placement3D(0, 0, 0)), Arrays.asList(products));
+    }
+
+    /**
+     * @param buildingPlacement The placement of the building.
+     * @param products          The products contained in the building.
+     * @return A project with a building containing {@code products}.
+     */
+    public static IfcProject project(IfcObjectPlacement buildingPlacement,
+                                     Collection<? extends IfcProduct> products) {
+        IfcProject project = IfcProject.builder()
+                .globalId(new IfcGloballyUniqueId())
+                .ownerHistory(OWNER_HISTORY)
+                .name(new IfcLabel("Project"))
+                .representationContext(CONTEXT)
+                .unitsInContext(new IfcUnitAssignment(new IfcSIUnit(IfcUnitEnum.LENGTHUNIT,
+                                                                    null,
+                                                                    IfcSIUnitName.METRE)))
+                .build();
+        IfcBuilding building = IfcBuilding.builder()
+                .globalId(new IfcGloballyUniqueId())
+                .ownerHistory(OWNER_HISTORY)
+                .objectPlacement(buildingPlacement)
+                .compositionType(IfcElementCompositionEnum.ELEMENT)
+                .build();
+        IfcRelAggregates.builder()
+                .globalId(new IfcGloballyUniqueId())
+                .ownerHistory(OWNER_HISTORY)
+                .relatingObject(project)
+                .relatedObject(building)
+                .build();
+        if (!products.isEmpty()) {
+            IfcRelContainedInSpatialStructure.IfcRelContainedInSpatialStructureBuilder containment =
+                    IfcRelContainedInSpatialStructure.builder()
+                            .globalId(new IfcGloballyUniqueId())
+                            .ownerHistory(OWNER_HISTORY)
+                            .relatingStructure(building);
+            products.forEach(containment::relatedElement);
+            containment.build();
+        }
+        return project;
+    }
+}
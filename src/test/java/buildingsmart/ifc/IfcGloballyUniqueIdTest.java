@@ -25,6 +25,7 @@ import java.util.Set;
 
 import static buildingsmart.ifc.IfcGloballyUniqueId.LENGTH;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 public class IfcGloballyUniqueIdTest {
@@ -51,4 +52,53 @@ public class IfcGloballyUniqueIdTest {
         }
         assertEquals(numTests, guidStrings.size());
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks that the compressed String is the same one that was produced by
+     * the IFC compression algorithm before identifiers were stored as two
+     * longs.
+     */
+    @Test
+    public void longConstructor_knownValues() {
+        assertEquals("'01I_qsbU19wOZ7hVfcJfUO'",
+                     new IfcGloballyUniqueId(93429035989748201L, -8590706473216075880L).serialize());
+        assertEquals("'2bH2HWiL9D9w0bKQaKujR4'",
+                     new IfcGloballyUniqueId(-6538060761324696281L, -6907024666861054268L).serialize());
+        assertEquals("'08wPRDOMHCAfr1NF0U6MtT'",
+                     new IfcGloballyUniqueId(642210230723431466L, -7115303749901783587L).serialize());
+        assertEquals("'0000000000000000000000'", new IfcGloballyUniqueId(0, 0).serialize());
+        assertEquals("'3$$$$$$$$$$$$$$$$$$$$$'", new IfcGloballyUniqueId(-1, -1).serialize());
+    }
+
+    @Test
+    public void stringConstructor_roundTrip() {
+        String[] values = {"1BMbtSQRf6xh5rIKbb$MGb", "2KcxKeVfqHwhb6N5zdz5Bw", "51f413ef_7964_4d38_b19",
+                           "zzzzzzzzzzzzzzzzzzzzzz"};
+        for (String value : values) {
+            IfcGloballyUniqueId guid = new IfcGloballyUniqueId(value);
+            assertEquals(value, guid.getValue());
+            assertEquals(guid, new IfcGloballyUniqueId(value));
+            assertEquals(guid.hashCode(), new IfcGloballyUniqueId(value).hashCode());
+        }
+        IfcGloballyUniqueId guid = new IfcGloballyUniqueId("1BMbtSQRf6xh5rIKbb$MGb");
+        assertEquals(new IfcGloballyUniqueId(5429755501996558062L, -5659536777128614875L), guid);
+        assertNotEquals(new IfcGloballyUniqueId("1BMbtSQRf6xh5rIKbb$MGc"), guid);
+        // same low 126 bits, different overflow in the first character
+        assertNotEquals(new IfcGloballyUniqueId("5BMbtSQRf6xh5rIKbb$MGb"), guid);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stringConstructor_illegalCharacter() {
+        new IfcGloballyUniqueId("1BMbtSQRf6xh5rIKbb$MG*");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stringConstructor_nonAsciiCharacter() {
+        new IfcGloballyUniqueId("1BMbtSQRf6xh5rIKbb$MG\u00e8");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stringConstructor_wrongLength() {
+        new IfcGloballyUniqueId("1BMbtSQRf6xh5rIKbb$MG");
+    }
+}
@@ -21,6 +21,9 @@ package buildingsmart.ifc;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
 public class IfcLocalPlacementTest {
 
     @Test
@@ -36,4 +39,64 @@ public class IfcLocalPlacementTest {
                 new IfcAxis2Placement3D(new IfcCartesianPoint(0, 0, 0), null,
                         null));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void equals_withinDelta() {
+        IfcLocalPlacement placement = new IfcLocalPlacement(null, new IfcAxis2Placement3D(1, 2, 3));
+        IfcLocalPlacement other = new IfcLocalPlacement(null, new IfcAxis2Placement3D(1 + 1e-10, 2, 3 - 1e-10));
+
+        assertEquals(placement, other);
+        assertEquals(placement.hashCode(), other.hashCode());
+    }
+
+    @Test
+    public void equals_differentPlacements() {
+        IfcLocalPlacement placement = new IfcLocalPlacement(null, new IfcAxis2Placement3D(1, 2, 3));
+
+        assertNotEquals(placement, new IfcLocalPlacement(null, new IfcAxis2Placement3D(1, 2, 4)));
+        assertNotEquals(placement, new IfcLocalPlacement(null,
+                new IfcAxis2Placement3D(new IfcCartesianPoint(1, 2, 3), new IfcDirection(0, 0, 1),
+                        new IfcDirection(0, 1, 0))));
+    }
+
+    @Test
+    public void equals_childWithIdentityPlacement() {
+        IfcLocalPlacement parent = new IfcLocalPlacement(null, new IfcAxis2Placement3D(1, 2, 3));
+        IfcLocalPlacement child = new IfcLocalPlacement(parent,
+                new IfcAxis2Placement3D(new IfcCartesianPoint(0, 0, 0), new IfcDirection(0, 0, 1),
+                        new IfcDirection(1, 0, 0)));
+
+        assertEquals(parent, child);
+        assertEquals(child, parent);
+        assertEquals(parent.hashCode(), child.hashCode());
+        assertNotEquals(parent, new IfcLocalPlacement(parent, new IfcAxis2Placement3D(0, 0, 1)));
+    }
+
+    @Test
+    public void equals_chainedThroughPlacementRelTo() {
+        IfcLocalPlacement parent = new IfcLocalPlacement(null, new IfcAxis2Placement3D(1, 2, 3));
+        IfcLocalPlacement sameParent = new IfcLocalPlacement(null, new IfcAxis2Placement3D(1, 2, 3));
+        IfcLocalPlacement otherParent = new IfcLocalPlacement(null, new IfcAxis2Placement3D(3, 2, 1));
+
+        IfcLocalPlacement child = new IfcLocalPlacement(parent, new IfcAxis2Placement3D(5, 0, 0));
+        IfcLocalPlacement sameChild = new IfcLocalPlacement(sameParent, new IfcAxis2Placement3D(5, 0, 0));
+        IfcLocalPlacement otherChild = new IfcLocalPlacement(otherParent, new IfcAxis2Placement3D(5, 0, 0));
+
+        assertEquals(child, sameChild);
+        assertEquals(child.hashCode(), sameChild.hashCode());
+        assertNotEquals(child, otherChild);
+        assertNotEquals(new IfcLocalPlacement(child, new IfcAxis2Placement3D(0, 5, 0)),
+                new IfcLocalPlacement(otherChild, new IfcAxis2Placement3D(0, 5, 0)));
+    }
+
+    @Test
+    public void equals_2DAnd3D() {
+        IfcLocalPlacement placement2D = new IfcLocalPlacement(null, new IfcAxis2Placement2D(1, 2));
+        IfcLocalPlacement placement3D = new IfcLocalPlacement(null, new IfcAxis2Placement3D(1, 2, 0));
+
+        assertEquals(placement2D, new IfcLocalPlacement(null, new IfcAxis2Placement2D(1, 2)));
+        assertNotEquals(placement2D, placement3D);
+        assertNotEquals(new IfcLocalPlacement(null, new IfcAxis2Placement2D(0, 0)),
+                new IfcLocalPlacement(null, new IfcAxis2Placement3D(0, 0, 0)));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.ifc;
+
+import buildingsmart.io.Header;
+import buildingsmart.io.Serializer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IfcMappedItemTest {
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    public void constructor_registersMapUsage() {
+        IfcShapeRepresentation box = Fixtures.body(Fixtures.box(1, 2, 3));
+        IfcRepresentationMap map = new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0), box);
+        IfcMappedItem first = new IfcMappedItem(map, new IfcCartesianTransformationOperator3D(
+                new IfcCartesianPoint(1, 0, 0)));
+        IfcMappedItem second = new IfcMappedItem(map, new IfcCartesianTransformationOperator3D(
+                new IfcCartesianPoint(2, 0, 0)));
+        assertEquals(2, map.getMapUsage().size());
+        assertTrue(map.getMapUsage().contains(first));
+        assertTrue(map.getMapUsage().contains(second));
+        assertNotEquals(first, second);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void representationMap_notShapeModel() {
+        new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0),
+                                 new IfcRepresentation(Fixtures.CONTEXT, null, null, new IfcCartesianPoint(0, 0, 0)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void representationMap_representationOfProduct() {
+        IfcShapeRepresentation box = Fixtures.body(Fixtures.box(1, 2, 3));
+        new IfcProductDefinitionShape(null, null, box);
+        new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0), box);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void representationMap_representationOfShapeAspect() {
+        IfcShapeRepresentation box = Fixtures.body(Fixtures.box(1, 2, 3));
+        box.setOfShapeAspect(new IfcShapeAspect());
+        new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0), box);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void representationMap_representationOfOtherMap() {
+        IfcShapeRepresentation box = Fixtures.body(Fixtures.box(1, 2, 3));
+        new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0), box);
+        new IfcRepresentationMap(new IfcAxis2Placement3D(1, 0, 0), box);
+    }
+
+    @Test
+    public void transformationOperator3D_baseAxis() {
+        IfcCartesianTransformationOperator3D operator =
+                new IfcCartesianTransformationOperator3D(new IfcDirection(0, 2, 0),
+                                                         null,
+                                                         new IfcCartesianPoint(0, 0, 0),
+                                                         new IfcReal(2),
+                                                         new IfcDirection(0, 0, 1));
+        assertEquals(2, operator.getScl(), 0);
+        assertEquals(3, operator.getDim().getValue());
+        assertDirection(operator.getU().get(0), 0, 1, 0);
+        assertDirection(operator.getU().get(1), -1, 0, 0);
+        assertDirection(operator.getU().get(2), 0, 0, 1);
+    }
+
+    @Test
+    public void transformationOperator2D_baseAxis() {
+        IfcCartesianTransformationOperator2D operator =
+                new IfcCartesianTransformationOperator2D(null,
+                                                         new IfcDirection(0, 1),
+                                                         new IfcCartesianPoint(0, 0),
+                                                         null);
+        assertEquals(1, operator.getScl(), 0);
+        assertDirection(operator.getU().get(0), 1, 0);
+        assertDirection(operator.getU().get(1), 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transformationOperator_negativeScale() {
+        new IfcCartesianTransformationOperator3D(null, null, new IfcCartesianPoint(0, 0, 0), new IfcReal(-1), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transformationOperator3D_twoDimensionalOrigin() {
+        new IfcCartesianTransformationOperator3D(new IfcCartesianPoint(0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transformationOperator3D_parallelAxes() {
+        new IfcCartesianTransformationOperator3D(new IfcDirection(0, 0, 1),
+                                                 null,
+                                                 new IfcCartesianPoint(0, 0, 0),
+                                                 null,
+                                                 new IfcDirection(0, 0, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transformationOperator3DnonUniform_zeroScale3() {
+        new IfcCartesianTransformationOperator3DnonUniform(null,
+                                                           null,
+                                                           new IfcCartesianPoint(0, 0, 0),
+                                                           null,
+                                                           null,
+                                                           new IfcReal(2),
+                                                           new IfcReal(0));
+    }
+
+    @Test
+    public void serialize_sharedRepresentation() throws IOException {
+        IfcRepresentationMap map = new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0),
+                                                            Fixtures.body(Fixtures.box(1, 2, 3)));
+        IfcProduct[] proxies = new IfcProduct[10];
+        for (int i = 0; i < proxies.length; i++) {
+            IfcMappedItem item = new IfcMappedItem(map, new IfcCartesianTransformationOperator3D(
+                    new IfcCartesianPoint(i, 0, 0)));
+            IfcShapeRepresentation representation = new IfcShapeRepresentation(Fixtures.CONTEXT,
+                                                                               new IfcLabel("Body"),
+                                                                               new IfcLabel("MappedRepresentation"),
+                                                                               item);
+            proxies[i] = Fixtures.proxy("Proxy" + i, 0, representation);
+        }
+        IfcProject project = Fixtures.project(proxies);
+
+        StringWriter output = new StringWriter();
+        new Serializer().serialize(new Header(), project, output, "");
+        List<String> lines = Arrays.asList(output.toString().split("\n"));
+        assertEquals(1, count(lines, "=IFCEXTRUDEDAREASOLID("));
+        assertEquals(1, count(lines, "=IFCREPRESENTATIONMAP("));
+        assertEquals(10, count(lines, "=IFCMAPPEDITEM("));
+        assertEquals(10, count(lines, "=IFCCARTESIANTRANSFORMATIONOPERATOR3D($,$,#"));
+        assertEquals(Collections.emptyList(),
+                     lines.stream().filter(line -> line.contains("=IFCCARTESIANTRANSFORMATIONOPERATOR3D(") &&
+                             !line.endsWith(",$,$);")).collect(java.util.stream.Collectors.toList()));
+    }
+
+    private static long count(List<String> lines, String content) {
+        return lines.stream().filter(line -> line.contains(content)).count();
+    }
+
+    private static void assertDirection(IfcDirection direction, double... expected) {
+        assertArrayEquals(expected,
+                          direction.getDirectionRatios().stream().mapToDouble(IfcReal::getValue).toArray(),
+                          TOLERANCE);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.ifc;
+
+import org.junit.Test;
+
+public class IfcPolyLoopTest {
+
+    @Test
+    public void constructor_valid() {
+        new IfcPolyLoop(new IfcCartesianPoint(0, 0, 0),
+                        new IfcCartesianPoint(0, 0, 0),
+                        new IfcCartesianPoint(1, 0, 0),
+                        new IfcCartesianPoint(1, 1, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_lessThanThreeDistinctPoints() {
+        new IfcPolyLoop(new IfcCartesianPoint(0, 0, 0),
+                        new IfcCartesianPoint(1, 0, 0),
+                        new IfcCartesianPoint(0, 0, 0),
+                        new IfcCartesianPoint(1, 0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_firstEqualToLast() {
+        new IfcPolyLoop(new IfcCartesianPoint(0, 0, 0),
+                        new IfcCartesianPoint(1, 0, 0),
+                        new IfcCartesianPoint(1, 1, 0),
+                        new IfcCartesianPoint(0, 0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_differentDimensionality() {
+        new IfcPolyLoop(new IfcCartesianPoint(0, 0, 0),
+                        new IfcCartesianPoint(1, 0, 0),
+                        new IfcCartesianPoint(1, 1));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.ifc;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class IfcProductRepresentationTest {
+
+    @Test
+    public void replaceRepresentation() {
+        IfcShapeRepresentation body = Fixtures.body(Fixtures.box(1, 1, 1));
+        IfcShapeRepresentation replacement = Fixtures.body(Fixtures.box(1, 1, 2));
+        IfcProductDefinitionShape shape = new IfcProductDefinitionShape(null, null, body);
+
+        shape.replaceRepresentation(body, replacement);
+        assertEquals(Collections.singletonList(replacement), shape.getRepresentations());
+        // the replaced representation can be used again
+        new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0), body);
+        assertSame(replacement, shape.getRepresentations().get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void replaceRepresentation_notOfProduct() {
+        IfcProductDefinitionShape shape = new IfcProductDefinitionShape(null, null, Fixtures.body(Fixtures.box(1, 1, 1)));
+        shape.replaceRepresentation(Fixtures.body(Fixtures.box(1, 1, 1)), Fixtures.body(Fixtures.box(1, 1, 2)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void replaceRepresentation_mappedReplacement() {
+        IfcShapeRepresentation body = Fixtures.body(Fixtures.box(1, 1, 1));
+        IfcShapeRepresentation replacement = Fixtures.body(Fixtures.box(1, 1, 2));
+        new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0), replacement);
+        new IfcProductDefinitionShape(null, null, body).replaceRepresentation(body, replacement);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void replaceRepresentation_replacementOfOtherProduct() {
+        IfcShapeRepresentation body = Fixtures.body(Fixtures.box(1, 1, 1));
+        IfcShapeRepresentation replacement = Fixtures.body(Fixtures.box(1, 1, 2));
+        new IfcProductDefinitionShape(null, null, replacement);
+        new IfcProductDefinitionShape(null, null, body).replaceRepresentation(body, replacement);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.IfcObjectDefinition;
+import buildingsmart.ifc.IfcSIUnit;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EntityAttributesTest {
+
+    private static List<String> names(List<Field> fields) {
+        return fields.stream().map(Field::getName).collect(Collectors.toList());
+    }
+
+    @Test
+    public void of_skipsDerivedAttributes() {
+        EntityAttributes attributes = EntityAttributes.of(IfcSIUnit.class);
+        assertEquals(4, attributes.fields.length);
+        assertEquals("dimensions", attributes.fields[0].getName());
+        assertTrue(attributes.derived[0]);
+        assertEquals(List.of("unitType", "prefix", "name"), names(attributes.getExplicitAttributes()));
+        assertSame(attributes, EntityAttributes.of(IfcSIUnit.class));
+    }
+
+    @Test
+    public void of_inverseRelationships() {
+        EntityAttributes attributes = EntityAttributes.of(IfcObjectDefinition.class);
+        assertTrue(names(attributes.getInverseRelationshipFields()).contains("isDecomposedBy"));
+        assertFalse(names(attributes.getExplicitAttributes()).contains("isDecomposedBy"));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.*;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static buildingsmart.ifc.Fixtures.*;
+import static org.junit.Assert.*;
+
+public class GlbExporterTest {
+    private static final String FILE_PATH = "./ifc-out/glb-exporter.glb";
+
+    private static IfcExtrudedAreaSolid box(double size, double depth) {
+        return Fixtures.box(size, size, depth);
+    }
+
+    /**
+     * The chunks of a GLB file, checked against the binary glTF layout, with
+     * the report of the export which wrote it.
+     */
+    private static final class Glb {
+        private final String json;
+        private final ByteBuffer bin;
+        private final GlbExporter.Report report;
+
+        private Glb(byte[] bytes, GlbExporter.Report report) {
+            this.report = report;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(0x46546C67, buffer.getInt());
+            assertEquals(2, buffer.getInt());
+            assertEquals(bytes.length, buffer.getInt());
+            int jsonLength = buffer.getInt();
+            assertEquals(0, jsonLength % 4);
+            assertEquals(0x4E4F534A, buffer.getInt());
+            json = new String(bytes, buffer.position(), jsonLength, StandardCharsets.US_ASCII);
+            buffer.position(buffer.position() + jsonLength);
+            if (buffer.hasRemaining()) {
+                int binLength = buffer.getInt();
+                assertEquals(0, binLength % 4);
+                assertEquals(0x004E4942, buffer.getInt());
+                assertEquals(binLength, buffer.remaining());
+                assertTrue(json.contains("\"buffers\":[{\"byteLength\":" + binLength + "}]"));
+                bin = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            } else {
+                bin = null;
+            }
+        }
+    }
+
+    private static Glb export(GlbExporter exporter, IfcProject project) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        GlbExporter.Report report = exporter.export(project, Channels.newChannel(output));
+        assertEquals(output.size(), report.getBytes());
+        return new Glb(output.toByteArray(), report);
+    }
+
+    @Test
+    public void export_sharesIdenticalMeshes() throws IOException {
+        IfcShapeRepresentation shared = body(box(1, 1));
+        IfcProduct[] products = new IfcProduct[8];
+        for (int i = 0; i < 5; i++) {
+            products[i] = proxy("Shared" + i, i, shared);
+        }
+        // equal geometry defined by distinct instances
+        products[5] = proxy("Copy0", 5, body(box(1, 1)));
+        products[6] = proxy("Copy1", 6, body(box(1, 1)));
+        products[7] = proxy("Other", 7, body(box(2, 1)));
+        Glb glb = export(new GlbExporter(), project(products));
+
+        assertEquals(8, glb.report.getNodes());
+        assertEquals(2, glb.report.getMeshes());
+        assertEquals(8 * 12, glb.report.getTriangles());
+        assertEquals(0, glb.report.getSkippedProducts());
+        for (IfcProduct product : products) {
+            assertTrue(glb.json.contains("\"name\":\"" + product.getGlobalId().getValue() + "\""));
+        }
+        assertTrue(glb.json.contains("\"type\":\"IfcProxy\""));
+        assertTrue(glb.json.contains("\"name\":\"Other\""));
+        // two meshes, each with 8 float vertices and 36 short indices
+        assertEquals(2 * (8 * 12 + 72), glb.bin.capacity());
+    }
+
+    @Test
+    public void export_placesNodesInWorldCoordinates() throws IOException {
+        IfcProject project = project(proxy("Moved", 5, body(box(2, 3))));
+        Glb glb = export(new GlbExporter(), project);
+
+        assertTrue(glb.json.contains("\"matrix\":[1,0,0,0,0,1,0,0,0,0,1,0,5,0,0,1]"));
+        assertTrue(glb.json.contains("\"matrix\":[1,0,0,0,0,0,-1,0,0,1,0,0,0,0,0,1]"));
+        assertTrue(glb.json.contains("\"min\":[-1,-1,0],\"max\":[1,1,3]"));
+        for (int i = 0; i < 8; i++) {
+            assertEquals(1, Math.abs(glb.bin.getFloat(i * 12)), 0);
+            assertEquals(1, Math.abs(glb.bin.getFloat(i * 12 + 4)), 0);
+        }
+        for (int i = 0; i < 36; i++) {
+            assertTrue(glb.bin.getShort(8 * 12 + i * 2) < 8);
+        }
+    }
+
+    @Test
+    public void export_escapesNames() throws IOException {
+        IfcProject project = project(proxy("Muro \"esterno\" \\ pi\u00f9", 0, body(box(1, 1))));
+        Glb glb = export(new GlbExporter(), project);
+
+        assertTrue(glb.json.contains("\"name\":\"Muro \\\"esterno\\\" \\\\ pi\\u00f9\""));
+    }
+
+    @Test
+    public void export_emptyProject() throws IOException {
+        Glb glb = export(new GlbExporter(), project());
+
+        assertEquals(0, glb.report.getNodes());
+        assertNull(glb.bin);
+        assertFalse(glb.json.contains("\"meshes\""));
+        assertTrue(glb.json.contains("\"type\":\"IfcProject\""));
+    }
+
+    @Test
+    public void export_skipUnsupported() throws IOException {
+        IfcBooleanResult difference = new IfcBooleanResult(IfcBooleanOperator.DIFFERENCE, box(2, 2), box(1, 3));
+        IfcProject project = project(proxy("Supported", 0, body(box(1, 1))),
+                                     proxy("Unsupported",
+                                           1,
+                                           new IfcShapeRepresentation(CONTEXT,
+                                                                      new IfcLabel("Body"),
+                                                                      new IfcLabel("CSG"),
+                                                                      difference)));
+        try {
+            new GlbExporter().export(project, Channels.newChannel(new ByteArrayOutputStream()));
+            fail("boolean results are not supported");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        Glb glb = export(new GlbExporter().skipUnsupported(true), project);
+        assertEquals(1, glb.report.getNodes());
+        assertEquals(1, glb.report.getSkippedProducts());
+        assertFalse(glb.json.contains("Unsupported"));
+    }
+
+    @Test
+    public void export_file() throws IOException {
+        GlbExporter.Report report = new GlbExporter()
+                .chordTolerance(0.001)
+                .export(project(proxy("File", 0, body(box(1, 1)))), FILE_PATH);
+
+        assertEquals(report.getBytes(), Files.size(Paths.get(FILE_PATH)));
+        new Glb(Files.readAllBytes(Paths.get(FILE_PATH)), report);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chordTolerance_negative() {
+        new GlbExporter().chordTolerance(-1);
+    }
+}
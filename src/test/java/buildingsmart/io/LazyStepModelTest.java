@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LazyStepModelTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private LazyStepModel open(String data, int cacheSize) throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.write(path, (StepReaderTest.HEADER + data + "END-ISO-10303-21;\n").getBytes(StandardCharsets.UTF_8));
+        return new StepReader().open(path, cacheSize);
+    }
+
+    @Test
+    public void open_index() throws IOException {
+        LazyStepModel model = open(StepReaderTest.DATA, 10);
+        StepModel expected = new StepReader().read(
+                (StepReaderTest.HEADER + StepReaderTest.DATA + "END-ISO-10303-21;\n").getBytes(
+                        StandardCharsets.UTF_8));
+
+        assertEquals(48, model.size());
+        assertEquals(expected.getHeader(), model.getHeader());
+        assertArrayEquals(expected.getIds(), model.getIds());
+        assertArrayEquals(new int[]{12, 13, 14, 16}, model.getIds(IfcSIUnit.class));
+        assertArrayEquals(new int[]{12, 13, 14, 16, 18}, model.getIds(IfcNamedUnit.class));
+        assertEquals("IFCWALL", model.getType(35));
+        assertNull(model.getType(49));
+        assertEquals(-1, model.getPosition(49));
+        assertNull(model.get(49));
+    }
+
+    @Test
+    public void get_createsReferencedEntities() throws IOException {
+        LazyStepModel model = open(StepReaderTest.DATA, 1000);
+        StepModel expected = new StepReader().read(
+                (StepReaderTest.HEADER + StepReaderTest.DATA + "END-ISO-10303-21;\n").getBytes(
+                        StandardCharsets.UTF_8));
+
+        IfcWall wall = (IfcWall) model.get(35);
+        assertEquals(expected.get(35), wall);
+        assertSame(wall, model.get(35));
+        assertSame(wall.getOwnerHistory(), model.get(5));
+        assertEquals(expected.getAll(IfcSIUnit.class), model.getAll(IfcSIUnit.class));
+        assertEquals(expected.getProject(), model.getProject());
+    }
+
+    @Test
+    public void get_evictedEntities() throws IOException {
+        LazyStepModel model = open(StepReaderTest.DATA, 2);
+
+        IfcWall wall = (IfcWall) model.get(35);
+        for (int id : model.getIds()) {
+            assertNotNull(model.get(id));
+        }
+        assertNotSame(wall, model.get(35));
+        assertEquals(wall, model.get(35));
+    }
+
+    @Test
+    public void get_forwardReferences() throws IOException {
+        List<String> lines = new ArrayList<>(Arrays.asList(StepReaderTest.DATA.split("\n")));
+        Collections.reverse(lines.subList(1, lines.size() - 1));
+        LazyStepModel model = open(String.join("\n", lines) + "\n", 10);
+
+        assertEquals(48, model.getIds()[0]);
+        assertEquals(new IfcCartesianPoint(0, 0, 0), model.get(6));
+        assertNotNull(model.get(48));
+    }
+
+    @Test
+    public void get_longInstance() throws IOException {
+        StringBuilder comment = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            comment.append("comment; ");
+        }
+        LazyStepModel model = open("DATA;\n#1=IFCORGANIZATION($,'Name; ',/*" + comment + "*/$,$,$);\nENDSEC;\n", 10);
+
+        assertEquals(IfcOrganization.builder().name(new IfcLabel("Name; ")).build(), model.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void get_undefinedReference() throws IOException {
+        open("DATA;\n#1=IFCLOCALPLACEMENT($,#2);\nENDSEC;\n", 10).get(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void get_cyclicReference() throws IOException {
+        open("DATA;\n#1=IFCLOCALPLACEMENT(#2,#3);\n#2=IFCLOCALPLACEMENT(#1,#3);\n" +
+                     "#3=IFCAXIS2PLACEMENT3D(#4,$,$);\n#4=IFCCARTESIANPOINT((0.,0.,0.));\nENDSEC;\n", 10).get(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void get_unknownEntity() throws IOException {
+        open("DATA;\n#1=IFCUNKNOWN(1);\nENDSEC;\n", 10).get(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void open_duplicateId() throws IOException {
+        open("DATA;\n#1=IFCCARTESIANPOINT((0.,0.));\n#1=IFCCARTESIANPOINT((1.,0.));\nENDSEC;\n", 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void open_cacheSizeNotPositive() throws IOException {
+        open(StepReaderTest.DATA, 0);
+    }
+}
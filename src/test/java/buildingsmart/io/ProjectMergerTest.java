@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProjectMergerTest {
+    /**
+     * The project of {@link StepReaderTest#DATA} with other globalIds, so
+     * that it has a spatial structure of its own.
+     */
+    private static final String OTHER_DATA = StepReaderTest.DATA
+            .replace("'51f413ef_7964_4d38_b19'", "'1tzNl8yWVvDuAXVNtiqlO0'")
+            .replace("'2Kc", "'3Kc")
+            .replace("'2Kd", "'3Kd");
+    /**
+     * The project of {@link StepReaderTest#DATA} with other products, in the
+     * same spatial structure.
+     */
+    private static final String OTHER_PRODUCTS = StepReaderTest.DATA
+            .replace("'51f413ef_7964_4d38_b19'", "'1tzNl8yWVvDuAXVNtiqlO0'")
+            .replace("'2Kc", "'3Kc")
+            .replace("'2KdIam", "'3KdIam");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static IfcProject read(String data) {
+        return new StepReader().read((StepReaderTest.HEADER + data + "END-ISO-10303-21;\n").getBytes(
+                StandardCharsets.UTF_8)).getProject();
+    }
+
+    private static StepModel merge(ProjectMerger merger, List<IfcProject> projects) throws IOException {
+        StringWriter writer = new StringWriter();
+        merger.merge(new Header(), projects, writer, "merged.ifc");
+        return new StepReader().read(writer.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void merge_separateStructures() throws IOException {
+        IfcProject first = read(StepReaderTest.DATA);
+
+        StepModel model = merge(new ProjectMerger(), List.of(first, read(OTHER_DATA)));
+
+        assertEquals(1, model.getAll(IfcProject.class).size());
+        assertEquals(first.getGlobalId(), model.getProject().getGlobalId());
+        assertEquals(2, model.getProject().getIsDecomposedBy().size());
+        assertEquals(2, model.getAll(IfcSite.class).size());
+        assertEquals(2, model.getAll(IfcWall.class).size());
+        assertEquals(2, model.getAll(IfcProxy.class).size());
+        assertEquals(1, model.getAll(IfcOwnerHistory.class).size());
+        assertEquals(1, model.getAll(IfcUnitAssignment.class).size());
+        assertEquals(1, model.getAll(IfcGeometricRepresentationContext.class).size());
+        assertEquals(1, model.getAll(IfcSurfaceStyle.class).size());
+        assertEquals(1, model.getAll(IfcStyledItem.class).size());
+        assertEquals(1, model.getAll(IfcExtrudedAreaSolid.class).size());
+    }
+
+    @Test
+    public void merge_sharedStructure() throws IOException {
+        StepModel model = merge(new ProjectMerger(), List.of(read(StepReaderTest.DATA), read(OTHER_PRODUCTS)));
+
+        assertEquals(1, model.getAll(IfcProject.class).size());
+        assertEquals(1, model.getProject().getIsDecomposedBy().size());
+        assertEquals(1, model.getAll(IfcBuildingStorey.class).size());
+        assertEquals(2, model.getAll(IfcRelContainedInSpatialStructure.class).size());
+        assertEquals(2, model.getAll(IfcBuildingStorey.class).get(0).getContainsElements().size());
+        assertEquals(2, model.getAll(IfcWall.class).size());
+        assertEquals(2, model.getAll(IfcProxy.class).size());
+    }
+
+    @Test
+    public void merge_oneProject() throws IOException {
+        IfcProject project = read(StepReaderTest.DATA);
+        StringWriter merged = new StringWriter();
+        StringWriter serialized = new StringWriter();
+
+        new ProjectMerger().merge(new Header(), List.of(project), merged, "project.ifc");
+        new Serializer().serialize(new Header(), project, serialized, "project.ifc");
+
+        String expected = serialized.toString();
+        String actual = merged.toString();
+        assertEquals(expected.substring(expected.indexOf("DATA;")), actual.substring(actual.indexOf("DATA;")));
+    }
+
+    @Test
+    public void merge_ownerHistory() throws IOException {
+        String otherHistory = OTHER_DATA.replace(",1586902585);", ",1586909999);");
+        List<IfcProject> projects = List.of(read(StepReaderTest.DATA), read(otherHistory));
+
+        assertEquals(2, merge(new ProjectMerger(), projects).getAll(IfcOwnerHistory.class).size());
+        IfcOwnerHistory ownerHistory = projects.get(1).getOwnerHistory();
+        StepModel model = merge(new ProjectMerger().ownerHistory(ownerHistory), projects);
+        assertEquals(List.of(ownerHistory), model.getAll(IfcOwnerHistory.class));
+    }
+
+    @Test
+    public void merge_file() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("merged.ifc");
+        Serializer serializer = new Serializer();
+        serializer.setWritingIndex(true);
+
+        new ProjectMerger(serializer).merge(new Header(),
+                                            List.of(read(StepReaderTest.DATA), read(OTHER_DATA)),
+                                            path.toString());
+
+        StepModel model = new StepReader().read(path);
+        assertEquals(2, model.getAll(IfcSite.class).size());
+        StepIndex index = StepIndex.read(StepIndex.sidecarPath(path));
+        assertEquals(model.size(), index.size());
+        assertEquals("IFCWALL", index.getType(index.getId("3KcxKeVfqHwhb6N5zdz5Bw")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void merge_differentUnits() throws IOException {
+        String otherUnits = OTHER_DATA.replace("#12=IFCSIUNIT(*,.LENGTHUNIT.,$,.METRE.);",
+                                               "#12=IFCSIUNIT(*,.LENGTHUNIT.,.MILLI.,.METRE.);");
+        merge(new ProjectMerger(), List.of(read(StepReaderTest.DATA), read(otherUnits)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void merge_noProjects() throws IOException {
+        merge(new ProjectMerger(), List.of());
+    }
+}
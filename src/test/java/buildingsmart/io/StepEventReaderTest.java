@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import com.google.common.primitives.Bytes;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StepEventReaderTest {
+    private static final String FILE = StepReaderTest.HEADER + StepReaderTest.DATA + "END-ISO-10303-21;\n";
+
+    private static List<String> read(String file, int bufferSize) throws IOException {
+        List<String> instances = new ArrayList<>();
+        long count = new StepEventReader().bufferSize(bufferSize)
+                .read(new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8)),
+                      instance -> instances.add(instance.toString()));
+        assertEquals(instances.size(), count);
+        return instances;
+    }
+
+    private static StepInstance readOne(String instance) throws IOException {
+        StepInstance[] read = new StepInstance[1];
+        new StepEventReader().read(new ByteArrayInputStream(
+                (StepReaderTest.HEADER + "DATA;\n" + instance + "\nENDSEC;\nEND-ISO-10303-21;\n").getBytes(
+                        StandardCharsets.UTF_8)), i -> {
+            assertNull(read[0]);
+            read[0] = i;
+        });
+        return read[0];
+    }
+
+    @Test
+    public void read_serializedFile() throws IOException {
+        List<String> instances = read(FILE, StepEventReader.DEFAULT_BUFFER_SIZE);
+
+        String data = StepReaderTest.DATA;
+        assertEquals(data.substring("DATA;\n".length(), data.length() - "ENDSEC;\n".length()),
+                     String.join(";\n", instances) + ";\n");
+    }
+
+    @Test
+    public void read_smallBuffer() throws IOException {
+        assertEquals(read(FILE, StepEventReader.DEFAULT_BUFFER_SIZE), read(FILE, 16));
+    }
+
+    @Test
+    public void read_header() throws IOException {
+        Header[] header = new Header[1];
+        long count = new StepEventReader().read(new ByteArrayInputStream(FILE.getBytes(StandardCharsets.UTF_8)),
+                                                new StepHandler() {
+                                                    @Override
+                                                    public void header(Header h) {
+                                                        header[0] = h;
+                                                    }
+
+                                                    @Override
+                                                    public void instance(StepInstance instance) {
+                                                        assertNotNull(header[0]);
+                                                    }
+                                                });
+
+        assertEquals(48, count);
+        assertEquals(new Header().setDescription("ViewDefinition[CoordinationView]")
+                             .setFileName("cylinder.ifc")
+                             .setTimeStamp("2020-04-15T00:16:25")
+                             .setAuthor("Author")
+                             .setOrganization("Organization")
+                             .setOriginatingSystem("FreeCAD")
+                             .setAuthorization("Authorizer"), header[0]);
+    }
+
+    @Test
+    public void read_values() throws IOException {
+        StepInstance instance = readOne("#7 = IfcTrimmedCurve(#38, (IFCPARAMETERVALUE(0.5), 'It''s ; \\X2\\00F9\\X0\\'), " +
+                                                "$, *, .T., -12, ((#1, #2), #3));");
+
+        assertEquals(7, instance.getId());
+        assertEquals("IFCTRIMMEDCURVE", instance.getType());
+        assertEquals(7, instance.size());
+        assertEquals(38, instance.get(0).getReference());
+        StepValue list = instance.get(1);
+        assertEquals(StepValue.Kind.LIST, list.getKind());
+        assertEquals(2, list.size());
+        assertEquals("IFCPARAMETERVALUE", list.get(0).getTypeName());
+        assertEquals(0.5, list.get(0).get(0).getReal(), 0);
+        assertEquals("It's ; \u00f9", list.get(1).getString());
+        assertTrue(list.get(1).stringEquals("It's ; \u00f9"));
+        assertEquals(StepValue.Kind.UNSET, instance.get(2).getKind());
+        assertEquals(StepValue.Kind.DERIVED, instance.get(3).getKind());
+        assertTrue(instance.get(4).isEnumeration("T"));
+        assertFalse(instance.get(4).isEnumeration("F"));
+        assertEquals(-12, instance.get(5).getInteger());
+        assertEquals(-12, instance.get(5).getReal(), 0);
+        List<Integer> references = new ArrayList<>();
+        instance.forEachReference(references::add);
+        assertEquals(List.of(38, 1, 2, 3), references);
+        assertEquals("((#1, #2), #3)", instance.get(6).toString());
+    }
+
+    @Test
+    public void read_stringEquals() throws IOException {
+        StepInstance instance = readOne("#1=IFCORGANIZATION($,'Caf\u00e9','ACME',$,$);");
+
+        assertTrue(instance.get(1).stringEquals("Caf\u00e9"));
+        assertTrue(instance.get(2).stringEquals("ACME"));
+        assertFalse(instance.get(2).stringEquals("ACM"));
+        assertFalse(instance.get(0).stringEquals("$"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void get_wrongKind() throws IOException {
+        readOne("#1=IFCCARTESIANPOINT((0.,0.));").get(0).getReference();
+    }
+
+    @Test
+    public void readHeader() throws IOException {
+        String header = "ISO-10303-21;\nHEADER;\n" +
+                "FILE_DESCRIPTION(('ViewDefinition [CoordinationView]','Caf\\X2\\00E9\\X0\\'),'2;1');\n" +
+                "FILE_NAME('a\\X4\\0001F600\\X0\\.ifc','2020-04-15T00:16:25',('Author'),('Org'),'ifc-java 0.3.6'," +
+                "'FreeCAD','');\n" +
+                "FILE_SCHEMA(('IFC2X3'));\nENDSEC;\nDATA;\n";
+        byte[] rest = new byte[1 << 20];
+        Arrays.fill(rest, (byte) 'x');
+        ByteArrayInputStream input = new ByteArrayInputStream(
+                Bytes.concat(header.getBytes(StandardCharsets.US_ASCII), rest));
+
+        StepHeader read = new StepEventReader().readHeader(input);
+        assertEquals(List.of("ViewDefinition [CoordinationView]", "Caf\u00e9"), read.getDescription());
+        assertEquals("2;1", read.getImplementationLevel());
+        assertEquals("a\ud83d\ude00.ifc", read.getFileName());
+        assertEquals("2020-04-15T00:16:25", read.getTimeStamp());
+        assertEquals(List.of("Author"), read.getAuthor());
+        assertEquals(List.of("Org"), read.getOrganization());
+        assertEquals("ifc-java 0.3.6", read.getPreprocessorVersion());
+        assertEquals("FreeCAD", read.getOriginatingSystem());
+        assertEquals("", read.getAuthorization());
+        assertEquals(List.of("IFC2X3"), read.getSchemas());
+        assertTrue(input.available() > rest.length - 8192);
+        assertEquals(new Header().setDescription("ViewDefinition [CoordinationView]", "Caf\u00e9")
+                             .setFileName("a\ud83d\ude00.ifc")
+                             .setTimeStamp("2020-04-15T00:16:25")
+                             .setAuthor("Author")
+                             .setOrganization("Org")
+                             .setOriginatingSystem("FreeCAD")
+                             .setAuthorization(""), read.toHeader());
+    }
+
+    @Test
+    public void readHeader_missingEntities() throws IOException {
+        StepHeader read = new StepEventReader().readHeader(new ByteArrayInputStream(
+                "ISO-10303-21;HEADER;FILE_SCHEMA(('IFC2X3'));ENDSEC;".getBytes(StandardCharsets.US_ASCII)));
+
+        assertNull(read.getDescription());
+        assertNull(read.getFileName());
+        assertEquals(List.of("IFC2X3"), read.getSchemas());
+        assertEquals(new Header(), read.toHeader());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readHeader_unterminated() throws IOException {
+        new StepEventReader().readHeader(new ByteArrayInputStream(
+                "ISO-10303-21;HEADER;FILE_SCHEMA(('IFC2X3'));".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_unterminatedFile() throws IOException {
+        read(FILE.substring(0, FILE.indexOf("#20=")) + "#20=IFCPROJECT('51f413ef_7964_4d38_b19',#5", 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_notStep() throws IOException {
+        read("<ifc/>;", 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bufferSize_notPositive() {
+        new StepEventReader().bufferSize(0);
+    }
+}
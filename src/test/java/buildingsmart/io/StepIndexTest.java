@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.IfcNamedUnit;
+import buildingsmart.ifc.IfcProject;
+import buildingsmart.ifc.IfcWall;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StepIndexTest {
+    private static final byte[] FILE =
+            (StepReaderTest.HEADER + StepReaderTest.DATA + "END-ISO-10303-21;\n").getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(byte[] content) throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.write(path, content);
+        return path;
+    }
+
+    private static void assertIndexEquals(StepIndex expected, StepIndex actual) {
+        assertEquals(expected.getFileSize(), actual.getFileSize());
+        assertArrayEquals(expected.getIds(), actual.getIds());
+        for (int id : expected.getIds()) {
+            assertEquals(expected.getType(id), actual.getType(id));
+            assertEquals(expected.getPosition(id), actual.getPosition(id));
+        }
+        assertArrayEquals(expected.getIds(IfcNamedUnit.class), actual.getIds(IfcNamedUnit.class));
+    }
+
+    @Test
+    public void build() throws IOException {
+        StepIndex index = StepIndex.build(write(FILE));
+
+        assertEquals(FILE.length, index.getFileSize());
+        assertEquals(48, index.size());
+        assertEquals(35, index.getId("2KcxKeVfqHwhb6N5zdz5Bw"));
+        assertEquals(42, index.getId("2KcxKeVfqHwhb6N5zd1234"));
+        assertEquals(-1, index.getId("2KcxKeVfqHwhb6N5zd0000"));
+        assertEquals(-1, index.getId("short"));
+        assertEquals("IFCWALL", index.getType(35));
+        assertEquals(new String(FILE, StandardCharsets.UTF_8).indexOf("#35="), index.getPosition(35));
+        assertArrayEquals(new int[]{12, 13, 14, 16, 18}, index.getIds(IfcNamedUnit.class));
+        assertNull(index.getType(49));
+        assertEquals(-1, index.getPosition(49));
+    }
+
+    @Test
+    public void writeRead() throws IOException {
+        StepIndex index = StepIndex.build(write(FILE));
+        Path sidecar = folder.getRoot().toPath().resolve("index.idx");
+
+        index.write(sidecar);
+        StepIndex read = StepIndex.read(sidecar);
+
+        assertIndexEquals(index, read);
+        assertEquals(35, read.getId("2KcxKeVfqHwhb6N5zdz5Bw"));
+        assertFalse(Files.exists(sidecar.resolveSibling("index.idx.tmp")));
+    }
+
+    @Test
+    public void writeRead_forwardIds() throws IOException {
+        StepIndex index = StepIndex.build(write(
+                (StepReaderTest.HEADER + "DATA;\n#100=IFCCARTESIANPOINT((0.0,0.0,0.0));\n" +
+                        "#2=IFCCARTESIANPOINT((1.0,0.0,0.0));\nENDSEC;\nEND-ISO-10303-21;\n").getBytes(
+                        StandardCharsets.UTF_8)));
+        Path sidecar = folder.getRoot().toPath().resolve("index.idx");
+
+        index.write(sidecar);
+
+        assertIndexEquals(index, StepIndex.read(sidecar));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_notIndex() throws IOException {
+        StepIndex.read(write(FILE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_truncated() throws IOException {
+        Path sidecar = folder.getRoot().toPath().resolve("index.idx");
+        StepIndex.build(write(FILE)).write(sidecar);
+        byte[] content = Files.readAllBytes(sidecar);
+        Files.write(sidecar, Arrays.copyOf(content, content.length / 2));
+
+        StepIndex.read(sidecar);
+    }
+
+    @Test
+    public void of_writesSidecar() throws IOException {
+        Path path = write(FILE);
+        Path sidecar = StepIndex.sidecarPath(path);
+
+        StepIndex index = StepIndex.of(path);
+
+        assertEquals(path.getFileName() + ".idx", sidecar.getFileName().toString());
+        assertTrue(Files.exists(sidecar));
+        assertIndexEquals(index, StepIndex.read(sidecar));
+        assertIndexEquals(index, StepIndex.of(path));
+    }
+
+    @Test
+    public void of_outOfDateSidecar() throws IOException {
+        Path path = write(FILE);
+        Path sidecar = StepIndex.sidecarPath(path);
+        StepIndex.build(write("ISO-10303-21;\nHEADER;\nENDSEC;\nDATA;\nENDSEC;\nEND-ISO-10303-21;\n".getBytes(
+                StandardCharsets.US_ASCII))).write(sidecar);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(sidecar).toMillis() + 1000));
+
+        StepIndex index = StepIndex.of(path);
+
+        assertEquals(48, index.size());
+        assertEquals(48, StepIndex.read(sidecar).size());
+    }
+
+    @Test
+    public void serializer_writesIndex() throws IOException {
+        IfcProject project = new StepReader().read(FILE).getProject();
+        Path path = folder.getRoot().toPath().resolve("project.ifc");
+        Serializer serializer = new Serializer();
+        serializer.setWritingIndex(true);
+
+        serializer.serialize(new Header(), project, path.toFile());
+
+        StepIndex expected = StepIndex.build(path);
+        assertIndexEquals(expected, serializer.getIndex());
+        assertIndexEquals(expected, StepIndex.read(StepIndex.sidecarPath(path)));
+        assertEquals(expected.getId("2KcxKeVfqHwhb6N5zdz5Bw"), serializer.getIndex().getId("2KcxKeVfqHwhb6N5zdz5Bw"));
+        assertEquals(expected.getId("2KcxKeVfqHwhb6N5zd1234"), serializer.getIndex().getId("2KcxKeVfqHwhb6N5zd1234"));
+    }
+
+    @Test
+    public void serializer_notWritingIndex() throws IOException {
+        IfcProject project = new StepReader().read(FILE).getProject();
+        Path path = folder.getRoot().toPath().resolve("project.ifc");
+        Serializer serializer = new Serializer();
+
+        serializer.serialize(new Header(), project, path.toFile());
+
+        assertNull(serializer.getIndex());
+        assertFalse(Files.exists(StepIndex.sidecarPath(path)));
+    }
+
+    @Test
+    public void open_withIndex() throws IOException {
+        Path path = write(FILE);
+        StepModel expected = new StepReader().read(FILE);
+
+        LazyStepModel model = new StepReader().open(path, StepIndex.of(path), 10);
+
+        assertEquals(expected.getHeader(), model.getHeader());
+        assertArrayEquals(expected.getIds(), model.getIds());
+        IfcWall wall = (IfcWall) model.getByGlobalId("2KcxKeVfqHwhb6N5zdz5Bw");
+        assertEquals(expected.get(35), wall);
+        assertSame(wall, model.get(35));
+        assertNull(model.getByGlobalId("2KcxKeVfqHwhb6N5zd0000"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void open_indexOfOtherFile() throws IOException {
+        StepIndex index = StepIndex.build(write(FILE));
+        new StepReader().open(write(StepReaderTest.HEADER.getBytes(StandardCharsets.UTF_8)), index, 10);
+    }
+}
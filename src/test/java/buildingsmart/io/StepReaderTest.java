@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.io;
+
+import buildingsmart.ifc.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StepReaderTest {
+    public static final String HEADER = "ISO-10303-21;\n" +
+            "HEADER;\n" +
+            "FILE_DESCRIPTION(('ViewDefinition[CoordinationView]'),'2;1');\n" +
+            "FILE_NAME('cylinder.ifc','2020-04-15T00:16:25',('Author'),('Organization'),'ifc-java 0.3.6','FreeCAD'," +
+            "'Authorizer');\n" +
+            "FILE_SCHEMA(('IFC2X3'));\n" +
+            "ENDSEC;\n";
+    /**
+     * The DATA section written by {@link Serializer} for the project of
+     * {@link SerializerTest}.
+     */
+    public static final String DATA = "DATA;\n" + "#1=IFCPERSON($,$,'',$,$,$,$,$);\n" +
+                "#2=IFCORGANIZATION($,'',$,$,$);\n" + "#3=IFCPERSONANDORGANIZATION(#1,#2,$);\n" +
+                "#4=IFCAPPLICATION(#2,'0.18 build 4 (GitTag)','FreeCAD','118df2cf_ed21_438e_a41');\n" +
+                "#5=IFCOWNERHISTORY(#3,#4,$,.ADDED.,$,#3,#4,1586902585);\n" + "#6=IFCCARTESIANPOINT((0.0,0.0,0.0));\n" +
+                "#7=IFCDIRECTION((0.0,0.0,1.0));\n" + "#8=IFCDIRECTION((1.0,0.0,0.0));\n" +
+                "#9=IFCAXIS2PLACEMENT3D(#6,#7,#8);\n" + "#10=IFCDIRECTION((0.0,1.0,0.0));\n" +
+                "#11=IFCGEOMETRICREPRESENTATIONCONTEXT('Plan','Model',3,0.00000001,#9,#10);\n" +
+                "#12=IFCSIUNIT(*,.LENGTHUNIT.,$,.METRE.);\n" + "#13=IFCSIUNIT(*,.AREAUNIT.,$,.SQUARE_METRE.);\n" +
+                "#14=IFCSIUNIT(*,.VOLUMEUNIT.,$,.CUBIC_METRE.);\n" + "#15=IFCDIMENSIONALEXPONENTS(0,0,0,0,0,0,0);\n" +
+                "#16=IFCSIUNIT(*,.PLANEANGLEUNIT.,$,.RADIAN.);\n" +
+                "#17=IFCMEASUREWITHUNIT(IFCPLANEANGLEMEASURE(0.01745329),#16);\n" +
+                "#18=IFCCONVERSIONBASEDUNIT(#15,.PLANEANGLEUNIT.,'DEGREE',#17);\n" +
+                "#19=IFCUNITASSIGNMENT((#12,#13,#14,#18));\n" +
+                "#20=IFCPROJECT('51f413ef_7964_4d38_b19',#5,'Unnamed',$,$,$,$,(#11),#19);\n" +
+                "#21=IFCSITE('2KdG88VfqHwfDCN5zdz5Bw',#5,'Default Site','',$,$,$,$,.ELEMENT.,$,$,$,$,$);\n" +
+                "#22=IFCRELAGGREGATES('2KdG89VfqHweGDN5zdz5Bw',#5,'ProjectLink','',#20,(#21));\n" +
+                "#23=IFCBUILDING('2KdHMSVfqHwfiJN5zdz5Bw',#5,'Default Building','',$,$,$,$,.ELEMENT.,$,$,$);\n" +
+                "#24=IFCRELAGGREGATES('2KdHMTVfqHwePlN5zdz5Bw',#5,'SiteLink','',#21,(#23));\n" +
+                "#25=IFCBUILDINGSTOREY('2KdHMUVfqHwg4XN5zdz5Bw',#5,'Default Storey','',$,$,$,$,.ELEMENT.,$);\n" +
+                "#26=IFCRELAGGREGATES('2KdHMVVfqHwhFMN5zdz5Bw',#5,'DefaultStoreyLink','',#23,(#25));\n" +
+                "#27=IFCLOCALPLACEMENT($,#9);\n" + "#28=IFCCARTESIANPOINT((0.0,0.0));\n" +
+                "#29=IFCDIRECTION((1.0,0.0));\n" + "#30=IFCAXIS2PLACEMENT2D(#28,#29);\n" +
+                "#31=IFCCIRCLEPROFILEDEF(.AREA.,$,#30,0.1);\n" + "#32=IFCEXTRUDEDAREASOLID(#31,#9,#7,0.1);\n" +
+                "#33=IFCSHAPEREPRESENTATION(#11,'Body','SweptSolid',(#32));\n" +
+                "#34=IFCPRODUCTDEFINITIONSHAPE($,$,(#33));\n" +
+                "#35=IFCWALL('2KcxKeVfqHwhb6N5zdz5Bw',#5,'Wall','',$,#27,#34,$);\n" + "#36=IFCLOCALPLACEMENT($,#9);\n" +
+                "#37=IFCAXIS2PLACEMENT3D(#6,#8,#10);\n" + "#38=IFCCIRCLE(#37,0.5);\n" +
+                "#39=IFCTRIMMEDCURVE(#38,(IFCPARAMETERVALUE(0.0)),(IFCPARAMETERVALUE(1.57079633)),.T.," +
+                ".PARAMETER.);\n" +
+                "#40=IFCSHAPEREPRESENTATION(#11,'Body','GeometricCurveSet',(#39));\n" +
+                "#41=IFCPRODUCTDEFINITIONSHAPE($,$,(#40));\n" +
+                "#42=IFCPROXY('2KcxKeVfqHwhb6N5zd1234',#5,'TrimmedCurve','',$,#36,#41,.PRODUCT.,$);\n" +
+                "#43=IFCRELCONTAINEDINSPATIALSTRUCTURE('2KdIamVfqHwf$aN5zdz5Bw',#5,'UnassignedObjectsLink','',(#35," +
+                "#42),#25);\n" +
+                "#44=IFCCOLOURRGB($,1.0,1.0,1.0);\n" + "#45=IFCSURFACESTYLERENDERING(#44,$,$,$,$,$,$,$,.FLAT.);\n" +
+                "#46=IFCSURFACESTYLE($,.BOTH.,(#45));\n" + "#47=IFCPRESENTATIONSTYLEASSIGNMENT((#46));\n" +
+                "#48=IFCSTYLEDITEM(#32,(#47),$);\n" + "ENDSEC;\n";
+
+    private static StepModel read(String data) {
+        return new StepReader().read((HEADER + data + "END-ISO-10303-21;\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String serialize(StepModel model) throws IOException {
+        StringWriter writer = new StringWriter();
+        new Serializer().serialize(new Header(), model.getProject(), writer, "");
+        String file = writer.toString();
+        return file.substring(file.indexOf("DATA;\n"), file.indexOf("END-ISO-10303-21;"));
+    }
+
+    @Test
+    public void read_serializedFile() throws IOException {
+        StepModel model = read(DATA);
+
+        assertEquals(48, model.size());
+        assertEquals(DATA, serialize(model));
+        assertEquals(4, model.getAll(IfcSIUnit.class).size());
+        assertEquals(3, model.getAll(IfcRelAggregates.class).size());
+        assertSame(model.getProject(), model.get(20));
+        assertNull(model.get(49));
+        assertTrue(model.getGlobalIdRegistry().contains(new IfcGloballyUniqueId("2KcxKeVfqHwhb6N5zdz5Bw")));
+    }
+
+    @Test
+    public void read_forwardReferences() throws IOException {
+        List<String> lines = new ArrayList<>(Arrays.asList(DATA.split("\n")));
+        List<String> instances = lines.subList(1, lines.size() - 1);
+        Collections.reverse(instances);
+        StepModel model = read(String.join("\n", lines) + "\n");
+
+        assertEquals(48, model.size());
+        assertEquals(DATA, serialize(model));
+        assertEquals(48, model.getIds()[0]);
+    }
+
+    @Test
+    public void read_header() throws IOException {
+        Header expected = new Header().setDescription("ViewDefinition[CoordinationView]")
+                .setFileName("cylinder.ifc")
+                .setTimeStamp("2020-04-15T00:16:25")
+                .setAuthor("Author")
+                .setOrganization("Organization")
+                .setOriginatingSystem("FreeCAD")
+                .setAuthorization("Authorizer");
+
+        StepModel model = new StepReader().read(new ByteArrayInputStream(
+                (HEADER + "DATA;\nENDSEC;\nEND-ISO-10303-21;\n").getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(expected, model.getHeader());
+        assertEquals(0, model.size());
+        assertNull(model.getProject());
+    }
+
+    @Test
+    public void read_stringsAndComments() throws IOException {
+        StepModel model = read("DATA;\n" +
+                                       "/* a comment; with a semicolon */\n" +
+                                       "#1 = IFCPERSON($,$,'It''s \\X2\\00F9\\X0\\ ; \\\\',$,$,$,$,$);\n" +
+                                       "#2=IFCORGANIZATION($,'Caf\u00e9',$,$,$);\n" +
+                                       "ENDSEC;\n");
+
+        IfcPerson person = model.getAll(IfcPerson.class).get(0);
+        assertEquals(IfcPerson.builder().givenName(new IfcLabel("It's \u00f9 ; \\")).build(), person);
+        assertEquals(IfcOrganization.builder().name(new IfcLabel("Caf\u00e9")).build(), model.get(2));
+    }
+
+    @Test
+    public void read_realsAndIntegers() {
+        StepModel model = read("DATA;\n" +
+                                       "#1=IFCCARTESIANPOINT((1.5E2,-0.25,3.));\n" +
+                                       "#2=IFCDIMENSIONALEXPONENTS(0,-1,2,0,0,0,+1);\n" +
+                                       "ENDSEC;\n");
+
+        assertEquals(new IfcCartesianPoint(150, -0.25, 3), model.get(1));
+        assertEquals(new IfcDimensionalExponents(0, -1, 2, 0, 0, 0, 1), model.get(2));
+    }
+
+    @Test
+    public void read_parallel() throws IOException {
+        StepReader reader = new StepReader().chunkSize(64);
+        String file = HEADER + DATA + "END-ISO-10303-21;\n";
+
+        StepModel model = reader.read(file.getBytes(StandardCharsets.UTF_8));
+        assertEquals(48, model.size());
+        assertEquals(DATA, serialize(model));
+        assertArrayEquals(read(DATA).getIds(), model.getIds());
+
+        List<String> lines = new ArrayList<>(Arrays.asList(DATA.split("\n")));
+        Collections.reverse(lines.subList(1, lines.size() - 1));
+        file = HEADER + String.join("\n", lines) + "\nEND-ISO-10303-21;\n";
+        assertEquals(DATA, serialize(reader.read(file.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void read_parallelSemicolonsInStrings() {
+        StringBuilder data = new StringBuilder("DATA;\n");
+        for (int i = 1; i <= 100; i++) {
+            data.append("#").append(i).append("=IFCORGANIZATION($,'").append(i).append("; #1=IFCWALL(;',")
+                    .append("/* ;;; */$,$,$);\n");
+        }
+        data.append("ENDSEC;\n");
+        String file = HEADER + data + "END-ISO-10303-21;\n";
+
+        StepModel model = new StepReader().chunkSize(16).read(file.getBytes(StandardCharsets.UTF_8));
+        assertEquals(100, model.size());
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(IfcOrganization.builder().name(new IfcLabel(i + "; #1=IFCWALL(;")).build(), model.get(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_parallelUndefinedReference() {
+        new StepReader().chunkSize(64).read((HEADER + DATA.replace("#9,#10)", "#9,#99)") + "END-ISO-10303-21;\n").getBytes(
+                StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_parallelUnterminatedInstance() {
+        new StepReader().chunkSize(64).read((HEADER + DATA.substring(0, DATA.length() - 20) + "\n").getBytes(
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void read_types() {
+        String data = DATA.replace("ENDSEC;", "#49=IFCUNKNOWN(1);\nENDSEC;");
+        StepModel model = new StepReader().types(IfcWall.class)
+                .read((HEADER + data + "END-ISO-10303-21;\n").getBytes(StandardCharsets.UTF_8));
+
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 27, 28, 29, 30, 31, 32, 33, 34, 35},
+                          model.getIds());
+        assertEquals(read(DATA).get(35), model.get(35));
+        assertNull(model.getProject());
+        assertTrue(model.getAll(IfcProxy.class).isEmpty());
+    }
+
+    @Test
+    public void read_cutTypes() {
+        StepModel model = new StepReader().types(IfcWall.class, IfcProxy.class)
+                .cutTypes(IfcShapeRepresentation.class)
+                .read((HEADER + DATA + "END-ISO-10303-21;\n").getBytes(StandardCharsets.UTF_8));
+
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 27, 35, 36, 42}, model.getIds());
+        IfcWall wall = (IfcWall) model.get(35);
+        assertSame(model.get(5), wall.getOwnerHistory());
+        assertNull(wall.getRepresentation());
+        assertSame(model.get(27), wall.getObjectPlacement());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_cutTypesInvalidInstance() {
+        // the product definition shape is wrong regardless of the skipped
+        // representation, so it isn't skipped with it
+        String data = DATA.replace("#34=IFCPRODUCTDEFINITIONSHAPE($,$,(#33));",
+                                   "#34=IFCPRODUCTDEFINITIONSHAPE($,$,(#33,#31));");
+        new StepReader().types(IfcWall.class)
+                .cutTypes(IfcShapeRepresentation.class)
+                .read((HEADER + data + "END-ISO-10303-21;\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void read_typesInParallel() throws IOException {
+        byte[] file = (HEADER + DATA + "END-ISO-10303-21;\n").getBytes(StandardCharsets.UTF_8);
+
+        StepModel model = new StepReader().chunkSize(64).types(IfcProduct.class).read(file);
+        StepModel expected = new StepReader().parallel(false).types(IfcProduct.class).read(file);
+        assertArrayEquals(expected.getIds(), model.getIds());
+        assertEquals(expected.get(42), model.get(42));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_undefinedReference() {
+        read("DATA;\n#1=IFCLOCALPLACEMENT($,#2);\nENDSEC;\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_cyclicReference() {
+        read("DATA;\n#1=IFCLOCALPLACEMENT(#2,#3);\n#2=IFCLOCALPLACEMENT(#1,#3);\n" +
+                     "#3=IFCAXIS2PLACEMENT3D(#4,$,$);\n#4=IFCCARTESIANPOINT((0.,0.,0.));\nENDSEC;\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_unknownEntity() {
+        read("DATA;\n#1=IFCUNKNOWN(1);\nENDSEC;\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_wrongType() {
+        read("DATA;\n#1=IFCCARTESIANPOINT((0.,0.,0.));\n#2=IFCLOCALPLACEMENT($,#1);\nENDSEC;\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_duplicateId() {
+        read("DATA;\n#1=IFCCARTESIANPOINT((0.,0.));\n#1=IFCCARTESIANPOINT((1.,0.));\nENDSEC;\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_unterminatedInstance() {
+        read("DATA;\n#1=IFCCARTESIANPOINT((0.,0.)\nENDSEC;\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void read_notStep() {
+        new StepReader().read("<ifc/>".getBytes(StandardCharsets.US_ASCII));
+    }
+}
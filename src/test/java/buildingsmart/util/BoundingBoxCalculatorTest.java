@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static buildingsmart.ifc.Fixtures.CONTEXT;
+import static org.junit.Assert.*;
+
+public class BoundingBoxCalculatorTest {
+    private static final double TOLERANCE = 1e-9;
+    private static IfcRectangleProfileDef rectangle(double x, double y) {
+        return Fixtures.rectangle(x, y, 1, 2);
+    }
+
+    private static IfcExtrudedAreaSolid box(double x, double y, double z) {
+        return Fixtures.extrude(rectangle(0, 0), new IfcAxis2Placement3D(x, y, z), 3);
+    }
+
+    @Test
+    public void box_extrudedAreaSolid() {
+        assertArrayEquals(new double[]{9.5, -1, 0, 10.5, 1, 3},
+                          new BoundingBoxCalculator().box(box(10, 0, 0)),
+                          TOLERANCE);
+    }
+
+    @Test
+    public void box_extrudedAreaSolid_slanted() {
+        IfcExtrudedAreaSolid solid = new IfcExtrudedAreaSolid(rectangle(0, 0),
+                                                              new IfcAxis2Placement3D(0, 0, 0),
+                                                              new IfcDirection(-1, 0, 1),
+                                                              new IfcPositiveLengthMeasure(Math.sqrt(2)));
+        assertArrayEquals(new double[]{-1.5, -1, 0, 0.5, 1, 1},
+                          new BoundingBoxCalculator().box(solid),
+                          TOLERANCE);
+    }
+
+    @Test
+    public void box_revolvedAreaSolid() {
+        IfcRevolvedAreaSolid solid = new IfcRevolvedAreaSolid(rectangle(3, 0),
+                                                              new IfcAxis2Placement3D(0, 0, 0),
+                                                              new IfcAxis1Placement(new IfcCartesianPoint(0, 0, 0),
+                                                                                    new IfcDirection(0, 1, 0)),
+                                                              new IfcPlaneAngleMeasure(Math.PI / 2));
+        assertArrayEquals(new double[]{-3.5, -1, -3.5, 3.5, 1, 3.5},
+                          new BoundingBoxCalculator().box(solid),
+                          TOLERANCE);
+    }
+
+    @Test
+    public void box_facetedBrep() {
+        IfcFacetedBrep brep = new IndexedMeshBuilder(new double[]{0, 0, 0, 1, 0, 0, 0, 2, 0, 0, 0, 3},
+                                                     new int[]{0, 2, 1, 0, 1, 3, 1, 2, 3, 0, 3, 2})
+                .buildFacetedBrep();
+        assertArrayEquals(new double[]{0, 0, 0, 1, 2, 3}, new BoundingBoxCalculator().box(brep), TOLERANCE);
+    }
+
+    @Test
+    public void box_booleanResult() {
+        BoundingBoxCalculator calculator = new BoundingBoxCalculator();
+        assertArrayEquals(new double[]{-0.5, -1, 0, 0.5, 1, 3},
+                          calculator.box(new IfcBooleanResult(IfcBooleanOperator.DIFFERENCE,
+                                                              box(0, 0, 0),
+                                                              box(0, 0, 1))),
+                          TOLERANCE);
+        assertArrayEquals(new double[]{-0.5, -1, 1, 0.5, 1, 3},
+                          calculator.box(new IfcBooleanResult(IfcBooleanOperator.INTERSECTION,
+                                                              box(0, 0, 0),
+                                                              box(0, 0, 1))),
+                          TOLERANCE);
+        assertArrayEquals(new double[]{-0.5, -1, 0, 0.5, 1, 4},
+                          calculator.box(new IfcBooleanResult(IfcBooleanOperator.UNION,
+                                                              box(0, 0, 0),
+                                                              box(0, 0, 1))),
+                          TOLERANCE);
+        assertNull(calculator.box(new IfcBooleanResult(IfcBooleanOperator.INTERSECTION,
+                                                       box(0, 0, 0),
+                                                       box(0, 0, 5))));
+    }
+
+    @Test
+    public void box_unbounded() {
+        BoundingBoxCalculator calculator = new BoundingBoxCalculator();
+        IfcHalfSpaceSolid halfSpace = new IfcHalfSpaceSolid(new IfcPlane(new IfcAxis2Placement3D(0, 0, 2)),
+                                                            IfcBoolean.F);
+        assertTrue(BoundingBoxCalculator.isUnbounded(calculator.box(halfSpace)));
+        IfcBooleanResult union = new IfcBooleanResult(IfcBooleanOperator.UNION, box(0, 0, 0), halfSpace);
+        assertTrue(BoundingBoxCalculator.isUnbounded(calculator.box(union)));
+        // an unbounded item isn't dropped from its representation
+        IfcShapeRepresentation representation = new IfcShapeRepresentation(CONTEXT,
+                                                                            new IfcLabel("Body"),
+                                                                            new IfcLabel("CSG"),
+                                                                            new IfcBooleanResult(
+                                                                                    IfcBooleanOperator.DIFFERENCE,
+                                                                                    box(10, 0, 0),
+                                                                                    box(10, 0, 1)),
+                                                                            union);
+        assertTrue(BoundingBoxCalculator.isUnbounded(calculator.box(representation)));
+        assertArrayEquals(new double[]{-0.5, -1, 0, 0.5, 1, 3},
+                          calculator.box(new IfcBooleanResult(IfcBooleanOperator.INTERSECTION,
+                                                              box(0, 0, 0),
+                                                              halfSpace)),
+                          TOLERANCE);
+        assertTrue(BoundingBoxCalculator.isUnbounded(
+                BoundingBoxCalculator.transform(calculator.box(halfSpace),
+                                                PlacementResolver.toTransform(new IfcAxis2Placement3D(1, 2, 3)))));
+    }
+
+    @Test
+    public void box_empty() {
+        BoundingBoxCalculator calculator = new BoundingBoxCalculator();
+        IfcBooleanResult disjoint = new IfcBooleanResult(IfcBooleanOperator.INTERSECTION,
+                                                         box(0, 0, 0),
+                                                         box(0, 0, 5));
+        assertNull(calculator.box(disjoint));
+        // an empty operand bounds an intersection instead of being unbounded
+        IfcHalfSpaceSolid halfSpace = new IfcHalfSpaceSolid(new IfcPlane(new IfcAxis2Placement3D(0, 0, 2)),
+                                                            IfcBoolean.F);
+        assertNull(calculator.box(new IfcBooleanResult(IfcBooleanOperator.INTERSECTION, disjoint, halfSpace)));
+        assertArrayEquals(new double[]{9.5, -1, 0, 10.5, 1, 3},
+                          calculator.box(new IfcBooleanResult(IfcBooleanOperator.UNION, disjoint, box(10, 0, 0))),
+                          TOLERANCE);
+        IfcShapeRepresentation representation = new IfcShapeRepresentation(CONTEXT,
+                                                                            new IfcLabel("Body"),
+                                                                            new IfcLabel("CSG"),
+                                                                            disjoint);
+        assertNull(calculator.box(representation));
+    }
+
+    @Test
+    public void box_mappedItem() {
+        IfcShapeRepresentation representation = Fixtures.body(box(0, 0, 0));
+        IfcRepresentationMap map = new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0), representation);
+        BoundingBoxCalculator calculator = new BoundingBoxCalculator();
+        for (int i = 0; i < 10; i++) {
+            IfcMappedItem item = new IfcMappedItem(map,
+                                                   new IfcCartesianTransformationOperator3D(null,
+                                                                                            null,
+                                                                                            new IfcCartesianPoint(
+                                                                                                    5 + i,
+                                                                                                    5,
+                                                                                                    5),
+                                                                                            new IfcReal(2),
+                                                                                            null));
+            assertArrayEquals(new double[]{4 + i, 3, 5, 6 + i, 7, 11}, calculator.box(item), TOLERANCE);
+        }
+        // the shared solid is computed only once
+        assertEquals(11, calculator.size());
+    }
+
+    @Test
+    public void worldBox_product() {
+        IfcShapeRepresentation representation = Fixtures.body(box(0, 0, 0));
+        IfcLocalPlacement placement = new IfcLocalPlacement(null,
+                                                            new IfcAxis2Placement3D(new IfcCartesianPoint(100, 0, 0),
+                                                                                    new IfcDirection(0, 0, 1),
+                                                                                    new IfcDirection(0, 1, 0)));
+        IfcProxy proxy = Fixtures.proxy("Proxy", placement, representation);
+        BoundingBoxCalculator calculator = new BoundingBoxCalculator();
+        assertArrayEquals(new double[]{-0.5, -1, 0, 0.5, 1, 3}, calculator.localBox(proxy), TOLERANCE);
+        assertArrayEquals(new double[]{99, -0.5, 0, 101, 0.5, 3}, calculator.worldBox(proxy), TOLERANCE);
+    }
+
+    @Test
+    public void worldBoxes_project() {
+        IfcLocalPlacement buildingPlacement = new IfcLocalPlacement(null, new IfcAxis2Placement3D(0, 0, 10));
+        List<IfcProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            proxies.add(Fixtures.proxy("Proxy" + i,
+                                       new IfcLocalPlacement(buildingPlacement, new IfcAxis2Placement3D(i, 0, 0)),
+                                       Fixtures.body(box(0, 0, 0))));
+        }
+        IfcProject project = Fixtures.project(buildingPlacement, proxies);
+
+        Map<IfcProduct, double[]> boxes = new BoundingBoxCalculator().worldBoxes(project);
+        assertEquals(30, boxes.size());
+        assertTrue(proxies.containsAll(boxes.keySet()));
+        boxes.forEach((product, box) -> {
+            double x = ((IfcLocalPlacement) product.getObjectPlacement()).getRelativePlacement()
+                    .getLocation().getCoordinates().get(0).getValue();
+            assertArrayEquals(new double[]{x - 0.5, -1, 10, x + 0.5, 1, 13}, box, TOLERANCE);
+        });
+    }
+
+    @Test
+    public void union_null() {
+        double[] box = {0, 0, 0, 1, 1, 1};
+        assertSame(box, BoundingBoxCalculator.union(null, box));
+        assertTrue(BoundingBoxCalculator.isUnbounded(
+                BoundingBoxCalculator.union(box,
+                                            new double[]{Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                                                    Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                                                    Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY})));
+        assertArrayEquals(new double[]{-1, 0, 0, 1, 2, 1},
+                          BoundingBoxCalculator.union(box, new double[]{-1, 1, 0, 0, 2, 0}),
+                          0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void box_unsupported() {
+        new BoundingBoxCalculator().box(Mockito.mock(IfcGeometricRepresentationItem.class));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.IfcCartesianPoint;
+import buildingsmart.ifc.IfcPolyLoop;
+import buildingsmart.ifc.IfcPolyline;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeferredValidationTest {
+
+    @Test
+    public void bind_defersChecks() {
+        DeferredValidation validation = new DeferredValidation();
+        try (DeferredValidation.Binding ignored = validation.bind()) {
+            new IfcPolyline(new IfcCartesianPoint(0, 0));
+            new IfcPolyLoop(new IfcCartesianPoint(0, 0), new IfcCartesianPoint(1, 0), new IfcCartesianPoint(0, 1));
+        }
+        assertNull(DeferredValidation.current());
+        assertEquals(2, validation.size());
+        try {
+            validation.validate();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("invalid IfcPolyline"));
+            assertEquals(0, e.getSuppressed().length);
+        }
+        assertEquals(0, validation.size());
+    }
+
+    @Test
+    public void validate_collectsAllFailures() {
+        DeferredValidation validation = new DeferredValidation();
+        try (DeferredValidation.Binding ignored = validation.bind()) {
+            for (int i = 0; i < 10; i++) {
+                new IfcPolyLoop(new IfcCartesianPoint(i, 0), new IfcCartesianPoint(1, 0), new IfcCartesianPoint(i, 0));
+            }
+        }
+        try {
+            validation.validate();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(9, e.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void validate_valid() {
+        DeferredValidation validation = new DeferredValidation();
+        try (DeferredValidation.Binding ignored = validation.bind()) {
+            new IfcPolyLoop(new IfcCartesianPoint(0, 0), new IfcCartesianPoint(1, 0), new IfcCartesianPoint(0, 1));
+        }
+        validation.validate();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unbound_checksImmediately() {
+        new IfcPolyline(new IfcCartesianPoint(0, 0));
+    }
+}
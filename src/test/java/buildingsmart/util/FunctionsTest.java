@@ -369,12 +369,14 @@ public class FunctionsTest {
                                         null);
         assertNull(Functions.ifcCorrectLocalPlacement(valid3DRelativePlacement,
                                                       new IfcGridPlacement() {
-                                                          /**
-                                                           * @return The MD5 digest of the serialization of this class.
-                                                           */
                                                           @Override
-                                                          protected byte[] getMd5() {
-                                                              return new byte[0];
+                                                          protected long getContentHashHigh() {
+                                                              return 0;
+                                                          }
+
+                                                          @Override
+                                                          protected long getContentHashLow() {
+                                                              return 0;
                                                           }
 
                                                           @Override
@@ -630,4 +632,31 @@ public class FunctionsTest {
                         .toArray(String[]::new);
         assertArrayEquals(expected, formatted);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void parseFromStepFile_revertsFormatForStepFile() {
+        @SuppressWarnings("UnnecessaryUnicodeEscape")
+        String[] unformatted = {"a\u00e8a\\",
+                                "'''",
+                                "a\\'b",
+                                "\u017c",
+                                "\nasdf\n",
+                                "",
+                                "\u24B7\u24C7\u24B6\u24C5",
+                                "\uD83C\uDF19"};
+        for (String value : unformatted) {
+            assertEquals(value, Functions.parseFromStepFile(Functions.formatForStepFile(value)));
+        }
+    }
+
+    @Test
+    public void parseFromStepFile_directives() {
+        assertEquals("\u00e8\u00e9", Functions.parseFromStepFile("\\PA\\\\S\\h\\X2\\00E9\\X0\\"));
+        assertEquals("\u017c\u017c", Functions.parseFromStepFile("\\X2\\017C017C\\X0\\"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseFromStepFile_unterminatedDirective() {
+        Functions.parseFromStepFile("\\X2\\017C");
+    }
+}
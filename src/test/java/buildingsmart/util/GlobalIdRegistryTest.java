@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.IfcApplication;
+import buildingsmart.ifc.IfcGloballyUniqueId;
+import buildingsmart.ifc.IfcIdentifier;
+import buildingsmart.ifc.IfcLabel;
+import buildingsmart.ifc.IfcOrganization;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class GlobalIdRegistryTest {
+
+    @Test
+    public void add_duplicates() {
+        try (GlobalIdRegistry registry = new GlobalIdRegistry()) {
+            IfcGloballyUniqueId guid = new IfcGloballyUniqueId();
+            assertTrue(registry.add(guid));
+            assertFalse(registry.add(new IfcGloballyUniqueId(guid.getValue())));
+            assertTrue(registry.add(new IfcGloballyUniqueId(0, 0)));
+            assertFalse(registry.add(new IfcGloballyUniqueId(0, 0)));
+            assertTrue(registry.add(new IfcGloballyUniqueId("51f413ef_7964_4d38_b19")));
+            assertFalse(registry.add(new IfcGloballyUniqueId("51f413ef_7964_4d38_b19")));
+            assertEquals(3, registry.size());
+        }
+    }
+
+    @Test
+    public void add_manyIdentifiers() {
+        try (GlobalIdRegistry registry = new GlobalIdRegistry()) {
+            for (long i = 1; i <= 100_000; i++) {
+                assertTrue(registry.add(new IfcGloballyUniqueId(i, -i)));
+            }
+            for (long i = 1; i <= 100_000; i++) {
+                assertTrue(registry.contains(new IfcGloballyUniqueId(i, -i)));
+            }
+            assertFalse(registry.contains(new IfcGloballyUniqueId(0, 1)));
+            assertEquals(100_000, registry.size());
+            registry.clear();
+            assertEquals(0, registry.size());
+        }
+    }
+
+    @Test
+    public void add_concurrently() throws Exception {
+        int threads = 8;
+        int idsPerThread = 20_000;
+        AtomicInteger added = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (GlobalIdRegistry registry = new GlobalIdRegistry()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    // every thread tries to add the same identifiers
+                    for (long i = 0; i < idsPerThread; i++) {
+                        if (registry.add(new IfcGloballyUniqueId(i * 31, i))) {
+                            added.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(idsPerThread, added.get());
+            assertEquals(idsPerThread, registry.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void addUnique_applicationsOfDifferentModels() {
+        IfcOrganization developer = IfcOrganization.builder().name(new IfcLabel("")).build();
+        for (int i = 0; i < 2; i++) {
+            try (GlobalIdRegistry registry = new GlobalIdRegistry();
+                 GlobalIdRegistry.Binding ignored = registry.bind()) {
+                new IfcApplication(developer,
+                                   new IfcLabel("1"),
+                                   new IfcLabel("registry"),
+                                   new IfcIdentifier("registry"));
+                assertFalse(registry.addUnique(Arrays.asList("applicationIdentifier",
+                                                             new IfcIdentifier("registry"))));
+                assertTrue(registry.addUnique(Arrays.asList("applicationIdentifier",
+                                                            new IfcIdentifier("other"))));
+            }
+        }
+    }
+
+    @Test
+    public void addUnique_rejectedApplicationNotAdded() {
+        IfcOrganization developer = IfcOrganization.builder().name(new IfcLabel("")).build();
+        try (GlobalIdRegistry registry = new GlobalIdRegistry();
+             GlobalIdRegistry.Binding ignored = registry.bind()) {
+            new IfcApplication(developer, new IfcLabel("1"), new IfcLabel("rejected"), new IfcIdentifier("first"));
+            try {
+                new IfcApplication(developer,
+                                   new IfcLabel("1"),
+                                   new IfcLabel("rejected"),
+                                   new IfcIdentifier("second"));
+                fail("the combination of applicationFullName and version was already used");
+            } catch (IllegalArgumentException expected) {
+            }
+            // the identifier of the rejected application is still available
+            assertFalse(registry.containsUnique(Arrays.asList("applicationIdentifier",
+                                                              new IfcIdentifier("second"))));
+            new IfcApplication(developer, new IfcLabel("2"), new IfcLabel("rejected"), new IfcIdentifier("second"));
+        }
+    }
+
+    @Test
+    public void addUnique_applicationsConcurrently() throws Exception {
+        int threads = 8;
+        int applicationsPerThread = 2_000;
+        IfcOrganization developer = IfcOrganization.builder().name(new IfcLabel("")).build();
+        AtomicInteger created = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (GlobalIdRegistry registry = new GlobalIdRegistry()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    try (GlobalIdRegistry.Binding ignored = registry.bind()) {
+                        // every thread tries to create the same applications
+                        for (int i = 0; i < applicationsPerThread; i++) {
+                            try {
+                                new IfcApplication(developer,
+                                                   new IfcLabel("1"),
+                                                   new IfcLabel("concurrent" + i),
+                                                   new IfcIdentifier("concurrent" + i));
+                                created.incrementAndGet();
+                            } catch (IllegalArgumentException expected) {
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(applicationsPerThread, created.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void addUnique_applicationsWithoutRegistry() {
+        IfcOrganization developer = IfcOrganization.builder().name(new IfcLabel("")).build();
+        // not checked at all when no registry is bound
+        new IfcApplication(developer, new IfcLabel("1"), new IfcLabel("unbound"), new IfcIdentifier("unbound"));
+        new IfcApplication(developer, new IfcLabel("1"), new IfcLabel("unbound"), new IfcIdentifier("unbound"));
+        GlobalIdRegistry.setGlobalCompatibility(true);
+        try {
+            IfcApplication.clearUniqueConstraint();
+            new IfcApplication(developer, new IfcLabel("1"), new IfcLabel("global"), new IfcIdentifier("global"));
+            try {
+                new IfcApplication(developer, new IfcLabel("2"), new IfcLabel("global"), new IfcIdentifier("global"));
+                fail("applicationIdentifier was already used");
+            } catch (IllegalArgumentException expected) {
+            }
+        } finally {
+            IfcApplication.clearUniqueConstraint();
+            GlobalIdRegistry.setGlobalCompatibility(false);
+        }
+    }
+
+    @Test
+    public void bind_nested() {
+        assertNull(GlobalIdRegistry.current());
+        try (GlobalIdRegistry outer = new GlobalIdRegistry();
+             GlobalIdRegistry inner = new GlobalIdRegistry()) {
+            try (GlobalIdRegistry.Binding ignored = outer.bind()) {
+                assertSame(outer, GlobalIdRegistry.current());
+                try (GlobalIdRegistry.Binding ignored2 = inner.bind()) {
+                    assertSame(inner, GlobalIdRegistry.current());
+                }
+                assertSame(outer, GlobalIdRegistry.current());
+            }
+        }
+        assertNull(GlobalIdRegistry.current());
+    }
+
+    @Test
+    public void current_globalCompatibility() {
+        GlobalIdRegistry.setGlobalCompatibility(true);
+        try {
+            assertSame(GlobalIdRegistry.getGlobal(), GlobalIdRegistry.current());
+        } finally {
+            GlobalIdRegistry.setGlobalCompatibility(false);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void add_closed() {
+        GlobalIdRegistry registry = new GlobalIdRegistry();
+        registry.close();
+        registry.add(new IfcGloballyUniqueId());
+    }
+}
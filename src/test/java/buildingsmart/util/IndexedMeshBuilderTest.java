@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class IndexedMeshBuilderTest {
+    /**
+     * The vertices of a tetrahedron.
+     */
+    private static final double[] VERTICES = {0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1};
+    private static final int[] INDICES = {0, 2, 1, 0, 1, 3, 1, 2, 3, 0, 3, 2};
+
+    @Test
+    public void buildFaces_sharesPoints() {
+        Set<IfcFace> faces = new IndexedMeshBuilder(VERTICES, INDICES).buildFaces();
+        assertEquals(4, faces.size());
+        Set<IfcCartesianPoint> points = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (IfcFace face : faces) {
+            for (IfcFaceBound bound : face.getBounds()) {
+                assertTrue(bound instanceof IfcFaceOuterBound);
+                points.addAll(((IfcPolyLoop) bound.getBound()).getPolygon());
+            }
+        }
+        assertEquals(4, points.size());
+    }
+
+    @Test
+    public void buildFaces_skipsDuplicateFaces() {
+        int[] indices = {0, 2, 1, 0, 1, 3, 0, 2, 1};
+        assertEquals(2, new IndexedMeshBuilder(VERTICES, indices).buildFaces().size());
+    }
+
+    @Test
+    public void buildFaces_weldsWithPointPool() {
+        double[] vertices = {0, 0, 0, 1, 0, 0, 0, 1, 0, 1, 0, 0};
+        int[] indices = {0, 1, 2, 0, 3, 2};
+        // the second face is the same as the first one once vertices are welded
+        assertEquals(1, new IndexedMeshBuilder(vertices, indices).pointPool(new PointPool()).buildFaces().size());
+    }
+
+    @Test
+    public void buildFaces_weldsDuplicateCoordinates() {
+        double[] vertices = {0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1};
+        int[] indices = {0, 1, 2, 3, 4, 5, 0, 1, 6};
+        Set<IfcFace> faces = new IndexedMeshBuilder(vertices, indices).buildFaces();
+        // the second face has the same coordinates as the first one
+        assertEquals(2, faces.size());
+        assertEquals(2, new HashSet<>(faces).size());
+        Set<IfcCartesianPoint> points = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (IfcFace face : faces) {
+            points.addAll(((IfcPolyLoop) face.getBounds().iterator().next().getBound()).getPolygon());
+        }
+        assertEquals(4, points.size());
+        IfcFacetedBrep streaming = new IndexedMeshBuilder(vertices, indices).buildStreamingFacetedBrep();
+        assertEquals(2, streaming.getOuter().getCfsFaces().size());
+    }
+
+    @Test
+    public void buildFaces_withHoles() {
+        double[] vertices = {0, 0, 0, 4, 0, 0, 4, 4, 0, 0, 4, 0, 1, 1, 0, 1, 2, 0, 2, 2, 0, 2, 1, 0};
+        int[] indices = {0, 1, 2, 3, 4, 5, 6, 7};
+        Set<IfcFace> faces = new IndexedMeshBuilder(vertices, indices)
+                .loopSizes(new int[]{4, 4})
+                .boundsPerFace(new int[]{2})
+                .buildFaces();
+        assertEquals(1, faces.size());
+        Set<IfcFaceBound> bounds = faces.iterator().next().getBounds();
+        assertEquals(2, bounds.size());
+        assertEquals(1, bounds.stream().filter(bound -> bound instanceof IfcFaceOuterBound).count());
+    }
+
+    @Test
+    public void buildStreamingFacetedBrep_equalsMaterialized() {
+        IfcFacetedBrep streaming = new IndexedMeshBuilder(VERTICES, INDICES).buildStreamingFacetedBrep();
+        IfcFacetedBrep materialized = new IndexedMeshBuilder(VERTICES, INDICES).buildFacetedBrep();
+        assertEquals(materialized, streaming);
+        assertEquals(materialized.hashCode(), streaming.hashCode());
+        assertEquals(streaming, streaming);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void buildFaces_indexOutOfRange() {
+        new IndexedMeshBuilder(VERTICES, new int[]{0, 1, 4}).buildFaces();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void buildFaces_wrongLoopSizes() {
+        new IndexedMeshBuilder(VERTICES, INDICES).loopSizes(new int[]{3, 3}).buildFaces();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void buildFaces_notTriangles() {
+        new IndexedMeshBuilder(VERTICES, new int[]{0, 1, 2, 3}).buildFaces();
+    }
+}
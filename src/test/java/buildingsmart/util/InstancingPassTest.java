@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InstancingPassTest {
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * @return A new instance of the geometry of a box with the given height.
+     */
+    private static IfcExtrudedAreaSolid box(double height) {
+        return Fixtures.box(1, 2, height);
+    }
+
+    private static void paint(IfcRepresentationItem item, double red) {
+        IfcSurfaceStyleRendering rendering = IfcSurfaceStyleRendering.builder()
+                .surfaceColour(new IfcColourRgb(null, red, 0, 0))
+                .reflectanceMethod(IfcReflectanceMethodEnum.FLAT)
+                .build();
+        new IfcStyledItem(item,
+                          new IfcPresentationStyleAssignment(new IfcSurfaceStyle(null,
+                                                                                 IfcSurfaceSide.BOTH,
+                                                                                 rendering)),
+                          null);
+    }
+
+    private static IfcProxy proxy(int index, IfcRepresentationItem... items) {
+        return Fixtures.proxy("Proxy" + index, index, Fixtures.body(items));
+    }
+
+    /**
+     * @return A table whose legs and top are positioned in the coordinate
+     * system of its product as if it were placed in (x, y) and, if
+     * {@code rotated}, turned by 90 degrees around the Z axis.
+     */
+    private static IfcRepresentationItem[] table(double x, double y, boolean rotated) {
+        IfcProfileDef leg = Fixtures.rectangle(0, 0, 0.1, 0.1);
+        IfcProfileDef top = Fixtures.rectangle(0, 0, 2, 1);
+        double[][] offsets = {{-0.9, -0.4, 0}, {0.9, -0.4, 0}, {0.9, 0.4, 0}, {-0.9, 0.4, 0}, {0, 0, 0.7}};
+        IfcRepresentationItem[] items = new IfcRepresentationItem[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            double dx = rotated ? -offsets[i][1] : offsets[i][0];
+            double dy = rotated ? offsets[i][0] : offsets[i][1];
+            IfcAxis2Placement3D position = new IfcAxis2Placement3D(new IfcCartesianPoint(x + dx, y + dy, offsets[i][2]),
+                                                                   new IfcDirection(0, 0, 1),
+                                                                   new IfcDirection(rotated ? 0 : 1, rotated ? 1 : 0, 0));
+            items[i] = i < 4 ? Fixtures.extrude(leg, position, 0.7) : Fixtures.extrude(top, position, 0.05);
+        }
+        return items;
+    }
+
+    private static IfcRepresentationItem onlyItem(IfcProduct product) {
+        IfcRepresentation representation = product.getRepresentation().getRepresentations().get(0);
+        assertEquals(1, representation.getItems().size());
+        return representation.getItems().iterator().next();
+    }
+
+    @Test
+    public void run_sharesIdenticalRepresentations() {
+        List<IfcProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            proxies.add(proxy(i, box(i < 15 ? 3 : 4)));
+        }
+        IfcProxy unique = proxy(20, box(5));
+        proxies.add(unique);
+        IfcProject project = Fixtures.project(proxies.toArray(new IfcProduct[0]));
+
+        InstancingPass.Report report = new InstancingPass().measureOutput(true).run(project);
+        assertEquals(2, report.getGroups());
+        assertEquals(20, report.getMappedRepresentations());
+        assertTrue(report.getReleasedEntities() > 0);
+        assertTrue(report.isMeasured());
+
+        IfcMappedItem first = (IfcMappedItem) onlyItem(proxies.get(0));
+        for (int i = 1; i < 15; i++) {
+            assertSame(first, onlyItem(proxies.get(i)));
+        }
+        IfcMappedItem tall = (IfcMappedItem) onlyItem(proxies.get(15));
+        assertNotSame(first.getMappingSource(), tall.getMappingSource());
+        assertEquals(new IfcLabel("MappedRepresentation"),
+                     proxies.get(0).getRepresentation().getRepresentations().get(0).getRepresentationType());
+        assertEquals(box(3), first.getMappingSource().getMappedRepresentation().getItems().iterator().next());
+        assertTrue(onlyItem(unique) instanceof IfcExtrudedAreaSolid);
+    }
+
+    @Test
+    public void run_sharesRepresentationsPlacedDifferently() {
+        List<IfcProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // the geometry is positioned in the coordinate system of the
+            // product instead of being placed by the product
+            proxies.add(proxy(i, table(i * 3, 5, i == 9)));
+        }
+        IfcProject project = Fixtures.project(proxies.toArray(new IfcProduct[0]));
+        BoundingBoxCalculator calculator = new BoundingBoxCalculator();
+        List<double[]> boxes = new ArrayList<>();
+        for (IfcProxy proxy : proxies) {
+            boxes.add(calculator.localBox(proxy));
+        }
+
+        InstancingPass.Report report = new InstancingPass().measureOutput(true).run(project);
+        assertEquals(1, report.getGroups());
+        assertEquals(10, report.getMappedRepresentations());
+        assertTrue(report.getSavedEntities() > 0);
+        assertTrue(report.getSavedBytes() > 0);
+
+        IfcRepresentationMap map = ((IfcMappedItem) onlyItem(proxies.get(0))).getMappingSource();
+        assertEquals(5, map.getMappedRepresentation().getItems().size());
+        calculator = new BoundingBoxCalculator();
+        for (int i = 0; i < proxies.size(); i++) {
+            IfcMappedItem mappedItem = (IfcMappedItem) onlyItem(proxies.get(i));
+            assertSame(map, mappedItem.getMappingSource());
+            assertArrayEquals(boxes.get(i), calculator.localBox(proxies.get(i)), TOLERANCE);
+        }
+        IfcCartesianTransformationOperator rotated = ((IfcMappedItem) onlyItem(proxies.get(9))).getMappingTarget();
+        assertNotNull(rotated.getAxis1());
+        assertNull(((IfcMappedItem) onlyItem(proxies.get(1))).getMappingTarget().getAxis1());
+    }
+
+    @Test
+    public void run_boundPrecision() {
+        List<IfcProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            IfcRepresentationItem[] items = table(i * 3, 5, false);
+            // the tops are within a centimetre of each other
+            items[4] = Fixtures.extrude(Fixtures.rectangle(0, 0, 2, 1),
+                                        new IfcAxis2Placement3D(i * 3, 5, 0.7 + 0.001 * (i % 3)),
+                                        0.05);
+            proxies.add(proxy(i, items));
+        }
+        IfcProject project = Fixtures.project(proxies.toArray(new IfcProduct[0]));
+
+        // the candidates are fingerprinted by other threads, which must use
+        // the precision of the thread running the pass
+        InstancingPass.Report report;
+        try (Precision.Binding ignored = new Precision(0.01).bind()) {
+            report = new InstancingPass().run(project);
+        }
+        assertEquals(1, report.getGroups());
+        assertEquals(60, report.getMappedRepresentations());
+    }
+
+    @Test
+    public void run_keepsDifferentArrangements() {
+        IfcRepresentationItem[] moved = table(0, 0, false);
+        moved[4] = Fixtures.extrude(Fixtures.rectangle(0, 0, 2, 1), new IfcAxis2Placement3D(0, 0, 0.8), 0.05);
+        List<IfcProxy> proxies = new ArrayList<>();
+        proxies.add(proxy(0, table(0, 0, false)));
+        proxies.add(proxy(1, table(4, 0, false)));
+        proxies.add(proxy(2, moved));
+        InstancingPass.Report report = new InstancingPass().run(Fixtures.project(proxies.toArray(new IfcProduct[0])));
+        assertEquals(1, report.getGroups());
+        assertEquals(2, report.getMappedRepresentations());
+        assertEquals(5, proxies.get(2).getRepresentation().getRepresentations().get(0).getItems().size());
+    }
+
+    @Test
+    public void run_keepsDifferentStyles() {
+        List<IfcProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            IfcExtrudedAreaSolid box = box(3);
+            paint(box, i % 2);
+            proxies.add(proxy(i, box));
+        }
+        InstancingPass.Report report = new InstancingPass().run(Fixtures.project(proxies.toArray(new IfcProduct[0])));
+        assertEquals(2, report.getGroups());
+        assertFalse(report.isMeasured());
+        assertNotSame(((IfcMappedItem) onlyItem(proxies.get(0))).getMappingSource(),
+                      ((IfcMappedItem) onlyItem(proxies.get(1))).getMappingSource());
+        assertSame(onlyItem(proxies.get(0)), onlyItem(proxies.get(2)));
+    }
+
+    @Test
+    public void run_minimumGroupSize() {
+        List<IfcProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            proxies.add(proxy(i, box(3)));
+        }
+        InstancingPass.Report report = new InstancingPass().minimumGroupSize(4).run(Fixtures.project(proxies.toArray(new IfcProduct[0])));
+        assertEquals(0, report.getGroups());
+        assertTrue(onlyItem(proxies.get(0)) instanceof IfcExtrudedAreaSolid);
+    }
+
+    @Test
+    public void run_mappedRepresentationsAreNotMappedAgain() {
+        List<IfcProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            proxies.add(proxy(i, box(3)));
+        }
+        IfcProject project = Fixtures.project(proxies.toArray(new IfcProduct[0]));
+        assertEquals(1, new InstancingPass().run(project).getGroups());
+        assertEquals(0, new InstancingPass().run(project).getGroups());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minimumGroupSize_tooSmall() {
+        new InstancingPass().minimumGroupSize(1);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.IfcProject;
+import buildingsmart.ifc.IfcRoot;
+import buildingsmart.io.StepModel;
+import buildingsmart.io.StepReader;
+import buildingsmart.io.StepReaderTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ModelDiffTest {
+    private static final String WALL = "2KcxKeVfqHwhb6N5zdz5Bw";
+    private static final String PROXY = "2KcxKeVfqHwhb6N5zd1234";
+    private static final String CONTAINMENT = "2KdIamVfqHwf$aN5zdz5Bw";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] file(String data) {
+        return (StepReaderTest.HEADER + data + "END-ISO-10303-21;\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static IfcProject read(String data) {
+        return new StepReader().read(file(data)).getProject();
+    }
+
+    private static List<String> globalIds(List<?> entities) {
+        return entities.stream()
+                .map(entity -> entity instanceof ModelDiff.Change ? ((ModelDiff.Change) entity).getAfter() : entity)
+                .map(entity -> ((IfcRoot) entity).getGlobalId().getValue())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void compare_sameModel() {
+        ModelDiff.Result result = new ModelDiff().compare(read(StepReaderTest.DATA), read(StepReaderTest.DATA));
+
+        assertTrue(result.isEmpty());
+        assertEquals(10, result.getUnchanged());
+    }
+
+    @Test
+    public void compare_changedAttribute() {
+        String changed = StepReaderTest.DATA.replace("#5,'Wall',", "#5,'Wall 2',");
+
+        ModelDiff.Result result = new ModelDiff().compare(read(StepReaderTest.DATA), read(changed));
+
+        assertEquals(List.of(WALL), globalIds(result.getChanged()));
+        assertEquals("Wall", result.getChanged().get(0).getBefore().getName().getValue());
+        assertTrue(result.getAdded().isEmpty());
+        assertTrue(result.getRemoved().isEmpty());
+        assertEquals(9, result.getUnchanged());
+    }
+
+    @Test
+    public void compare_changedReferencedEntity() {
+        String changed = StepReaderTest.DATA.replace("#38=IFCCIRCLE(#37,0.5);", "#38=IFCCIRCLE(#37,0.75);");
+
+        ModelDiff.Result result = new ModelDiff().compare(read(StepReaderTest.DATA), read(changed));
+
+        assertEquals(List.of(PROXY), globalIds(result.getChanged()));
+    }
+
+    @Test
+    public void compare_setOrder() {
+        String reordered = StepReaderTest.DATA.replace("(#35,#42),#25)", "(#42,#35),#25)");
+
+        assertTrue(new ModelDiff().compare(read(StepReaderTest.DATA), read(reordered)).isEmpty());
+    }
+
+    @Test
+    public void compare_addedAndRemoved() {
+        String changed = StepReaderTest.DATA.replace(PROXY, "2KcxKeVfqHwhb6N5zd5678");
+
+        ModelDiff.Result result = new ModelDiff().compare(read(StepReaderTest.DATA), read(changed));
+
+        assertEquals(List.of("2KcxKeVfqHwhb6N5zd5678"), globalIds(result.getAdded()));
+        assertEquals(List.of(PROXY), globalIds(result.getRemoved()));
+        // the containment references the proxy by globalId
+        assertEquals(List.of(CONTAINMENT), globalIds(result.getChanged()));
+        assertEquals(8, result.getUnchanged());
+    }
+
+    @Test
+    public void compare_files() throws IOException {
+        Path before = folder.newFile().toPath();
+        Path after = folder.newFile().toPath();
+        Files.write(before, file(StepReaderTest.DATA));
+        Files.write(after, file(StepReaderTest.DATA.replace("#5,'Wall',", "#5,'Wall 2',")));
+
+        ModelDiff.Result result = new ModelDiff().compare(before, after);
+
+        assertEquals(List.of(WALL), globalIds(result.getChanged()));
+        assertEquals("added=0, removed=0, changed=1, unchanged=9", result.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compare_duplicateGlobalId() {
+        StepModel first = new StepReader().read(file(StepReaderTest.DATA));
+        StepModel second = new StepReader().read(file(StepReaderTest.DATA));
+
+        new ModelDiff().compare(List.of((IfcRoot) first.get(35), (IfcRoot) second.get(35)), List.of());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlacementResolverTest {
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    public void resolve_null() {
+        assertArrayEquals(new double[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0},
+                          new PlacementResolver().resolve((IfcObjectPlacement) null),
+                          TOLERANCE);
+    }
+
+    @Test
+    public void resolve_chain() {
+        // rotated by 90 degrees around Z and translated
+        IfcLocalPlacement parent = new IfcLocalPlacement(null,
+                                                         new IfcAxis2Placement3D(new IfcCartesianPoint(10, 0, 0),
+                                                                                 new IfcDirection(0, 0, 1),
+                                                                                 new IfcDirection(0, 1, 0)));
+        IfcLocalPlacement child = new IfcLocalPlacement(parent, new IfcAxis2Placement3D(1, 2, 3));
+        double[] transform = new PlacementResolver().resolve(child);
+
+        assertArrayEquals(new double[]{0, -1, 0, 8, 1, 0, 0, 1, 0, 0, 1, 3}, transform, TOLERANCE);
+        assertArrayEquals(new double[]{8, 1, 3}, PlacementResolver.transformPoint(transform, 0, 0, 0), TOLERANCE);
+        assertArrayEquals(new double[]{8, 0, 4}, PlacementResolver.transformPoint(transform, -1, 0, 1), TOLERANCE);
+    }
+
+    @Test
+    public void resolve_2D() {
+        IfcLocalPlacement placement = new IfcLocalPlacement(null,
+                                                            new IfcAxis2Placement2D(new IfcCartesianPoint(1, 2),
+                                                                                    new IfcDirection(0, 1)));
+        assertArrayEquals(new double[]{0, -1, 0, 1, 1, 0, 0, 2, 0, 0, 1, 0},
+                          new PlacementResolver().resolve(placement),
+                          TOLERANCE);
+    }
+
+    @Test
+    public void resolve_memoizesParents() {
+        PlacementResolver resolver = new PlacementResolver();
+        IfcLocalPlacement storey = new IfcLocalPlacement(new IfcLocalPlacement(null, new IfcAxis2Placement3D(0, 0, 1)),
+                                                         new IfcAxis2Placement3D(0, 0, 3));
+        for (int i = 1; i <= 100; i++) {
+            resolver.resolve(new IfcLocalPlacement(storey, new IfcAxis2Placement3D(i, 0, 0)));
+        }
+        assertEquals(102, resolver.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void resolve_gridPlacement() {
+        new PlacementResolver().resolve(Mockito.mock(IfcGridPlacement.class));
+    }
+
+    @Test
+    public void toMatrix4() {
+        assertArrayEquals(new double[]{1, 0, 0, 5, 0, 1, 0, 6, 0, 0, 1, 7, 0, 0, 0, 1},
+                          PlacementResolver.toMatrix4(new double[]{1, 0, 0, 5, 0, 1, 0, 6, 0, 0, 1, 7}),
+                          0);
+    }
+
+    @Test
+    public void resolveAll() {
+        IfcOwnerHistory ownerHistory = Fixtures.OWNER_HISTORY;
+        IfcProject project = IfcProject.builder()
+                .globalId(new IfcGloballyUniqueId())
+                .ownerHistory(ownerHistory)
+                .name(new IfcLabel("Project"))
+                .representationContext(Fixtures.CONTEXT)
+                .unitsInContext(new IfcUnitAssignment(new IfcSIUnit(IfcUnitEnum.LENGTHUNIT,
+                                                                    null,
+                                                                    IfcSIUnitName.METRE)))
+                .build();
+        IfcLocalPlacement buildingPlacement = new IfcLocalPlacement(null, new IfcAxis2Placement3D(0, 0, 0));
+        IfcBuilding building = IfcBuilding.builder()
+                .globalId(new IfcGloballyUniqueId())
+                .ownerHistory(ownerHistory)
+                .objectPlacement(buildingPlacement)
+                .compositionType(IfcElementCompositionEnum.ELEMENT)
+                .build();
+        IfcRelAggregates.builder()
+                .globalId(new IfcGloballyUniqueId())
+                .ownerHistory(ownerHistory)
+                .relatingObject(project)
+                .relatedObject(building)
+                .build();
+        IfcLocalPlacement storeyPlacement = new IfcLocalPlacement(buildingPlacement, new IfcAxis2Placement3D(0, 0, 3));
+        IfcBuildingStorey storey = IfcBuildingStorey.builder()
+                .globalId(new IfcGloballyUniqueId())
+                .ownerHistory(ownerHistory)
+                .objectPlacement(storeyPlacement)
+                .compositionType(IfcElementCompositionEnum.ELEMENT)
+                .build();
+        IfcRelAggregates.builder()
+                .globalId(new IfcGloballyUniqueId())
+                .ownerHistory(ownerHistory)
+                .relatingObject(building)
+                .relatedObject(storey)
+                .build();
+        IfcRelContainedInSpatialStructure.IfcRelContainedInSpatialStructureBuilder containment =
+                IfcRelContainedInSpatialStructure.builder()
+                        .globalId(new IfcGloballyUniqueId())
+                        .ownerHistory(ownerHistory)
+                        .relatingStructure(storey);
+        for (int i = 0; i < 50; i++) {
+            containment.relatedElement(Fixtures.proxy("Proxy" + i,
+                                                      new IfcLocalPlacement(storeyPlacement,
+                                                                            new IfcAxis2Placement3D(i, 0, 0)),
+                                                      null));
+        }
+        containment.build();
+
+        Map<IfcProduct, double[]> transforms = new PlacementResolver().resolveAll(project);
+        assertEquals(52, transforms.size());
+        assertArrayEquals(new double[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 3}, transforms.get(storey), TOLERANCE);
+        transforms.forEach((product, transform) -> {
+            if (product != storey && product != building) {
+                double x = ((IfcLocalPlacement) product.getObjectPlacement()).getRelativePlacement()
+                        .getLocation().getCoordinates().get(0).getValue();
+                assertArrayEquals(new double[]{x, 0, 3},
+                                  PlacementResolver.transformPoint(transform, 0, 0, 0),
+                                  TOLERANCE);
+            }
+        });
+    }
+
+    @Test
+    public void collectProducts_inContainmentOrder() {
+        List<IfcProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            proxies.add(Fixtures.proxy("Proxy" + i, i, null));
+        }
+        IfcProject project = Fixtures.project(proxies.toArray(new IfcProduct[0]));
+
+        List<IfcProduct> products = new ArrayList<>(PlacementResolver.collectProducts(project));
+        assertEquals(51, products.size());
+        assertTrue(products.get(0) instanceof IfcBuilding);
+        assertEquals(proxies, products.subList(1, products.size()));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.IfcCartesianPoint;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PointPoolTest {
+
+    @Test
+    public void get_weldsWithinTolerance() {
+        PointPool pool = new PointPool(0.001);
+        IfcCartesianPoint point = pool.get(1, 2, 3);
+        assertSame(point, pool.get(1.0009, 1.9991, 3));
+        assertNotSame(point, pool.get(1.002, 2, 3));
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void get_acrossCellBoundaries() {
+        PointPool pool = new PointPool(0.01);
+        IfcCartesianPoint point = pool.get(0.0099, 0, 0);
+        assertSame(point, pool.get(0.0101, -0.001, 0.001));
+        assertSame(point, pool.get(new IfcCartesianPoint(0.01, 0, 0)));
+    }
+
+    @Test
+    public void get_differentDimensionality() {
+        PointPool pool = new PointPool(0.01);
+        assertNotSame(pool.get(1, 1), pool.get(1, 1, 0));
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void get_existingPoint() {
+        PointPool pool = new PointPool();
+        IfcCartesianPoint point = new IfcCartesianPoint(5, 6, 7);
+        assertSame(point, pool.get(point));
+        assertSame(point, pool.get(5, 6, 7));
+    }
+
+    @Test
+    public void get_zeroTolerance() {
+        PointPool pool = new PointPool(0);
+        IfcCartesianPoint point = pool.get(0.5, 0.25, 0);
+        assertSame(point, pool.get(0.5, 0.25, -0d));
+        assertNotSame(point, pool.get(0.5, 0.25, 1e-12));
+    }
+
+    @Test
+    public void get_manyPoints() {
+        PointPool pool = new PointPool(0.0001);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 50; i++) {
+                for (int j = 0; j < 50; j++) {
+                    pool.get(i * 0.5, j * 0.5, (i + j) % 3);
+                }
+            }
+        }
+        assertEquals(2500, pool.size());
+        pool.clear();
+        assertEquals(0, pool.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_negativeTolerance() {
+        new PointPool(-1);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.IfcLengthMeasure;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class PrecisionTest {
+
+    @Test
+    public void bind_overridesDefault() {
+        Precision precision = new Precision(0.001);
+        try (Precision.Binding ignored = precision.bind()) {
+            assertSame(precision, Precision.current());
+            assertEquals(0.001, Functions.getDelta(), 0);
+            assertEquals("1.235", new IfcLengthMeasure(1.23456).serialize());
+            assertEquals(2, Functions.round(1.9995), 0);
+        }
+        assertSame(Precision.getDefault(), Precision.current());
+        assertEquals("1.23456", new IfcLengthMeasure(1.23456).serialize());
+        assertEquals(1.9995, Functions.round(1.9995), 0);
+    }
+
+    @Test
+    public void bind_concurrentPrecisions() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Callable<String> coarse = () -> {
+                try (Precision.Binding ignored = new Precision(0.1).bind()) {
+                    String result = "";
+                    for (int i = 0; i < 10_000; i++) {
+                        result = new IfcLengthMeasure(Math.PI).serialize();
+                    }
+                    return result;
+                }
+            };
+            Callable<String> fine = () -> {
+                try (Precision.Binding ignored = new Precision(0.0001).bind()) {
+                    String result = "";
+                    for (int i = 0; i < 10_000; i++) {
+                        result = new IfcLengthMeasure(Math.PI).serialize();
+                    }
+                    return result;
+                }
+            };
+            Future<String> coarseResult = executor.submit(coarse);
+            Future<String> fineResult = executor.submit(fine);
+            assertEquals("3.1", coarseResult.get());
+            assertEquals("3.1416", fineResult.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void format_sameAsDecimalFormat() {
+        Random random = new Random(42);
+        for (double delta : new double[]{0.00000001, 0.001, 0.5, 1, 100}) {
+            Precision precision = new Precision(delta);
+            int decimals = Math.max(BigDecimal.valueOf(delta).stripTrailingZeros().scale(), 1);
+            DecimalFormat format = new DecimalFormat("0.0" + "#".repeat(decimals - 1),
+                                                     DecimalFormatSymbols.getInstance(Locale.ROOT));
+            format.setRoundingMode(RoundingMode.HALF_EVEN);
+            double[] special = {0, -0d, 1, -1, 0.1, 1e15, -1e16, 1e-9, 123456789.125, 0.30000000000000004,
+                    Double.MAX_VALUE, Double.MIN_VALUE, Long.MAX_VALUE, Double.POSITIVE_INFINITY};
+            for (double d : special) {
+                assertEquals(format.format(d), precision.format(d));
+            }
+            for (int i = 0; i < 100_000; i++) {
+                double d;
+                switch (i % 4) {
+                    case 0:
+                        d = random.nextInt(2_000_000) / 1000.0 - 1000;
+                        break;
+                    case 1:
+                        d = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+                        break;
+                    case 2:
+                        d = random.nextInt(1000) - 500;
+                        break;
+                    default:
+                        d = Double.longBitsToDouble(random.nextLong());
+                }
+                if (!Double.isNaN(d)) {
+                    assertEquals(format.format(d), precision.format(d));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_negativeDelta() {
+        new Precision(-0.1);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class SpatialIndexTest {
+    private static IfcProxy proxy(int i) {
+        return Fixtures.proxy("Proxy" + i, null, null);
+    }
+
+    /**
+     * @return Random boxes, mostly small and some of them flat.
+     */
+    private static Map<IfcProduct, double[]> randomBoxes(Random random, int count) {
+        Map<IfcProduct, double[]> boxes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            double[] box = new double[6];
+            for (int j = 0; j < 3; j++) {
+                box[j] = random.nextDouble() * 100;
+                box[j + 3] = box[j] + (i % 7 == j ? 0 : random.nextDouble() * 5);
+            }
+            boxes.put(proxy(i), box);
+        }
+        return boxes;
+    }
+
+    private static boolean intersects(double[] a, double[] b) {
+        for (int i = 0; i < 3; i++) {
+            if (a[i] > b[i + 3] || b[i] > a[i + 3]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double distance(double[] box, double[] point) {
+        double distance = 0;
+        for (int i = 0; i < 3; i++) {
+            double d = Math.max(Math.max(box[i] - point[i], point[i] - box[i + 3]), 0);
+            distance += d * d;
+        }
+        return Math.sqrt(distance);
+    }
+
+    private static void assertMatchesScan(SpatialIndex index, Map<IfcProduct, double[]> boxes, Random random) {
+        assertEquals(boxes.size(), index.size());
+        for (int i = 0; i < 50; i++) {
+            double[] query = new double[6];
+            for (int j = 0; j < 3; j++) {
+                query[j] = random.nextDouble() * 100;
+                query[j + 3] = query[j] + random.nextDouble() * 20;
+            }
+            Set<IfcProduct> expected = new HashSet<>();
+            boxes.forEach((product, box) -> {
+                if (intersects(box, query)) {
+                    expected.add(product);
+                }
+            });
+            List<IfcProduct> found = index.query(query);
+            assertEquals(expected.size(), found.size());
+            assertEquals(expected, new HashSet<>(found));
+
+            double[] point = {random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100};
+            List<IfcProduct> nearest = index.nearest(point, 5);
+            assertEquals(5, nearest.size());
+            double previous = 0;
+            for (IfcProduct product : nearest) {
+                double distance = distance(boxes.get(product), point);
+                assertTrue(distance >= previous);
+                previous = distance;
+            }
+            double last = previous;
+            long closer = boxes.values().stream().filter(box -> distance(box, point) < last).count();
+            assertTrue(closer < 5);
+        }
+    }
+
+    @Test
+    public void insertAll_bulkLoaded() {
+        Random random = new Random(1);
+        Map<IfcProduct, double[]> boxes = randomBoxes(random, 3000);
+        SpatialIndex index = new SpatialIndex();
+        index.insertAll(boxes);
+        assertMatchesScan(index, boxes, random);
+    }
+
+    @Test
+    public void insert_incremental() {
+        Random random = new Random(2);
+        Map<IfcProduct, double[]> boxes = randomBoxes(random, 2000);
+        SpatialIndex index = new SpatialIndex();
+        Iterator<Map.Entry<IfcProduct, double[]>> iterator = boxes.entrySet().iterator();
+        Map<IfcProduct, double[]> firstHalf = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            Map.Entry<IfcProduct, double[]> entry = iterator.next();
+            firstHalf.put(entry.getKey(), entry.getValue());
+        }
+        index.insertAll(firstHalf);
+        iterator.forEachRemaining(entry -> index.insert(entry.getKey(), entry.getValue()));
+        assertMatchesScan(index, boxes, random);
+    }
+
+    @Test
+    public void raycast_sortedByDistance() {
+        SpatialIndex index = new SpatialIndex();
+        List<IfcProduct> products = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            IfcProduct product = proxy(i);
+            products.add(product);
+            index.insert(product, new double[]{i * 2, 0, 0, i * 2 + 1, 1, 1});
+        }
+        List<IfcProduct> hits = index.raycast(new double[]{200, 0.5, 0.5}, new double[]{-1, 0, 0});
+        assertEquals(100, hits.size());
+        for (int i = 0; i < 100; i++) {
+            assertSame(products.get(99 - i), hits.get(i));
+        }
+        hits = index.raycast(new double[]{10.5, 0.5, -5}, new double[]{0, 0, 1});
+        assertEquals(Collections.singletonList(products.get(5)), hits);
+        assertTrue(index.raycast(new double[]{11.5, 0.5, -5}, new double[]{0, 0, 1}).isEmpty());
+        assertTrue(index.raycast(new double[]{10.5, 0.5, -5}, new double[]{0, 0, -1}).isEmpty());
+        // the origin is inside the box
+        assertSame(products.get(3), index.raycast(new double[]{6.5, 0.5, 0.5}, new double[]{1, 1, 0}).get(0));
+    }
+
+    @Test
+    public void build_project() {
+        IfcLocalPlacement buildingPlacement = new IfcLocalPlacement(null, new IfcAxis2Placement3D(0, 0, 0));
+        List<IfcProduct> products = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            products.add(located(i, buildingPlacement));
+        }
+        IfcProject project = Fixtures.project(buildingPlacement, products);
+
+        SpatialIndex index = SpatialIndex.build(project);
+        assertEquals(20, index.size());
+        assertEquals(Collections.singletonList(products.get(7)), index.query(new double[]{7, 0, 0, 7, 0, 0}));
+
+        IfcProduct added = located(100, buildingPlacement);
+        assertTrue(index.insert(added));
+        assertFalse(index.insert(proxy(101)));
+        IfcHalfSpaceSolid halfSpace = new IfcHalfSpaceSolid(new IfcPlane(new IfcAxis2Placement3D(0, 0, 0)),
+                                                            IfcBoolean.F);
+        IfcShapeRepresentation unbounded = new IfcShapeRepresentation(
+                Fixtures.CONTEXT,
+                new IfcLabel("Body"),
+                new IfcLabel("CSG"),
+                new IfcBooleanResult(IfcBooleanOperator.UNION, Fixtures.box(1, 1, 1), halfSpace));
+        assertFalse(index.insert(Fixtures.proxy("Unbounded", 0, unbounded)));
+        assertEquals(21, index.size());
+        assertEquals(Collections.singletonList(added), index.nearest(new double[]{120, 0, 0}, 1));
+    }
+
+    private static IfcProduct located(int x, IfcLocalPlacement parent) {
+        return Fixtures.proxy("Located" + x,
+                              new IfcLocalPlacement(parent, new IfcAxis2Placement3D(x, 0, 0)),
+                              Fixtures.body(Fixtures.box(0.5, 0.5, 1)));
+    }
+
+    @Test
+    public void queries_empty() {
+        SpatialIndex index = new SpatialIndex();
+        assertTrue(index.query(new double[]{0, 0, 0, 1, 1, 1}).isEmpty());
+        assertTrue(index.raycast(new double[]{0, 0, 0}, new double[]{1, 0, 0}).isEmpty());
+        assertTrue(index.nearest(new double[]{0, 0, 0}, 3).isEmpty());
+        index.insertAll(Collections.emptyMap());
+        assertEquals(0, index.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void insert_invertedBox() {
+        new SpatialIndex().insert(proxy(0), new double[]{1, 0, 0, 0, 1, 1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void raycast_zeroDirection() {
+        new SpatialIndex().raycast(new double[]{0, 0, 0}, new double[]{0, 0, 0});
+    }
+}
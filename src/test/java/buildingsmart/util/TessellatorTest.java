@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import buildingsmart.ifc.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TessellatorTest {
+    private static final double TOLERANCE = 1e-9;
+    private static IfcRectangleProfileDef rectangle(double x, double y, double xDim, double yDim) {
+        return Fixtures.rectangle(x, y, xDim, yDim);
+    }
+
+    private static IfcExtrudedAreaSolid extrude(IfcProfileDef profile, double depth) {
+        return Fixtures.extrude(profile, new IfcAxis2Placement3D(0, 0, 0), depth);
+    }
+
+    private static IfcPolyline square(double x, double y, double size) {
+        return new IfcPolyline(new IfcCartesianPoint(x, y),
+                               new IfcCartesianPoint(x + size, y),
+                               new IfcCartesianPoint(x + size, y + size),
+                               new IfcCartesianPoint(x, y + size),
+                               new IfcCartesianPoint(x, y));
+    }
+
+    /**
+     * @return The area of a regular polygon inscribed in a circle.
+     */
+    private static double polygonArea(double radius, int segments) {
+        return segments / 2.0 * radius * radius * Math.sin(2 * Math.PI / segments);
+    }
+
+    /**
+     * Checks that each edge of the mesh is shared by exactly two triangles,
+     * which traverse it in opposite directions.
+     */
+    private static void assertClosed(TriangleMesh mesh) {
+        Map<Long, Integer> edges = new HashMap<>();
+        int[] indices = mesh.getIndices();
+        for (int i = 0; i < indices.length; i += 3) {
+            for (int j = 0; j < 3; j++) {
+                long edge = (long) indices[i + j] << 32 | indices[i + (j + 1) % 3];
+                assertNull("edge traversed twice in the same direction", edges.put(edge, i));
+            }
+        }
+        for (long edge : edges.keySet()) {
+            assertTrue("open edge", edges.containsKey(edge << 32 | edge >>> 32));
+        }
+    }
+
+    @Test
+    public void tessellate_extrudedRectangle() {
+        TriangleMesh mesh = new Tessellator().tessellate(extrude(rectangle(1, 0, 1, 2), 3));
+        assertEquals(8, mesh.vertexCount());
+        assertEquals(12, mesh.triangleCount());
+        assertEquals(6, mesh.volume(), TOLERANCE);
+        assertEquals(22, mesh.area(), TOLERANCE);
+        assertArrayEquals(new double[]{0.5, -1, 0, 1.5, 1, 3}, mesh.box(), TOLERANCE);
+        assertClosed(mesh);
+    }
+
+    @Test
+    public void tessellate_extrudedSlanted() {
+        IfcExtrudedAreaSolid solid = new IfcExtrudedAreaSolid(rectangle(0, 0, 1, 2),
+                                                              new IfcAxis2Placement3D(0, 0, 5),
+                                                              new IfcDirection(0, 1, -1),
+                                                              new IfcPositiveLengthMeasure(Math.sqrt(2)));
+        TriangleMesh mesh = new Tessellator().tessellate(solid);
+        assertEquals(2, mesh.volume(), TOLERANCE);
+        assertArrayEquals(new double[]{-0.5, -1, 4, 0.5, 2, 5}, mesh.box(), TOLERANCE);
+        assertClosed(mesh);
+    }
+
+    @Test
+    public void tessellate_chordTolerance() {
+        IfcCircleProfileDef circle = new IfcCircleProfileDef(IfcProfileTypeEnum.AREA,
+                                                             null,
+                                                             new IfcAxis2Placement2D(0, 0),
+                                                             new IfcPositiveLengthMeasure(1));
+        IfcExtrudedAreaSolid solid = extrude(circle, 2);
+        TriangleMesh coarse = new Tessellator(0.01).tessellate(solid);
+        TriangleMesh fine = new Tessellator(0.0001).tessellate(solid);
+        // a segment every 2 * acos(1 - tolerance) radians
+        assertEquals(23 * 2, coarse.vertexCount());
+        assertEquals(223 * 2, fine.vertexCount());
+        assertEquals(polygonArea(1, 23) * 2, coarse.volume(), TOLERANCE);
+        assertEquals(Math.PI * 2, fine.volume(), 0.001);
+        double[] vertices = fine.getVertices();
+        for (int i = 0; i < vertices.length; i += 3) {
+            assertEquals(1, Math.hypot(vertices[i], vertices[i + 1]), TOLERANCE);
+        }
+        assertClosed(fine);
+    }
+
+    @Test
+    public void tessellate_hollowProfiles() {
+        IfcCircleHollowProfileDef tube = new IfcCircleHollowProfileDef(IfcProfileTypeEnum.AREA,
+                                                                       null,
+                                                                       new IfcAxis2Placement2D(0, 0),
+                                                                       new IfcPositiveLengthMeasure(1),
+                                                                       new IfcPositiveLengthMeasure(0.25));
+        Tessellator tessellator = new Tessellator(0.001);
+        TriangleMesh mesh = tessellator.tessellate(extrude(tube, 1));
+        assertEquals(Math.PI * (1 - 0.75 * 0.75), mesh.volume(), 0.01);
+        assertClosed(mesh);
+
+        IfcRectangleHollowProfileDef box = IfcRectangleHollowProfileDef.builder()
+                .profileType(IfcProfileTypeEnum.AREA)
+                .position(new IfcAxis2Placement2D(0, 0))
+                .xDim(new IfcPositiveLengthMeasure(4))
+                .yDim(new IfcPositiveLengthMeasure(2))
+                .wallThickness(new IfcPositiveLengthMeasure(0.5))
+                .build();
+        mesh = tessellator.tessellate(extrude(box, 1));
+        assertEquals(8 - 3, mesh.volume(), TOLERANCE);
+        assertClosed(mesh);
+    }
+
+    @Test
+    public void tessellate_iShape() {
+        IfcIShapeProfileDef shape = IfcIShapeProfileDef.builder()
+                .profileType(IfcProfileTypeEnum.AREA)
+                .position(new IfcAxis2Placement2D(0, 0))
+                .overallWidth(new IfcPositiveLengthMeasure(0.2))
+                .overallDepth(new IfcPositiveLengthMeasure(0.4))
+                .webThickness(new IfcPositiveLengthMeasure(0.01))
+                .flangeThickness(new IfcPositiveLengthMeasure(0.02))
+                .build();
+        TriangleMesh mesh = new Tessellator().tessellate(extrude(shape, 10));
+        assertEquals((0.2 * 0.02 * 2 + 0.36 * 0.01) * 10, mesh.volume(), TOLERANCE);
+        assertEquals(24, mesh.vertexCount());
+        assertClosed(mesh);
+    }
+
+    @Test
+    public void tessellate_arbitraryProfileWithVoids() {
+        IfcCircle hole = new IfcCircle(new IfcAxis2Placement2D(7, 7), new IfcPositiveLengthMeasure(1));
+        IfcArbitraryProfileDefWithVoids profile = new IfcArbitraryProfileDefWithVoids(IfcProfileTypeEnum.AREA,
+                                                                                      null,
+                                                                                      square(0, 0, 10),
+                                                                                      square(2, 2, 2),
+                                                                                      square(2, 6, 2),
+                                                                                      hole);
+        TriangleMesh mesh = new Tessellator(0.01).tessellate(extrude(profile, 1));
+        assertEquals(100 - 8 - polygonArea(1, 23), mesh.volume(), TOLERANCE);
+        assertClosed(mesh);
+    }
+
+    @Test
+    public void tessellate_compositeProfile() {
+        // a slot: two half circles joined by straight segments
+        IfcCircle left = new IfcCircle(new IfcAxis2Placement2D(0, 0), new IfcPositiveLengthMeasure(1));
+        IfcCircle right = new IfcCircle(new IfcAxis2Placement2D(4, 0), new IfcPositiveLengthMeasure(1));
+        IfcTrimmedCurve rightArc = new IfcTrimmedCurve(right,
+                                                       Collections.singleton(new IfcCartesianPoint(4, -1)),
+                                                       Collections.singleton(new IfcCartesianPoint(4, 1)),
+                                                       IfcBoolean.T,
+                                                       IfcTrimmingPreference.CARTESIAN);
+        IfcTrimmedCurve leftArc = new IfcTrimmedCurve(left,
+                                                      Collections.singleton(new IfcParameterValue(90)),
+                                                      Collections.singleton(new IfcParameterValue(270)),
+                                                      IfcBoolean.T,
+                                                      IfcTrimmingPreference.PARAMETER);
+        IfcCompositeCurve slot = new IfcCompositeCurve(Arrays.asList(
+                new IfcCompositeCurveSegment(IfcTransitionCode.CONTINUOUS, IfcBoolean.T,
+                                             new IfcPolyline(new IfcCartesianPoint(0, -1),
+                                                             new IfcCartesianPoint(4, -1))),
+                new IfcCompositeCurveSegment(IfcTransitionCode.CONTINUOUS, IfcBoolean.T, rightArc),
+                new IfcCompositeCurveSegment(IfcTransitionCode.CONTINUOUS, IfcBoolean.F,
+                                             new IfcPolyline(new IfcCartesianPoint(0, 1),
+                                                             new IfcCartesianPoint(4, 1))),
+                new IfcCompositeCurveSegment(IfcTransitionCode.CONTINUOUS, IfcBoolean.T, leftArc)),
+                                                       IfcLogical.F);
+        IfcArbitraryClosedProfileDef profile = new IfcArbitraryClosedProfileDef(IfcProfileTypeEnum.AREA,
+                                                                                null,
+                                                                                slot);
+        TriangleMesh mesh = new Tessellator(0.01, Math.PI / 180).tessellate(extrude(profile, 1));
+        // each half circle has half of the 23 segments of the full circle
+        assertEquals(8 + polygonArea(1, 24), mesh.volume(), TOLERANCE);
+        assertArrayEquals(new double[]{-1, -1, 0, 5, 1, 1}, mesh.box(), TOLERANCE);
+        assertClosed(mesh);
+    }
+
+    @Test
+    public void tessellate_revolved() {
+        IfcAxis1Placement axis = new IfcAxis1Placement(new IfcCartesianPoint(0, 0, 0), new IfcDirection(0, 1, 0));
+        Tessellator tessellator = new Tessellator(0.001, Math.PI / 180);
+        TriangleMesh full = tessellator.tessellate(new IfcRevolvedAreaSolid(rectangle(3, 0, 1, 2),
+                                                                            new IfcAxis2Placement3D(0, 0, 0),
+                                                                            axis,
+                                                                            new IfcPlaneAngleMeasure(360)));
+        // Pappus's theorem: the area of the profile by the length of the
+        // circle described by its centroid
+        assertEquals(2 * 2 * Math.PI * 3, full.volume(), 0.05);
+        assertClosed(full);
+
+        TriangleMesh quarter = tessellator.tessellate(new IfcRevolvedAreaSolid(rectangle(3, 0, 1, 2),
+                                                                               new IfcAxis2Placement3D(0, 0, 0),
+                                                                               axis,
+                                                                               new IfcPlaneAngleMeasure(-90)));
+        assertEquals(2 * Math.PI / 2 * 3, quarter.volume(), 0.01);
+        assertClosed(quarter);
+        assertArrayEquals(new double[]{0, -1, 0, 3.5, 1, 3.5}, quarter.box(), 0.001);
+    }
+
+    @Test
+    public void tessellate_revolvedTouchingAxis() {
+        IfcAxis1Placement axis = new IfcAxis1Placement(new IfcCartesianPoint(0, 0, 0), new IfcDirection(0, 1, 0));
+        // a cylinder of radius 1 and height 2
+        TriangleMesh mesh = new Tessellator(0.001).tessellate(
+                new IfcRevolvedAreaSolid(rectangle(0.5, 0, 1, 2),
+                                         new IfcAxis2Placement3D(0, 0, 0),
+                                         axis,
+                                         new IfcPlaneAngleMeasure(2 * Math.PI)));
+        assertEquals(2 * Math.PI, mesh.volume(), 0.01);
+        assertClosed(mesh);
+    }
+
+    @Test
+    public void tessellate_sweptDisk() {
+        IfcPolyline directrix = new IfcPolyline(new IfcCartesianPoint(0, 0, 0),
+                                                new IfcCartesianPoint(10, 0, 0),
+                                                new IfcCartesianPoint(10, 10, 0),
+                                                new IfcCartesianPoint(10, 10, 5));
+        Tessellator tessellator = new Tessellator(0.01);
+        TriangleMesh solid = tessellator.tessellate(new IfcSweptDiskSolid(directrix,
+                                                                          new IfcPositiveLengthMeasure(1),
+                                                                          null,
+                                                                          new IfcParameterValue(0),
+                                                                          new IfcParameterValue(3)));
+        // mitred corners keep the volume of a prism as long as the directrix
+        assertEquals(polygonArea(1, 23) * 25, solid.volume(), TOLERANCE);
+        assertClosed(solid);
+
+        TriangleMesh hollow = tessellator.tessellate(new IfcSweptDiskSolid(directrix,
+                                                                           new IfcPositiveLengthMeasure(1),
+                                                                           new IfcPositiveLengthMeasure(0.5),
+                                                                           new IfcParameterValue(0),
+                                                                           new IfcParameterValue(3)));
+        assertEquals((polygonArea(1, 23) - polygonArea(0.5, 23)) * 25, hollow.volume(), TOLERANCE);
+        assertClosed(hollow);
+    }
+
+    @Test
+    public void tessellate_facetedBrep() {
+        double[] vertices = {0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0, 0, 0, 1, 1, 0, 1, 1, 1, 1, 0, 1, 1};
+        int[] indices = {0, 3, 2, 1, 4, 5, 6, 7, 0, 1, 5, 4, 1, 2, 6, 5, 2, 3, 7, 6, 3, 0, 4, 7};
+        IfcFacetedBrep brep = new IndexedMeshBuilder(vertices, indices)
+                .loopSizes(new int[]{4, 4, 4, 4, 4, 4})
+                .buildFacetedBrep();
+        TriangleMesh mesh = new Tessellator().tessellate(brep);
+        assertEquals(8, mesh.vertexCount());
+        assertEquals(12, mesh.triangleCount());
+        assertEquals(1, mesh.volume(), TOLERANCE);
+        assertClosed(mesh);
+    }
+
+    @Test
+    public void tessellate_faceWithHole() {
+        double[] vertices = {0, 0, 0, 0, 4, 0, 0, 4, 4, 0, 0, 4, 0, 1, 1, 0, 1, 2, 0, 2, 2, 0, 2, 1};
+        IfcConnectedFaceSet faces = new IndexedMeshBuilder(vertices, new int[]{0, 1, 2, 3, 4, 5, 6, 7})
+                .loopSizes(new int[]{4, 4})
+                .boundsPerFace(new int[]{2})
+                .buildConnectedFaceSet();
+        TriangleMesh mesh = new Tessellator().tessellate(faces);
+        assertEquals(15, mesh.area(), TOLERANCE);
+        double[] cross = new double[3];
+        for (int i = 0; i < mesh.triangleCount(); i++) {
+            mesh.crossProduct(mesh.getIndices()[i * 3], mesh.getIndices()[i * 3 + 1], mesh.getIndices()[i * 3 + 2],
+                              cross);
+            // the outer loop is counterclockwise around +X
+            assertTrue(cross[0] > 0);
+        }
+    }
+
+    @Test
+    public void tessellate_mappedItem() {
+        IfcExtrudedAreaSolid solid = extrude(rectangle(0, 0, 1, 1), 1);
+        IfcShapeRepresentation representation = Fixtures.body(solid);
+        IfcRepresentationMap map = new IfcRepresentationMap(new IfcAxis2Placement3D(0, 0, 0), representation);
+        IfcMappedItem scaled = new IfcMappedItem(map,
+                                                 new IfcCartesianTransformationOperator3D(
+                                                         null,
+                                                         null,
+                                                         new IfcCartesianPoint(10, 0, 0),
+                                                         new IfcReal(2),
+                                                         null));
+        IfcMappedItem mirrored = new IfcMappedItem(map,
+                                                   new IfcCartesianTransformationOperator3D(
+                                                           new IfcDirection(-1, 0, 0),
+                                                           null,
+                                                           new IfcCartesianPoint(0, 0, 0),
+                                                           null,
+                                                           null));
+        Tessellator tessellator = new Tessellator();
+        TriangleMesh mesh = tessellator.tessellate(scaled);
+        assertEquals(8, mesh.volume(), TOLERANCE);
+        assertArrayEquals(new double[]{9, -1, 0, 11, 1, 2}, mesh.box(), TOLERANCE);
+        assertEquals(1, tessellator.tessellate(mirrored).volume(), TOLERANCE);
+        assertSame(mesh, tessellator.tessellate(scaled));
+        assertSame(tessellator.tessellate(solid), tessellator.tessellate(representation));
+    }
+
+    @Test
+    public void tessellate_productBody() {
+        IfcShapeRepresentation body = Fixtures.body(extrude(rectangle(0, 0, 1, 1), 1));
+        IfcShapeRepresentation clearance = clearance(extrude(rectangle(0, 0, 2, 2), 2));
+        IfcProxy proxy = IfcProxy.builder()
+                .globalId(new IfcGloballyUniqueId())
+                .ownerHistory(Fixtures.OWNER_HISTORY)
+                .name(new IfcLabel("Proxy"))
+                .objectPlacement(new IfcLocalPlacement(null, new IfcAxis2Placement3D(0, 0, 0)))
+                .representation(new IfcProductDefinitionShape(null, null, clearance, body))
+                .proxyType(IfcObjectTypeEnum.PRODUCT)
+                .build();
+        Tessellator tessellator = new Tessellator();
+        // the clearance would overlap the body
+        assertSame(tessellator.tessellate(body), tessellator.tessellate(proxy));
+
+        IfcProxy withoutBody = Fixtures.proxy("Proxy", 0, clearance(extrude(rectangle(0, 0, 2, 2), 2)));
+        assertEquals(8, tessellator.tessellate(withoutBody).volume(), TOLERANCE);
+    }
+
+    private static IfcShapeRepresentation clearance(IfcRepresentationItem item) {
+        return new IfcShapeRepresentation(Fixtures.CONTEXT,
+                                          new IfcLabel("Clearance"),
+                                          new IfcLabel("SweptSolid"),
+                                          item);
+    }
+
+    @Test
+    public void tessellateAll_project() {
+        IfcLocalPlacement buildingPlacement = new IfcLocalPlacement(null, new IfcAxis2Placement3D(0, 0, 0));
+        IfcProfileDef profile = rectangle(0, 0, 1, 1);
+        List<IfcProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            proxies.add(Fixtures.proxy("Proxy" + i,
+                                       new IfcLocalPlacement(buildingPlacement, new IfcAxis2Placement3D(i, 0, 0)),
+                                       Fixtures.body(extrude(profile, i + 1))));
+        }
+        IfcProject project = Fixtures.project(buildingPlacement, proxies);
+
+        Tessellator tessellator = new Tessellator();
+        Map<IfcProduct, TriangleMesh> meshes = tessellator.tessellateAll(project);
+        assertEquals(20, meshes.size());
+        meshes.forEach((product, mesh) -> {
+            double x = ((IfcLocalPlacement) product.getObjectPlacement()).getRelativePlacement()
+                    .getLocation().getCoordinates().get(0).getValue();
+            assertEquals(x + 1, mesh.volume(), TOLERANCE);
+        });
+        // the profile is shared: 20 solids, 20 representations and 1 profile
+        assertEquals(41, tessellator.size());
+    }
+
+    @Test
+    public void tessellateAll_boundPrecision() {
+        IfcLocalPlacement buildingPlacement = new IfcLocalPlacement(null, new IfcAxis2Placement3D(0, 0, 0));
+        List<IfcProxy> proxies = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            // the last point closes the loop only within the bound precision
+            IfcPolyline outline = new IfcPolyline(new IfcCartesianPoint(i, 0),
+                                                  new IfcCartesianPoint(i + 1, 0),
+                                                  new IfcCartesianPoint(i + 1, 1),
+                                                  new IfcCartesianPoint(i, 1),
+                                                  new IfcCartesianPoint(i + 0.001, 0));
+            IfcProfileDef profile = new IfcArbitraryClosedProfileDef(IfcProfileTypeEnum.AREA, null, outline);
+            proxies.add(Fixtures.proxy("Proxy" + i, buildingPlacement, Fixtures.body(extrude(profile, 1))));
+        }
+        IfcProject project = Fixtures.project(buildingPlacement, proxies);
+
+        Map<IfcProduct, TriangleMesh> meshes;
+        try (Precision.Binding ignored = new Precision(0.01).bind()) {
+            meshes = new Tessellator().tessellateAll(project);
+        }
+        assertEquals(40, meshes.size());
+        for (TriangleMesh mesh : meshes.values()) {
+            assertEquals(8, mesh.vertexCount());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tessellate_booleanResult() {
+        new Tessellator().tessellate(new IfcBooleanResult(IfcBooleanOperator.DIFFERENCE,
+                                                          extrude(rectangle(0, 0, 1, 1), 1),
+                                                          extrude(rectangle(0, 0, 1, 1), 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_zeroTolerance() {
+        new Tessellator(0);
+    }
+}
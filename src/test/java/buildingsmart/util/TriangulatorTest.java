@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TriangulatorTest {
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * @return The total area of the triangles, checking that each one is
+     * counterclockwise.
+     */
+    private static double area(double[] xy, int[] triangles) {
+        double total = 0;
+        for (int i = 0; i < triangles.length; i += 3) {
+            int a = triangles[i] * 2;
+            int b = triangles[i + 1] * 2;
+            int c = triangles[i + 2] * 2;
+            double area = ((xy[b] - xy[a]) * (xy[c + 1] - xy[a + 1]) - (xy[b + 1] - xy[a + 1]) * (xy[c] - xy[a])) / 2;
+            assertTrue(area > 0);
+            total += area;
+        }
+        return total;
+    }
+
+    @Test
+    public void triangulate_concaveClockwise() {
+        // a U shape, clockwise
+        double[] xy = {0, 0, 0, 3, 1, 3, 1, 1, 2, 1, 2, 3, 3, 3, 3, 0};
+        int[] triangles = Triangulator.triangulate(xy, new int[]{0, 8});
+        assertEquals(6 * 3, triangles.length);
+        assertEquals(7, area(xy, triangles), TOLERANCE);
+    }
+
+    @Test
+    public void triangulate_collinearVerticesKept() {
+        double[] xy = {0, 0, 1, 0, 2, 0, 2, 2, 0, 2};
+        int[] triangles = Triangulator.triangulate(xy, new int[]{0, 5});
+        assertEquals(3 * 3, triangles.length);
+        assertEquals(4, area(xy, triangles), TOLERANCE);
+    }
+
+    @Test
+    public void triangulate_holesJoinedToSameVertex() {
+        double[] xy = {0, 0, 10, 0, 10, 10, 0, 10,
+                2, 2, 4, 2, 4, 4, 2, 4,
+                2, 6, 4, 6, 4, 8, 2, 8,
+                8, 6, 9, 7, 8, 8, 7, 7};
+        int[] triangles = Triangulator.triangulate(xy, new int[]{0, 4, 8, 12, 16});
+        assertEquals((16 + 3 * 2 - 2) * 3, triangles.length);
+        assertEquals(100 - 4 - 4 - 2, area(xy, triangles), TOLERANCE);
+    }
+
+    @Test
+    public void triangulate_degenerate() {
+        assertEquals(0, Triangulator.triangulate(new double[]{0, 0, 1, 1}, new int[]{0, 2}).length);
+        assertEquals(0, Triangulator.triangulate(new double[]{0, 0, 1, 1, 2, 2}, new int[]{0, 3}).length);
+    }
+}
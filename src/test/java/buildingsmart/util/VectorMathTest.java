@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 Antea S.r.l.
+ *
+ * This file is part of ifc-java.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package buildingsmart.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VectorMathTest {
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    public void normalise_inPlace() {
+        double[] v = {3, 0, 4};
+        assertTrue(VectorMath.normalise(v, v));
+        assertArrayEquals(new double[]{0.6, 0, 0.8}, v, TOLERANCE);
+    }
+
+    @Test
+    public void normalise_zero() {
+        double[] result = {7, 7};
+        assertFalse(VectorMath.normalise(new double[]{0, 0}, result));
+        assertArrayEquals(new double[]{7, 7}, result, 0);
+    }
+
+    @Test
+    public void cross() {
+        double[] result = new double[3];
+        VectorMath.cross(new double[]{1, 0, 0}, new double[]{0, 1, 0}, result);
+        assertArrayEquals(new double[]{0, 0, 1}, result, TOLERANCE);
+    }
+
+    @Test
+    public void firstProjAxis_projectsOntoNormalPlane() {
+        double[] result = new double[3];
+        assertTrue(VectorMath.firstProjAxis(new double[]{0, 0, 1}, new double[]{1, 0, 1}, result));
+        assertArrayEquals(new double[]{1, 0, 0}, result, TOLERANCE);
+    }
+
+    @Test
+    public void firstProjAxis_defaultWhenZIsX() {
+        double[] result = new double[3];
+        assertTrue(VectorMath.firstProjAxis(new double[]{1, 0, 0}, null, result));
+        assertArrayEquals(new double[]{0, 1, 0}, result, TOLERANCE);
+    }
+
+    @Test
+    public void firstProjAxis_parallel() {
+        assertFalse(VectorMath.firstProjAxis(new double[]{0, 0, 1}, new double[]{0, 0, -2}, new double[3]));
+    }
+
+    @Test
+    public void buildAxes_default() {
+        double[] x = new double[3];
+        double[] y = new double[3];
+        double[] z = new double[3];
+        assertTrue(VectorMath.buildAxes(null, null, x, y, z));
+        assertArrayEquals(new double[]{1, 0, 0}, x, TOLERANCE);
+        assertArrayEquals(new double[]{0, 1, 0}, y, TOLERANCE);
+        assertArrayEquals(new double[]{0, 0, 1}, z, TOLERANCE);
+    }
+
+    @Test
+    public void buildAxes_rotated() {
+        double[] x = new double[3];
+        double[] y = new double[3];
+        double[] z = new double[3];
+        assertTrue(VectorMath.buildAxes(new double[]{0, 0, 2}, new double[]{0, 3, 0}, x, y, z));
+        assertArrayEquals(new double[]{0, 1, 0}, x, TOLERANCE);
+        assertArrayEquals(new double[]{-1, 0, 0}, y, TOLERANCE);
+        assertArrayEquals(new double[]{0, 0, 1}, z, TOLERANCE);
+    }
+
+    @Test
+    public void secondProjAxis_defaultInPlane() {
+        double[] result = new double[3];
+        assertTrue(VectorMath.secondProjAxis(new double[]{0, 0, 1}, new double[]{0, 1, 0}, null, result));
+        assertArrayEquals(new double[]{-1, 0, 0}, result, TOLERANCE);
+    }
+
+    @Test
+    public void baseAxis_mirrored3D() {
+        double[][] u = new double[3][3];
+        assertTrue(VectorMath.baseAxis(new double[]{-1, 0, 0}, null, null, u));
+        assertArrayEquals(new double[]{-1, 0, 0}, u[0], TOLERANCE);
+        assertArrayEquals(new double[]{0, 1, 0}, u[1], TOLERANCE);
+        assertArrayEquals(new double[]{0, 0, 1}, u[2], TOLERANCE);
+    }
+
+    @Test
+    public void baseAxis_2D() {
+        double[][] u = new double[2][2];
+        assertTrue(VectorMath.baseAxis(new double[]{0, 3}, new double[]{1, 0}, null, u));
+        assertArrayEquals(new double[]{0, 1}, u[0], TOLERANCE);
+        assertArrayEquals(new double[]{1, 0}, u[1], TOLERANCE);
+        assertTrue(VectorMath.baseAxis(null, new double[]{0, -1}, null, u));
+        assertArrayEquals(new double[]{-1, 0}, u[0], TOLERANCE);
+        assertArrayEquals(new double[]{0, -1}, u[1], TOLERANCE);
+    }
+}